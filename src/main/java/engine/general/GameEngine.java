@@ -1,5 +1,8 @@
 package engine.general;
 
+import engine.general.assets.AssetCache;
+import engine.general.assets.AssetManager;
+import engine.general.blender.BlendArchive;
 import engine.hud.Hud;
 import engine.hud.mouse.MouseInput;
 
@@ -42,6 +45,12 @@ public class GameEngine implements Runnable{
     /**hud of the window */
     private final Hud hud;
 
+    /** loads assets in the background and uploads them every frame */
+    private final AssetManager assetManager;
+
+    /** shares meshes and textures between their users */
+    private final AssetCache assetCache;
+
     /** values needed for time calculations */
     private float accumulator;
     @SuppressWarnings("FieldCanBeLocal")
@@ -66,6 +75,8 @@ public class GameEngine implements Runnable{
         timer = new Timer();
         mouseInput = new MouseInput();
         hud = new Hud(window);
+        assetManager = new AssetManager();
+        assetCache = new AssetCache();
     }
 
     /**
@@ -141,6 +152,10 @@ public class GameEngine implements Runnable{
             accumulator -= interval;
         }
 
+        pTime("upload");
+
+        assetManager.processUploads();
+
         pTime("render");
 
         render();
@@ -207,11 +222,28 @@ public class GameEngine implements Runnable{
 
     }
 
+    /**
+     * @return asset manager whose uploads are done every frame
+     */
+    public AssetManager getAssetManager() {
+        return assetManager;
+    }
+
+    /**
+     * @return cache sharing meshes and textures between their users
+     */
+    public AssetCache getAssetCache() {
+        return assetCache;
+    }
+
     /**
      * calls the cleanup method of the program
      */
     private void cleanup(){
+        assetManager.cleanup();
         gameLogic.cleanup();
+        assetCache.cleanup();
+        BlendArchive.closeAll();
         hud.cleanup();
     }
 }
@@ -1,14 +1,23 @@
 package engine.general;
 
+import engine.general.collections.IntArrayBuilder;
+import engine.general.save.MeshCache;
 import engine.general.save.Resources;
 import engine.graph.items.Mesh;
+import engine.graph.items.MeshData;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * class used to load models from obj files
@@ -17,127 +26,22 @@ import java.util.Map;
 @SuppressWarnings("unused")
 public class OBJLoader {
 
+    /** chunks created per thread by loadParallel, more chunks than threads even out slow chunks */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** smallest chunk size used by loadParallel */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
     /**
-     * loads models with less memory use, faster for smaller models (<10000 vertices)
+     * loads models with less memory use, every combination of position, texture coordinate and
+     * normal used by the faces becomes one vertex
      *
      * @param filename of the obj model
      * @return a mesh of the obj model
      * @throws Exception if the file cant be red
      */
     public static Mesh loadNoDoubles(String filename) throws Exception{
-        long time = System.nanoTime();
-        List<String> lines = Resources.readAllLines(filename);
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Vector2f> textures = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
-        List<IndexData> indices = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
-
-        Map<String, Integer> verticesInd;
-
-        for(String line : lines){
-            String[] tokens = line.split("\\s+");
-            switch (tokens[0]){
-                case "v":
-                    Vector3f vec3f = new Vector3f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]),Float.parseFloat(tokens[3]));
-                    vertices.add(vec3f);
-                    break;
-                case "vt":
-                    //Texture cords
-                    Vector2f vec2f = new Vector2f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]));
-                    textures.add(vec2f);
-                    break;
-                case "vn":
-                    //Normal vectors
-                    Vector3f vec3fNormal = new Vector3f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]),Float.parseFloat(tokens[3]));
-                    normals.add(vec3fNormal);
-                    break;
-                case "f":
-                    Face face = new Face(tokens[1],tokens[2],tokens[3]);
-
-                    faces.add(face);
-                    break;
-                default:break;
-            }
-        }
-
-
-        int index = 0;
-        int count = 0;
-
-        verticesInd = new HashMap<>();
-
-
-
-
-        for(Face face : faces){
-            for(IdxGroup idxGroup : face.getFaceVertexIndices()){
-                if(verticesInd.get(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0)) == null) {
-                    index++;
-                    verticesInd.put(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0),index);
-                    indices.add(new IndexData(index, idxGroup.idxPos, idxGroup.idxTexCord, idxGroup.idxVecNormal));
-
-
-                    count++;
-                }else{
-                    indices.add(new IndexData(verticesInd.get(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0)), idxGroup.idxPos, idxGroup.idxTexCord, idxGroup.idxVecNormal));
-
-                }
-
-
-
-            }
-        }
-
-
-
-        float[] posArr = new float[count * 3];
-        float[] texArr = new float[count * 2];
-        float[] normArr = new float[count * 3];
-        int[] indicesArr = new int[indices.size()];
-
-
-
-
-        int i = 0;
-        int j = 0;
-        System.out.println(filename);
-        for(IndexData data : indices){
-
-
-
-            if(data.getIndex() > i) {
-                posArr[i * 3] = vertices.get(data.pos).x;
-                posArr[i * 3 + 1] = vertices.get(data.pos).y;
-                posArr[i * 3 + 2] = vertices.get(data.pos).z;
-
-                if(data.tex != -1) {
-                    texArr[i * 2] = textures.get(data.tex).x;
-                    texArr[i * 2 + 1] = 1 - textures.get(data.tex).y;
-                }
-
-                if(data.norm != -1) {
-                    normArr[i * 3] = normals.get(data.norm).x;
-                    normArr[i * 3 + 1] = normals.get(data.norm).y;
-                    normArr[i * 3 + 2] = normals.get(data.norm).z;
-                }
-                indicesArr[j] = data.getIndex() - 1;
-                i++;
-                j++;
-            }else{
-                indicesArr[j] = data.getIndex() - 1;
-                j++;
-            }
-        }
-
-        int i1 = 0;
-        for(Vector2f v2f : textures){
-            System.out.println(v2f.x + "||"+v2f.y);
-        }
-
-
-        return new Mesh(posArr,texArr,normArr,indicesArr);
-
+        return loadCached(filename, "noDoubles", () -> parseStreaming(filename).toDeduplicatedMeshData(false));
     }
 
     /**
@@ -148,143 +52,7 @@ public class OBJLoader {
      * @throws Exception if model cant be loaded
      */
     public static Mesh loadInverted(String filename) throws Exception {
-        long time = System.nanoTime();
-        List<String> lines = Resources.readAllLines(filename);
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Vector2f> textures = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
-        List<IndexData> indices = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
-
-        Map<String, Integer> verticesInd;
-
-        for(String line : lines){
-            String[] tokens = line.split("\\s+");
-            switch (tokens[0]){
-                case "v":
-                    Vector3f vec3f = new Vector3f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]),Float.parseFloat(tokens[3]));
-                    vertices.add(vec3f);
-                    break;
-                case "vt":
-                    //Texture cords
-                    Vector2f vec2f = new Vector2f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]));
-                    textures.add(vec2f);
-                    break;
-                case "vn":
-                    //Normal vectors
-                    Vector3f vec3fNormal = new Vector3f(Float.parseFloat(tokens[1]),Float.parseFloat(tokens[2]),Float.parseFloat(tokens[3]));
-                    normals.add(vec3fNormal);
-                    break;
-                case "f":
-                    Face face = new Face(tokens[3],tokens[2],tokens[1]);
-
-                    faces.add(face);
-                    break;
-                default:break;
-            }
-        }
-
-
-        int index = 0;
-        int count = 0;
-
-        verticesInd = new HashMap<>();
-
-
-
-
-        for(Face face : faces){
-            for(IdxGroup idxGroup : face.getFaceVertexIndices()){
-                if(verticesInd.get(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0)) == null) {
-                    index++;
-                    verticesInd.put(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0),index);
-                    indices.add(new IndexData(index, idxGroup.idxPos, idxGroup.idxTexCord, idxGroup.idxVecNormal));
-
-
-                    count++;
-                }else{
-                    indices.add(new IndexData(verticesInd.get(idxGroup.idxPos+""+Math.max(idxGroup.idxTexCord,0)+""+Math.max(idxGroup.idxVecNormal,0)), idxGroup.idxPos, idxGroup.idxTexCord, idxGroup.idxVecNormal));
-
-                }
-
-
-
-            }
-        }
-
-
-
-        float[] posArr = new float[count * 3];
-        float[] texArr = new float[count * 2];
-        float[] normArr = new float[count * 3];
-        int[] indicesArr = new int[indices.size()];
-
-
-
-
-        int i = 0;
-        int j = 0;
-
-        for(IndexData data : indices){
-
-
-
-            if(data.getIndex() > i) {
-                posArr[i * 3] = vertices.get(data.pos).x;
-                posArr[i * 3 + 1] = vertices.get(data.pos).y;
-                posArr[i * 3 + 2] = vertices.get(data.pos).z;
-
-                if(data.tex != -1) {
-                    texArr[i * 2] = textures.get(data.tex).x;
-                    texArr[i * 2 + 1] = 1 - textures.get(data.tex).y;
-                }
-
-                if(data.norm != -1) {
-                    normArr[i * 3] = normals.get(data.norm).x;
-                    normArr[i * 3 + 1] = normals.get(data.norm).y;
-                    normArr[i * 3 + 2] = normals.get(data.norm).z;
-                }
-                indicesArr[j] = data.getIndex() - 1;
-                i++;
-                j++;
-            }else{
-                indicesArr[j] = data.getIndex() - 1;
-                j++;
-            }
-        }
-
-
-
-        return new Mesh(posArr,texArr,normArr,indicesArr);
-    }
-
-    @SuppressWarnings({"unused", "WeakerAccess"})
-    private static class IndexData{
-        private int index;
-        private int pos,tex,norm;
-
-        public IndexData(int index, int pos, int tex, int norm) {
-            this.index = index;
-            this.pos = pos;
-            this.tex = tex;
-            this.norm = norm;
-        }
-
-        public int getIndex() {
-            return index;
-        }
-
-        public int getPos() {
-            return pos;
-        }
-
-        public int getTex() {
-            return tex;
-        }
-
-        public int getNorm() {
-            return norm;
-        }
+        return loadCached(filename, "inverted", () -> parseStreaming(filename).toDeduplicatedMeshData(true));
     }
 
     @SuppressWarnings("unused")
@@ -326,7 +94,18 @@ public class OBJLoader {
      */
     public static Mesh loadMesh(String filename) throws Exception{
         long time = System.nanoTime();
-        List<String> lines = Resources.readAllLines(filename);
+        Mesh mesh = loadCached(filename, "mesh", () -> loadMeshData(Resources.readAllLines(filename)));
+        System.out.println(System.nanoTime() - time);
+        return mesh;
+    }
+
+    /**
+     * parses the lines of an obj file the way loadMesh does, without creating the mesh
+     *
+     * @param lines lines of the obj file
+     * @return vertex data of the model
+     */
+    public static MeshData loadMeshData(List<String> lines) {
         List<Vector3f> vertices = new ArrayList<>();
         List<Vector2f> textures = new ArrayList<>();
         List<Vector3f> normals = new ArrayList<>();
@@ -357,9 +136,135 @@ public class OBJLoader {
                 default:break;
             }
         }
-        Mesh mesh = reorderLists(vertices,textures,normals,faces);
-        System.out.println(System.nanoTime() - time);
-        return mesh;
+        return reorderLists(vertices,textures,normals,faces);
+    }
+
+    /**
+     * loads mesh with the streaming parser, gives the same mesh as loadMesh but reads the
+     * file as bytes without creating strings or vector objects for every line
+     *
+     * @param filename obj filename
+     * @return mesh
+     * @throws Exception if file cant be loaded
+     */
+    public static Mesh loadStreaming(String filename) throws Exception {
+        return loadCached(filename, "mesh", () -> loadStreamingData(filename));
+    }
+
+    /**
+     * parses an obj file with the streaming parser without creating the mesh
+     *
+     * @param filename obj filename
+     * @return vertex data of the model
+     * @throws Exception if file cant be loaded
+     */
+    public static MeshData loadStreamingData(String filename) throws Exception {
+        return parseStreaming(filename).toMeshData();
+    }
+
+    /**
+     * reads an obj file with the streaming parser
+     *
+     * @param filename obj filename
+     * @return parser containing the data of the file
+     * @throws Exception if file cant be loaded
+     */
+    private static ObjStreamParser parseStreaming(String filename) throws Exception {
+        ObjStreamParser parser = new ObjStreamParser();
+        try (ReadableByteChannel channel = Resources.openChannel(filename)) {
+            parser.parse(channel);
+        }
+        return parser;
+    }
+
+    /**
+     * loads mesh by parsing line aligned parts of the file in parallel, gives the same mesh as
+     * loadMesh. the file has to be a resource stored in the file system ( not inside a jar )
+     *
+     * @param filename obj filename
+     * @param executor executor the parts are parsed on, for example a fork join pool
+     * @return mesh
+     * @throws Exception if file cant be loaded
+     */
+    public static Mesh loadParallel(String filename, ExecutorService executor) throws Exception {
+        Path path = getResourcePath(filename);
+        return loadCached(filename, "mesh", () -> loadParallelData(path, executor));
+    }
+
+    /**
+     * loads mesh like loadNoDoubles, but parses line aligned parts of the file in parallel
+     * the file has to be a resource stored in the file system ( not inside a jar )
+     *
+     * @param filename obj filename
+     * @param executor executor the parts are parsed on, for example a fork join pool
+     * @return mesh
+     * @throws Exception if file cant be loaded
+     */
+    public static Mesh loadParallelNoDoubles(String filename, ExecutorService executor) throws Exception {
+        Path path = getResourcePath(filename);
+        return loadCached(filename, "noDoubles", () -> ObjStreamParser.parseChunks(path, executor, getChunkCount(path, executor)).toDeduplicatedMeshData(false));
+    }
+
+    /**
+     * @param filename name of a resource
+     * @return path of the resource in the file system
+     * @throws Exception if the resource does not exist or is not a file
+     */
+    private static Path getResourcePath(String filename) throws Exception {
+        URL url = OBJLoader.class.getResource(filename);
+        if (url == null) {
+            throw new FileNotFoundException(filename);
+        }
+        return Paths.get(url.toURI());
+    }
+
+    /**
+     * returns the mesh from the mesh cache if the obj file did not change since the cache file
+     * was written, otherwise the loader parses the file and the result is cached
+     * loadMesh, loadStreaming and loadParallel create the same mesh and share the variant "mesh"
+     *
+     * @param filename obj filename
+     * @param variant name of the loading method
+     * @param loader parses the obj file
+     * @return mesh
+     * @throws Exception if the file cant be loaded
+     */
+    private static Mesh loadCached(String filename, String variant, MeshCache.MeshLoader<Exception> loader) throws Exception {
+        if (!MeshCache.isEnabled()) {
+            return loader.load().createMesh();
+        }
+
+        long hash;
+        try (ReadableByteChannel channel = Resources.openChannel(filename)) {
+            hash = MeshCache.hash(channel);
+        }
+        return MeshCache.load(filename, variant, hash, loader);
+    }
+
+    /**
+     * parses an obj file in parallel without creating the mesh
+     * the file is split into a few chunks per thread of the executor, but chunks are never
+     * smaller than MIN_CHUNK_SIZE
+     *
+     * @param path path of the obj file
+     * @param executor executor the parts are parsed on
+     * @return vertex data of the model
+     * @throws Exception if file cant be loaded
+     */
+    public static MeshData loadParallelData(Path path, ExecutorService executor) throws Exception {
+        return ObjStreamParser.parseParallel(path, executor, getChunkCount(path, executor));
+    }
+
+    /**
+     * @param path path of the obj file
+     * @param executor executor the parts are parsed on
+     * @return number of chunks the file is split into by the parallel loaders
+     * @throws Exception if the size of the file cant be read
+     */
+    private static int getChunkCount(Path path, ExecutorService executor) throws Exception {
+        int threads = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+        long chunks = Math.min((long) threads * CHUNKS_PER_THREAD, Files.size(path) / MIN_CHUNK_SIZE);
+        return (int) Math.max(1, chunks);
     }
 
     /**
@@ -422,11 +327,11 @@ public class OBJLoader {
      * @param texList see loadMesh
      * @param normList see loadMesh
      * @param faceList see loadMesh
-     * @return mesh
+     * @return vertex data of the mesh
      */
-    private static Mesh reorderLists(List<Vector3f> posList, List<Vector2f> texList, List<Vector3f> normList, List<Face> faceList){
+    private static MeshData reorderLists(List<Vector3f> posList, List<Vector2f> texList, List<Vector3f> normList, List<Face> faceList){
 
-        List<Integer> indices = new ArrayList<>();
+        IntArrayBuilder indices = new IntArrayBuilder(faceList.size() * 3);
 
         float[] posArr = new float[posList.size() * 3];
         int i = 0;
@@ -446,10 +351,9 @@ public class OBJLoader {
                 processVertex(indValue,texList,normList,indices,texCords,normArr);
             }
         }
-        int[] indicesArray;
-        indicesArray = indices.stream().mapToInt((Integer v) -> v).toArray();
+        int[] indicesArray = indices.toArray();
 
-        return new Mesh(posArr, texCords,normArr,indicesArray);
+        return new MeshData(posArr, texCords,normArr,indicesArray);
     }
 
     /**
@@ -462,7 +366,7 @@ public class OBJLoader {
      * @param texCordArr see reorderLists
      * @param normArr see reorderLists
      */
-    private static void processVertex(IdxGroup indices,List<Vector2f> textCordList,List<Vector3f> normList,List<Integer> indicesList,
+    private static void processVertex(IdxGroup indices,List<Vector2f> textCordList,List<Vector3f> normList,IntArrayBuilder indicesList,
                                       float[] texCordArr, float[] normArr){
 
         // set index for vertex coordinates
@@ -0,0 +1,686 @@
+package engine.general;
+
+import engine.graph.items.MeshData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * streaming parser for obj files
+ * the parser scans the raw bytes of the file and writes the values directly into growable
+ * primitive arrays, no strings or vector objects are created per line. the result is the same
+ * as the one of OBJLoader.loadMesh
+ * only supports triangles, like the other obj loaders
+ */
+public class ObjStreamParser {
+
+    /** size of the buffer used to read from a channel */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** initial capacity of the value arrays */
+    private static final int INITIAL_CAPACITY = 3 * 1024;
+
+    /** maximum number of significant digits parsed without falling back to Float.parseFloat */
+    private static final int MAX_DIGITS = 18;
+
+    /** largest mantissa a double can represent exactly */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /** powers of ten that are exactly representable as double */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** x, y, z of the geometric vertices */
+    private float[] positions;
+
+    /** number of used values in positions */
+    private int positionsSize;
+
+    /** u, v of the texture coordinates */
+    private float[] textCords;
+
+    /** number of used values in textCords */
+    private int textCordsSize;
+
+    /** x, y, z of the normal vectors */
+    private float[] normals;
+
+    /** number of used values in normals */
+    private int normalsSize;
+
+    /** position, texture and normal index of every face vertex ( three ints per face vertex ) */
+    private int[] faceIndices;
+
+    /** number of used values in faceIndices */
+    private int faceIndicesSize;
+
+    /** slots in faceIndices holding a relative ( negative ) index, they are resolved against this parser only */
+    private int[] relativeSlots;
+
+    /** number of used values in relativeSlots */
+    private int relativeSlotsSize;
+
+    /** read position of the tokenizer inside the current line */
+    private int cursor;
+
+    /**
+     * creates an empty parser
+     */
+    public ObjStreamParser() {
+        positions = new float[INITIAL_CAPACITY];
+        textCords = new float[INITIAL_CAPACITY];
+        normals = new float[INITIAL_CAPACITY];
+        faceIndices = new int[INITIAL_CAPACITY * 3];
+        relativeSlots = new int[0];
+    }
+
+    /**
+     * reads the whole channel and parses its content
+     * lines that are split between two reads are moved to the start of the buffer and completed
+     * by the next read
+     *
+     * @param channel channel containing obj data
+     * @throws IOException if the channel cant be read
+     */
+    public void parse(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (channel.read(buffer) >= 0) {
+            int end = buffer.position();
+            int lineEnd = end - 1;
+            while (lineEnd >= 0 && buffer.get(lineEnd) != '\n') {
+                lineEnd--;
+            }
+
+            if (lineEnd < 0) {
+                // a single line does not fit into the buffer
+                if (end == buffer.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+                continue;
+            }
+
+            parse(buffer, 0, lineEnd + 1);
+
+            // keep the incomplete last line for the next read
+            buffer.limit(end).position(lineEnd + 1);
+            buffer.compact();
+        }
+
+        parse(buffer, 0, buffer.position());
+    }
+
+    /**
+     * parses all lines between from and to, to has to be the end of a line or the end of the file
+     *
+     * @param buffer buffer containing obj data
+     * @param from index of the first byte of a line
+     * @param to index after the last byte
+     */
+    public void parse(ByteBuffer buffer, int from, int to) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int lineEnd = lineStart;
+            while (lineEnd < to && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            parseLine(buffer, lineStart, contentEnd);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * parses a single line without the line break
+     *
+     * @param buffer buffer containing the line
+     * @param start first byte of the line
+     * @param end index after the last byte of the line
+     */
+    private void parseLine(ByteBuffer buffer, int start, int end) {
+        if (end - start < 2) {
+            return;
+        }
+
+        byte first = buffer.get(start);
+        byte second = buffer.get(start + 1);
+
+        if (first == 'v') {
+            if (isSpace(second)) {
+                // geometric vertex
+                cursor = start + 1;
+                positions = ensureCapacity(positions, positionsSize + 3);
+                positions[positionsSize++] = nextFloat(buffer, end);
+                positions[positionsSize++] = nextFloat(buffer, end);
+                positions[positionsSize++] = nextFloat(buffer, end);
+            } else if (second == 't' && end - start > 2 && isSpace(buffer.get(start + 2))) {
+                // texture coordinates
+                cursor = start + 2;
+                textCords = ensureCapacity(textCords, textCordsSize + 2);
+                textCords[textCordsSize++] = nextFloat(buffer, end);
+                textCords[textCordsSize++] = nextFloat(buffer, end);
+            } else if (second == 'n' && end - start > 2 && isSpace(buffer.get(start + 2))) {
+                // normal vectors
+                cursor = start + 2;
+                normals = ensureCapacity(normals, normalsSize + 3);
+                normals[normalsSize++] = nextFloat(buffer, end);
+                normals[normalsSize++] = nextFloat(buffer, end);
+                normals[normalsSize++] = nextFloat(buffer, end);
+            }
+        } else if (first == 'f' && isSpace(second)) {
+            cursor = start + 1;
+            faceIndices = ensureCapacity(faceIndices, faceIndicesSize + 9);
+            for (int i = 0; i < 3; i++) {
+                nextFaceVertex(buffer, end);
+            }
+        }
+    }
+
+    /**
+     * parses one face vertex of the form pos, pos/tex, pos//norm or pos/tex/norm
+     *
+     * @param buffer buffer containing the line
+     * @param end end of the line
+     */
+    private void nextFaceVertex(ByteBuffer buffer, int end) {
+        int slot = faceIndicesSize;
+        faceIndices[slot] = toIndex(nextInt(buffer, end), slot, positionsSize / 3);
+        faceIndices[slot + 1] = OBJLoader.IdxGroup.NO_VALUE;
+        faceIndices[slot + 2] = OBJLoader.IdxGroup.NO_VALUE;
+
+        if (cursor < end && buffer.get(cursor) == '/') {
+            cursor++;
+            if (cursor < end && buffer.get(cursor) != '/') {
+                faceIndices[slot + 1] = toIndex(nextInt(buffer, end), slot + 1, textCordsSize / 2);
+            }
+            if (cursor < end && buffer.get(cursor) == '/') {
+                cursor++;
+                faceIndices[slot + 2] = toIndex(nextInt(buffer, end), slot + 2, normalsSize / 3);
+            }
+        }
+
+        faceIndicesSize += 3;
+    }
+
+    /**
+     * converts an obj index to a zero based index
+     * negative obj indices count back from the last element read so far. they are resolved
+     * against the elements of this parser and remembered, so merge can add the number of
+     * elements of the previous chunks
+     *
+     * @param value index as written in the file
+     * @param slot position of the index in faceIndices
+     * @param count number of elements of the referenced kind read so far
+     * @return zero based index
+     */
+    private int toIndex(int value, int slot, int count) {
+        if (value >= 0) {
+            return value - 1;
+        }
+        relativeSlots = ensureCapacity(relativeSlots, relativeSlotsSize + 1);
+        relativeSlots[relativeSlotsSize++] = slot;
+        return count + value;
+    }
+
+    /**
+     * parses the next integer of the line
+     *
+     * @param buffer buffer containing the line
+     * @param end end of the line
+     * @return parsed integer
+     */
+    private int nextInt(ByteBuffer buffer, int end) {
+        skipSpaces(buffer, end);
+
+        boolean negative = false;
+        if (cursor < end && buffer.get(cursor) == '-') {
+            negative = true;
+            cursor++;
+        }
+
+        int start = cursor;
+        int value = 0;
+        byte b;
+        while (cursor < end && (b = buffer.get(cursor)) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            cursor++;
+        }
+
+        if (cursor == start) {
+            throw new NumberFormatException("Expected integer in obj face: " + token(buffer, start, end));
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * parses the next float of the line
+     * simple decimal numbers are converted with one exact double operation, the result is only
+     * used if rounding it to float gives the same value as Float.parseFloat. all other numbers
+     * fall back to Float.parseFloat
+     *
+     * @param buffer buffer containing the line
+     * @param end end of the line
+     * @return parsed float
+     */
+    private float nextFloat(ByteBuffer buffer, int end) {
+        skipSpaces(buffer, end);
+        int start = cursor;
+
+        boolean negative = false;
+        byte b = cursor < end ? buffer.get(cursor) : 0;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            cursor++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean truncated = false;
+
+        // integer part
+        while (cursor < end && (b = buffer.get(cursor)) >= '0' && b <= '9') {
+            anyDigit = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                truncated = true;
+            }
+            cursor++;
+        }
+
+        // fraction
+        if (cursor < end && buffer.get(cursor) == '.') {
+            cursor++;
+            while (cursor < end && (b = buffer.get(cursor)) >= '0' && b <= '9') {
+                anyDigit = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                cursor++;
+            }
+        }
+
+        // exponent
+        if (anyDigit && cursor < end && ((b = buffer.get(cursor)) == 'e' || b == 'E')) {
+            cursor++;
+            boolean negativeExponent = false;
+            if (cursor < end && ((b = buffer.get(cursor)) == '-' || b == '+')) {
+                negativeExponent = b == '-';
+                cursor++;
+            }
+            int explicitExponent = 0;
+            while (cursor < end && (b = buffer.get(cursor)) >= '0' && b <= '9') {
+                explicitExponent = Math.min(explicitExponent * 10 + (b - '0'), 10000);
+                cursor++;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (anyDigit && (cursor == end || isSpace(buffer.get(cursor)))) {
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            if (!truncated && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+
+                // a double exactly between two floats could be rounded differently than the exact decimal value
+                boolean halfway = (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L;
+                if (!halfway && value >= Float.MIN_NORMAL) {
+                    float result = (float) value;
+                    return negative ? -result : result;
+                }
+            }
+        }
+
+        // rare cases like very long numbers, NaN or Infinity
+        while (cursor < end && !isSpace(buffer.get(cursor))) {
+            cursor++;
+        }
+        return Float.parseFloat(token(buffer, start, cursor));
+    }
+
+    /**
+     * moves the cursor over spaces and tabs
+     *
+     * @param buffer buffer containing the line
+     * @param end end of the line
+     */
+    private void skipSpaces(ByteBuffer buffer, int end) {
+        while (cursor < end && isSpace(buffer.get(cursor))) {
+            cursor++;
+        }
+    }
+
+    /**
+     * @param b byte to check
+     * @return true if the byte separates tokens
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * creates a string from a part of the buffer, only used for error messages and fall backs
+     *
+     * @param buffer buffer containing the token
+     * @param start first byte
+     * @param end index after the last byte
+     * @return token as string
+     */
+    private static String token(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * grows an array if it cant hold the requested number of values
+     *
+     * @param array current array
+     * @param required number of values needed
+     * @return array with enough capacity
+     */
+    private static float[] ensureCapacity(float[] array, int required) {
+        return required <= array.length ? array : Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+
+    /**
+     * grows an array if it cant hold the requested number of values
+     *
+     * @param array current array
+     * @param required number of values needed
+     * @return array with enough capacity
+     */
+    private static int[] ensureCapacity(int[] array, int required) {
+        return required <= array.length ? array : Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+
+    /**
+     * @return number of geometric vertices parsed so far
+     */
+    public int getPositionCount() {
+        return positionsSize / 3;
+    }
+
+    /**
+     * @return number of face vertices parsed so far ( three per triangle )
+     */
+    public int getFaceVertexCount() {
+        return faceIndicesSize / 3;
+    }
+
+    /**
+     * parses a file in line aligned chunks on the executor and merges the results in file order
+     * every chunk maps its own part of the file, so the file is never read as a whole
+     *
+     * @param file obj file
+     * @param executor executor the chunks are parsed on
+     * @param chunks number of chunks the file is split into
+     * @return vertex data equal to the one of OBJLoader.loadMesh
+     * @throws Exception if the file cant be read or parsed
+     */
+    public static MeshData parseParallel(Path file, ExecutorService executor, int chunks) throws Exception {
+        return parseChunks(file, executor, chunks).toMeshData();
+    }
+
+    /**
+     * parses a file in line aligned chunks on the executor, like parseParallel, and returns the
+     * merged parser, so the caller can choose how the vertex data is built
+     *
+     * @param file obj file
+     * @param executor executor the chunks are parsed on
+     * @param chunks number of chunks the file is split into
+     * @return parser containing the data of the whole file
+     * @throws Exception if the file cant be read or parsed
+     */
+    public static ObjStreamParser parseChunks(Path file, ExecutorService executor, int chunks) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // find the chunk borders, every chunk starts at the beginning of a line
+            long[] borders = new long[chunks + 1];
+            borders[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                borders[i] = nextLineStart(channel, Math.max(size * i / chunks, borders[i - 1]), size);
+            }
+
+            List<Future<ObjStreamParser>> results = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                long start = borders[i];
+                long end = borders[i + 1];
+                results.add(executor.submit(() -> {
+                    ObjStreamParser parser = new ObjStreamParser();
+                    if (end > start) {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        parser.parse(buffer, 0, buffer.limit());
+                    }
+                    return parser;
+                }));
+            }
+
+            List<ObjStreamParser> parsers = new ArrayList<>();
+            for (Future<ObjStreamParser> result : results) {
+                try {
+                    parsers.add(result.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+
+            return merge(parsers);
+        }
+    }
+
+    /**
+     * finds the start of the line following the given position
+     *
+     * @param channel file channel
+     * @param position position to start searching at
+     * @param size size of the file
+     * @return position after the next line break or size if there is none
+     * @throws IOException if the file cant be read
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        // start one byte early, so a chunk border directly after a line break stays where it is
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * combines the results of parsers that read consecutive parts of one file
+     * relative indices of every part get the number of elements of the previous parts added
+     *
+     * @param parts parsers in file order
+     * @return parser containing the data of all parts
+     */
+    public static ObjStreamParser merge(List<ObjStreamParser> parts) {
+        int positionsSize = 0, textCordsSize = 0, normalsSize = 0, faceIndicesSize = 0;
+        for (ObjStreamParser part : parts) {
+            positionsSize += part.positionsSize;
+            textCordsSize += part.textCordsSize;
+            normalsSize += part.normalsSize;
+            faceIndicesSize += part.faceIndicesSize;
+        }
+
+        ObjStreamParser result = new ObjStreamParser();
+        result.positions = new float[positionsSize];
+        result.textCords = new float[textCordsSize];
+        result.normals = new float[normalsSize];
+        result.faceIndices = new int[faceIndicesSize];
+
+        for (ObjStreamParser part : parts) {
+            int positionBase = result.positionsSize / 3;
+            int textCordBase = result.textCordsSize / 2;
+            int normalBase = result.normalsSize / 3;
+            int faceBase = result.faceIndicesSize;
+
+            System.arraycopy(part.positions, 0, result.positions, result.positionsSize, part.positionsSize);
+            System.arraycopy(part.textCords, 0, result.textCords, result.textCordsSize, part.textCordsSize);
+            System.arraycopy(part.normals, 0, result.normals, result.normalsSize, part.normalsSize);
+            System.arraycopy(part.faceIndices, 0, result.faceIndices, faceBase, part.faceIndicesSize);
+
+            // index offset fix up for relative indices
+            for (int i = 0; i < part.relativeSlotsSize; i++) {
+                int slot = part.relativeSlots[i];
+                int kind = slot % 3;
+                result.faceIndices[faceBase + slot] += kind == 0 ? positionBase : kind == 1 ? textCordBase : normalBase;
+            }
+
+            result.positionsSize += part.positionsSize;
+            result.textCordsSize += part.textCordsSize;
+            result.normalsSize += part.normalsSize;
+            result.faceIndicesSize += part.faceIndicesSize;
+        }
+
+        return result;
+    }
+
+    /**
+     * orders the texture coordinates and normals like the positions, the same way
+     * OBJLoader.loadMesh does it: every vertex uses the texture coordinate and normal of the last
+     * face vertex referencing its position
+     *
+     * @return vertex data that can be turned into a mesh
+     */
+    public MeshData toMeshData() {
+        int vertexCount = positionsSize / 3;
+
+        float[] posArr = Arrays.copyOf(positions, positionsSize);
+        float[] texArr = new float[vertexCount * 2];
+        float[] normArr = new float[vertexCount * 3];
+        int[] indicesArr = new int[faceIndicesSize / 3];
+
+        for (int i = 0; i < indicesArr.length; i++) {
+            int pos = faceIndices[i * 3];
+            int tex = faceIndices[i * 3 + 1];
+            int norm = faceIndices[i * 3 + 2];
+
+            if (pos < 0 || pos >= vertexCount) {
+                throw new IndexOutOfBoundsException("Face references undefined vertex " + (pos + 1));
+            }
+            indicesArr[i] = pos;
+
+            if (tex >= 0) {
+                if (tex * 2 >= textCordsSize) {
+                    throw new IndexOutOfBoundsException("Face references undefined texture coordinate " + (tex + 1));
+                }
+                texArr[pos * 2] = textCords[tex * 2];
+                texArr[pos * 2 + 1] = 1 - textCords[tex * 2 + 1];
+            }
+
+            if (norm >= 0) {
+                if (norm * 3 >= normalsSize) {
+                    throw new IndexOutOfBoundsException("Face references undefined normal " + (norm + 1));
+                }
+                normArr[pos * 3] = normals[norm * 3];
+                normArr[pos * 3 + 1] = normals[norm * 3 + 1];
+                normArr[pos * 3 + 2] = normals[norm * 3 + 2];
+            }
+        }
+
+        return new MeshData(posArr, texArr, normArr, indicesArr);
+    }
+
+    /**
+     * creates one vertex for every different combination of position, texture coordinate and
+     * normal index used by the faces, the same way OBJLoader.loadNoDoubles does it
+     * the vertices keep the order of their first use
+     *
+     * @param inverted true to reverse the order of the vertices of every face
+     * @return vertex data that can be turned into a mesh
+     */
+    public MeshData toDeduplicatedMeshData(boolean inverted) {
+        int faceVertexCount = faceIndicesSize / 3;
+
+        VertexDeduplicator vertices = new VertexDeduplicator(Math.max(positionsSize / 3, faceVertexCount / 6));
+        int[] indicesArr = new int[faceVertexCount];
+
+        for (int i = 0; i < faceVertexCount; i++) {
+            // position of the face vertex, reversed inside its triangle if inverted
+            int faceVertex = inverted ? i - i % 3 + 2 - i % 3 : i;
+            int slot = faceVertex * 3;
+            indicesArr[i] = vertices.add(faceIndices[slot], faceIndices[slot + 1], faceIndices[slot + 2]);
+        }
+
+        int count = vertices.size();
+        float[] posArr = new float[count * 3];
+        float[] texArr = new float[count * 2];
+        float[] normArr = new float[count * 3];
+
+        for (int index = 0; index < count; index++) {
+            int pos = vertices.getPos(index);
+            int tex = vertices.getTex(index);
+            int norm = vertices.getNorm(index);
+
+            if (pos < 0 || pos * 3 >= positionsSize) {
+                throw new IndexOutOfBoundsException("Face references undefined vertex " + (pos + 1));
+            }
+            posArr[index * 3] = positions[pos * 3];
+            posArr[index * 3 + 1] = positions[pos * 3 + 1];
+            posArr[index * 3 + 2] = positions[pos * 3 + 2];
+
+            if (tex >= 0) {
+                if (tex * 2 >= textCordsSize) {
+                    throw new IndexOutOfBoundsException("Face references undefined texture coordinate " + (tex + 1));
+                }
+                texArr[index * 2] = textCords[tex * 2];
+                texArr[index * 2 + 1] = 1 - textCords[tex * 2 + 1];
+            }
+
+            if (norm >= 0) {
+                if (norm * 3 >= normalsSize) {
+                    throw new IndexOutOfBoundsException("Face references undefined normal " + (norm + 1));
+                }
+                normArr[index * 3] = normals[norm * 3];
+                normArr[index * 3 + 1] = normals[norm * 3 + 1];
+                normArr[index * 3 + 2] = normals[norm * 3 + 2];
+            }
+        }
+
+        return new MeshData(posArr, texArr, normArr, indicesArr);
+    }
+}
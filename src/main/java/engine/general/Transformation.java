@@ -22,9 +22,6 @@ public class Transformation {
     /** Matrix for orthographic projection ( hud ) */
     private final Matrix4f orthoMatrix;
 
-    /** field to temporarily store the position and rotation values of a gameItem */
-    private final Matrix4f modelMatrix;
-
     /** Matrix for an orthographic model */
     private final Matrix4f orthographic2DMatrix;
 
@@ -37,9 +34,6 @@ public class Transformation {
     /** light view matrix */
     private final Matrix4f lightViewMatrix;
 
-    /** Light model matrix */
-    private final Matrix4f modelLightMatrix;
-
     /** light model view Matrix */
     private final Matrix4f modelLightViewMatrix;
 
@@ -49,7 +43,6 @@ public class Transformation {
 
     public Transformation(){
         projectionMatrix = new Matrix4f();
-        modelMatrix = new Matrix4f();
         viewMatrix = new Matrix4f();
         modelViewMatrix = new Matrix4f();
         orthoMatrix = new Matrix4f();
@@ -57,7 +50,6 @@ public class Transformation {
         orthoModelMatrix = new Matrix4f();
         orthoProjectionMatrix = new Matrix4f();
         lightViewMatrix = new Matrix4f();
-        modelLightMatrix = new Matrix4f();
         modelLightViewMatrix = new Matrix4f();
     }
 
@@ -167,6 +159,17 @@ public class Transformation {
         return orthoMatrix;
     }
 
+    /**
+     * returns the model matrix of a game item without a view matrix, used for instanced rendering
+     * the returned matrix is cached by the game item and must not be changed
+     *
+     * @param gameItem game item the model matrix is for
+     * @return model matrix
+     */
+    public Matrix4f buildModelMatrix(GameItem gameItem) {
+        return gameItem.getModelMatrix();
+    }
+
     /**
      * Creates the matrix that has to be used for the specific game item by using the transformation applied to this game item
      *
@@ -176,14 +179,7 @@ public class Transformation {
      */
 
     public Matrix4f buildModelViewMatrix(GameItem gameItem, Matrix4f viewMatrix){
-        Vector3f rotation = gameItem.getRotation();
-        modelMatrix.identity().translate(gameItem.getPosition()).
-                rotateX((float)Math.toRadians(-rotation.x)).
-                rotateY((float)Math.toRadians(-rotation.y)).
-                rotateZ((float)Math.toRadians(-rotation.z)).
-                scale(gameItem.getScale()).scale(gameItem.getScale3());
-        modelViewMatrix.set(viewMatrix);
-        return modelViewMatrix.mul(modelMatrix);
+        return viewMatrix.mul(gameItem.getModelMatrix(), modelViewMatrix);
     }
 
     /**
@@ -194,14 +190,7 @@ public class Transformation {
      * @return model view matrix
      */
     public Matrix4f buildModelLightViewMatrix(GameItem gameItem, Matrix4f matrix) {
-        Vector3f rotation = gameItem.getRotation();
-        modelLightMatrix.identity().translate(gameItem.getPosition()).
-                rotateX((float)Math.toRadians(-rotation.x)).
-                rotateY((float)Math.toRadians(-rotation.y)).
-                rotateZ((float)Math.toRadians(-rotation.z)).
-                scale(gameItem.getScale()).scale(gameItem.getScale3());
-        modelLightViewMatrix.set(matrix);
-        return modelLightViewMatrix.mul(modelLightMatrix);
+        return matrix.mul(gameItem.getModelMatrix(), modelLightViewMatrix);
     }
 
     /**
@@ -0,0 +1,214 @@
+package engine.general;
+
+import engine.graph.items.MeshData;
+
+import java.util.Arrays;
+
+/**
+ * open addressing hash table assigning consecutive indices to ( pos, tex, norm ) int triples
+ * the triples are stored packed in one int array in insertion order, the table itself only holds
+ * the index of the triple, so adding a vertex never creates an object
+ */
+@SuppressWarnings("unused")
+public class VertexDeduplicator {
+
+    /** marks a free slot of the table */
+    private static final int EMPTY = -1;
+
+    /** smallest capacity of the table */
+    private static final int MIN_CAPACITY = 16;
+
+    /** hash table, holds the index of the triple or EMPTY */
+    private int[] table;
+
+    /** table.length - 1, the capacity is always a power of two */
+    private int mask;
+
+    /** the triples in insertion order ( three ints per vertex ) */
+    private int[] triples;
+
+    /** number of different triples added */
+    private int size;
+
+    /**
+     * creates a table for the given number of different vertices, it grows if more are added
+     *
+     * @param expectedSize expected number of different vertices
+     */
+    public VertexDeduplicator(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize) * 2 - 1) * 2;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        triples = new int[Math.max(MIN_CAPACITY, expectedSize) * 3];
+    }
+
+    /**
+     * returns the index of the vertex, new vertices get the next free index
+     *
+     * @param pos position index
+     * @param tex texture coordinate index
+     * @param norm normal index
+     * @return index of the vertex
+     */
+    public int add(int pos, int tex, int norm) {
+        int slot = hash(pos, tex, norm) & mask;
+        while (true) {
+            int index = table[slot];
+            if (index == EMPTY) {
+                break;
+            }
+            int offset = index * 3;
+            if (triples[offset] == pos && triples[offset + 1] == tex && triples[offset + 2] == norm) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size++;
+        if (index * 3 + 3 > triples.length) {
+            triples = Arrays.copyOf(triples, triples.length * 2);
+        }
+        triples[index * 3] = pos;
+        triples[index * 3 + 1] = tex;
+        triples[index * 3 + 2] = norm;
+        table[slot] = index;
+
+        // keep the load factor at or below one half
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * returns the index of the float triple, floats with the same bits are equal
+     *
+     * @param x first value
+     * @param y second value
+     * @param z third value
+     * @return index of the triple
+     */
+    public int add(float x, float y, float z) {
+        return add(Float.floatToIntBits(x), Float.floatToIntBits(y), Float.floatToIntBits(z));
+    }
+
+    /**
+     * moves all indices into a table of the given capacity
+     *
+     * @param capacity new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int offset = index * 3;
+            int slot = hash(triples[offset], triples[offset + 1], triples[offset + 2]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+
+    /**
+     * mixes the three values, all bits influence the low bits used for the slot
+     *
+     * @param a first value
+     * @param b second value
+     * @param c third value
+     * @return hash of the triple
+     */
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1;
+        h = (h ^ b) * 0x85EBCA77;
+        h = (h ^ c) * 0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return number of different vertices
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of a vertex
+     * @return position index of the vertex
+     */
+    public int getPos(int index) {
+        return triples[index * 3];
+    }
+
+    /**
+     * @param index index of a vertex
+     * @return texture coordinate index of the vertex
+     */
+    public int getTex(int index) {
+        return triples[index * 3 + 1];
+    }
+
+    /**
+     * @param index index of a vertex
+     * @return normal index of the vertex
+     */
+    public int getNorm(int index) {
+        return triples[index * 3 + 2];
+    }
+
+    /**
+     * merges vertices with bit wise equal position, texture coordinate and normal
+     * the remaining vertices keep the order of their first use
+     *
+     * @param positions x, y, z of the vertices
+     * @param textCords u, v of the vertices
+     * @param normals x, y, z of the normals
+     * @param indices indices of the vertices
+     * @return vertex data without duplicated vertices
+     */
+    public static MeshData deduplicate(float[] positions, float[] textCords, float[] normals, int[] indices) {
+        int vertexCount = positions.length / 3;
+
+        VertexDeduplicator positionIds = new VertexDeduplicator(vertexCount / 4);
+        VertexDeduplicator textCordIds = new VertexDeduplicator(vertexCount / 4);
+        VertexDeduplicator normalIds = new VertexDeduplicator(vertexCount / 4);
+        VertexDeduplicator vertices = new VertexDeduplicator(vertexCount / 4);
+
+        // new index of every vertex and the first vertex of every new index
+        int[] remap = new int[vertexCount];
+        int[] source = new int[vertexCount];
+
+        for (int i = 0; i < vertexCount; i++) {
+            int pos = positionIds.add(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+            int tex = textCordIds.add(textCords[i * 2], textCords[i * 2 + 1], 0);
+            int norm = normalIds.add(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+
+            int count = vertices.size();
+            int index = vertices.add(pos, tex, norm);
+            if (index == count) {
+                source[index] = i;
+            }
+            remap[i] = index;
+        }
+
+        int count = vertices.size();
+        float[] posArr = new float[count * 3];
+        float[] texArr = new float[count * 2];
+        float[] normArr = new float[count * 3];
+        for (int index = 0; index < count; index++) {
+            int i = source[index];
+            System.arraycopy(positions, i * 3, posArr, index * 3, 3);
+            System.arraycopy(textCords, i * 2, texArr, index * 2, 2);
+            System.arraycopy(normals, i * 3, normArr, index * 3, 3);
+        }
+
+        int[] indicesArr = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            indicesArr[i] = remap[indices[i]];
+        }
+
+        return new MeshData(posArr, texArr, normArr, indicesArr);
+    }
+}
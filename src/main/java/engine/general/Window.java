@@ -1,5 +1,7 @@
 package engine.general;
 
+import engine.general.assets.AssetCache;
+import engine.general.assets.AssetManager;
 import engine.hud.actions.Action;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.glfw.GLFWErrorCallback;
@@ -507,6 +509,20 @@ public class Window {
         return monitorData;
     }
 
+    /**
+     * @return asset manager of the engine, its uploads are done every frame
+     */
+    public AssetManager getAssetManager() {
+        return engine.getAssetManager();
+    }
+
+    /**
+     * @return asset cache of the engine
+     */
+    public AssetCache getAssetCache() {
+        return engine.getAssetCache();
+    }
+
     /**
      * makes program not finish on window close
      */
@@ -0,0 +1,108 @@
+package engine.general.assets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * handle of an asset requested from the AssetManager. until the asset is uploaded get returns
+ * the placeholder, so the handle can be used right away
+ *
+ * @param <T> type of the asset
+ */
+@SuppressWarnings("unused")
+public class Asset<T> {
+
+    /** name used in error messages */
+    private final String name;
+
+    /** returned by get until the asset is loaded */
+    private final T placeholder;
+
+    /** completed on the open gl thread when the asset is uploaded */
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    /** the uploaded asset, null until it is loaded */
+    private volatile T value;
+
+    /**
+     * @param name name used in error messages
+     * @param placeholder returned by get until the asset is loaded, may be null
+     */
+    Asset(String name, T placeholder) {
+        this.name = name;
+        this.placeholder = placeholder;
+    }
+
+    /**
+     * @return the asset if it is loaded, otherwise the placeholder
+     */
+    public T get() {
+        T result = value;
+        return result != null ? result : placeholder;
+    }
+
+    /**
+     * @return placeholder used until the asset is loaded
+     */
+    public T getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * @return true if the asset was uploaded
+     */
+    public boolean isLoaded() {
+        return value != null;
+    }
+
+    /**
+     * @return true if loading or uploading the asset failed, get keeps returning the placeholder
+     */
+    public boolean isFailed() {
+        return future.isCompletedExceptionally();
+    }
+
+    /**
+     * the future completes on the open gl thread right after the upload, so dependent stages
+     * added before that run on the open gl thread too
+     *
+     * @return future of the uploaded asset
+     */
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    /**
+     * calls the action with the uploaded asset, for example to replace the placeholder mesh of a
+     * game item. if the asset is already loaded the action is called immediately
+     *
+     * @param action action called with the asset
+     * @return this asset
+     */
+    public Asset<T> onLoaded(Consumer<? super T> action) {
+        future.thenAccept(action);
+        return this;
+    }
+
+    /**
+     * @return name used in error messages
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param value uploaded asset
+     */
+    void complete(T value) {
+        this.value = value;
+        future.complete(value);
+    }
+
+    /**
+     * @param error reason why the asset could not be loaded
+     */
+    void fail(Throwable error) {
+        future.completeExceptionally(error);
+    }
+}
@@ -0,0 +1,431 @@
+package engine.general.assets;
+
+import engine.general.OBJLoader;
+import engine.graph.items.Mesh;
+import engine.graph.items.Texture;
+import engine.hud.text.FontTexture;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * shares meshes, textures and font textures between everything that uses the same file
+ *
+ * assets are keyed by their type, path and load options. acquiring an asset returns a handle and
+ * increases the reference count of the entry, releasing the handle decreases it. entries without
+ * references stay in the cache so a following level can reuse them, but they are evicted least
+ * recently released first as soon as the cached assets exceed the cpu or gpu budget. evicted
+ * assets are deleted, so the cache has to be used on the open gl thread
+ */
+@SuppressWarnings("unused")
+public class AssetCache {
+
+    /** default budget of the estimated video memory: 512 MB */
+    public static final long DEFAULT_GPU_BUDGET = 512L << 20;
+
+    /** default budget of the estimated heap memory: 128 MB */
+    public static final long DEFAULT_CPU_BUDGET = 128L << 20;
+
+    /**
+     * creates an asset if it is not cached
+     *
+     * @param <T> type of the asset
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    /**
+     * describes how the cache measures and deletes one kind of asset
+     *
+     * @param <T> type of the asset
+     */
+    public static final class AssetType<T> {
+
+        /** meshes, only their vbos are deleted, the textures are cached on their own */
+        public static final AssetType<Mesh> MESH = new AssetType<>("mesh", Mesh.class, mesh -> 0, Mesh::getGpuBytes, Mesh::deleteBuffers);
+
+        /** textures */
+        public static final AssetType<Texture> TEXTURE = new AssetType<>("texture", Texture.class, texture -> 0, Texture::getGpuBytes, Texture::cleanup);
+
+        /** font textures with their character data */
+        public static final AssetType<FontTexture> FONT = new AssetType<>("font", FontTexture.class, FontTexture::getCpuBytes, FontTexture::getGpuBytes, FontTexture::cleanup);
+
+        /** prefix of the keys of this type */
+        private final String name;
+
+        /** class of the assets */
+        private final Class<T> type;
+
+        /** estimates the heap memory of an asset */
+        private final ToLongFunction<T> cpuBytes;
+
+        /** estimates the video memory of an asset */
+        private final ToLongFunction<T> gpuBytes;
+
+        /** deletes an evicted asset */
+        private final Consumer<T> disposer;
+
+        /**
+         * @param name prefix of the keys of this type, has to be unique
+         * @param type class of the assets
+         * @param cpuBytes estimates the heap memory of an asset
+         * @param gpuBytes estimates the video memory of an asset
+         * @param disposer deletes an evicted asset
+         */
+        public AssetType(String name, Class<T> type, ToLongFunction<T> cpuBytes, ToLongFunction<T> gpuBytes, Consumer<T> disposer) {
+            this.name = name;
+            this.type = type;
+            this.cpuBytes = cpuBytes;
+            this.gpuBytes = gpuBytes;
+            this.disposer = disposer;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /** all cached entries by key */
+    private final Map<String, Entry<?>> entries = new HashMap<>();
+
+    /** entries without references in the order they were released, the first one is evicted first */
+    private final LinkedHashMap<String, Entry<?>> unreferenced = new LinkedHashMap<>();
+
+    /** budget of the estimated heap memory in bytes */
+    private long cpuBudget = DEFAULT_CPU_BUDGET;
+
+    /** budget of the estimated video memory in bytes */
+    private long gpuBudget = DEFAULT_GPU_BUDGET;
+
+    /** estimated heap memory of all cached assets */
+    private long cpuBytes;
+
+    /** estimated video memory of all cached assets */
+    private long gpuBytes;
+
+    /** acquires that found the asset in the cache */
+    private long hits;
+
+    /** acquires that had to create the asset */
+    private long misses;
+
+    /** assets deleted to stay in the budget */
+    private long evictions;
+
+    /**
+     * returns the cached asset or creates it if it is not cached
+     *
+     * @param type kind of the asset
+     * @param key path of the asset plus all load options that change the result
+     * @param factory creates the asset if it is not cached
+     * @param <T> type of the asset
+     * @return new handle of the asset, has to be released when it is no longer used
+     * @throws Exception if the factory fails
+     */
+    public synchronized <T> Handle<T> acquire(AssetType<T> type, String key, Factory<T> factory) throws Exception {
+        String fullKey = type.name + ":" + key;
+
+        Entry<?> cached = entries.get(fullKey);
+        if (cached != null) {
+            if (cached.type != type) {
+                throw new IllegalStateException("Asset [" + fullKey + "] is cached with another type");
+            }
+            hits++;
+            @SuppressWarnings("unchecked")
+            Entry<T> entry = (Entry<T>) cached;
+            return entry.acquire();
+        }
+
+        misses++;
+        T asset = factory.create();
+        Entry<T> entry = new Entry<>(fullKey, type, asset);
+        entries.put(fullKey, entry);
+        cpuBytes += entry.cpuBytes;
+        gpuBytes += entry.gpuBytes;
+        Handle<T> handle = entry.acquire();
+        trim();
+        return handle;
+    }
+
+    /**
+     * @param filename name of the obj file in the resources
+     * @param noDoubles true to load the mesh with OBJLoader.loadNoDoubles instead of loadMesh
+     * @return new handle of the mesh
+     * @throws Exception if the mesh cant be loaded
+     */
+    public Handle<Mesh> acquireMesh(String filename, boolean noDoubles) throws Exception {
+        return acquire(AssetType.MESH, filename + (noDoubles ? "|noDoubles" : ""),
+                () -> noDoubles ? OBJLoader.loadNoDoubles(filename) : OBJLoader.loadMesh(filename));
+    }
+
+    /**
+     * @param filename name of the image file
+     * @param filterMode filtering mode for the texture
+     * @return new handle of the texture
+     * @throws Exception if the image cant be loaded
+     */
+    public Handle<Texture> acquireTexture(String filename, Texture.FilterMode filterMode) throws Exception {
+        return acquire(AssetType.TEXTURE, filename + "|" + filterMode, () -> new Texture(filename, filterMode));
+    }
+
+    /**
+     * @param textureFile sign distance field of the font
+     * @param fontDataFile spacing of the letters
+     * @return new handle of the font texture
+     * @throws Exception if the font cant be loaded
+     */
+    public Handle<FontTexture> acquireFont(String textureFile, String fontDataFile) throws Exception {
+        return acquire(AssetType.FONT, textureFile + "|" + fontDataFile, () -> new FontTexture(textureFile, fontDataFile));
+    }
+
+    /**
+     * deletes unreferenced assets, least recently released first, until the cached assets
+     * fit into both budgets again
+     */
+    public synchronized void trim() {
+        Iterator<Entry<?>> iterator = unreferenced.values().iterator();
+        while ((cpuBytes > cpuBudget || gpuBytes > gpuBudget) && iterator.hasNext()) {
+            Entry<?> entry = iterator.next();
+            iterator.remove();
+            evict(entry);
+        }
+    }
+
+    /**
+     * deletes all unreferenced assets, for example after a level was unloaded
+     */
+    public synchronized void evictUnreferenced() {
+        for (Entry<?> entry : unreferenced.values()) {
+            evict(entry);
+        }
+        unreferenced.clear();
+    }
+
+    /**
+     * deletes all assets, the handles that are still held must not be used anymore
+     */
+    public synchronized void cleanup() {
+        for (Entry<?> entry : entries.values()) {
+            entry.dispose();
+        }
+        entries.clear();
+        unreferenced.clear();
+        cpuBytes = 0;
+        gpuBytes = 0;
+    }
+
+    /**
+     * @param entry entry to remove and delete
+     */
+    private void evict(Entry<?> entry) {
+        entries.remove(entry.key);
+        cpuBytes -= entry.cpuBytes;
+        gpuBytes -= entry.gpuBytes;
+        evictions++;
+        entry.dispose();
+    }
+
+    /**
+     * @param type kind of the asset
+     * @param key path of the asset plus its load options
+     * @return true if the asset is cached
+     */
+    public synchronized boolean contains(AssetType<?> type, String key) {
+        return entries.containsKey(type.name + ":" + key);
+    }
+
+    /**
+     * @return number of cached assets
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of cached assets without references
+     */
+    public synchronized int getUnreferencedCount() {
+        return unreferenced.size();
+    }
+
+    public synchronized long getCpuBytes() {
+        return cpuBytes;
+    }
+
+    public synchronized long getGpuBytes() {
+        return gpuBytes;
+    }
+
+    public synchronized long getCpuBudget() {
+        return cpuBudget;
+    }
+
+    /**
+     * @param cpuBudget budget of the estimated heap memory in bytes
+     */
+    public synchronized void setCpuBudget(long cpuBudget) {
+        this.cpuBudget = cpuBudget;
+        trim();
+    }
+
+    public synchronized long getGpuBudget() {
+        return gpuBudget;
+    }
+
+    /**
+     * @param gpuBudget budget of the estimated video memory in bytes
+     */
+    public synchronized void setGpuBudget(long gpuBudget) {
+        this.gpuBudget = gpuBudget;
+        trim();
+    }
+
+    /**
+     * @return number of acquires that found the asset in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of acquires that had to create the asset
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of assets deleted to stay in the budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * sets the hit, miss and eviction counters to 0, for example before a level transition
+     */
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AssetCache( " + entries.size() + " entries, " + unreferenced.size() + " unreferenced, cpu " + cpuBytes + " / " + cpuBudget
+                + " bytes, gpu " + gpuBytes + " / " + gpuBudget + " bytes, " + hits + " hits, " + misses + " misses, " + evictions + " evictions )";
+    }
+
+    /**
+     * cached asset with its reference count
+     *
+     * @param <T> type of the asset
+     */
+    private class Entry<T> {
+
+        /** key in the cache */
+        private final String key;
+
+        /** kind of the asset */
+        private final AssetType<T> type;
+
+        /** the asset */
+        private final T asset;
+
+        /** estimated heap memory of the asset */
+        private final long cpuBytes;
+
+        /** estimated video memory of the asset */
+        private final long gpuBytes;
+
+        /** number of handles that were not released */
+        private int references;
+
+        private Entry(String key, AssetType<T> type, T asset) {
+            this.key = key;
+            this.type = type;
+            this.asset = type.type.cast(asset);
+            this.cpuBytes = type.cpuBytes.applyAsLong(asset);
+            this.gpuBytes = type.gpuBytes.applyAsLong(asset);
+        }
+
+        /**
+         * @return new handle of the asset
+         */
+        private Handle<T> acquire() {
+            if (references++ == 0) {
+                unreferenced.remove(key);
+            }
+            return new Handle<>(this);
+        }
+
+        /**
+         * called when a handle is released
+         */
+        private void release() {
+            synchronized (AssetCache.this) {
+                if (--references == 0 && entries.get(key) == this) {
+                    unreferenced.put(key, this);
+                    trim();
+                }
+            }
+        }
+
+        private void dispose() {
+            type.disposer.accept(asset);
+        }
+    }
+
+    /**
+     * reference to a cached asset
+     *
+     * @param <T> type of the asset
+     */
+    public static class Handle<T> {
+
+        /** entry of the asset, null after the handle was released */
+        private AssetCache.Entry<T> entry;
+
+        /** the asset */
+        private final T asset;
+
+        private Handle(AssetCache.Entry<T> entry) {
+            this.entry = entry;
+            this.asset = entry.asset;
+        }
+
+        /**
+         * @return the asset
+         * @throws IllegalStateException if the handle was released
+         */
+        public T get() {
+            if (entry == null) {
+                throw new IllegalStateException("Asset handle was released");
+            }
+            return asset;
+        }
+
+        /**
+         * @return key of the asset in the cache
+         */
+        public String getKey() {
+            return entry != null ? entry.key : null;
+        }
+
+        /**
+         * releases the reference, releasing a handle twice has no effect
+         */
+        public void release() {
+            if (entry != null) {
+                entry.release();
+                entry = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package engine.general.assets;
+
+import engine.general.OBJLoader;
+import engine.graph.items.Mesh;
+import engine.graph.items.MeshData;
+import engine.graph.items.Texture;
+import engine.graph.items.TextureData;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * loads assets in the background so the game does not block before the first frame
+ *
+ * every request has two stages: the loader reads and decodes the source on a worker thread and
+ * produces plain data, the uploader turns that data into open gl objects. the uploads are queued
+ * and processUploads, called by the engine once per frame, runs as many of them as fit into the
+ * upload budget of the frame. the cost of an upload is estimated before it is started: meshes and
+ * textures by their size in bytes and the time per byte measured on the earlier uploads, other
+ * data by the average time of the earlier uploads. the manager itself never calls open gl, only
+ * the uploaders do, so it can be run without a graphics context by passing uploaders that dont
+ * touch open gl
+ */
+@SuppressWarnings("unused")
+public class AssetManager {
+
+    /** default time per frame that may be spent uploading: 4 ms */
+    public static final long DEFAULT_UPLOAD_BUDGET = 4_000_000L;
+
+    /** default maximum number of uploads per frame */
+    public static final int DEFAULT_MAX_UPLOADS = 16;
+
+    /** weight of the last measured upload in the estimated upload costs */
+    private static final double COST_SMOOTHING = 0.25;
+
+    /**
+     * reads and decodes an asset, runs on a worker thread
+     *
+     * @param <D> type of the decoded data
+     */
+    @FunctionalInterface
+    public interface Loader<D> {
+        D load() throws Exception;
+    }
+
+    /**
+     * creates the open gl objects of an asset, runs on the open gl thread
+     *
+     * @param <D> type of the decoded data
+     * @param <T> type of the asset
+     */
+    @FunctionalInterface
+    public interface Uploader<D, T> {
+        T upload(D data) throws Exception;
+    }
+
+    /** runs the loaders */
+    private final ExecutorService executor;
+
+    /** true if the executor was created by the manager and has to be shut down by it */
+    private final boolean ownsExecutor;
+
+    /** source of the time in nanoseconds used for the upload budget */
+    private final LongSupplier clock;
+
+    /** loaded assets waiting for their upload */
+    private final Queue<PendingUpload<?, ?>> uploads = new ConcurrentLinkedQueue<>();
+
+    /** number of requests that are not uploaded yet */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** time per frame that may be spent uploading in nanoseconds */
+    private long uploadBudget = DEFAULT_UPLOAD_BUDGET;
+
+    /** maximum number of uploads per frame */
+    private int maxUploadsPerFrame = DEFAULT_MAX_UPLOADS;
+
+    /** number of uploads done by the last call of processUploads */
+    private int lastUploadCount;
+
+    /** true if the last call of processUploads moved an upload to the next frame */
+    private boolean lastUploadDeferred;
+
+    /** estimated time per uploaded byte in nanoseconds, negative until an upload was measured */
+    private double nanosPerByte = -1;
+
+    /** estimated time of an upload of unknown size in nanoseconds, negative until one was measured */
+    private double nanosPerUpload = -1;
+
+    /**
+     * creates a manager with its own pool of daemon worker threads, one less than there are cores
+     */
+    public AssetManager() {
+        this(Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader");
+            thread.setDaemon(true);
+            return thread;
+        }), true, System::nanoTime);
+    }
+
+    /**
+     * creates a manager using the given executor for the loaders, the executor is not shut down
+     * by cleanup. a direct executor and a fake clock make the manager fully deterministic
+     *
+     * @param executor runs the loaders
+     * @param clock time in nanoseconds used for the upload budget
+     */
+    public AssetManager(ExecutorService executor, LongSupplier clock) {
+        this(executor, false, clock);
+    }
+
+    /**
+     * @param executor runs the loaders
+     * @param ownsExecutor true if cleanup shuts the executor down
+     * @param clock time in nanoseconds used for the upload budget
+     */
+    private AssetManager(ExecutorService executor, boolean ownsExecutor, LongSupplier clock) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * requests an asset. the loader runs on a worker thread, the uploader later on the open gl
+     * thread within the upload budget of a frame
+     *
+     * @param name name used in error messages
+     * @param loader reads and decodes the asset
+     * @param uploader creates the open gl objects
+     * @param placeholder used until the asset is uploaded, may be null
+     * @param <D> type of the decoded data
+     * @param <T> type of the asset
+     * @return handle of the asset
+     */
+    public <D, T> Asset<T> request(String name, Loader<D> loader, Uploader<D, T> uploader, T placeholder) {
+        Asset<T> asset = new Asset<>(name, placeholder);
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    uploads.add(new PendingUpload<>(asset, loader.load(), uploader));
+                } catch (Throwable e) {
+                    fail(asset, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fail(asset, e);
+        }
+        return asset;
+    }
+
+    /**
+     * requests a mesh from an obj file, the file is parsed on a worker thread
+     *
+     * @param filename name of the obj file in the resources
+     * @param placeholder used until the mesh is uploaded, may be null
+     * @return handle of the mesh
+     */
+    public Asset<Mesh> requestMesh(String filename, Mesh placeholder) {
+        return request(filename, () -> OBJLoader.loadStreamingData(filename), MeshData::createMesh, placeholder);
+    }
+
+    /**
+     * requests a texture, the image is decoded on a worker thread
+     *
+     * @param filename name of the image file
+     * @param filterMode filtering mode for the texture
+     * @param placeholder used until the texture is uploaded, may be null
+     * @return handle of the texture
+     */
+    public Asset<Texture> requestTexture(String filename, Texture.FilterMode filterMode, Texture placeholder) {
+        return request(filename, () -> TextureData.load(filename), data -> data.createTexture(filterMode), placeholder);
+    }
+
+    /**
+     * runs queued uploads while their estimated cost fits into the time left of the upload
+     * budget, has to be called on the open gl thread. the next upload is moved to the next
+     * frame if its estimate exceeds the time left, so the budget is only exceeded when an
+     * estimate was too low. at least one upload is done if one is queued, so a single upload
+     * taking longer than the budget does not stall the queue
+     *
+     * @return number of uploads done
+     */
+    public int processUploads() {
+        long start = clock.getAsLong();
+        int count = 0;
+        lastUploadDeferred = false;
+        while (count < maxUploadsPerFrame) {
+            PendingUpload<?, ?> upload = uploads.peek();
+            if (upload == null) {
+                break;
+            }
+            long uploadStart = clock.getAsLong();
+            if (count > 0 && estimateCost(upload) > uploadBudget - (uploadStart - start)) {
+                lastUploadDeferred = true;
+                break;
+            }
+            uploads.poll();
+            upload.run();
+            measureCost(upload, clock.getAsLong() - uploadStart);
+            count++;
+        }
+        lastUploadCount = count;
+        return count;
+    }
+
+    /**
+     * @param upload queued upload
+     * @return estimated time of the upload in nanoseconds, 0 if nothing was measured yet
+     */
+    private double estimateCost(PendingUpload<?, ?> upload) {
+        if (upload.bytes > 0 && nanosPerByte >= 0) {
+            return upload.bytes * nanosPerByte;
+        }
+        return Math.max(0, nanosPerUpload);
+    }
+
+    /**
+     * updates the estimated upload costs with a measured upload
+     *
+     * @param upload finished upload
+     * @param time time the upload took in nanoseconds
+     */
+    private void measureCost(PendingUpload<?, ?> upload, long time) {
+        nanosPerUpload = nanosPerUpload < 0 ? time : nanosPerUpload + COST_SMOOTHING * (time - nanosPerUpload);
+        if (upload.bytes > 0) {
+            double perByte = (double) time / upload.bytes;
+            nanosPerByte = nanosPerByte < 0 ? perByte : nanosPerByte + COST_SMOOTHING * (perByte - nanosPerByte);
+        }
+    }
+
+    /**
+     * estimates the bytes an upload sends to the graphics card
+     *
+     * @param data decoded data of an asset
+     * @return size of the vertex data or pixels, 0 if unknown
+     */
+    private static long estimateBytes(Object data) {
+        if (data instanceof MeshData) {
+            return ((MeshData) data).getByteSize();
+        }
+        if (data instanceof TextureData) {
+            TextureData texture = (TextureData) data;
+            return (long) texture.getWidth() * texture.getHeight() * 4;
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of requested assets that are not uploaded yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return number of loaded assets waiting for their upload
+     */
+    public int getQueuedUploadCount() {
+        return uploads.size();
+    }
+
+    /**
+     * @return number of uploads done by the last call of processUploads
+     */
+    public int getLastUploadCount() {
+        return lastUploadCount;
+    }
+
+    /**
+     * @return true if the last call of processUploads moved an upload to the next frame because
+     * its estimated cost did not fit into the time left
+     */
+    public boolean isLastUploadDeferred() {
+        return lastUploadDeferred;
+    }
+
+    /**
+     * @return estimated time per uploaded byte of meshes and textures in nanoseconds, negative
+     * until one was uploaded
+     */
+    public double getNanosPerByte() {
+        return nanosPerByte;
+    }
+
+    /**
+     * @return time per frame that may be spent uploading in nanoseconds
+     */
+    public long getUploadBudget() {
+        return uploadBudget;
+    }
+
+    /**
+     * @param uploadBudget time per frame that may be spent uploading in nanoseconds
+     */
+    public void setUploadBudget(long uploadBudget) {
+        this.uploadBudget = uploadBudget;
+    }
+
+    /**
+     * @return maximum number of uploads per frame
+     */
+    public int getMaxUploadsPerFrame() {
+        return maxUploadsPerFrame;
+    }
+
+    /**
+     * @param maxUploadsPerFrame maximum number of uploads per frame
+     */
+    public void setMaxUploadsPerFrame(int maxUploadsPerFrame) {
+        this.maxUploadsPerFrame = maxUploadsPerFrame;
+    }
+
+    /**
+     * stops the worker threads if they belong to the manager and cancels all uploads that
+     * were not done yet
+     */
+    public void cleanup() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+        PendingUpload<?, ?> upload;
+        while ((upload = uploads.poll()) != null) {
+            upload.cancel();
+        }
+    }
+
+    /**
+     * @param asset asset that could not be loaded
+     * @param error reason
+     */
+    private void fail(Asset<?> asset, Throwable error) {
+        pending.decrementAndGet();
+        System.err.println("Could not load asset [" + asset.getName() + "]: " + error);
+        asset.fail(error);
+    }
+
+    /**
+     * decoded data of an asset waiting for its upload
+     *
+     * @param <D> type of the decoded data
+     * @param <T> type of the asset
+     */
+    private class PendingUpload<D, T> {
+
+        /** asset completed by the upload */
+        private final Asset<T> asset;
+
+        /** decoded data */
+        private final D data;
+
+        /** creates the open gl objects */
+        private final Uploader<D, T> uploader;
+
+        /** estimated bytes of the upload, 0 if unknown */
+        private final long bytes;
+
+        private PendingUpload(Asset<T> asset, D data, Uploader<D, T> uploader) {
+            this.asset = asset;
+            this.data = data;
+            this.uploader = uploader;
+            this.bytes = estimateBytes(data);
+        }
+
+        /**
+         * uploads the data and completes the asset
+         */
+        private void run() {
+            T value;
+            try {
+                value = uploader.upload(data);
+                if (value == null) {
+                    throw new IllegalStateException("Uploader returned null");
+                }
+            } catch (Throwable e) {
+                fail(asset, e);
+                return;
+            }
+            pending.decrementAndGet();
+            asset.complete(value);
+        }
+
+        /**
+         * completes the asset without uploading it
+         */
+        private void cancel() {
+            if (data instanceof TextureData) {
+                ((TextureData) data).free();
+            }
+            fail(asset, new CancellationException("Asset manager was cleaned up"));
+        }
+    }
+}
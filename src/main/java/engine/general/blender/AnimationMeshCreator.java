@@ -1,7 +1,9 @@
 package engine.general.blender;
 
-import engine.general.Utils;
+import engine.general.collections.FloatArrayBuilder;
+import engine.general.collections.IntArrayBuilder;
 import engine.graph.items.Mesh;
+import engine.graph.items.MeshData;
 import org.blender.dna.*;
 import org.cakelab.blender.nio.CArrayFacade;
 import org.joml.Vector2f;
@@ -9,13 +11,20 @@ import org.joml.Vector3f;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class AnimationMeshCreator {
 
     static Mesh createMesh(org.blender.dna.Mesh mesh, File file) throws IOException {
 
+        Mesh result = createMeshData(mesh).createMesh();
+
+        result.setMaterial(MaterialCreator.createMaterial(mesh,file));
+
+        return result;
+    }
+
+    static MeshData createMeshData(org.blender.dna.Mesh mesh) throws IOException {
+
         int totpolies = mesh.getTotpoly();
 
         MPoly[] polies = mesh.getMpoly().toArray(totpolies);
@@ -24,23 +33,25 @@ public class AnimationMeshCreator {
         MLoopUV[] loopUVS = mesh.getMloopuv().toArray(mesh.getTotloop());
         MDeformVert[] deformVertices = mesh.getDvert().toArray(mesh.getTotvert());
 
-        Mesh result = createMesh(polies, vertices, loops, loopUVS, deformVertices, totpolies);
-
-        result.setMaterial(MaterialCreator.createMaterial(mesh,file));
-
-        return result;
+        return createMeshData(polies, vertices, loops, loopUVS, deformVertices, totpolies);
     }
 
     public static Mesh createMesh(MPoly[] polies, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS,MDeformVert[] deformVertices, int totpolies) throws IOException {
+        return createMeshData(polies, vertices, loops, loopUVS, deformVertices, totpolies).createMesh();
+    }
+
+    public static MeshData createMeshData(MPoly[] polies, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS,MDeformVert[] deformVertices, int totpolies) throws IOException {
 
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCords = new ArrayList<>();
-        List<Float> normals = new ArrayList<>();
-        List<Float> tangents = new ArrayList<>();
-        List<Float> biTangents = new ArrayList<>();
-        List<Integer> jointIDs = new ArrayList<>();
-        List<Float> weights = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+        int loopCount = loops.length;
+
+        FloatArrayBuilder positions = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder textCords = new FloatArrayBuilder(loopCount * 2);
+        FloatArrayBuilder normals = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder tangents = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder biTangents = new FloatArrayBuilder(loopCount * 3);
+        IntArrayBuilder jointIDs = new IntArrayBuilder(loopCount * 3);
+        FloatArrayBuilder weights = new FloatArrayBuilder(loopCount * 3);
+        IntArrayBuilder indices = new IntArrayBuilder(loopCount * 3);
 
         int nextIndex = 0;
 
@@ -58,31 +69,21 @@ public class AnimationMeshCreator {
         }
 
 
-        float[] positionsArr = Utils.listToArray(positions);
-        float[] textCordsArr = Utils.listToArray(textCords);
-        float[] normalsArr = Utils.listToArray(normals);
-        float[] weightsArr = Utils.listToArray(weights);
-        float[] tangentsArr = Utils.listToArray(tangents);
-        float[] biTangentsArr = Utils.listToArray(biTangents);
-        int[] jointIDArr = new int[jointIDs.size()];
-        for (int i = 0; i < jointIDs.size(); i++) {
-            jointIDArr[i] = jointIDs.get(i);
-        }
-        int[] indicesArr = new int[indices.size()];
-        for(int i = 0; i < indices.size(); i++) {
-            indicesArr[i] = indices.get(i);
-        }
-
-        System.out.println(positions);
-        System.out.println(jointIDs);
-        System.out.println(weights);
+        float[] positionsArr = positions.toArray();
+        float[] textCordsArr = textCords.toArray();
+        float[] normalsArr = normals.toArray();
+        float[] weightsArr = weights.toArray();
+        float[] tangentsArr = tangents.toArray();
+        float[] biTangentsArr = biTangents.toArray();
+        int[] jointIDArr = jointIDs.toArray();
+        int[] indicesArr = indices.toArray();
 
-        return new Mesh(positionsArr, textCordsArr, normalsArr,tangentsArr,biTangentsArr,jointIDArr,weightsArr, indicesArr);
+        return new MeshData(positionsArr, textCordsArr, normalsArr,tangentsArr,biTangentsArr,jointIDArr,weightsArr, indicesArr);
     }
 
     private static void addPolygon(MPoly poly, int loopStart, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS, MDeformVert[] deformVerts,
-                                   List<Float> positions, List<Float> textCords, List<Float> normals, List<Float> tangents, List<Float> biTangents,
-                                   List<Integer> jointIDs,List<Float> weights,List<Integer> indices, int nextIndex) throws IOException {
+                                   FloatArrayBuilder positions, FloatArrayBuilder textCords, FloatArrayBuilder normals, FloatArrayBuilder tangents, FloatArrayBuilder biTangents,
+                                   IntArrayBuilder jointIDs,FloatArrayBuilder weights,IntArrayBuilder indices, int nextIndex) throws IOException {
 
         Vector3f normal = calcNormal(vertices, loops, poly);
 
@@ -122,7 +123,7 @@ public class AnimationMeshCreator {
         }
     }
 
-    private static void createTangents(List<Float> tangents, List<Float> biTangents, int index1, int index2, int index3, List<Float> positions, List<Float> textCords) {
+    private static void createTangents(FloatArrayBuilder tangents, FloatArrayBuilder biTangents, int index1, int index2, int index3, FloatArrayBuilder positions, FloatArrayBuilder textCords) {
         Vector3f pos1 = new Vector3f(positions.get(index1 * 3),positions.get(index1 * 3 + 1),positions.get(index1 * 3 + 2));
         Vector3f pos2 = new Vector3f(positions.get(index2 * 3),positions.get(index2 * 3 + 1),positions.get(index2 * 3 + 2));
         Vector3f pos3 = new Vector3f(positions.get(index3 * 3),positions.get(index3 * 3 + 1),positions.get(index3 * 3 + 2));
@@ -160,14 +161,12 @@ public class AnimationMeshCreator {
 
     }
 
-    private static void addAt(Vector3f value, List<Float> list) {
-        list.add(value.x);
-        list.add(value.y);
-        list.add(value.z);
+    private static void addAt(Vector3f value, FloatArrayBuilder list) {
+        list.add(value.x, value.y, value.z);
     }
 
-    private static void addWithoutIndex(MVert vertex, List<Float> positions, MLoopUV uvCords, List<Float> textCords, Vector3f normal, List<Float> normals, MDeformVert deformVert,
-                                        List<Integer> jointIDs, List<Float> weights) throws IOException {
+    private static void addWithoutIndex(MVert vertex, FloatArrayBuilder positions, MLoopUV uvCords, FloatArrayBuilder textCords, Vector3f normal, FloatArrayBuilder normals, MDeformVert deformVert,
+                                        IntArrayBuilder jointIDs, FloatArrayBuilder weights) throws IOException {
         CArrayFacade<Float> pos = vertex.getCo();
 
         positions.add(pos.get(1));
@@ -220,7 +219,7 @@ public class AnimationMeshCreator {
         normals.add(normal.z);
     }
 
-    private static void addIndex(int index, List<Integer> indices) {
+    private static void addIndex(int index, IntArrayBuilder indices) {
         indices.add(index);
     }
 
@@ -0,0 +1,294 @@
+package engine.general.blender;
+
+import engine.general.save.MeshCache;
+import org.blender.dna.BlenderObject;
+import org.blender.dna.Collection;
+import org.blender.dna.CollectionChild;
+import org.blender.dna.CollectionObject;
+import org.blender.utils.MainLib;
+import org.cakelab.blender.io.BlenderFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a .blend file that is read once and shared by all loads from it
+ * the file is read with JavaBlend the first time an object is needed and the blender objects are
+ * indexed by name and type, so looking up the first armature or the mesh with a name does not
+ * read the file or walk the collections again. the content hash for the mesh cache is calculated
+ * once per file as well
+ * archives are cached by path and read again if the file changed. the cache keeps the JavaBlend
+ * data until close or closeAll, the game engine closes all archives on cleanup and loaders may
+ * close them earlier, after the last asset of a file was loaded
+ */
+@SuppressWarnings("unused")
+public class BlendArchive {
+
+    /** directory the blend files are loaded from */
+    private static final String MODEL_DIRECTORY = "models";
+
+    /** blender object type of mesh objects */
+    private static final int MESH_TYPE = 1;
+
+    /** opened archives by absolute path */
+    private static final Map<Path, BlendArchive> ARCHIVES = new HashMap<>();
+
+    /** name of the file inside the model directory */
+    private final String name;
+
+    /** path of the file */
+    private final Path path;
+
+    /** modification time of the file when it was opened */
+    private final FileTime lastModified;
+
+    /** lazy object index, null until the first object lookup */
+    private ObjectIndex objectIndex;
+
+    /** content hash of the file, valid if hashed is true */
+    private long contentHash;
+
+    /** true if contentHash was calculated */
+    private boolean hashed;
+
+    /**
+     * @param name name of the file inside the model directory
+     * @param path path of the file
+     * @throws IOException if the file cant be read
+     */
+    private BlendArchive(String name, Path path) throws IOException {
+        this.name = name;
+        this.path = path;
+        this.lastModified = Files.getLastModifiedTime(path);
+    }
+
+    /**
+     * returns the archive of a blend file in the model directory, the file is only opened again
+     * if it changed since the last call
+     *
+     * @param filename name of the file inside the model directory
+     * @return archive of the file
+     * @throws IOException if the file cant be read
+     */
+    public static BlendArchive open(String filename) throws IOException {
+        Path path = Paths.get(MODEL_DIRECTORY, filename).toAbsolutePath().normalize();
+        synchronized (ARCHIVES) {
+            BlendArchive archive = ARCHIVES.get(path);
+            if (archive == null || !archive.lastModified.equals(Files.getLastModifiedTime(path))) {
+                archive = new BlendArchive(filename, path);
+                ARCHIVES.put(path, archive);
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * removes an archive from the cache, the next open reads the file again
+     *
+     * @param filename name of the file inside the model directory
+     */
+    public static void close(String filename) {
+        synchronized (ARCHIVES) {
+            ARCHIVES.remove(Paths.get(MODEL_DIRECTORY, filename).toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * removes all archives from the cache, called by the game engine on cleanup
+     */
+    public static void closeAll() {
+        synchronized (ARCHIVES) {
+            ARCHIVES.clear();
+        }
+    }
+
+    /*
+
+     OBJECTS
+
+     */
+
+    /**
+     * @return the object index, reads the file with JavaBlend on the first call
+     * @throws IOException if the file cant be read
+     */
+    private synchronized ObjectIndex getObjectIndex() throws IOException {
+        if (objectIndex == null) {
+            objectIndex = new ObjectIndex();
+        }
+        return objectIndex;
+    }
+
+    /**
+     * @return JavaBlend view of the file
+     * @throws IOException if the file cant be read
+     */
+    public MainLib getMainLib() throws IOException {
+        return getObjectIndex().main;
+    }
+
+    /**
+     * @return all objects of the scene in the order of the collections ( objects of a collection
+     * before the objects of its children )
+     * @throws IOException if the file cant be read
+     */
+    public List<BlenderObject> getObjects() throws IOException {
+        return Collections.unmodifiableList(getObjectIndex().objects);
+    }
+
+    /**
+     * @param type blender object type, for example 1 for meshes and 25 for armatures
+     * @return all objects of the type in collection order
+     * @throws IOException if the file cant be read
+     */
+    public List<BlenderObject> getObjects(int type) throws IOException {
+        List<BlenderObject> objects = getObjectIndex().byType.get(type);
+        return objects != null ? Collections.unmodifiableList(objects) : Collections.emptyList();
+    }
+
+    /**
+     * @param type blender object type
+     * @return first object of the type in collection order or null
+     * @throws IOException if the file cant be read
+     */
+    public BlenderObject getFirstObject(int type) throws IOException {
+        List<BlenderObject> objects = getObjectIndex().byType.get(type);
+        return objects != null ? objects.get(0) : null;
+    }
+
+    /**
+     * @param name name of the object with or without the "OB" prefix blender adds
+     * @return the object or null
+     * @throws IOException if the file cant be read
+     */
+    public BlenderObject getObject(String name) throws IOException {
+        ObjectIndex index = getObjectIndex();
+        BlenderObject object = index.byName.get(name);
+        return object != null ? object : index.byName.get("OB" + name);
+    }
+
+    /**
+     * @param name name of the mesh data with or without the "ME" prefix blender adds
+     * @return the mesh or null
+     * @throws IOException if the file cant be read
+     */
+    public org.blender.dna.Mesh getMesh(String name) throws IOException {
+        ObjectIndex index = getObjectIndex();
+        org.blender.dna.Mesh mesh = index.meshesByName.get(name);
+        return mesh != null ? mesh : index.meshesByName.get("ME" + name);
+    }
+
+    /*
+
+     FILE
+
+     */
+
+    /**
+     * @return content hash of the file, the same as MeshCache.hash of the file
+     * @throws IOException if the file cant be read
+     */
+    public synchronized long getContentHash() throws IOException {
+        if (!hashed) {
+            contentHash = MeshCache.hash(path);
+            hashed = true;
+        }
+        return contentHash;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * objects of the scene read with JavaBlend
+     */
+    private class ObjectIndex {
+
+        /** JavaBlend view of the file */
+        private final MainLib main;
+
+        /** all objects in collection order */
+        private final List<BlenderObject> objects = new ArrayList<>();
+
+        /** objects by blender object type */
+        private final Map<Integer, List<BlenderObject>> byType = new HashMap<>();
+
+        /** objects by name, the first object wins */
+        private final Map<String, BlenderObject> byName = new HashMap<>();
+
+        /** mesh data of the mesh objects by name */
+        private final Map<String, org.blender.dna.Mesh> meshesByName = new HashMap<>();
+
+        /**
+         * reads the file and walks the collections of the scene once
+         *
+         * @throws IOException if the file cant be read
+         */
+        private ObjectIndex() throws IOException {
+            BlenderFile file = new BlenderFile(path.toFile());
+            main = new MainLib(file);
+            file.close();
+
+            Collection collection = main.getScene().getMaster_collection().get();
+            if (collection != null) {
+                addCollection(collection);
+            }
+        }
+
+        /**
+         * adds the objects of a collection and its children
+         *
+         * @param collection collection to add
+         * @throws IOException if the collection cant be read
+         */
+        private void addCollection(Collection collection) throws IOException {
+            Iterator<CollectionObject> it_gObj = BlenderListIterator.create(collection.getGobject(), CollectionObject.class);
+            while (it_gObj.hasNext()) {
+                BlenderObject ob = it_gObj.next().getOb().get();
+                if (ob != null) {
+                    addObject(ob);
+                }
+            }
+
+            Iterator<CollectionChild> it_child = BlenderListIterator.create(collection.getChildren(), CollectionChild.class);
+            while (it_child.hasNext()) {
+                Collection childCollection = it_child.next().getCollection().get();
+                if (childCollection != null) {
+                    addCollection(childCollection);
+                }
+            }
+        }
+
+        /**
+         * @param ob object to add to the index
+         * @throws IOException if the object cant be read
+         */
+        private void addObject(BlenderObject ob) throws IOException {
+            objects.add(ob);
+            int type = ob.getType();
+            byType.computeIfAbsent(type, k -> new ArrayList<>()).add(ob);
+            byName.putIfAbsent(ob.getId().getName().asString(), ob);
+
+            if (type == MESH_TYPE) {
+                org.blender.dna.Mesh mesh = ob.getData().cast(org.blender.dna.Mesh.class).get();
+                if (mesh != null) {
+                    meshesByName.putIfAbsent(mesh.getId().getName().asString(), mesh);
+                }
+            }
+        }
+    }
+}
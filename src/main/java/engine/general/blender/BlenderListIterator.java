@@ -4,21 +4,36 @@ import org.blender.dna.ListBase;
 import org.cakelab.blender.nio.CPointer;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class BlenderListIterator<T> implements Iterator<T>{
 
+    /**
+     * getNext accessors of the list element classes, created once per class
+     */
+    private static final ClassValue<NextAccessor> ACCESSORS = new ClassValue<NextAccessor>() {
+        @Override
+        protected NextAccessor computeValue(Class<?> type) {
+            return createAccessor(type);
+        }
+    };
+
     /**
      * current element the iterator is on, the element that gets returned the next time next() is called
      */
     private T current;
 
     /**
-     * getNext method of the classes in the iterator
+     * getNext accessor of the class of the objects in the iterator
      */
-    private Method getNext;
+    private NextAccessor getNext;
 
     /**
      * class of the objects in the iterator
@@ -32,27 +47,19 @@ public class BlenderListIterator<T> implements Iterator<T>{
      */
 
     /**
-     * constructor checks  if the passed list element has a method called get Next and if
-     * it is accessible
+     * constructor checks if the class of the passed list element has a method called getNext and
+     * if it is accessible, the accessor of the class is created on first use and shared
      *
      * @param listElement first element of the list iterator
      */
     public BlenderListIterator(T listElement) {
 
-        try {
-            if (listElement != null) {
-                // get the class of the list elements
-                clazz = listElement.getClass();
-
-                // get the "getNext" method of this class
-                getNext = clazz.getMethod("getNext");
+        if (listElement != null) {
+            // get the class of the list elements
+            clazz = listElement.getClass();
 
-                // test if this method is accessible by invoking it
-                _getNext(listElement);
-            }
-        } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | IOException e) {
-            if (e instanceof IllegalArgumentException) throw (IllegalArgumentException)e;
-            else throw new IllegalArgumentException(e);
+            // get the accessor of the "getNext" method of this class
+            getNext = ACCESSORS.get(clazz);
         }
 
         // setting the current element to the first
@@ -116,20 +123,24 @@ public class BlenderListIterator<T> implements Iterator<T>{
     }
 
     /**
-     * returns the next element of the list of the iterator if it exists otherwise
-     * it returns null
+     * returns the next element of the list of the iterator
      *
-     * @return the next object or null
+     * @return the next object
+     * @throws NoSuchElementException if the end of the list is reached
      */
     @Override
     public T next() {
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+
         // stores the current element
         T prev = current;
 
         try {
             // trying to access the next element
             current = _getNext(current);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | IOException e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
@@ -138,20 +149,18 @@ public class BlenderListIterator<T> implements Iterator<T>{
     }
 
     /**
-     * Method to get the next element of the list by invoking the getNext method of hte current
-     * element
+     * Method to get the next element of the list by calling the getNext method of the current
+     * element through the accessor
      *
      * @param from current element
      * @return the next element or null if it does not exist
-     * @throws IllegalAccessException if the getNext method cant be accessed
-     * @throws InvocationTargetException if the getNext method cant be accessed
      * @throws IOException if the object cant be created from the pointer
      */
     @SuppressWarnings("unchecked")
-    private T _getNext(T from) throws IllegalAccessException, InvocationTargetException, IOException {
+    private T _getNext(T from) throws IOException {
 
-        // getting the pointer to an unknown class by invoking the getNext method of the current element
-        CPointer<?> pointer = ((CPointer<?>) getNext.invoke(from));
+        // getting the pointer to an unknown class by calling the getNext method of the current element
+        CPointer<?> pointer = getNext.getNext(from);
 
         // checking if the pointer points to something
         if (!pointer.isNull()) {
@@ -164,6 +173,50 @@ public class BlenderListIterator<T> implements Iterator<T>{
 
     }
 
+    /**
+     * creates an accessor calling the public getNext method of a class
+     * the accessor is a class generated by the lambda meta factory, so the call is a plain
+     * interface call instead of a reflective one
+     *
+     * @param type class of the list elements
+     * @return accessor of the getNext method
+     * @throws IllegalArgumentException if the class has no accessible getNext method
+     */
+    private static NextAccessor createAccessor(Class<?> type) {
+        try {
+            Method method = type.getMethod("getNext");
+            if (!CPointer.class.isAssignableFrom(method.getReturnType())) {
+                throw new IllegalArgumentException(type.getName() + ".getNext does not return a pointer");
+            }
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "getNext",
+                    MethodType.methodType(NextAccessor.class),
+                    MethodType.methodType(CPointer.class, Object.class),
+                    handle,
+                    MethodType.methodType(method.getReturnType(), type));
+            return (NextAccessor) site.getTarget().invokeExact();
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * calls the getNext method of a list element
+     */
+    @FunctionalInterface
+    private interface NextAccessor {
+
+        /**
+         * @param element list element
+         * @return pointer to the next element
+         * @throws IOException if the pointer cant be read
+         */
+        CPointer<?> getNext(Object element) throws IOException;
+    }
 
     /**
      * unused
@@ -1,26 +1,25 @@
 package engine.general.blender;
 
+import engine.general.save.MeshCache;
 import engine.graph.items.GameItem;
+import engine.graph.items.MaterialData;
 import engine.graph.items.animation.Animation;
 import engine.graph.items.animation.AnimationItem;
 import engine.graph.items.animation.Animator;
 import org.blender.dna.*;
-import org.blender.utils.MainLib;
 import org.cakelab.blender.io.BlenderFile;
 import org.cakelab.blender.nio.CArrayFacade;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class BlenderLoader {
 
-    enum Model {
-        MODEL,ANIMATION
-    }
-
     enum BlenderObjectKind {
         MESH(1),
         ANIMATION(25);
@@ -38,88 +37,58 @@ public class BlenderLoader {
         return new BlenderFile(new File("models/" + filename));
     }
 
-    private static BlenderObject getFirstOfItsKind(Collection collection, BlenderObjectKind blenderObjectKind) throws IOException {
-
-
-        Iterator<CollectionObject> it_gObj = BlenderListIterator.create(collection.getGobject(), CollectionObject.class);
-        while (it_gObj.hasNext()) {
-            CollectionObject gObj = it_gObj.next();
-            BlenderObject ob = gObj.getOb().get();
-
-            if (ob == null) {
-                System.out.println("null");
-                continue;
-            }
-
-            if (ob.getType() == blenderObjectKind.id) {
-                return ob;
-            }
-        }
-
+    public static GameItem createGameItemFromBlenderObject(BlenderObject blenderObject,File file) throws IOException {
 
-        Iterator<CollectionChild> it_child = BlenderListIterator.create(collection.getChildren(), CollectionChild.class);
-        while(it_child.hasNext()) {
-            CollectionChild child = it_child.next();
-            Collection childCollection = child.getCollection().get();
-            if (childCollection != null) return getFirstOfItsKind(childCollection,blenderObjectKind);
-        }
 
-        return null;
+        org.blender.dna.Mesh mesh = blenderObject.getData().cast(org.blender.dna.Mesh.class).get();
 
+        return createGameItem(blenderObject, MeshCreator.createMesh(mesh,file));
     }
 
+    /**
+     * reads everything needed to create the game item of a blender object without touching open gl,
+     * so it can run on a worker thread. the mesh is taken from the mesh cache if the blend file did
+     * not change since the cache was written
+     *
+     * @param blenderObject blender object of type mesh
+     * @param file blend file used to resolve texture paths
+     * @param source name of the blend file
+     * @param sourceHash content hash of the blend file
+     * @return imported object
+     * @throws IOException if the blender data cant be read
+     */
+    private static ImportedObject importBlenderObject(BlenderObject blenderObject, File file, String source, long sourceHash) throws IOException {
 
-    private static List<GameItem> traverseCollection(Collection collection, File file, Model model) throws IOException {
-
-        List<GameItem> gameItems = new ArrayList<>();
-
-        Iterator<CollectionObject> it_gObj = BlenderListIterator.create(collection.getGobject(), CollectionObject.class);
-        while (it_gObj.hasNext()) {
-            CollectionObject gObj = it_gObj.next();
-            BlenderObject ob = gObj.getOb().get();
-
-            if (ob == null) {
-                System.out.println("null");
-                continue;
-            }
-
-            System.out.println(ob.getId().getName().asString());
-
-            // check if type is a mesh
-            if(ob.getType()==1 && model==Model.MODEL) {
-
-
-                gameItems.add(createGameItemFromBlenderObject(ob, file));
-
-            } else if (ob.getType() == 25 && model == Model.ANIMATION) {
-
-                //gameItems.add(createAnimationFromBlendObject(ob, file));
-
-            }
-        }
-
+        org.blender.dna.Mesh mesh = blenderObject.getData().cast(org.blender.dna.Mesh.class).get();
 
-        Iterator<CollectionChild> it_child = BlenderListIterator.create(collection.getChildren(), CollectionChild.class);
-        while(it_child.hasNext()) {
-            CollectionChild child = it_child.next();
-            Collection childCollection = child.getCollection().get();
-            if (childCollection != null) gameItems.addAll(traverseCollection(childCollection, file,model));
+        MeshCache.PreparedMesh preparedMesh;
+        if (MeshCache.isEnabled()) {
+            String name = blenderObject.getId().getName().asString();
+            preparedMesh = MeshCache.prepare(source, "blend_" + name, sourceHash, () -> MeshCreator.createMeshData(mesh));
+        } else {
+            preparedMesh = MeshCreator.createMeshData(mesh)::createMesh;
         }
 
+        CArrayFacade<Float> location = blenderObject.getLoc();
+        CArrayFacade<Float> scale = blenderObject.getSize();
 
-
-        return gameItems;
-
+        return new ImportedObject(preparedMesh, MaterialCreator.readMaterial(mesh, file),
+                location.get(1), location.get(2), location.get(0), scale.get(1), scale.get(2), scale.get(0));
     }
 
-    public static GameItem createGameItemFromBlenderObject(BlenderObject blenderObject,File file) throws IOException {
-
-
-        org.blender.dna.Mesh mesh = blenderObject.getData().cast(org.blender.dna.Mesh.class).get();
+    /**
+     * creates a game item with the location and scale of a blender object
+     *
+     * @param blenderObject blender object
+     * @param mesh mesh of the game item
+     * @return new game item
+     * @throws IOException if the blender data cant be read
+     */
+    private static GameItem createGameItem(BlenderObject blenderObject, engine.graph.items.Mesh mesh) throws IOException {
 
         CArrayFacade<Float> location = blenderObject.getLoc();
 
-        GameItem gameItem = new GameItem(MeshCreator.createMesh(mesh,file));
+        GameItem gameItem = new GameItem(mesh);
 
         gameItem.setPosition(location.get(1),location.get(2),location.get(0));
 
@@ -132,44 +101,85 @@ public class BlenderLoader {
 
     public static GameItem[] loadGameItemsFromBlendFile(String filename) throws IOException {
 
-        MainLib main = new MainLib(loadBlenderFile(filename));
-
-        Scene scene = main.getScene();
+        BlendArchive archive = BlendArchive.open(filename);
 
-        Collection collection = scene.getMaster_collection().get();
+        long sourceHash = MeshCache.isEnabled() ? archive.getContentHash() : 0;
 
-        List<GameItem> gameItems = traverseCollection(collection,new File(filename).getAbsoluteFile(),Model.MODEL);
+        File file = new File(filename).getAbsoluteFile();
 
+        List<BlenderObject> objects = archive.getObjects(BlenderObjectKind.MESH.id);
 
-        GameItem[] gameItemsArr = new GameItem[gameItems.size()];
-        for(int i = 0; i < gameItems.size(); i++) {
-            gameItemsArr[i] = gameItems.get(i);
+        GameItem[] gameItemsArr = new GameItem[objects.size()];
+        for(int i = 0; i < objects.size(); i++) {
+            gameItemsArr[i] = importBlenderObject(objects.get(i), file, filename, sourceHash).createGameItem();
         }
 
         return gameItemsArr;
 
     }
 
-    public static Animator loadAnimationFromBlendFile(String filename) throws IOException {
+    /**
+     * loads the game items of a blend file in two stages. the blender data of every object is read,
+     * triangulated and turned into vertex arrays by its own task on the executor, only the upload
+     * of the meshes and textures happens on the calling thread, which has to own the open gl context.
+     * each mesh is uploaded as soon as its task is done while the later objects are still imported
+     *
+     * @param filename name of the blend file in the model directory
+     * @param executor executor running the import tasks
+     * @return game items in the order of the objects in the blend file
+     * @throws Exception if the blend file cant be read
+     */
+    public static GameItem[] loadGameItemsFromBlendFile(String filename, ExecutorService executor) throws Exception {
+
+        BlendArchive archive = BlendArchive.open(filename);
+
+        long sourceHash = MeshCache.isEnabled() ? archive.getContentHash() : 0;
+
+        File file = new File(filename).getAbsoluteFile();
+
+        List<Future<ImportedObject>> results = new ArrayList<>();
+        for (BlenderObject ob : archive.getObjects(BlenderObjectKind.MESH.id)) {
+            results.add(executor.submit(() -> importBlenderObject(ob, file, filename, sourceHash)));
+        }
+
+        GameItem[] gameItemsArr = new GameItem[results.size()];
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                gameItemsArr[i] = results.get(i).get().createGameItem();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            for (Future<ImportedObject> result : results) {
+                result.cancel(false);
+            }
+        }
 
-        BlenderFile file = new BlenderFile(new File("models/" + filename));
+        return gameItemsArr;
 
-        MainLib main = new MainLib(file);
+    }
 
-        file.close();
+    public static Animator loadAnimationFromBlendFile(String filename) throws IOException {
 
-        Scene scene = main.getScene();
+        BlendArchive archive = BlendArchive.open(filename);
 
-        Collection collection = scene.getMaster_collection().get();
+        long sourceHash = MeshCache.isEnabled() ? archive.getContentHash() : 0;
 
-        return createAnimationFromBlendObject(getFirstOfItsKind(collection, BlenderObjectKind.MESH), getFirstOfItsKind(collection, BlenderObjectKind.ANIMATION), new File(filename).getAbsoluteFile());
+        return createAnimationFromBlendObject(archive.getFirstObject(BlenderObjectKind.MESH.id), archive.getFirstObject(BlenderObjectKind.ANIMATION.id), new File(filename).getAbsoluteFile(), filename, sourceHash);
 
     }
 
-    private static Animator createAnimationFromBlendObject(BlenderObject meshObject, BlenderObject animationObject, File file) throws IOException {
+    private static Animator createAnimationFromBlendObject(BlenderObject meshObject, BlenderObject animationObject, File file, String source, long sourceHash) throws IOException {
         org.blender.dna.Mesh mesh = meshObject.getData().cast(org.blender.dna.Mesh.class).get();
 
-        engine.graph.items.Mesh animationMesh = AnimationMeshCreator.createMesh(mesh, file);
+        engine.graph.items.Mesh animationMesh;
+        if (MeshCache.isEnabled()) {
+            String name = meshObject.getId().getName().asString();
+            animationMesh = MeshCache.load(source, "blendAnimation_" + name, sourceHash, () -> AnimationMeshCreator.createMeshData(mesh));
+            animationMesh.setMaterial(MaterialCreator.createMaterial(mesh, file));
+        } else {
+            animationMesh = AnimationMeshCreator.createMesh(mesh, file);
+        }
 
         SkeletonCreator.AnimationData animationData = SkeletonCreator.createSkeleton(animationObject);
 
@@ -182,4 +192,53 @@ public class BlenderLoader {
         return result;
     }
 
+    /**
+     * result of the worker stage of the import: vertex data, material description and transformation
+     * of one blender object, turned into a game item on the open gl thread
+     */
+    private static class ImportedObject {
+
+        /** vertex data of the mesh */
+        private final MeshCache.PreparedMesh mesh;
+
+        /** material of the mesh */
+        private final MaterialData material;
+
+        /** position in engine coordinates */
+        private final float x, y, z;
+
+        /** scale in engine coordinates */
+        private final float scaleX, scaleY, scaleZ;
+
+        private ImportedObject(MeshCache.PreparedMesh mesh, MaterialData material, float x, float y, float z, float scaleX, float scaleY, float scaleZ) {
+            this.mesh = mesh;
+            this.material = material;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.scaleZ = scaleZ;
+        }
+
+        /**
+         * uploads the mesh and its texture, has to be called on the open gl thread
+         *
+         * @return new game item
+         */
+        private GameItem createGameItem() {
+            engine.graph.items.Mesh result = mesh.createMesh();
+
+            result.setMaterial(material.createMaterial());
+
+            GameItem gameItem = new GameItem(result);
+
+            gameItem.setPosition(x, y, z);
+
+            gameItem.setScale3(scaleX, scaleY, scaleZ);
+
+            return gameItem;
+        }
+    }
+
 }
@@ -1,7 +1,7 @@
 package engine.general.blender;
 
 import engine.graph.items.Material;
-import engine.graph.items.Texture;
+import engine.graph.items.MaterialData;
 import org.blender.dna.*;
 import org.cakelab.blender.nio.CArrayFacade;
 import org.cakelab.blender.nio.CPointer;
@@ -20,12 +20,25 @@ public class MaterialCreator {
 
     public static Material createMaterial(Mesh mesh, File file) throws IOException {
 
+        return readMaterial(mesh, file).createMaterial();
+    }
+
+    /**
+     * reads the material of a mesh without loading its texture, so it can be called on any thread
+     *
+     * @param mesh blender mesh
+     * @param file blend file used to resolve texture paths
+     * @return description of the material
+     * @throws IOException if the blender data cant be read
+     */
+    public static MaterialData readMaterial(Mesh mesh, File file) throws IOException {
+
         // get the pointer to the material
         CPointer<org.blender.dna.Material> materialCPointer = mesh.getMat().get();
 
         // check if a material exists
         if (materialCPointer == null || !materialCPointer.isValid()) {
-            return new Material();
+            return new MaterialData();
         } else {
 
             org.blender.dna.Material material = materialCPointer.get();
@@ -37,17 +50,17 @@ public class MaterialCreator {
 
                 Vector4f baseColor = new Vector4f(material.getR(), material.getG(), material.getB(), material.getA());
 
-                return new Material(baseColor,0);
+                return new MaterialData(baseColor,0);
             }
         }
 
     }
 
-    private static Material readNodes(org.blender.dna.Material material, File file) throws IOException {
+    private static MaterialData readNodes(org.blender.dna.Material material, File file) throws IOException {
 
         CPointer<bNodeTree> p_nodeTree = material.getNodetree();
 
-        Material result = new Material();
+        MaterialData result = new MaterialData();
 
         if (p_nodeTree != null && p_nodeTree.get() != null) {
             bNodeTree tree = p_nodeTree.get();
@@ -81,11 +94,7 @@ public class MaterialCreator {
                         } else {
                             imageFile = new File(filename);
                         }
-                        try {
-                            result = new Material(new Texture(imageFile.getPath(), Texture.FilterMode.NEAREST));
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
+                        result.setTexturePath(imageFile.getPath());
 
                     } else {
                         CArrayFacade<Float> color = Nodes.getDefaultRGBAInput(principalBSDF, "Base Color");
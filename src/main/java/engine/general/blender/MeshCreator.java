@@ -1,7 +1,10 @@
 package engine.general.blender;
 
-import engine.general.Utils;
+import engine.general.VertexDeduplicator;
+import engine.general.collections.FloatArrayBuilder;
+import engine.general.collections.IntArrayBuilder;
 import engine.graph.items.Mesh;
+import engine.graph.items.MeshData;
 import org.blender.dna.MLoop;
 import org.blender.dna.MLoopUV;
 import org.blender.dna.MPoly;
@@ -12,13 +15,20 @@ import org.joml.Vector3f;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class MeshCreator {
 
     static Mesh createMesh(org.blender.dna.Mesh mesh, File file) throws IOException {
 
+        Mesh result = createMeshData(mesh).createMesh();
+
+        result.setMaterial(MaterialCreator.createMaterial(mesh,file));
+
+        return result;
+    }
+
+    static MeshData createMeshData(org.blender.dna.Mesh mesh) throws IOException {
+
         int totpolies = mesh.getTotpoly();
 
         MPoly[] polies = mesh.getMpoly().toArray(totpolies);
@@ -26,21 +36,23 @@ public class MeshCreator {
         MLoop[] loops = mesh.getMloop().toArray(mesh.getTotloop());
         MLoopUV[] loopUVS = mesh.getMloopuv().toArray(mesh.getTotloop());
 
-        Mesh result = createMesh(polies, vertices, loops, loopUVS, totpolies);
-
-        result.setMaterial(MaterialCreator.createMaterial(mesh,file));
-
-        return result;
+        return createMeshData(polies, vertices, loops, loopUVS, totpolies);
     }
 
     public static Mesh createMesh(MPoly[] polies, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS, int totpolies) throws IOException {
+        return createMeshData(polies, vertices, loops, loopUVS, totpolies).createMesh();
+    }
 
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCords = new ArrayList<>();
-        List<Float> normals = new ArrayList<>();
-        List<Float> tangents = new ArrayList<>();
-        List<Float> biTangents = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+    public static MeshData createMeshData(MPoly[] polies, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS, int totpolies) throws IOException {
+
+        int loopCount = loops.length;
+
+        FloatArrayBuilder positions = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder textCords = new FloatArrayBuilder(loopCount * 2);
+        FloatArrayBuilder normals = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder tangents = new FloatArrayBuilder(loopCount * 3);
+        FloatArrayBuilder biTangents = new FloatArrayBuilder(loopCount * 3);
+        IntArrayBuilder indices = new IntArrayBuilder(loopCount * 3);
 
         int nextIndex = 0;
 
@@ -58,18 +70,16 @@ public class MeshCreator {
         }
 
 
-        float[] positionsArr = Utils.listToArray(positions);
-        float[] textCordsArr = Utils.listToArray(textCords);
-        float[] normalsArr = Utils.listToArray(normals);
-        int[] indicesArr = new int[indices.size()];
-        for(int i = 0; i < indices.size(); i++) {
-            indicesArr[i] = indices.get(i);
-        }
+        float[] positionsArr = positions.toArray();
+        float[] textCordsArr = textCords.toArray();
+        float[] normalsArr = normals.toArray();
+        int[] indicesArr = indices.toArray();
 
-        return new Mesh(positionsArr, textCordsArr, normalsArr, indicesArr);
+        // every loop got its own vertex, loops sharing position, uv and face normal are merged
+        return VertexDeduplicator.deduplicate(positionsArr, textCordsArr, normalsArr, indicesArr);
     }
 
-    private static void addPolygon(MPoly poly, int loopStart, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS, List<Float> positions, List<Float> textCords, List<Float> normals, List<Float> tangents, List<Float> biTangents, List<Integer> indices, int nextIndex) throws IOException {
+    private static void addPolygon(MPoly poly, int loopStart, MVert[] vertices, MLoop[] loops, MLoopUV[] loopUVS, FloatArrayBuilder positions, FloatArrayBuilder textCords, FloatArrayBuilder normals, FloatArrayBuilder tangents, FloatArrayBuilder biTangents, IntArrayBuilder indices, int nextIndex) throws IOException {
 
         Vector3f normal = calcNormal(vertices, loops, poly);
 
@@ -108,7 +118,7 @@ public class MeshCreator {
         }
     }
 
-    private static void createTangents(List<Float> tangents, List<Float> biTangents, int index1, int index2, int index3, List<Float> positions, List<Float> textCords) {
+    private static void createTangents(FloatArrayBuilder tangents, FloatArrayBuilder biTangents, int index1, int index2, int index3, FloatArrayBuilder positions, FloatArrayBuilder textCords) {
         Vector3f pos1 = new Vector3f(positions.get(index1 * 3),positions.get(index1 * 3 + 1),positions.get(index1 * 3 + 2));
         Vector3f pos2 = new Vector3f(positions.get(index2 * 3),positions.get(index2 * 3 + 1),positions.get(index2 * 3 + 2));
         Vector3f pos3 = new Vector3f(positions.get(index3 * 3),positions.get(index3 * 3 + 1),positions.get(index3 * 3 + 2));
@@ -146,13 +156,11 @@ public class MeshCreator {
 
     }
 
-    private static void addAt(Vector3f value, List<Float> list) {
-        list.add(value.x);
-        list.add(value.y);
-        list.add(value.z);
+    private static void addAt(Vector3f value, FloatArrayBuilder list) {
+        list.add(value.x, value.y, value.z);
     }
 
-    private static void addWithoutIndex(MVert vertex, List<Float> positions, MLoopUV uvCords, List<Float> textCords, Vector3f normal, List<Float> normals) throws IOException {
+    private static void addWithoutIndex(MVert vertex, FloatArrayBuilder positions, MLoopUV uvCords, FloatArrayBuilder textCords, Vector3f normal, FloatArrayBuilder normals) throws IOException {
         CArrayFacade<Float> pos = vertex.getCo();
 
         positions.add(pos.get(1));
@@ -168,7 +176,7 @@ public class MeshCreator {
         normals.add(normal.x);
     }
 
-    private static void addIndex(int index, List<Integer> indices) {
+    private static void addIndex(int index, IntArrayBuilder indices) {
         indices.add(index);
     }
 
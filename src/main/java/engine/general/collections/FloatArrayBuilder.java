@@ -0,0 +1,217 @@
+package engine.general.collections;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * growable list of primitive floats used to build vertex data without boxing every value
+ * the values are either stored in a float array on the heap or in a buffer allocated with
+ * MemoryUtil, the buffer can be given to the mesh without copying it. off heap builders have
+ * to be freed
+ */
+@SuppressWarnings("unused")
+public class FloatArrayBuilder {
+
+    /** capacity used if none is given */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** values on the heap, null if the builder is off heap */
+    private float[] array;
+
+    /** values off heap, null if the builder is on the heap */
+    private FloatBuffer buffer;
+
+    /** number of values added */
+    private int size;
+
+    /**
+     * creates an empty builder on the heap
+     */
+    public FloatArrayBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * creates an empty builder on the heap
+     *
+     * @param capacity number of values that can be added before the storage grows
+     */
+    public FloatArrayBuilder(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * creates an empty builder
+     *
+     * @param capacity number of values that can be added before the storage grows
+     * @param offHeap true to store the values in a buffer allocated with MemoryUtil
+     */
+    public FloatArrayBuilder(int capacity, boolean offHeap) {
+        capacity = Math.max(capacity, 1);
+        if (offHeap) {
+            buffer = MemoryUtil.memAllocFloat(capacity);
+        } else {
+            array = new float[capacity];
+        }
+    }
+
+    /**
+     * @param value value to add
+     */
+    public void add(float value) {
+        ensureCapacity(size + 1);
+        put(size++, value);
+    }
+
+    /**
+     * adds two values, for example texture coordinates
+     *
+     * @param x first value
+     * @param y second value
+     */
+    public void add(float x, float y) {
+        ensureCapacity(size + 2);
+        put(size, x);
+        put(size + 1, y);
+        size += 2;
+    }
+
+    /**
+     * adds three values, for example a position or a normal
+     *
+     * @param x first value
+     * @param y second value
+     * @param z third value
+     */
+    public void add(float x, float y, float z) {
+        ensureCapacity(size + 3);
+        put(size, x);
+        put(size + 1, y);
+        put(size + 2, z);
+        size += 3;
+    }
+
+    /**
+     * @param index index of the value
+     * @return value at the index
+     */
+    public float get(int index) {
+        checkIndex(index);
+        return array != null ? array[index] : buffer.get(index);
+    }
+
+    /**
+     * replaces an added value
+     *
+     * @param index index of the value
+     * @param value new value
+     */
+    public void set(int index, float value) {
+        checkIndex(index);
+        put(index, value);
+    }
+
+    /**
+     * @return number of values added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * removes all values, the storage is kept
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return true if the values are stored off heap
+     */
+    public boolean isOffHeap() {
+        return buffer != null;
+    }
+
+    /**
+     * @return new array containing the added values
+     */
+    public float[] toArray() {
+        if (array != null) {
+            return Arrays.copyOf(array, size);
+        }
+        float[] result = new float[size];
+        buffer.get(result, 0, size);
+        buffer.clear();
+        return result;
+    }
+
+    /**
+     * returns a view of the added values that can be uploaded to open gl directly
+     * the view is only valid until the builder grows or is freed
+     *
+     * @return buffer from 0 to size
+     * @throws IllegalStateException if the builder is on the heap
+     */
+    public FloatBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("Builder is not off heap");
+        }
+        FloatBuffer view = buffer.duplicate();
+        view.limit(size);
+        return view;
+    }
+
+    /**
+     * frees the off heap storage, the builder cant be used afterwards
+     */
+    public void free() {
+        if (buffer != null) {
+            MemoryUtil.memFree(buffer);
+            buffer = null;
+        }
+        array = null;
+        size = 0;
+    }
+
+    /**
+     * @param index index to write to
+     * @param value value to write
+     */
+    private void put(int index, float value) {
+        if (array != null) {
+            array[index] = value;
+        } else {
+            buffer.put(index, value);
+        }
+    }
+
+    /**
+     * @param index index to check
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * grows the storage to at least the required capacity, the capacity is doubled so adding
+     * stays linear
+     *
+     * @param required number of values that have to fit
+     */
+    private void ensureCapacity(int required) {
+        int capacity = array != null ? array.length : buffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, capacity * 2);
+        if (array != null) {
+            array = Arrays.copyOf(array, newCapacity);
+        } else {
+            buffer = MemoryUtil.memRealloc(buffer, newCapacity);
+        }
+    }
+}
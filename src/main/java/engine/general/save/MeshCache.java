@@ -0,0 +1,488 @@
+package engine.general.save;
+
+import engine.graph.items.Mesh;
+import engine.graph.items.MeshData;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * binary cache for meshes created from obj or blender files
+ *
+ * FILE FORMAT ( little endian ):
+ *
+ *      header:     magic "MESH", format version, 64 bit content hash of the source file
+ *                  and the number of values of positions, textCords, normals, tangents,
+ *                  biTangents, jointIDs, weights and indices
+ *
+ *      data:       the eight arrays in the same order, exactly as the mesh constructor takes them
+ *
+ * the cache files are memory mapped when they are loaded and the mapped buffers are passed to the
+ * mesh, so a warm start neither parses nor copies the vertex data. a cache file is only used if its
+ * version and source hash match, otherwise it is recreated from the source
+ */
+@SuppressWarnings("unused")
+public class MeshCache {
+
+    /** version of the file format, cache files with another version are ignored */
+    public static final int VERSION = 1;
+
+    /** first four bytes of every cache file: "MESH" */
+    private static final int MAGIC = 0x4853454D;
+
+    /** number of arrays stored per mesh */
+    private static final int ARRAYS = 8;
+
+    /** size of the header in bytes */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + ARRAYS * 4;
+
+    /** size of the buffer used to write cache files and to hash sources */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** file extension of cache files */
+    private static final String EXTENSION = ".mesh";
+
+    /** folder containing the cache files */
+    private static Path cacheDirectory = Paths.get("cache", "meshes");
+
+    /** if false loaders create their meshes without the cache */
+    private static boolean enabled = true;
+
+    /**
+     * creates the vertex data of a mesh if the cache cant be used
+     *
+     * @param <E> exception thrown by the loader
+     */
+    @FunctionalInterface
+    public interface MeshLoader<E extends Exception> {
+        MeshData load() throws E;
+    }
+
+    /**
+     * @return folder containing the cache files
+     */
+    public static Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @param cacheDirectory new folder for the cache files
+     */
+    public static void setCacheDirectory(Path cacheDirectory) {
+        MeshCache.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return true if the loaders use the cache
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled false to stop the loaders from reading and writing cache files
+     */
+    public static void setEnabled(boolean enabled) {
+        MeshCache.enabled = enabled;
+    }
+
+    /**
+     * vertex data that is ready to be uploaded, either from a cache file or from the loader
+     */
+    @FunctionalInterface
+    public interface PreparedMesh {
+
+        /**
+         * creates the mesh, has to be called on the open gl thread
+         *
+         * @return new mesh
+         */
+        Mesh createMesh();
+    }
+
+    /**
+     * returns the mesh from the cache if the cache file exists and belongs to the current source,
+     * otherwise the loader creates the mesh data which is then written to the cache
+     * failing to read or write the cache never fails the loading of the mesh
+     *
+     * @param source name of the source file
+     * @param variant distinguishes different meshes created from the same source file
+     * @param sourceHash content hash of the source file
+     * @param loader creates the mesh data from the source
+     * @param <E> exception thrown by the loader
+     * @return the mesh
+     * @throws E if the loader fails
+     */
+    public static <E extends Exception> Mesh load(String source, String variant, long sourceHash, MeshLoader<E> loader) throws E {
+        return prepare(source, variant, sourceHash, loader).createMesh();
+    }
+
+    /**
+     * does everything load does except creating the mesh, so it can be called on a worker thread
+     * and the mesh is created later on the open gl thread
+     *
+     * @param source name of the source file
+     * @param variant distinguishes different meshes created from the same source file
+     * @param sourceHash content hash of the source file
+     * @param loader creates the mesh data from the source
+     * @param <E> exception thrown by the loader
+     * @return the mapped cache file or the created mesh data
+     * @throws E if the loader fails
+     */
+    public static <E extends Exception> PreparedMesh prepare(String source, String variant, long sourceHash, MeshLoader<E> loader) throws E {
+        Path file = getCacheFile(source, variant);
+
+        try {
+            MappedMesh cached = read(file, sourceHash);
+            if (cached != null) {
+                return cached::createMesh;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read mesh cache [" + file + "]: " + e.getMessage());
+        }
+
+        MeshData data = loader.load();
+
+        try {
+            write(file, sourceHash, data);
+        } catch (IOException e) {
+            System.err.println("Could not write mesh cache [" + file + "]: " + e.getMessage());
+        }
+
+        return data::createMesh;
+    }
+
+    /**
+     * returns the path of the cache file for a mesh. the readable part of the name replaces
+     * special characters, so the hash of the unchanged key keeps keys like "sub/dir.obj" and
+     * "sub_dir.obj" apart
+     *
+     * @param source name of the source file
+     * @param variant distinguishes different meshes created from the same source file
+     * @return path of the cache file
+     */
+    public static Path getCacheFile(String source, String variant) {
+        String key = variant + "_" + source;
+        long keyHash = hash(ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)));
+        String name = key.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + String.format("%016x", keyHash);
+        return cacheDirectory.resolve(name + EXTENSION);
+    }
+
+    /**
+     * calculates a 64 bit hash of the content of a file
+     *
+     * @param file file to hash
+     * @return hash of the file content
+     * @throws IOException if the file cant be read
+     */
+    public static long hash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(channel);
+        }
+    }
+
+    /**
+     * calculates a 64 bit hash of all bytes of a channel
+     *
+     * @param channel channel to read
+     * @return hash of the content
+     * @throws IOException if the channel cant be read
+     */
+    public static long hash(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long hash = 0xCBF29CE484222325L;
+        long length = 0;
+
+        int read;
+        while ((read = channel.read(buffer)) >= 0) {
+            length += read;
+            buffer.flip();
+            while (buffer.remaining() >= 8) {
+                hash = mix(hash, buffer.getLong());
+            }
+            buffer.compact();
+        }
+
+        // remaining bytes that do not fill a whole word
+        buffer.flip();
+        long tail = 0;
+        for (int shift = 0; buffer.hasRemaining(); shift += 8) {
+            tail |= (buffer.get() & 0xFFL) << shift;
+        }
+
+        return mix(mix(hash, tail), length);
+    }
+
+    /**
+     * calculates the same hash as hash(ReadableByteChannel) for the bytes between position and
+     * limit of a buffer, for example a memory mapped file. the buffer itself is not changed
+     *
+     * @param content bytes to hash
+     * @return hash of the content
+     */
+    public static long hash(ByteBuffer content) {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long hash = 0xCBF29CE484222325L;
+        long length = buffer.remaining();
+
+        while (buffer.remaining() >= 8) {
+            hash = mix(hash, buffer.getLong());
+        }
+
+        long tail = 0;
+        for (int shift = 0; buffer.hasRemaining(); shift += 8) {
+            tail |= (buffer.get() & 0xFFL) << shift;
+        }
+
+        return mix(mix(hash, tail), length);
+    }
+
+    /**
+     * mixes one word into the hash
+     *
+     * @param hash current hash
+     * @param value next word
+     * @return new hash
+     */
+    private static long mix(long hash, long value) {
+        hash ^= value * 0x9E3779B97F4A7C15L;
+        hash = Long.rotateLeft(hash, 29) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 32);
+    }
+
+    /**
+     * writes mesh data into a cache file
+     * the data is written to a temporary file first that replaces the cache file at the end, so
+     * other loaders never see an incomplete file
+     *
+     * @param file cache file
+     * @param sourceHash content hash of the source file
+     * @param data mesh data
+     * @throws IOException if the file cant be written
+     */
+    public static void write(Path file, long sourceHash, MeshData data) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(sourceHash);
+            buffer.putInt(data.getPositions().length);
+            buffer.putInt(data.getTextCords().length);
+            buffer.putInt(data.getNormals().length);
+            buffer.putInt(data.getTangents().length);
+            buffer.putInt(data.getBiTangents().length);
+            buffer.putInt(data.getJointIDs().length);
+            buffer.putInt(data.getWeights().length);
+            buffer.putInt(data.getIndices().length);
+
+            writeFloats(channel, buffer, data.getPositions());
+            writeFloats(channel, buffer, data.getTextCords());
+            writeFloats(channel, buffer, data.getNormals());
+            writeFloats(channel, buffer, data.getTangents());
+            writeFloats(channel, buffer, data.getBiTangents());
+            writeInts(channel, buffer, data.getJointIDs());
+            writeFloats(channel, buffer, data.getWeights());
+            writeInts(channel, buffer, data.getIndices());
+
+            flush(channel, buffer);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * writes floats through the buffer into the channel
+     *
+     * @param channel target channel
+     * @param buffer write buffer
+     * @param values values to write
+     * @throws IOException if the channel cant be written
+     */
+    private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] values) throws IOException {
+        for (float value : values) {
+            if (buffer.remaining() < Float.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putFloat(value);
+        }
+    }
+
+    /**
+     * writes ints through the buffer into the channel
+     *
+     * @param channel target channel
+     * @param buffer write buffer
+     * @param values values to write
+     * @throws IOException if the channel cant be written
+     */
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        for (int value : values) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(value);
+        }
+    }
+
+    /**
+     * writes the content of the buffer into the channel and clears it
+     *
+     * @param channel target channel
+     * @param buffer write buffer
+     * @throws IOException if the channel cant be written
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * memory maps a cache file
+     *
+     * @param file cache file
+     * @param sourceHash content hash the source file has now
+     * @return the mapped mesh or null if the file does not exist or belongs to another source or version
+     * @throws IOException if the file cant be read
+     */
+    public static MappedMesh read(Path file, long sourceHash) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != sourceHash) {
+                return null;
+            }
+
+            int[] lengths = new int[ARRAYS];
+            long expectedSize = HEADER_SIZE;
+            for (int i = 0; i < ARRAYS; i++) {
+                lengths[i] = buffer.getInt();
+                expectedSize += (long) lengths[i] * 4;
+            }
+            if (lengths[0] % 3 != 0 || expectedSize != size) {
+                return null;
+            }
+
+            int offset = HEADER_SIZE;
+            ByteBuffer[] arrays = new ByteBuffer[ARRAYS];
+            for (int i = 0; i < ARRAYS; i++) {
+                buffer.limit(offset + lengths[i] * 4).position(offset);
+                arrays[i] = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+                offset += lengths[i] * 4;
+            }
+
+            return new MappedMesh(arrays);
+        }
+    }
+
+    /**
+     * vertex data of a memory mapped cache file
+     */
+    public static class MappedMesh {
+
+        /** the eight arrays of the mesh as parts of the mapped file */
+        private final ByteBuffer[] arrays;
+
+        /**
+         * @param arrays mapped arrays in file order
+         */
+        private MappedMesh(ByteBuffer[] arrays) {
+            this.arrays = arrays;
+        }
+
+        /**
+         * @return number of vertices
+         */
+        public int getVertexCount() {
+            return arrays[0].remaining() / (3 * Float.BYTES);
+        }
+
+        /**
+         * creates the mesh from the mapped buffers, has to be called on the open gl thread
+         * on little endian systems open gl reads the mapped file directly, otherwise the values
+         * have to be converted first
+         *
+         * @return new mesh
+         */
+        public Mesh createMesh() {
+            if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                return new Mesh(arrays[0].asFloatBuffer(), arrays[1].asFloatBuffer(), arrays[2].asFloatBuffer(), arrays[3].asFloatBuffer(),
+                        arrays[4].asFloatBuffer(), arrays[5].asIntBuffer(), arrays[6].asFloatBuffer(), arrays[7].asIntBuffer());
+            }
+
+            ByteBuffer[] converted = new ByteBuffer[ARRAYS];
+            try {
+                for (int i = 0; i < ARRAYS; i++) {
+                    converted[i] = MemoryUtil.memAlloc(arrays[i].remaining());
+                    IntBuffer source = arrays[i].asIntBuffer();
+                    IntBuffer target = converted[i].asIntBuffer();
+                    target.put(source);
+                }
+                return new Mesh(converted[0].asFloatBuffer(), converted[1].asFloatBuffer(), converted[2].asFloatBuffer(), converted[3].asFloatBuffer(),
+                        converted[4].asFloatBuffer(), converted[5].asIntBuffer(), converted[6].asFloatBuffer(), converted[7].asIntBuffer());
+            } finally {
+                for (ByteBuffer buffer : converted) {
+                    MemoryUtil.memFree(buffer);
+                }
+            }
+        }
+
+        /**
+         * copies the mapped values into arrays
+         *
+         * @return mesh data with the content of the cache file
+         */
+        public MeshData toMeshData() {
+            return new MeshData(toFloats(arrays[0]), toFloats(arrays[1]), toFloats(arrays[2]), toFloats(arrays[3]),
+                    toFloats(arrays[4]), toInts(arrays[5]), toFloats(arrays[6]), toInts(arrays[7]));
+        }
+
+        private static float[] toFloats(ByteBuffer buffer) {
+            FloatBuffer floats = buffer.asFloatBuffer();
+            float[] result = new float[floats.remaining()];
+            floats.get(result);
+            return result;
+        }
+
+        private static int[] toInts(ByteBuffer buffer) {
+            IntBuffer ints = buffer.asIntBuffer();
+            int[] result = new int[ints.remaining()];
+            ints.get(result);
+            return result;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package engine.general.save;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -73,4 +75,21 @@ public class Resources {
             return list;
         }
     }
+
+    /**
+     * Method opens a resource file (from Resources class classpath)
+     * as a channel to read its raw bytes
+     *
+     * @param filename name of the resource file
+     * @return channel reading the resource file
+     * @throws ClassNotFoundException if Resources.class.getName() cant be found
+     * @throws FileNotFoundException if the resource file cant be found
+     */
+    public static ReadableByteChannel openChannel(String filename) throws Exception {
+        InputStream in = Class.forName(Resources.class.getName()).getResourceAsStream(filename);
+        if(in == null) {
+            throw new FileNotFoundException(filename);
+        }
+        return Channels.newChannel(in);
+    }
 }
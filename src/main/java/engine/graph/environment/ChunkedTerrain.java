@@ -0,0 +1,243 @@
+package engine.graph.environment;
+
+import engine.graph.general.Scene;
+import engine.graph.items.GameItem;
+import engine.graph.items.Material;
+import engine.graph.items.Mesh;
+import engine.render.IndexBuffer;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * terrain drawn as the patches of a quadtree, the level of detail of every patch is chosen each
+ * frame from the camera position
+ *
+ * the patches selected by the quadtree are added to the scene as game items and removed again
+ * when they are no longer selected. the mesh of a patch is created the first time it is selected
+ * and kept until it was not selected for EVICT_FRAMES frames, so moving back and forth does not
+ * rebuild meshes. all patch meshes share one element buffer
+ */
+@SuppressWarnings("unused")
+public class ChunkedTerrain {
+
+    /** number of frames the mesh of a patch is kept after it was selected the last time */
+    public static final int EVICT_FRAMES = 300;
+
+    /** patches and their selection */
+    private final TerrainQuadtree quadtree;
+
+    /** material of all patches */
+    private final Material material;
+
+    /** number of times the texture is repeated over the terrain */
+    private final float textInc;
+
+    /** indices shared by all patch meshes */
+    private final IndexBuffer indices;
+
+    /** per node: mesh and game item of the patch, null until the patch is selected */
+    private final Mesh[] meshes;
+    private final GameItem[] gameItems;
+
+    /** per node: true while the game item of the patch is part of the scene */
+    private final boolean[] active;
+
+    /** per node: frame the patch was selected the last time */
+    private final int[] lastSelected;
+
+    /** nodes with a game item in the scene */
+    private final List<Integer> activeNodes = new ArrayList<>();
+
+    /** game items added to the scene in one update */
+    private final List<GameItem> added = new ArrayList<>();
+
+    /** vertices of a patch while its mesh is built */
+    private final float[] positions;
+    private final float[] textCoords;
+    private final float[] normals;
+    private FloatBuffer positionsBuffer;
+    private FloatBuffer textCoordsBuffer;
+    private FloatBuffer normalsBuffer;
+
+    /** number of updates */
+    private int frame;
+
+    /** number of patch meshes created and deleted by the last update */
+    private int createdMeshes;
+    private int deletedMeshes;
+
+    /** number of patch meshes alive */
+    private int meshCount;
+
+    /**
+     * creates the shared indices, has to be called on the open gl thread
+     *
+     * @param quadtree patches of the terrain
+     * @param material material of all patches
+     * @param textInc number of times the texture is repeated over the terrain
+     */
+    public ChunkedTerrain(TerrainQuadtree quadtree, Material material, float textInc) {
+        this.quadtree = quadtree;
+        this.material = material;
+        this.textInc = textInc;
+        indices = new IndexBuffer(TerrainQuadtree.buildIndices(quadtree.getPatchCells()));
+
+        int nodes = quadtree.getNodeCount();
+        meshes = new Mesh[nodes];
+        gameItems = new GameItem[nodes];
+        active = new boolean[nodes];
+        lastSelected = new int[nodes];
+
+        int vertices = quadtree.getPatchVertexCount();
+        positions = new float[vertices * 3];
+        textCoords = new float[vertices * 2];
+        normals = new float[vertices * 3];
+        positionsBuffer = MemoryUtil.memAllocFloat(vertices * 3);
+        textCoordsBuffer = MemoryUtil.memAllocFloat(vertices * 2);
+        normalsBuffer = MemoryUtil.memAllocFloat(vertices * 3);
+    }
+
+    /**
+     * selects the patches for the camera and updates the game items of the scene, has to be
+     * called on the open gl thread before the scene is rendered
+     *
+     * @param scene scene the patches are drawn in
+     * @param cameraPosition world position of the camera
+     * @param viewProjection projection matrix multiplied with the view matrix, null to keep patches
+     *                       outside of the view
+     */
+    public void update(Scene scene, Vector3f cameraPosition, Matrix4f viewProjection) {
+        frame++;
+        createdMeshes = 0;
+        deletedMeshes = 0;
+
+        int count = quadtree.select(cameraPosition, viewProjection);
+        int[] selected = quadtree.getSelected();
+        added.clear();
+        for (int i = 0; i < count; i++) {
+            int node = selected[i];
+            lastSelected[node] = frame;
+            if (!active[node]) {
+                if (gameItems[node] == null) {
+                    createPatch(node);
+                }
+                active[node] = true;
+                activeNodes.add(node);
+                added.add(gameItems[node]);
+            }
+        }
+
+        // patches that are no longer selected leave the scene, their meshes are kept for a while
+        for (int i = activeNodes.size() - 1; i >= 0; i--) {
+            int node = activeNodes.get(i);
+            if (lastSelected[node] != frame) {
+                scene.removeGameItem(gameItems[node]);
+                active[node] = false;
+                activeNodes.set(i, activeNodes.get(activeNodes.size() - 1));
+                activeNodes.remove(activeNodes.size() - 1);
+            }
+        }
+        if (!added.isEmpty()) {
+            scene.setGameItems(added.toArray(new GameItem[0]));
+        }
+
+        for (int node = 0; node < meshes.length; node++) {
+            if (meshes[node] != null && !active[node] && frame - lastSelected[node] > EVICT_FRAMES) {
+                deletePatch(node);
+            }
+        }
+    }
+
+    /**
+     * builds the mesh and the game item of a patch
+     *
+     * @param node node of the patch
+     */
+    private void createPatch(int node) {
+        quadtree.buildPatch(node, positions, textCoords, normals, textInc);
+        positionsBuffer.clear();
+        positionsBuffer.put(positions).flip();
+        textCoordsBuffer.clear();
+        textCoordsBuffer.put(textCoords).flip();
+        normalsBuffer.clear();
+        normalsBuffer.put(normals).flip();
+
+        Mesh mesh = new Mesh(positionsBuffer, textCoordsBuffer, normalsBuffer, indices);
+        mesh.setMaterial(material);
+        meshes[node] = mesh;
+        gameItems[node] = new GameItem(mesh);
+        meshCount++;
+        createdMeshes++;
+    }
+
+    /**
+     * deletes the mesh of a patch, the shared indices and the material are kept
+     *
+     * @param node node of the patch
+     */
+    private void deletePatch(int node) {
+        meshes[node].deleteBuffers();
+        meshes[node] = null;
+        gameItems[node] = null;
+        meshCount--;
+        deletedMeshes++;
+    }
+
+    /**
+     * @return patches of the terrain, with the statistics of the last selection
+     */
+    public TerrainQuadtree getQuadtree() {
+        return quadtree;
+    }
+
+    /**
+     * @return number of patch meshes created by the last update
+     */
+    public int getCreatedMeshes() {
+        return createdMeshes;
+    }
+
+    /**
+     * @return number of patch meshes deleted by the last update
+     */
+    public int getDeletedMeshes() {
+        return deletedMeshes;
+    }
+
+    /**
+     * @return number of patch meshes alive
+     */
+    public int getMeshCount() {
+        return meshCount;
+    }
+
+    /**
+     * removes the patches from the scene and deletes all meshes, the shared indices and the buffers
+     *
+     * @param scene scene the patches are drawn in
+     */
+    public void cleanup(Scene scene) {
+        for (int node : activeNodes) {
+            scene.removeGameItem(gameItems[node]);
+            active[node] = false;
+        }
+        activeNodes.clear();
+        for (int node = 0; node < meshes.length; node++) {
+            if (meshes[node] != null) {
+                deletePatch(node);
+            }
+        }
+        indices.cleanup();
+        MemoryUtil.memFree(positionsBuffer);
+        MemoryUtil.memFree(textCoordsBuffer);
+        MemoryUtil.memFree(normalsBuffer);
+        positionsBuffer = null;
+        textCoordsBuffer = null;
+        normalsBuffer = null;
+    }
+}
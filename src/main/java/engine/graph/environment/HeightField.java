@@ -0,0 +1,357 @@
+package engine.graph.environment;
+
+import engine.graph.items.Texture;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * grid of heights stored as 16 bit values in one flat row major array
+ *
+ * a height is quantized to 65536 steps between the lowest and the highest height of the field,
+ * so a vertex needs 2 bytes instead of the 4 bytes of a float plus the header of a row array, and
+ * neighbouring rows lie next to each other in memory. raw 16 bit height maps and grey 16 bit png
+ * images are taken over without converting their values. heights can be read per vertex or sampled bilinearly
+ * between the vertices. reading from several threads is safe while no height is changed
+ */
+@SuppressWarnings("unused")
+public class HeightField {
+
+    /** largest quantized value */
+    public static final int MAX_VALUE = 0xFFFF;
+
+    /** maximum value of one pixel (white) of an 8 bit height map, as the height map mesh decoded it */
+    private static final int MAX_COLOR = 255 * 255 * 255;
+
+    /** number of vertices per row and number of rows */
+    private final int columns;
+    private final int rows;
+
+    /** heights of the quantized values 0 and MAX_VALUE */
+    private final float minY;
+    private final float maxY;
+
+    /** height of one quantization step */
+    private final float step;
+
+    /** quantized heights, unsigned, row by row */
+    private final short[] values;
+
+    /**
+     * creates a field with all heights at minY
+     *
+     * @param columns number of vertices per row
+     * @param rows number of rows
+     * @param minY height of the quantized value 0
+     * @param maxY height of the quantized value MAX_VALUE
+     */
+    public HeightField(int columns, int rows, float minY, float maxY) {
+        this.columns = columns;
+        this.rows = rows;
+        this.minY = minY;
+        this.maxY = maxY;
+        step = (maxY - minY) / MAX_VALUE;
+        values = new short[columns * rows];
+    }
+
+    /**
+     * quantizes float heights
+     *
+     * @param heights heights, [row][col]
+     * @param minY lowest height, lower heights are clamped
+     * @param maxY highest height, higher heights are clamped
+     * @return field
+     */
+    public static HeightField fromHeights(float[][] heights, float minY, float maxY) {
+        HeightField field = new HeightField(heights[0].length, heights.length, minY, maxY);
+        for (int row = 0; row < field.rows; row++) {
+            for (int col = 0; col < field.columns; col++) {
+                field.setHeight(row, col, heights[row][col]);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * takes over 16 bit height values, 0 is minY and MAX_VALUE is maxY
+     *
+     * @param samples values row by row between position and limit, read as unsigned
+     * @param columns number of vertices per row
+     * @param rows number of rows
+     * @param minY height of the value 0
+     * @param maxY height of the value MAX_VALUE
+     * @return field
+     */
+    public static HeightField fromSamples(ShortBuffer samples, int columns, int rows, float minY, float maxY) {
+        HeightField field = new HeightField(columns, rows, minY, maxY);
+        samples.duplicate().get(field.values);
+        return field;
+    }
+
+    /**
+     * decodes an 8 bit rgba height map like the height map mesh always did: the color bytes form
+     * one number that is divided by the maximum color. heights decoded outside of minY..maxY widen
+     * the range of the field, so the terrain stays where the float heights put it
+     *
+     * @param image rgba pixels row by row
+     * @param columns width of the image
+     * @param rows height of the image
+     * @param minY lowest height of the terrain
+     * @param maxY highest height of the terrain
+     * @return field
+     */
+    public static HeightField fromImage(ByteBuffer image, int columns, int rows, float minY, float maxY) {
+        float[][] heights = new float[rows][columns];
+        float lowest = minY;
+        float highest = maxY;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                int pixel = (col + row * columns) * 4;
+                int argb = ((0xFF & image.get(pixel + 3)) << 24) | ((0xFF & image.get(pixel)) << 16)
+                        | ((0xFF & image.get(pixel + 1)) << 8) | (0xFF & image.get(pixel + 2));
+                float height = minY + Math.abs(maxY - minY) * ((float) argb / (float) MAX_COLOR);
+                heights[row][col] = height;
+                lowest = Math.min(lowest, height);
+                highest = Math.max(highest, height);
+            }
+        }
+        return fromHeights(heights, lowest, highest);
+    }
+
+    /**
+     * loads a height map from the resources, see load(Path, float, float)
+     *
+     * @param resource name of the height map in the resources
+     * @param minY lowest height of the terrain
+     * @param maxY highest height of the terrain
+     * @return field
+     * @throws Exception if the height map cant be loaded
+     */
+    public static HeightField load(String resource, float minY, float maxY) throws Exception {
+        URL url = Texture.class.getResource(resource);
+        if (url == null) {
+            throw new Exception("Height map [" + resource + "] not found");
+        }
+        return load(Paths.get(url.toURI()), minY, maxY);
+    }
+
+    /**
+     * loads a height map file. files ending in .raw or .r16 are square raw 16 bit little endian
+     * heights, 16 bit png images are converted to grey, which keeps the values of grey images, and
+     * 8 bit images are decoded like the height map mesh always did
+     *
+     * @param file height map file
+     * @param minY lowest height of the terrain
+     * @param maxY highest height of the terrain
+     * @return field
+     * @throws IOException if a raw height map cant be read or doesnt hold a square grid
+     * @throws Exception if the height map cant be loaded
+     */
+    public static HeightField load(Path file, float minY, float maxY) throws Exception {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".raw") || name.endsWith(".r16")) {
+            long bytes = Files.size(file);
+            long side = (long) Math.sqrt(bytes / 2.0);
+            if (side == 0 || side * side * 2 != bytes) {
+                throw new IOException("Raw height map [" + file + "] has " + bytes + " bytes, which are no square grid of 16 bit heights");
+            }
+            return loadRaw(file, (int) side, (int) side, ByteOrder.LITTLE_ENDIAN, minY, maxY);
+        }
+
+        File imageFile = file.toFile();
+        String filePath = imageFile.getAbsolutePath();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+
+            // creating buffers for height, width and channels of the image
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            if (stbi_is_16_bit(filePath)) {
+                ShortBuffer samples = stbi_load_16(filePath, w, h, channels, 1);
+                if (samples == null) {
+                    throw new Exception("Image file [" + filePath + "] not loaded: " + stbi_failure_reason());
+                }
+                try {
+                    return fromSamples(samples, w.get(0), h.get(0), minY, maxY);
+                } finally {
+                    stbi_image_free(samples);
+                }
+            }
+
+            ByteBuffer image = stbi_load(filePath, w, h, channels, 4);
+            if (image == null) {
+                throw new Exception("Image file [" + filePath + "] not loaded: " + stbi_failure_reason());
+            }
+            try {
+                return fromImage(image, w.get(0), h.get(0), minY, maxY);
+            } finally {
+                stbi_image_free(image);
+            }
+        }
+    }
+
+    /**
+     * loads raw 16 bit heights without a header
+     *
+     * @param file raw file, row by row
+     * @param columns number of vertices per row
+     * @param rows number of rows
+     * @param order byte order of the values
+     * @param minY height of the value 0
+     * @param maxY height of the value MAX_VALUE
+     * @return field
+     * @throws IOException if the file cant be read or its size doesnt match the grid
+     */
+    public static HeightField loadRaw(Path file, int columns, int rows, ByteOrder order, float minY, float maxY) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length != (long) columns * rows * 2) {
+            throw new IOException("Raw height map [" + file + "] has " + bytes.length + " bytes, " + columns + " x " + rows + " heights need "
+                    + columns * rows * 2);
+        }
+        return fromSamples(ByteBuffer.wrap(bytes).order(order).asShortBuffer(), columns, rows, minY, maxY);
+    }
+
+    /**
+     * @param row row of the vertex
+     * @param col column of the vertex
+     * @return height of the vertex
+     */
+    public float getHeight(int row, int col) {
+        return minY + (values[row * columns + col] & MAX_VALUE) * step;
+    }
+
+    /**
+     * @param row row of the vertex
+     * @param col column of the vertex
+     * @return quantized height of the vertex
+     */
+    public int getValue(int row, int col) {
+        return values[row * columns + col] & MAX_VALUE;
+    }
+
+    /**
+     * @param row row of the vertex
+     * @param col column of the vertex
+     * @param height new height, clamped to minY..maxY and rounded to the nearest step
+     */
+    public void setHeight(int row, int col, float height) {
+        float value = step != 0 ? (height - minY) / step : 0;
+        values[row * columns + col] = (short) Math.max(0, Math.min(Math.round(value), MAX_VALUE));
+    }
+
+    /**
+     * interpolates bilinearly between the four vertices around a position of the grid, positions
+     * outside of the grid are moved onto its edge
+     *
+     * @param col column, may lie between two columns
+     * @param row row, may lie between two rows
+     * @return height at the position
+     */
+    public float sample(float col, float row) {
+        // plain comparisons, the float Math.min and max check for NaN and -0 and cost more than the lookup
+        if (col < 0) {
+            col = 0;
+        } else if (col > columns - 1) {
+            col = columns - 1;
+        }
+        if (row < 0) {
+            row = 0;
+        } else if (row > rows - 1) {
+            row = rows - 1;
+        }
+        int col0 = (int) col;
+        if (col0 > columns - 2) {
+            col0 = columns - 2;
+        }
+        int row0 = (int) row;
+        if (row0 > rows - 2) {
+            row0 = rows - 2;
+        }
+        float fx = col - col0;
+        float fz = row - row0;
+
+        int index = row0 * columns + col0;
+        int v00 = values[index] & MAX_VALUE;
+        int v10 = values[index + 1] & MAX_VALUE;
+        int v01 = values[index + columns] & MAX_VALUE;
+        int v11 = values[index + columns + 1] & MAX_VALUE;
+        float top = v00 + fx * (v10 - v00);
+        float bottom = v01 + fx * (v11 - v01);
+        return minY + (top + fz * (bottom - top)) * step;
+    }
+
+    /**
+     * samples many positions at once
+     *
+     * @param cols columns of the positions
+     * @param rows rows of the positions
+     * @param dest receives the heights
+     * @param count number of positions
+     */
+    public void sample(float[] cols, float[] rows, float[] dest, int count) {
+        for (int i = 0; i < count; i++) {
+            dest[i] = sample(cols[i], rows[i]);
+        }
+    }
+
+    /**
+     * @return quantized heights row by row, changes are seen by the field
+     */
+    public short[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return number of vertices per row
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return height of the quantized value 0
+     */
+    public float getMinY() {
+        return minY;
+    }
+
+    /**
+     * @return height of the quantized value MAX_VALUE
+     */
+    public float getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return height of one quantization step, the largest rounding error is half of it
+     */
+    public float getStep() {
+        return step;
+    }
+
+    /**
+     * @return bytes of the heights
+     */
+    public long getMemoryBytes() {
+        return (long) values.length * Short.BYTES;
+    }
+}
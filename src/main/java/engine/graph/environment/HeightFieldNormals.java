@@ -0,0 +1,142 @@
+package engine.graph.environment;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * computes the normals, tangents and bi tangents of a height field grid from the positions of its
+ * vertices, 3 floats per vertex laid out row by row
+ *
+ * the normal of an inner vertex is the average of the normals of the four triangles spanned with
+ * its left, lower, right and upper neighbour, the vertices on the border of the grid point up. this
+ * is the computation the height map mesh always did, so the normals are the same to the bit. the
+ * tangent follows the texture coordinate u along x over the surface, the bi tangent v along z.
+ * a vertex only reads the positions of its neighbours and writes its own values, so rectangles of
+ * the grid can be computed on their own: row bands in parallel when the mesh is built and the
+ * area around a height change when the mesh is edited
+ */
+@SuppressWarnings("unused")
+public class HeightFieldNormals {
+
+    /**
+     * computes all vertices of the grid in row bands on the executor, one band per task
+     *
+     * @param positions positions of the vertices
+     * @param width number of vertices per row
+     * @param height number of rows
+     * @param normals receives the normals
+     * @param tangents receives the tangents, null to skip them
+     * @param biTangents receives the bi tangents, null to skip them
+     * @param executor executor the bands are computed on, null to compute them on the calling thread
+     * @param bands number of bands the rows are split into
+     * @throws Exception if a band fails
+     */
+    public static void compute(float[] positions, int width, int height, float[] normals, float[] tangents, float[] biTangents,
+                               ExecutorService executor, int bands) throws Exception {
+        bands = Math.max(1, Math.min(bands, height));
+        if (executor == null || bands == 1) {
+            compute(positions, width, height, normals, tangents, biTangents, 0, 0, width, height);
+            return;
+        }
+
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < bands; i++) {
+            int firstRow = height * i / bands;
+            int endRow = height * (i + 1) / bands;
+            results.add(executor.submit(() -> compute(positions, width, height, normals, tangents, biTangents, 0, firstRow, width, endRow)));
+        }
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+    }
+
+    /**
+     * computes the vertices of a rectangle of the grid
+     *
+     * @param positions positions of the vertices
+     * @param width number of vertices per row
+     * @param height number of rows
+     * @param normals receives the normals
+     * @param tangents receives the tangents, null to skip them
+     * @param biTangents receives the bi tangents, null to skip them
+     * @param firstCol first column of the rectangle
+     * @param firstRow first row of the rectangle
+     * @param endCol column behind the rectangle
+     * @param endRow row behind the rectangle
+     */
+    public static void compute(float[] positions, int width, int height, float[] normals, float[] tangents, float[] biTangents,
+                               int firstCol, int firstRow, int endCol, int endRow) {
+        Vector3f v1 = new Vector3f();
+        Vector3f v2 = new Vector3f();
+        Vector3f v3 = new Vector3f();
+        Vector3f v4 = new Vector3f();
+        Vector3f v12 = new Vector3f();
+        Vector3f v23 = new Vector3f();
+        Vector3f v34 = new Vector3f();
+        Vector3f v41 = new Vector3f();
+        Vector3f normal = new Vector3f();
+        Vector3f tangent = new Vector3f();
+        Vector3f biTangent = new Vector3f();
+
+        for (int row = firstRow; row < endRow; row++) {
+            for (int col = firstCol; col < endCol; col++) {
+                int i0 = (row * width + col) * 3;
+                if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
+                    float x = positions[i0];
+                    float y = positions[i0 + 1];
+                    float z = positions[i0 + 2];
+                    int i1 = i0 - 3;
+                    int i2 = i0 + width * 3;
+                    int i3 = i0 + 3;
+                    int i4 = i0 - width * 3;
+                    v1.set(positions[i1], positions[i1 + 1], positions[i1 + 2]).sub(x, y, z);
+                    v2.set(positions[i2], positions[i2 + 1], positions[i2 + 2]).sub(x, y, z);
+                    v3.set(positions[i3], positions[i3 + 1], positions[i3 + 2]).sub(x, y, z);
+                    v4.set(positions[i4], positions[i4 + 1], positions[i4 + 2]).sub(x, y, z);
+
+                    v1.cross(v2, v12).normalize();
+                    v2.cross(v3, v23).normalize();
+                    v3.cross(v4, v34).normalize();
+                    v4.cross(v1, v41).normalize();
+                    normal.set(v12).add(v23).add(v34).add(v41).normalize();
+
+                    // along x from the left to the right neighbour, straightened against the normal
+                    tangent.set(positions[i3] - positions[i1], positions[i3 + 1] - positions[i1 + 1], positions[i3 + 2] - positions[i1 + 2]);
+                } else {
+                    normal.set(0, 1, 0);
+                    tangent.set(1, 0, 0);
+                }
+                // the normal is normalized a second time like the height map mesh always did
+                normal.normalize();
+                normals[i0] = normal.x;
+                normals[i0 + 1] = normal.y;
+                normals[i0 + 2] = normal.z;
+
+                if (tangents != null) {
+                    tangent.fma(-normal.dot(tangent), normal).normalize();
+                    tangents[i0] = tangent.x;
+                    tangents[i0 + 1] = tangent.y;
+                    tangents[i0 + 2] = tangent.z;
+                }
+                if (biTangents != null) {
+                    if (tangents == null) {
+                        tangent.fma(-normal.dot(tangent), normal).normalize();
+                    }
+                    tangent.cross(normal, biTangent);
+                    biTangents[i0] = biTangent.x;
+                    biTangents[i0 + 1] = biTangent.y;
+                    biTangents[i0 + 2] = biTangent.z;
+                }
+            }
+        }
+    }
+}
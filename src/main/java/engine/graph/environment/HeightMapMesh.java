@@ -1,43 +1,59 @@
 package engine.graph.environment;
 
-import engine.general.Utils;
+import engine.general.collections.FloatArrayBuilder;
+import engine.general.collections.IntArrayBuilder;
+import engine.graph.items.BoundingVolume;
 import engine.graph.items.Material;
 import engine.graph.items.Mesh;
 import engine.graph.items.Texture;
 import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * class used ot generate a terrain from a height map image
+ *
+ * only the height field is kept after the mesh was created, the vertex attributes live in the
+ * vbos. heights can be changed later: the positions, normals, tangents and bi tangents of the
+ * rectangle around the changed heights are computed again from the height field into arrays of
+ * the size of the rectangle and only that part of the vbos is uploaded again
  */
 public class HeightMapMesh {
 
-    /** maximum value of one pixel (white) */
-    private static final int MAX_COLOR = 255 * 255 * 255;
-
     /** start of the mesh on the x axis */
     public static final float START_X = -0.5f;
 
     /** start of the mesh on the z axis */
     public static final float START_Z = -0.5f;
 
-    /** lowest possible point of the mesh */
-    private float minY;
-
-    /** highest possible point of the mesh */
-    private float maxY;
-
     /** mesh of the terrain */
     private Mesh mesh;
 
     /** saves the heights of the terrain vertices */
-    private final float[][] heightArray;
+    private final HeightField heightField;
+
+    /** number of vertices per row and number of rows */
+    private final int width;
+    private final int height;
+
+    /** rectangle of vertices whose heights changed since the last update, empty if first >= end */
+    private int dirtyFirstCol;
+    private int dirtyFirstRow;
+    private int dirtyEndCol;
+    private int dirtyEndRow;
+
+    /** number of vertices recomputed and bytes uploaded by the last region update */
+    private int lastUpdatedVertices;
+    private long lastUploadedBytes;
 
     /**
-     * constructor creating the mesh for the terrain from a height map with a texture
+     * constructor creating the mesh for the terrain from a height map with a texture, the normals
+     * are computed in row bands on the common fork join pool
      *
      * @param minY lowes height of the terrain mesh
      * @param maxY highest height of the terrain mesh
@@ -47,93 +63,154 @@ public class HeightMapMesh {
      * @throws Exception when the height map or the texture cant be loaded
      */
     public HeightMapMesh(float minY, float maxY, ByteBuffer heightMapImage,int width, int height, String textureFile, int textInc) throws Exception {
+        this(HeightField.fromImage(heightMapImage, width, height, minY, maxY), textureFile, textInc);
+    }
 
-        // setting maximum and minimum height value
-        this.minY = minY;
-        this.maxY = maxY;
+    /**
+     * constructor creating the mesh for the terrain from a height field with a texture, the
+     * normals are computed in row bands on the common fork join pool
+     *
+     * @param heightField heights of the vertices, changes of the heights are seen by the field
+     * @param textureFile filepath to the texture file
+     * @param textInc scale of the texture to apply it multiple times in a grid
+     * @throws Exception when the texture cant be loaded
+     */
+    public HeightMapMesh(HeightField heightField, String textureFile, int textInc) throws Exception {
+        this(heightField, textureFile, textInc, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
 
-        heightArray = new float[height][width];
+    /**
+     * constructor creating the mesh for the terrain from a height field with a texture
+     *
+     * @param heightField heights of the vertices, changes of the heights are seen by the field
+     * @param textureFile filepath to the texture file
+     * @param textInc scale of the texture to apply it multiple times in a grid
+     * @param executor executor the normals are computed on in row bands, null for the calling thread
+     * @param bands number of row bands
+     * @throws Exception when the texture cant be loaded
+     */
+    public HeightMapMesh(HeightField heightField, String textureFile, int textInc, ExecutorService executor, int bands) throws Exception {
+        this.heightField = heightField;
+        int width = heightField.getColumns();
+        int height = heightField.getRows();
+        this.width = width;
+        this.height = height;
+
+        // only needed until the buffers are uploaded
+        float[] positions = new float[width * height * 3];
+        float[] normals = new float[width * height * 3];
+        float[] tangents = new float[width * height * 3];
+        float[] biTangents = new float[width * height * 3];
 
         Texture texture = new Texture(textureFile, Texture.FilterMode.NEAREST);
 
-        // used to make the height map fit to the mesh
-        float incX = getXLength() / (width - 1);
-        float incZ = getZLength() / (height - 1);
-
-        // crates the lists to build a mesh
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCords = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-
-        for(int row = 0; row < height; row++) {
-            for(int col = 0; col < width; col++) {
-
-                // create a vertex for the current position
-                positions.add(START_X + col * incX);
-                float currentHeight = getHeight(col, row, width, heightMapImage);
-                heightArray[row][col] = currentHeight;
-                positions.add(currentHeight);
-                positions.add(START_Z + row * incZ);
-
-                // set texture coordinates
-                textCords.add((float) textInc * (float) col / (float) width);
-                textCords.add((float) textInc * (float) row / (float) height);
-
-                // create indices
-                if(col < width - 1 && row < height - 1) {
-
-                    // set indices
-                    int leftTop = row * width + col;
-                    int leftBottom = (row + 1) * width + col;
-                    int rightBottom = (row + 1) * width + col + 1;
-                    int rightTop = row * width + col + 1;
-
-                    // add indices for first vertex
-                    indices.add(leftTop);
-                    indices.add(leftBottom);
-                    indices.add(rightTop);
-
-                    // add indices for second vertex
-                    indices.add(rightTop);
-                    indices.add(leftBottom);
-                    indices.add(rightBottom);
+        // crates the off heap builders, their buffers are uploaded to the mesh directly
+        FloatArrayBuilder textCords = new FloatArrayBuilder(width * height * 2, true);
+        IntArrayBuilder indices = new IntArrayBuilder((width - 1) * (height - 1) * 6, true);
+        FloatBuffer positionsBuffer = null;
+        FloatBuffer normalsBuffer = null;
+        FloatBuffer tangentsBuffer = null;
+        FloatBuffer biTangentsBuffer = null;
+
+        try {
+            computePositions(heightField, 0, 0, width, height, positions);
+
+            for(int row = 0; row < height; row++) {
+                for(int col = 0; col < width; col++) {
+
+                    // set texture coordinates
+                    textCords.add((float) textInc * (float) col / (float) width, (float) textInc * (float) row / (float) height);
+
+                    // create indices
+                    if(col < width - 1 && row < height - 1) {
+
+                        // set indices
+                        int leftTop = row * width + col;
+                        int leftBottom = (row + 1) * width + col;
+                        int rightBottom = (row + 1) * width + col + 1;
+                        int rightTop = row * width + col + 1;
+
+                        // add indices for first vertex
+                        indices.add(leftTop, leftBottom, rightTop);
+
+                        // add indices for second vertex
+                        indices.add(rightTop, leftBottom, rightBottom);
+                    }
                 }
             }
+
+            HeightFieldNormals.compute(positions, width, height, normals, tangents, biTangents, executor, bands);
+
+            positionsBuffer = MemoryUtil.memAllocFloat(positions.length);
+            positionsBuffer.put(positions).flip();
+            normalsBuffer = MemoryUtil.memAllocFloat(normals.length);
+            normalsBuffer.put(normals).flip();
+            tangentsBuffer = MemoryUtil.memAllocFloat(tangents.length);
+            tangentsBuffer.put(tangents).flip();
+            biTangentsBuffer = MemoryUtil.memAllocFloat(biTangents.length);
+            biTangentsBuffer.put(biTangents).flip();
+            this.mesh = new Mesh(positionsBuffer, textCords.getBuffer(), normalsBuffer, tangentsBuffer, biTangentsBuffer,
+                    BufferUtils.createIntBuffer(0), BufferUtils.createFloatBuffer(0), indices.getBuffer());
+        } finally {
+            textCords.free();
+            indices.free();
+            MemoryUtil.memFree(positionsBuffer);
+            MemoryUtil.memFree(normalsBuffer);
+            MemoryUtil.memFree(tangentsBuffer);
+            MemoryUtil.memFree(biTangentsBuffer);
         }
 
-        float[] posArr = Utils.listToArray(positions);
-        int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
-        float[] textCordsArr = Utils.listToArray(textCords);
-        float[] normalsArr = calcNormals(posArr, width, height);
-        this.mesh = new Mesh(posArr, textCordsArr, normalsArr, indicesArr);
         Material material = new Material(texture, 0.0f);
         mesh.setMaterial(material);
     }
 
     /**
-     * calculates the height of vertex of the terrain from the color of the corresponding height
-     * map pixel
+     * writes the positions of a rectangle of vertices, the heights come from the height field and
+     * the grid is stretched over the x and z length of the mesh
      *
-     * @param x column of the vertex of the mesh and the height map pixel
-     * @param z row of the vertex of the mesh and the height map pixel
-     * @param width width of the height map image
-     * @param buffer buffer containing the height map image
-     * @return a height between minY and maxY
+     * @param heightField heights of the vertices
+     * @param firstCol first column of the rectangle
+     * @param firstRow first row of the rectangle
+     * @param endCol column behind the rectangle
+     * @param endRow row behind the rectangle
+     * @param positions receives 3 floats per vertex, row by row
      */
-    private Float getHeight(int x, int z, int width, ByteBuffer buffer) {
-
-        // accessing the color bytes
-        //noinspection PointlessArithmeticExpression
-        byte r = buffer.get(x * 4 + 0 + z * 4 * width);
-        byte g = buffer.get(x * 4 + 1 + z * 4 * width);
-        byte b = buffer.get(x * 4 + 2 + z * 4 * width);
-        byte a = buffer.get(x * 4 + 3 + z * 4 * width);
-
-        // combining the color bytes to a number
-        int argb = ((0xFF & a) << 24) | ((0xFF & r) << 16) | ((0xFF & g) << 8) | (0xFF & b);
+    public static void computePositions(HeightField heightField, int firstCol, int firstRow, int endCol, int endRow, float[] positions) {
+        // used to make the height map fit to the mesh
+        float incX = getXLength() / (heightField.getColumns() - 1);
+        float incZ = getZLength() / (heightField.getRows() - 1);
+        int vertex = 0;
+        for (int row = firstRow; row < endRow; row++) {
+            for (int col = firstCol; col < endCol; col++) {
+                positions[vertex++] = START_X + col * incX;
+                positions[vertex++] = heightField.getHeight(row, col);
+                positions[vertex++] = START_Z + row * incZ;
+            }
+        }
+    }
 
-        // returns a value for the y coordinate between minY and maxY
-        return this.minY + Math.abs(this.maxY - this.minY) * ((float) argb/(float) MAX_COLOR);
+    /**
+     * computes the vertex attributes of a rectangle of the grid from the heights alone. the normals
+     * read the neighbours of a vertex, so the positions are computed with a border of one vertex
+     * around the rectangle where the grid has one. a vertex of the rectangle lies on the border of
+     * the computed grid only where it lies on the border of the whole grid, so the attributes are
+     * the same to the bit as computed for the whole grid
+     *
+     * @param heightField heights of the vertices
+     * @param firstCol first column of the rectangle
+     * @param firstRow first row of the rectangle
+     * @param endCol column behind the rectangle
+     * @param endRow row behind the rectangle
+     * @return attributes of the rectangle and its border
+     */
+    public static Region computeRegion(HeightField heightField, int firstCol, int firstRow, int endCol, int endRow) {
+        Region region = new Region(Math.max(firstCol - 1, 0), Math.max(firstRow - 1, 0),
+                Math.min(endCol + 1, heightField.getColumns()), Math.min(endRow + 1, heightField.getRows()));
+        computePositions(heightField, region.borderFirstCol, region.borderFirstRow, region.borderFirstCol + region.columns,
+                region.borderFirstRow + region.rows, region.positions);
+        HeightFieldNormals.compute(region.positions, region.columns, region.rows, region.normals, region.tangents, region.biTangents,
+                firstCol - region.borderFirstCol, firstRow - region.borderFirstRow, endCol - region.borderFirstCol, endRow - region.borderFirstRow);
+        return region;
     }
 
     public static float getXLength() {
@@ -149,7 +226,7 @@ public class HeightMapMesh {
     }
 
     /**
-     * method returns the content of the heightArray at a specific location
+     * method returns the content of the height field at a specific location
      * it returns the height of a vertex at a specific position
      *
      * @param row of the vertex
@@ -158,99 +235,221 @@ public class HeightMapMesh {
      */
     public float getHeight(int row, int col) {
         float result = 0;
-        if(row >= 0 && row < heightArray.length) {
-            if(col >= 0 && col < heightArray[row].length) {
-                result = heightArray[row][col];
+        if(row >= 0 && row < height) {
+            if(col >= 0 && col < width) {
+                result = heightField.getHeight(row, col);
             }
         }
         return result;
     }
 
     /**
-     * calculates the normals of the terrain form the positions of the vertices
+     * @return heights of the vertices
+     */
+    public HeightField getHeightField() {
+        return heightField;
+    }
+
+    /**
+     * changes the height of a vertex, the mesh is changed by the next updateRegion
      *
-     * @param posArr positions of the vertices
-     * @param width width of the height map/ terrain
-     * @param height height of the height map/ terrain
-     * @return array of normals of the terrain
+     * @param row row of the vertex
+     * @param col column of the vertex
+     * @param value new height, clamped to the range of the height field and rounded to its steps
      */
-    private float[] calcNormals(float[] posArr, int width, int height) {
-
-        // creates vectors needed for the calculation
-        Vector3f v0 = new Vector3f();
-        Vector3f v1 = new Vector3f();
-        Vector3f v2 = new Vector3f();
-        Vector3f v3 = new Vector3f();
-        Vector3f v4 = new Vector3f();
-        Vector3f v12 = new Vector3f();
-        Vector3f v23 = new Vector3f();
-        Vector3f v34 = new Vector3f();
-        Vector3f v41 = new Vector3f();
-
-        // creates the result list
-        List<Float> normals = new ArrayList<>();
-
-        Vector3f normal = new Vector3f();
-
-        for(int row = 0; row < height; row++) {
-            for( int col = 0; col < width; col++) {
-                if(row > 0 && row < height - 1 && col > 0 && col < width - 1) {
-
-                    int i0 = row * width * 3 + col * 3;
-                    v0.x = posArr[i0];
-                    v0.y = posArr[i0 + 1];
-                    v0.z = posArr[i0 + 2];
-
-                    int i1 = row * width * 3 + (col - 1) * 3;
-                    v1.x = posArr[i1];
-                    v1.y = posArr[i1 + 1];
-                    v1.z = posArr[i1 + 2];
-                    v1 = v1.sub(v0);
-
-                    int i2 = (row + 1) * width * 3 + col * 3;
-                    v2.x = posArr[i2];
-                    v2.y = posArr[i2 + 1];
-                    v2.z = posArr[i2 + 2];
-                    v2 = v2.sub(v0);
-
-                    int i3 = row * width * 3 + (col + 1) * 3;
-                    v3.x = posArr[i3];
-                    v3.y = posArr[i3 + 1];
-                    v3.z = posArr[i3 + 2];
-                    v3 = v3.sub(v0);
-
-                    int i4 = (row - 1) * width * 3 + col * 3;
-                    v4.x = posArr[i4];
-                    v4.y = posArr[i4 + 1];
-                    v4.z = posArr[i4 + 2];
-                    v4 = v4.sub(v0);
-
-                    v1.cross(v2, v12);
-                    v12.normalize();
-
-                    v2.cross(v3, v23);
-                    v23.normalize();
-
-                    v3.cross(v4, v34);
-                    v34.normalize();
-
-                    v4.cross(v1, v41);
-                    v41.normalize();
-
-                    normal = v12.add(v23).add(v34).add(v41);
-                    normal.normalize();
-                } else {
-                    normal.x = 0;
-                    normal.y = 1;
-                    normal.z = 0;
-                }
-                normal.normalize();
-                normals.add(normal.x);
-                normals.add(normal.y);
-                normals.add(normal.z);
+    public void setHeight(int row, int col, float value) {
+        heightField.setHeight(row, col, value);
+        if (dirtyFirstCol >= dirtyEndCol || dirtyFirstRow >= dirtyEndRow) {
+            dirtyFirstCol = col;
+            dirtyFirstRow = row;
+            dirtyEndCol = col + 1;
+            dirtyEndRow = row + 1;
+        } else {
+            dirtyFirstCol = Math.min(dirtyFirstCol, col);
+            dirtyFirstRow = Math.min(dirtyFirstRow, row);
+            dirtyEndCol = Math.max(dirtyEndCol, col + 1);
+            dirtyEndRow = Math.max(dirtyEndRow, row + 1);
+        }
+    }
+
+    /**
+     * changes the heights of a rectangle of vertices and updates the mesh, for example for a crater.
+     * has to be called on the open gl thread
+     *
+     * @param firstRow row of the first vertex
+     * @param firstCol column of the first vertex
+     * @param values new heights, [row][col], cut off at the edges of the grid
+     */
+    public void setHeights(int firstRow, int firstCol, float[][] values) {
+        for (int row = Math.max(firstRow, 0); row < Math.min(firstRow + values.length, height); row++) {
+            float[] rowValues = values[row - firstRow];
+            for (int col = Math.max(firstCol, 0); col < Math.min(firstCol + rowValues.length, width); col++) {
+                setHeight(row, col, rowValues[col - firstCol]);
             }
         }
+        updateRegion();
+    }
+
+    /**
+     * computes the positions, normals, tangents and bi tangents of the vertices around the heights
+     * changed since the last update from the height field and uploads only that part of the vbos
+     * with glBufferSubData. the normals of the neighbours of a changed vertex change too, so the
+     * rectangle grows by one vertex. has to be called on the open gl thread
+     */
+    public void updateRegion() {
+        lastUpdatedVertices = 0;
+        lastUploadedBytes = 0;
+        if (dirtyFirstCol >= dirtyEndCol || dirtyFirstRow >= dirtyEndRow) {
+            return;
+        }
+        int firstCol = Math.max(dirtyFirstCol - 1, 0);
+        int firstRow = Math.max(dirtyFirstRow - 1, 0);
+        int endCol = Math.min(dirtyEndCol + 1, width);
+        int endRow = Math.min(dirtyEndRow + 1, height);
+        Region region = computeRegion(heightField, firstCol, firstRow, endCol, endRow);
+        lastUpdatedVertices = (endCol - firstCol) * (endRow - firstRow);
+        updateBounds(dirtyFirstCol, dirtyFirstRow, dirtyEndCol, dirtyEndRow);
+
+        // whole rows are one range of the vbos, otherwise every row is its own range
+        boolean wholeRows = firstCol == 0 && endCol == width;
+        int rangeFloats = wholeRows ? (endRow - firstRow) * width * 3 : (endCol - firstCol) * 3;
+        FloatBuffer range = MemoryUtil.memAllocFloat(rangeFloats);
+        try {
+            for (int row = firstRow; row < endRow; row = wholeRows ? endRow : row + 1) {
+                int first = (row * width + firstCol) * 3;
+                int regionFirst = region.getOffset(row, firstCol);
+                uploadRange(0, region.positions, regionFirst, first, rangeFloats, range);
+                uploadRange(2, region.normals, regionFirst, first, rangeFloats, range);
+                uploadRange(3, region.tangents, regionFirst, first, rangeFloats, range);
+                uploadRange(4, region.biTangents, regionFirst, first, rangeFloats, range);
+            }
+        } finally {
+            MemoryUtil.memFree(range);
+        }
+        dirtyFirstCol = dirtyEndCol = dirtyFirstRow = dirtyEndRow = 0;
+    }
+
+    /**
+     * uploads a range of a vertex attribute
+     *
+     * @param index index of the vbo in the mesh
+     * @param values values of the attribute in the region
+     * @param valuesFirst index of the first float in the values
+     * @param first index of the first float in the vbo
+     * @param length number of floats
+     * @param range buffer used for the upload
+     */
+    private void uploadRange(int index, float[] values, int valuesFirst, int first, int length, FloatBuffer range) {
+        range.clear();
+        range.put(values, valuesFirst, length).flip();
+        mesh.updateFloatVBO(index, first, range);
+        lastUploadedBytes += (long) length * Float.BYTES;
+    }
+
+    /**
+     * grows the bounds of the mesh if the changed heights leave them, they are not shrunk
+     */
+    private void updateBounds(int firstCol, int firstRow, int endCol, int endRow) {
+        BoundingVolume bounds = mesh.getBounds();
+        float lowest = bounds.getMin().y;
+        float highest = bounds.getMax().y;
+        for (int row = firstRow; row < endRow; row++) {
+            for (int col = firstCol; col < endCol; col++) {
+                lowest = Math.min(lowest, heightField.getHeight(row, col));
+                highest = Math.max(highest, heightField.getHeight(row, col));
+            }
+        }
+        if (lowest < bounds.getMin().y || highest > bounds.getMax().y) {
+            Vector3f min = new Vector3f(bounds.getMin().x, lowest, bounds.getMin().z);
+            Vector3f max = new Vector3f(bounds.getMax().x, highest, bounds.getMax().z);
+            Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+            // the corners of the box enclose every vertex
+            mesh.setBounds(new BoundingVolume(min, max, center, center.distance(max)));
+        }
+    }
+
+    /**
+     * @return bytes the mesh keeps on the heap: the height field, the vertex attributes only live
+     * in the vbos and the arrays of a region update are dropped after the upload
+     */
+    public long getMemoryBytes() {
+        return heightField.getMemoryBytes();
+    }
 
-        return Utils.listToArray(normals);
+    /**
+     * @return number of vertices recomputed by the last region update
+     */
+    public int getLastUpdatedVertices() {
+        return lastUpdatedVertices;
+    }
+
+    /**
+     * @return bytes uploaded by the last region update
+     */
+    public long getLastUploadedBytes() {
+        return lastUploadedBytes;
+    }
+
+    /**
+     * vertex attributes of a rectangle of the grid and the border of one vertex around it, 3 floats
+     * per vertex row by row. the attributes of the border vertices are not computed
+     */
+    public static class Region {
+
+        /** first vertex of the computed grid including the border */
+        private final int borderFirstCol;
+        private final int borderFirstRow;
+
+        /** size of the computed grid including the border */
+        private final int columns;
+        private final int rows;
+
+        private final float[] positions;
+        private final float[] normals;
+        private final float[] tangents;
+        private final float[] biTangents;
+
+        private Region(int borderFirstCol, int borderFirstRow, int borderEndCol, int borderEndRow) {
+            this.borderFirstCol = borderFirstCol;
+            this.borderFirstRow = borderFirstRow;
+            columns = borderEndCol - borderFirstCol;
+            rows = borderEndRow - borderFirstRow;
+            positions = new float[columns * rows * 3];
+            normals = new float[columns * rows * 3];
+            tangents = new float[columns * rows * 3];
+            biTangents = new float[columns * rows * 3];
+        }
+
+        /**
+         * @param row row of the vertex in the whole grid
+         * @param col column of the vertex in the whole grid
+         * @return index of the first float of the vertex in the arrays of the region
+         */
+        public int getOffset(int row, int col) {
+            return ((row - borderFirstRow) * columns + col - borderFirstCol) * 3;
+        }
+
+        public float[] getPositions() {
+            return positions;
+        }
+
+        public float[] getNormals() {
+            return normals;
+        }
+
+        public float[] getTangents() {
+            return tangents;
+        }
+
+        public float[] getBiTangents() {
+            return biTangents;
+        }
+
+        /**
+         * @return bytes of the arrays of the region
+         */
+        public long getMemoryBytes() {
+            return (long) positions.length * 4 * Float.BYTES;
+        }
     }
 }
@@ -1,45 +1,62 @@
 package engine.graph.environment;
 
-import engine.graph.items.Texture;
+import java.nio.ByteBuffer;
 
-import static org.lwjgl.opengl.GL11.GL_DEPTH_COMPONENT;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
 import static org.lwjgl.opengl.GL30.*;
 
 /**
  * class handles the shadow map
  * it takes care of the depth map texture and the framebuffer objects used
+ *
+ * the depth map is an array texture with one layer per cascade of the cascaded shadow map,
+ * the framebuffer renders into one layer at a time
  */
 public class ShadowMap {
 
-    /** width of the shadow map */
+    /** width of one layer of the shadow map */
     public static final int SHADOW_MAP_WIDTH = 1024;
 
-    /** height of the shadow map */
+    /** height of one layer of the shadow map */
     public static final int SHADOW_MAP_HEIGHT = 1024;
 
     /** id of the depth map framebuffer object */
     private final int depthMapFBO;
 
-    /** texture storing the depth value of this shadow map */
-    private  final Texture depthMap;
+    /** id of the array texture storing the depth values of the cascades */
+    private final int depthMapId;
+
+    /** number of layers of the depth map */
+    private final int layers;
 
     /**
      * constructor creating the texture end the framebuffer objects
      * usd by the shadow map
      *
+     * @param layers number of layers, one per cascade
      * @throws Exception if the framebuffer could not be created
      */
-    public ShadowMap() throws Exception {
+    public ShadowMap(int layers) throws Exception {
+        this.layers = layers;
 
         // create a FBO to render the depth map
         depthMapFBO = glGenFramebuffers();
 
-        // create the depth map texture
-        depthMap = new Texture(SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, GL_DEPTH_COMPONENT);
-
-        // attach the depth map texture to the FBO
+        // create the depth map array texture
+        depthMapId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, depthMapId);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_DEPTH_COMPONENT, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, layers, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+
+        // attach the first layer to the FBO
         glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthMap.getId(), 0);
+        glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthMapId, 0, 0);
 
         // set only depth
         glDrawBuffer(GL_NONE);
@@ -53,16 +70,33 @@ public class ShadowMap {
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
-    public Texture getDepthMapTexture() {
-        return depthMap;
+    /**
+     * binds the framebuffer and attaches a layer of the depth map
+     *
+     * @param layer layer to render into
+     */
+    public void bindLayer(int layer) {
+        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
+        glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthMapId, 0, layer);
+    }
+
+    /**
+     * @return id of the array texture, bound to GL_TEXTURE_2D_ARRAY
+     */
+    public int getDepthMapId() {
+        return depthMapId;
     }
 
     public int getDepthMapFBO() {
         return depthMapFBO;
     }
 
+    public int getLayers() {
+        return layers;
+    }
+
     public void cleanup() {
         glDeleteFramebuffers(depthMapFBO);
-        depthMap.cleanup();
+        glDeleteTextures(depthMapId);
     }
 }
@@ -0,0 +1,571 @@
+package engine.graph.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * terrain without bounds streamed in square tiles around the camera
+ *
+ * the world is a grid of tiles of tileCells x tileCells cells. every update the tiles closer to
+ * the camera than the residency radius that are neither resident nor loading are requested,
+ * nearest first. a worker thread samples the heights of a requested tile from the height source
+ * and computes its normals into a compact TerrainTile. the finished tiles are handed to the tile
+ * listener by the next updates on the calling thread, at most maxUploadsPerUpdate per update, so
+ * the listener can create open gl objects. tiles farther away than the residency radius plus the
+ * eviction margin are evicted and requests for them are cancelled, the margin keeps tiles on the
+ * edge from being loaded and evicted again while the camera moves back and forth. only a few
+ * requests are in flight at once, so a tile that becomes near is generated before the queued far
+ * ones. the terrain itself never calls open gl, so with a listener that does not either it runs
+ * without a graphics context
+ */
+@SuppressWarnings("unused")
+public class StreamingTerrain {
+
+    /** default distance from the camera in world units up to which tiles are loaded */
+    public static final float DEFAULT_RESIDENCY_RADIUS = 512;
+
+    /** default distance beyond the residency radius after which tiles are evicted */
+    public static final float DEFAULT_EVICTION_MARGIN = 64;
+
+    /** default maximum number of tiles handed to the listener per update */
+    public static final int DEFAULT_MAX_UPLOADS = 4;
+
+    /**
+     * heights of the infinite grid, called on worker threads
+     */
+    @FunctionalInterface
+    public interface HeightSource {
+
+        /**
+         * @param gx column of the grid point, may be negative
+         * @param gz row of the grid point, may be negative
+         * @return height between 0 for minY and 1 for maxY, values outside are clamped
+         * @throws Exception if the height cant be provided, for example a tile image cant be read
+         */
+        float getHeight(int gx, int gz) throws Exception;
+    }
+
+    /**
+     * receives the tiles becoming resident and being evicted, called on the thread calling update
+     */
+    public interface TileListener {
+
+        /**
+         * @param tile tile that became resident
+         * @throws Exception if the tile cant be used, it is not made resident then
+         */
+        void tileLoaded(TerrainTile tile) throws Exception;
+
+        /**
+         * @param tile resident tile that is evicted
+         */
+        void tileEvicted(TerrainTile tile);
+    }
+
+    /** heights of the grid */
+    private final HeightSource source;
+
+    /** receives the resident tiles */
+    private final TileListener listener;
+
+    /** number of cells of a tile along each side */
+    private final int tileCells;
+
+    /** world distance between two heights */
+    private final float cellSize;
+
+    /** world heights of the source heights 0 and 1 */
+    private final float minY;
+    private final float maxY;
+
+    /** runs the generation of the tiles */
+    private final ExecutorService executor;
+
+    /** true if the executor was created by the terrain and has to be shut down by it */
+    private final boolean ownsExecutor;
+
+    /** resident tiles by key */
+    private final Map<Long, TerrainTile> resident = new HashMap<>();
+
+    /** requests in flight by key */
+    private final Map<Long, Request> loading = new HashMap<>();
+
+    /** keys of tiles that could not be generated, they are not requested again */
+    private final Set<Long> failed = new HashSet<>();
+
+    /** requests finished by the workers */
+    private final Queue<Request> finished = new ConcurrentLinkedQueue<>();
+
+    /** finished requests taken from the queue but not handed to the listener yet */
+    private final List<Request> ready = new ArrayList<>();
+
+    /** candidates of an update, distance bits in the upper and index in the lower half */
+    private long[] candidates = new long[64];
+    private long[] candidateKeys = new long[64];
+
+    /** distance from the camera up to which tiles are loaded */
+    private float residencyRadius = DEFAULT_RESIDENCY_RADIUS;
+
+    /** distance beyond the residency radius after which tiles are evicted */
+    private float evictionMargin = DEFAULT_EVICTION_MARGIN;
+
+    /** maximum number of requests in flight */
+    private int maxLoading;
+
+    /** maximum number of tiles handed to the listener per update */
+    private int maxUploadsPerUpdate = DEFAULT_MAX_UPLOADS;
+
+    /** statistics of the last update */
+    private int requestedCount;
+    private int loadedCount;
+    private int evictedCount;
+    private int cancelledCount;
+    private int discardedCount;
+
+    /** bytes of the heights and normals of all resident tiles */
+    private long residentBytes;
+
+    /**
+     * creates a terrain with its own pool of daemon worker threads, one less than there are cores
+     *
+     * @param source heights of the grid, called on worker threads
+     * @param listener receives the resident tiles
+     * @param tileCells number of cells of a tile along each side
+     * @param cellSize world distance between two heights
+     * @param minY world height of the source height 0
+     * @param maxY world height of the source height 1
+     */
+    public StreamingTerrain(HeightSource source, TileListener listener, int tileCells, float cellSize, float minY, float maxY) {
+        this(source, listener, tileCells, cellSize, minY, maxY, Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+                    Thread thread = new Thread(runnable, "terrain-tile-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }), true);
+    }
+
+    /**
+     * creates a terrain generating its tiles on the given executor, the executor is not shut down
+     * by cleanup. an executor running the tasks directly makes the terrain fully deterministic
+     *
+     * @param source heights of the grid, called on worker threads
+     * @param listener receives the resident tiles
+     * @param tileCells number of cells of a tile along each side
+     * @param cellSize world distance between two heights
+     * @param minY world height of the source height 0
+     * @param maxY world height of the source height 1
+     * @param executor generates the tiles
+     */
+    public StreamingTerrain(HeightSource source, TileListener listener, int tileCells, float cellSize, float minY, float maxY,
+                            ExecutorService executor) {
+        this(source, listener, tileCells, cellSize, minY, maxY, executor, false);
+    }
+
+    private StreamingTerrain(HeightSource source, TileListener listener, int tileCells, float cellSize, float minY, float maxY,
+                             ExecutorService executor, boolean ownsExecutor) {
+        this.source = source;
+        this.listener = listener;
+        this.tileCells = tileCells;
+        this.cellSize = cellSize;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        maxLoading = 2 * Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * evicts the far tiles, hands finished tiles to the listener and requests the missing near
+     * tiles, has to be called once per frame on the thread the listener expects
+     *
+     * @param x world x of the camera
+     * @param z world z of the camera
+     */
+    public void update(float x, float z) {
+        requestedCount = 0;
+        loadedCount = 0;
+        evictedCount = 0;
+        cancelledCount = 0;
+        discardedCount = 0;
+        float evictionRadius = residencyRadius + evictionMargin;
+
+        // far tiles first, so their memory is free before new tiles arrive
+        Iterator<TerrainTile> tiles = resident.values().iterator();
+        while (tiles.hasNext()) {
+            TerrainTile tile = tiles.next();
+            if (getDistance(tile.getTileX(), tile.getTileZ(), x, z) > evictionRadius) {
+                tiles.remove();
+                residentBytes -= tile.getMemoryBytes();
+                evictedCount++;
+                listener.tileEvicted(tile);
+            }
+        }
+        Iterator<Request> requests = loading.values().iterator();
+        while (requests.hasNext()) {
+            Request request = requests.next();
+            if (getDistance(request.tileX, request.tileZ, x, z) > evictionRadius) {
+                request.cancelled = true;
+                requests.remove();
+                cancelledCount++;
+            }
+        }
+
+        processFinished(x, z);
+        requestTiles(x, z);
+    }
+
+    /**
+     * hands finished tiles that are still wanted to the listener, nearest first
+     */
+    private void processFinished(float x, float z) {
+        Request request;
+        while ((request = finished.poll()) != null) {
+            // a request that was cancelled while it was generated is not in the map anymore
+            if (loading.get(request.key) != request) {
+                discardedCount++;
+                continue;
+            }
+            if (request.error != null) {
+                loading.remove(request.key);
+                fail(request.key, request.error);
+                continue;
+            }
+            ready.add(request);
+        }
+        for (int i = ready.size() - 1; i >= 0; i--) {
+            if (loading.get(ready.get(i).key) != ready.get(i)) {
+                ready.remove(i);
+                discardedCount++;
+            }
+        }
+
+        ready.sort((a, b) -> Float.compare(getDistance(a.tileX, a.tileZ, x, z), getDistance(b.tileX, b.tileZ, x, z)));
+        Iterator<Request> requests = ready.iterator();
+        while (requests.hasNext() && loadedCount < maxUploadsPerUpdate) {
+            request = requests.next();
+            requests.remove();
+            loading.remove(request.key);
+            try {
+                listener.tileLoaded(request.tile);
+            } catch (Throwable e) {
+                fail(request.key, e);
+                continue;
+            }
+            resident.put(request.key, request.tile);
+            residentBytes += request.tile.getMemoryBytes();
+            loadedCount++;
+        }
+    }
+
+    /**
+     * requests the missing tiles inside of the residency radius, nearest first, until the
+     * maximum number of requests is in flight
+     */
+    private void requestTiles(float x, float z) {
+        float tileSize = getTileSize();
+        int firstX = (int) Math.floor((x - residencyRadius) / tileSize);
+        int lastX = (int) Math.floor((x + residencyRadius) / tileSize);
+        int firstZ = (int) Math.floor((z - residencyRadius) / tileSize);
+        int lastZ = (int) Math.floor((z + residencyRadius) / tileSize);
+
+        int count = 0;
+        for (int tileZ = firstZ; tileZ <= lastZ; tileZ++) {
+            for (int tileX = firstX; tileX <= lastX; tileX++) {
+                float distance = getDistance(tileX, tileZ, x, z);
+                long key = getKey(tileX, tileZ);
+                if (distance > residencyRadius || resident.containsKey(key) || loading.containsKey(key) || failed.contains(key)) {
+                    continue;
+                }
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                    candidateKeys = Arrays.copyOf(candidateKeys, count * 2);
+                }
+                // distances are not negative, so their bits sort like the distances
+                candidates[count] = ((long) Float.floatToIntBits(distance) << 32) | count;
+                candidateKeys[count] = key;
+                count++;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+
+        for (int i = 0; i < count && loading.size() < maxLoading; i++) {
+            long key = candidateKeys[(int) candidates[i]];
+            Request request = new Request(key, (int) (key >> 32), (int) key);
+            loading.put(key, request);
+            try {
+                executor.execute(() -> generate(request));
+            } catch (RejectedExecutionException e) {
+                loading.remove(key);
+                fail(key, e);
+                continue;
+            }
+            requestedCount++;
+        }
+    }
+
+    /**
+     * generates the tile of a request, runs on a worker thread
+     *
+     * @param request request
+     */
+    private void generate(Request request) {
+        if (request.cancelled) {
+            finished.add(request);
+            return;
+        }
+        try {
+            request.tile = TerrainTile.generate(request.tileX, request.tileZ, tileCells, cellSize, minY, maxY, source);
+        } catch (Throwable e) {
+            request.error = e;
+        }
+        finished.add(request);
+    }
+
+    /**
+     * @param key key of a tile that could not be generated or used
+     * @param error reason
+     */
+    private void fail(long key, Throwable error) {
+        failed.add(key);
+        System.err.println("Could not load terrain tile [" + (int) (key >> 32) + ", " + (int) key + "]: " + error);
+    }
+
+    /**
+     * @param x world x coordinate
+     * @param z world z coordinate
+     * @return height of the terrain at the position or TerrainHeightQuery.NO_HEIGHT if the tile
+     *         under it is not resident
+     */
+    public float getHeight(float x, float z) {
+        float tileSize = getTileSize();
+        TerrainTile tile = resident.get(getKey((int) Math.floor(x / tileSize), (int) Math.floor(z / tileSize)));
+        return tile != null ? tile.getHeight(x, z) : TerrainHeightQuery.NO_HEIGHT;
+    }
+
+    /**
+     * @param tileX column of the tile
+     * @param tileZ row of the tile
+     * @return the resident tile or null
+     */
+    public TerrainTile getTile(int tileX, int tileZ) {
+        return resident.get(getKey(tileX, tileZ));
+    }
+
+    /**
+     * @param tileX column of the tile
+     * @param tileZ row of the tile
+     * @return true while the tile is requested and not resident yet
+     */
+    public boolean isLoading(int tileX, int tileZ) {
+        return loading.containsKey(getKey(tileX, tileZ));
+    }
+
+    /**
+     * @param tileX column of the tile
+     * @param tileZ row of the tile
+     * @param x world x of the camera
+     * @param z world z of the camera
+     * @return distance from the camera to the closest point of the tile on the ground plane
+     */
+    public float getDistance(int tileX, int tileZ, float x, float z) {
+        float tileSize = getTileSize();
+        float dx = Math.max(Math.max(tileX * tileSize - x, x - (tileX + 1) * tileSize), 0);
+        float dz = Math.max(Math.max(tileZ * tileSize - z, z - (tileZ + 1) * tileSize), 0);
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    /**
+     * @return resident tiles, the collection must not be changed
+     */
+    public Iterable<TerrainTile> getResidentTiles() {
+        return resident.values();
+    }
+
+    /**
+     * @return world length of a side of a tile
+     */
+    public float getTileSize() {
+        return tileCells * cellSize;
+    }
+
+    public int getTileCells() {
+        return tileCells;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public float getResidencyRadius() {
+        return residencyRadius;
+    }
+
+    /**
+     * @param residencyRadius distance from the camera in world units up to which tiles are loaded
+     */
+    public void setResidencyRadius(float residencyRadius) {
+        this.residencyRadius = residencyRadius;
+    }
+
+    public float getEvictionMargin() {
+        return evictionMargin;
+    }
+
+    /**
+     * @param evictionMargin distance beyond the residency radius after which tiles are evicted
+     */
+    public void setEvictionMargin(float evictionMargin) {
+        this.evictionMargin = evictionMargin;
+    }
+
+    public int getMaxLoading() {
+        return maxLoading;
+    }
+
+    /**
+     * @param maxLoading maximum number of requests in flight
+     */
+    public void setMaxLoading(int maxLoading) {
+        this.maxLoading = maxLoading;
+    }
+
+    public int getMaxUploadsPerUpdate() {
+        return maxUploadsPerUpdate;
+    }
+
+    /**
+     * @param maxUploadsPerUpdate maximum number of tiles handed to the listener per update
+     */
+    public void setMaxUploadsPerUpdate(int maxUploadsPerUpdate) {
+        this.maxUploadsPerUpdate = maxUploadsPerUpdate;
+    }
+
+    /**
+     * @return number of resident tiles
+     */
+    public int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * @return number of requests in flight, including generated tiles waiting for the listener
+     */
+    public int getLoadingCount() {
+        return loading.size();
+    }
+
+    /**
+     * @return number of tiles that could not be generated or used
+     */
+    public int getFailedCount() {
+        return failed.size();
+    }
+
+    /**
+     * @return bytes of the heights and normals of all resident tiles
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return number of tiles requested by the last update
+     */
+    public int getRequestedCount() {
+        return requestedCount;
+    }
+
+    /**
+     * @return number of tiles made resident by the last update
+     */
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * @return number of tiles evicted by the last update
+     */
+    public int getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * @return number of requests cancelled by the last update
+     */
+    public int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return number of generated tiles thrown away by the last update because they were not
+     *         wanted anymore
+     */
+    public int getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * cancels all requests, evicts all tiles and stops the worker threads if they belong to the
+     * terrain
+     */
+    public void cleanup() {
+        for (Request request : loading.values()) {
+            request.cancelled = true;
+        }
+        loading.clear();
+        ready.clear();
+        finished.clear();
+        for (TerrainTile tile : resident.values()) {
+            listener.tileEvicted(tile);
+        }
+        resident.clear();
+        residentBytes = 0;
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param tileX column of the tile
+     * @param tileZ row of the tile
+     * @return key of the tile in the maps
+     */
+    private static long getKey(int tileX, int tileZ) {
+        return ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * tile requested from a worker
+     */
+    private static class Request {
+
+        /** key and position of the tile */
+        private final long key;
+        private final int tileX;
+        private final int tileZ;
+
+        /** set when the tile is not wanted anymore, the worker skips it then */
+        private volatile boolean cancelled;
+
+        /** generated tile or the reason it could not be generated, published by the queue */
+        private TerrainTile tile;
+        private Throwable error;
+
+        private Request(long key, int tileX, int tileZ) {
+            this.key = key;
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package engine.graph.environment;
+
+import engine.graph.general.Scene;
+import engine.graph.items.GameItem;
+import engine.graph.items.Material;
+import engine.graph.items.Mesh;
+import engine.render.IndexBuffer;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * creates the meshes of the resident tiles of a streaming terrain and adds them to a scene
+ *
+ * the tile listener of the streaming terrain, so it is called on the open gl thread by the
+ * update of the terrain. the mesh of a tile is uploaded when the tile becomes resident and deleted
+ * when it is evicted, the material is kept. all tile meshes share one element buffer
+ */
+@SuppressWarnings("unused")
+public class StreamingTerrainMeshes implements StreamingTerrain.TileListener {
+
+    /** scene the tiles are drawn in */
+    private final Scene scene;
+
+    /** material of all tiles */
+    private final Material material;
+
+    /** number of times the texture is repeated over a tile */
+    private final float textInc;
+
+    /** indices shared by all tile meshes */
+    private final IndexBuffer indices;
+
+    /** game items of the resident tiles */
+    private final Map<TerrainTile, GameItem> gameItems = new HashMap<>();
+
+    /** vertices of a tile while its mesh is built */
+    private final float[] positions;
+    private final float[] textCoords;
+    private final float[] normals;
+    private FloatBuffer positionsBuffer;
+    private FloatBuffer textCoordsBuffer;
+    private FloatBuffer normalsBuffer;
+
+    /**
+     * creates the shared indices, has to be called on the open gl thread
+     *
+     * @param scene scene the tiles are drawn in
+     * @param material material of all tiles
+     * @param tileCells number of cells of a tile along each side
+     * @param textInc number of times the texture is repeated over a tile, a whole number keeps the
+     *                texture continuous between the tiles
+     */
+    public StreamingTerrainMeshes(Scene scene, Material material, int tileCells, float textInc) {
+        this.scene = scene;
+        this.material = material;
+        this.textInc = textInc;
+        indices = new IndexBuffer(TerrainTile.buildIndices(tileCells));
+
+        int vertices = (tileCells + 1) * (tileCells + 1);
+        positions = new float[vertices * 3];
+        textCoords = new float[vertices * 2];
+        normals = new float[vertices * 3];
+        positionsBuffer = MemoryUtil.memAllocFloat(vertices * 3);
+        textCoordsBuffer = MemoryUtil.memAllocFloat(vertices * 2);
+        normalsBuffer = MemoryUtil.memAllocFloat(vertices * 3);
+    }
+
+    @Override
+    public void tileLoaded(TerrainTile tile) {
+        tile.fillVertices(positions, textCoords, normals, textInc);
+        positionsBuffer.clear();
+        positionsBuffer.put(positions).flip();
+        textCoordsBuffer.clear();
+        textCoordsBuffer.put(textCoords).flip();
+        normalsBuffer.clear();
+        normalsBuffer.put(normals).flip();
+
+        Mesh mesh = new Mesh(positionsBuffer, textCoordsBuffer, normalsBuffer, indices);
+        mesh.setMaterial(material);
+        GameItem gameItem = new GameItem(mesh);
+        gameItem.setPosition(tile.getOriginX(), 0, tile.getOriginZ());
+        gameItems.put(tile, gameItem);
+        scene.setGameItems(new GameItem[]{gameItem});
+    }
+
+    @Override
+    public void tileEvicted(TerrainTile tile) {
+        GameItem gameItem = gameItems.remove(tile);
+        if (gameItem != null) {
+            scene.removeGameItem(gameItem);
+            gameItem.getMesh().deleteBuffers();
+        }
+    }
+
+    /**
+     * @return number of tile meshes alive
+     */
+    public int getMeshCount() {
+        return gameItems.size();
+    }
+
+    /**
+     * deletes the shared indices and the buffers, the streaming terrain has to be cleaned up first
+     * so all tiles are evicted
+     */
+    public void cleanup() {
+        for (GameItem gameItem : gameItems.values()) {
+            scene.removeGameItem(gameItem);
+            gameItem.getMesh().deleteBuffers();
+        }
+        gameItems.clear();
+        indices.cleanup();
+        MemoryUtil.memFree(positionsBuffer);
+        MemoryUtil.memFree(textCoordsBuffer);
+        MemoryUtil.memFree(normalsBuffer);
+        positionsBuffer = null;
+        textCoordsBuffer = null;
+        normalsBuffer = null;
+    }
+}
@@ -0,0 +1,189 @@
+package engine.graph.environment;
+
+/**
+ * answers height queries on a terrain made of equal blocks in constant time
+ *
+ * the block and the cell of the height grid under a position are computed from the position, so no
+ * block is searched and nothing is allocated. the height is interpolated on the triangle of the
+ * cell the position is above, split along the same diagonal as the triangles of the height map mesh.
+ * the arithmetic follows the former block scan of the terrain, so both give the same heights.
+ * queries only read, so they can be made from several threads
+ */
+public class TerrainHeightQuery {
+
+    /** height returned for positions outside of the terrain */
+    public static final float NO_HEIGHT = Float.MIN_VALUE;
+
+    /** heights of the vertices of one block in model space */
+    private final HeightField heights;
+
+    /** number of blocks in one row and column */
+    private final int terrainSize;
+
+    /** scale of one block */
+    private final float scale;
+
+    /** left edge of the blocks of every column */
+    private final float[] blockX;
+
+    /** top edge of the blocks of every row */
+    private final float[] blockZ;
+
+    /** width and depth of one block */
+    private final float blockWidth;
+    private final float blockDepth;
+
+    /** width and depth of one cell of the height grid */
+    private final float cellWidth;
+    private final float cellDepth;
+
+    /**
+     * @param heights heights of the vertices of one block in model space
+     * @param terrainSize number of blocks in one row and column
+     * @param scale scale of one block
+     */
+    public TerrainHeightQuery(HeightField heights, int terrainSize, float scale) {
+        this.heights = heights;
+        this.terrainSize = terrainSize;
+        this.scale = scale;
+
+        blockWidth = Math.abs(HeightMapMesh.START_X * 2) * scale;
+        blockDepth = Math.abs(HeightMapMesh.START_Z * 2) * scale;
+        cellWidth = blockWidth / (float) (heights.getColumns() - 1);
+        cellDepth = blockDepth / (float) (heights.getRows() - 1);
+
+        // the edges are placed like the blocks of the terrain
+        blockX = new float[terrainSize];
+        blockZ = new float[terrainSize];
+        for (int i = 0; i < terrainSize; i++) {
+            blockX[i] = HeightMapMesh.START_X * scale + getBlockDisplacement(i, HeightMapMesh.getXLength());
+            blockZ[i] = HeightMapMesh.START_Z * scale + getBlockDisplacement(i, HeightMapMesh.getZLength());
+        }
+    }
+
+    /**
+     * @param index column or row of the block
+     * @param length length of the height map mesh along the axis
+     * @return position of the center of the block along the axis
+     */
+    public float getBlockDisplacement(int index, float length) {
+        return (index - ((float) terrainSize - 1) / (float) 2) * scale * length;
+    }
+
+    /**
+     * @param x world x coordinate
+     * @param z world z coordinate
+     * @return height of the terrain at the position or NO_HEIGHT outside of the terrain
+     */
+    public float getHeight(float x, float z) {
+        int blockCol = findBlock(x, blockX, blockWidth);
+        int blockRow = findBlock(z, blockZ, blockDepth);
+        if (blockCol < 0 || blockRow < 0) {
+            return NO_HEIGHT;
+        }
+
+        float boxX = blockX[blockCol];
+        float boxZ = blockZ[blockRow];
+        int col = (int) ((x - boxX) / cellWidth);
+        int row = (int) ((z - boxZ) / cellDepth);
+
+        // the cell is split along the diagonal from its bottom left to its top right corner
+        float bx = boxX + col * cellWidth;
+        float by = getWorldHeight(row + 1, col);
+        float bz = boxZ + (row + 1) * cellDepth;
+        float cx = boxX + (col + 1) * cellWidth;
+        float cy = getWorldHeight(row, col + 1);
+        float cz = boxZ + row * cellDepth;
+
+        // the third corner is the top left one above the diagonal and the bottom right one below
+        float ax;
+        float ay;
+        float az;
+        if (z < ((bz - cz) / (bx - cx)) * (x - bx) + bz) {
+            ax = boxX + col * cellWidth;
+            ay = getWorldHeight(row, col);
+            az = boxZ + row * cellDepth;
+        } else {
+            ax = boxX + (col + 1) * cellWidth;
+            ay = getWorldHeight(row + 1, col + 1);
+            az = boxZ + (row + 1) * cellDepth;
+        }
+        return interpolateHeight(ax, ay, az, bx, by, bz, cx, cy, cz, x, z);
+    }
+
+    /**
+     * computes the heights of many positions
+     *
+     * @param x world x coordinates
+     * @param z world z coordinates
+     * @param dest receives the heights, NO_HEIGHT for positions outside of the terrain
+     * @param count number of positions
+     */
+    public void getHeights(float[] x, float[] z, float[] dest, int count) {
+        for (int i = 0; i < count; i++) {
+            dest[i] = getHeight(x[i], z[i]);
+        }
+    }
+
+    /**
+     * computes the block along one axis, the first block containing the coordinate wins where
+     * the edges of neighbouring blocks do not meet exactly
+     *
+     * @param position coordinate along the axis
+     * @param edges first coordinate of every block
+     * @param length length of a block
+     * @return index of the block or -1 outside of the terrain
+     */
+    private int findBlock(float position, float[] edges, float length) {
+        int block = (int) Math.floor((position - edges[0]) / length);
+        block = Math.max(0, Math.min(block, terrainSize - 1));
+        while (block > 0 && position < edges[block - 1] + length) {
+            block--;
+        }
+        while (block < terrainSize - 1 && position >= edges[block] + length) {
+            block++;
+        }
+        if (position >= edges[block] && position < edges[block] + length) {
+            return block;
+        }
+        return -1;
+    }
+
+    /**
+     * @param row row of the vertex
+     * @param col column of the vertex
+     * @return world height of the vertex, 0 outside of the grid
+     */
+    private float getWorldHeight(int row, int col) {
+        float y = 0;
+        if (row >= 0 && row < heights.getRows() && col >= 0 && col < heights.getColumns()) {
+            y = heights.getHeight(row, col);
+        }
+        // the blocks are placed at height 0
+        return y * scale;
+    }
+
+    /**
+     * interpolates the height on the plane through the triangle a, b, c
+     *
+     * @return height of the plane at x, z
+     */
+    private static float interpolateHeight(float ax, float ay, float az, float bx, float by, float bz,
+                                           float cx, float cy, float cz, float x, float z) {
+        // plane equation ax + by + cz + d = 0
+        float a = (by - ay) * (cz - az) - (cy - ay) * (bz - az);
+        float b = (bz - az) * (cx - ax) - (cz - az) * (bx - ax);
+        float c = (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+        float d = -(a * ax + b * ay + c * az);
+        // y = (-d -ax -cz) / b
+        return (-d - a * x - c * z) / b;
+    }
+
+    public int getTerrainSize() {
+        return terrainSize;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+}
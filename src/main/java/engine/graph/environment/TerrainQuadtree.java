@@ -0,0 +1,642 @@
+package engine.graph.environment;
+
+import engine.render.FrustumCuller;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * quadtree of terrain patches at several resolutions built from a height grid
+ *
+ * every patch has the same number of cells, patchCells x patchCells, so all patches share one
+ * index layout. a patch of level l uses every 2^l-th height of the grid, the leaves use every
+ * height. the geometric error of a patch is the largest height difference between the patch and
+ * the full resolution grid in its area, it never shrinks towards the root. every frame the patches
+ * are selected from the root down: a patch is refined while its error projected to the screen is
+ * larger than the allowed pixel error. the borders between patches of different levels are covered
+ * by skirts hanging down from the edges of every patch. nothing here touches open gl, so the
+ * selection can be tested without a graphics context
+ *
+ * the vertices of a patch are laid out row by row, followed by the skirt vertices of the north,
+ * east, south and west edge. patches reaching over the edge of the grid are clamped to it
+ */
+@SuppressWarnings("unused")
+public class TerrainQuadtree {
+
+    /** number of levels above a patch whose height range is used as its skirt depth */
+    public static final int SKIRT_LEVELS = 2;
+
+    /** heights of the grid */
+    private final HeightField heights;
+
+    /** number of cells of a patch along each side */
+    private final int patchCells;
+
+    /** number of cells of the grid along x and z */
+    private final int mapCellsX;
+    private final int mapCellsZ;
+
+    /** world position of the first height of the grid */
+    private final float originX;
+    private final float originZ;
+
+    /** world distance between two heights of the grid */
+    private final float cellSize;
+
+    /** factor from the values of the grid to world heights */
+    private final float heightScale;
+
+    /** number of levels, the root has level levels - 1 */
+    private final int levels;
+
+    /** per node: first cell along x and z, distance between its vertices in cells and level */
+    private int[] nodeX;
+    private int[] nodeZ;
+    private int[] nodeStep;
+    private int[] nodeLevel;
+
+    /** per node: four children, -1 if a child lies outside of the grid or the node is a leaf */
+    private int[] children;
+
+    /** per node: lowest and highest world height and geometric error */
+    private float[] minY;
+    private float[] maxY;
+    private float[] errors;
+
+    /** per node: parent, -1 for the root */
+    private int[] parents;
+
+    /** number of nodes */
+    private int nodeCount;
+
+    /** pixels per world unit at a distance of one, from the field of view and the viewport height */
+    private float projectionScale = 1;
+
+    /** largest allowed error of a selected patch in pixels */
+    private float maxPixelError = 2;
+
+    /** nodes selected by the last selection */
+    private int[] selected = new int[64];
+    private int selectedCount;
+
+    /** number of nodes selected per level by the last selection */
+    private final int[] selectedPerLevel;
+
+    /** number of nodes culled by the last selection */
+    private int culledCount;
+
+    /** nodes waiting to be visited during the selection */
+    private int[] stack = new int[64];
+
+    /** planes of the frustum of the last selection */
+    private final float[] planes = new float[FrustumCuller.PLANES * FrustumCuller.PLANE_FLOATS];
+
+    /**
+     * builds the quadtree and computes the bounds and errors of all patches
+     *
+     * @param heights heights of the grid, at least 2 x 2
+     * @param patchCells number of cells of a patch along each side
+     * @param originX world x of the first height of the grid
+     * @param originZ world z of the first height of the grid
+     * @param cellSize world distance between two heights
+     * @param heightScale factor from the values of the grid to world heights
+     */
+    public TerrainQuadtree(HeightField heights, int patchCells, float originX, float originZ, float cellSize, float heightScale) {
+        this.heights = heights;
+        this.patchCells = patchCells;
+        this.originX = originX;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.heightScale = heightScale;
+        mapCellsX = heights.getColumns() - 1;
+        mapCellsZ = heights.getRows() - 1;
+
+        // the root covers the whole grid with the smallest power of two step
+        int rootStep = 1;
+        int rootLevel = 0;
+        while (patchCells * rootStep < Math.max(mapCellsX, mapCellsZ)) {
+            rootStep *= 2;
+            rootLevel++;
+        }
+        levels = rootLevel + 1;
+        selectedPerLevel = new int[levels];
+
+        int capacity = 16;
+        nodeX = new int[capacity];
+        nodeZ = new int[capacity];
+        nodeStep = new int[capacity];
+        nodeLevel = new int[capacity];
+        children = new int[capacity * 4];
+        minY = new float[capacity];
+        maxY = new float[capacity];
+        errors = new float[capacity];
+        parents = new int[capacity];
+        buildNode(0, 0, rootStep, rootLevel, -1);
+    }
+
+    /**
+     * adds a node and its children, then computes its bounds and error from them
+     *
+     * @return index of the node
+     */
+    private int buildNode(int x, int z, int step, int level, int parent) {
+        int node = addNode(x, z, step, level, parent);
+        float error = 0;
+        if (step > 1) {
+            int half = patchCells * step / 2;
+            for (int i = 0; i < 4; i++) {
+                int childX = x + (i & 1) * half;
+                int childZ = z + (i >> 1) * half;
+                if (childX < mapCellsX && childZ < mapCellsZ) {
+                    int child = buildNode(childX, childZ, step / 2, level - 1, node);
+                    children[node * 4 + i] = child;
+                    error = Math.max(error, errors[child]);
+                }
+            }
+        }
+
+        // bounds and error over all heights of the area of the node
+        float low = Float.POSITIVE_INFINITY;
+        float high = Float.NEGATIVE_INFINITY;
+        int endX = Math.min(x + patchCells * step, mapCellsX);
+        int endZ = Math.min(z + patchCells * step, mapCellsZ);
+        for (int gz = z; gz <= endZ; gz++) {
+            for (int gx = x; gx <= endX; gx++) {
+                float height = getGridHeight(gx, gz);
+                low = Math.min(low, height);
+                high = Math.max(high, height);
+                if (step > 1) {
+                    error = Math.max(error, Math.abs(height - getPatchHeight(node, gx, gz)));
+                }
+            }
+        }
+        minY[node] = low;
+        maxY[node] = high;
+        errors[node] = error;
+        return node;
+    }
+
+    /**
+     * @return index of the new node
+     */
+    private int addNode(int x, int z, int step, int level, int parent) {
+        if (nodeCount == nodeX.length) {
+            int capacity = nodeCount * 2;
+            nodeX = Arrays.copyOf(nodeX, capacity);
+            nodeZ = Arrays.copyOf(nodeZ, capacity);
+            nodeStep = Arrays.copyOf(nodeStep, capacity);
+            nodeLevel = Arrays.copyOf(nodeLevel, capacity);
+            children = Arrays.copyOf(children, capacity * 4);
+            minY = Arrays.copyOf(minY, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            errors = Arrays.copyOf(errors, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+        }
+        int node = nodeCount++;
+        nodeX[node] = x;
+        nodeZ[node] = z;
+        nodeStep[node] = step;
+        nodeLevel[node] = level;
+        parents[node] = parent;
+        for (int i = 0; i < 4; i++) {
+            children[node * 4 + i] = -1;
+        }
+        return node;
+    }
+
+    /**
+     * sets the projection used to turn geometric errors into pixels
+     *
+     * @param fov vertical field of view in radians
+     * @param viewportHeight height of the viewport in pixels
+     */
+    public void setProjection(float fov, int viewportHeight) {
+        projectionScale = viewportHeight / (2 * (float) Math.tan(fov / 2));
+    }
+
+    /**
+     * @param maxPixelError largest allowed error of a selected patch in pixels
+     */
+    public void setMaxPixelError(float maxPixelError) {
+        this.maxPixelError = maxPixelError;
+    }
+
+    public float getMaxPixelError() {
+        return maxPixelError;
+    }
+
+    /**
+     * selects the patches to draw for a camera position: starting at the root, a patch is
+     * refined while its error seen from the camera is larger than the allowed pixel error
+     *
+     * @param cameraPosition world position of the camera
+     * @param viewProjection projection matrix multiplied with the view matrix, patches outside of its
+     *                       frustum are not selected, null selects patches in all directions
+     * @return number of selected patches
+     */
+    public int select(Vector3f cameraPosition, Matrix4f viewProjection) {
+        if (viewProjection != null) {
+            FrustumCuller.extractPlanes(viewProjection, planes);
+        }
+        selectedCount = 0;
+        culledCount = 0;
+        Arrays.fill(selectedPerLevel, 0);
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (viewProjection != null && isOutside(node)) {
+                culledCount++;
+                continue;
+            }
+
+            if (getPixelError(node, cameraPosition) > maxPixelError && nodeStep[node] > 1) {
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                for (int i = 3; i >= 0; i--) {
+                    int child = children[node * 4 + i];
+                    if (child >= 0) {
+                        stack[top++] = child;
+                    }
+                }
+                continue;
+            }
+
+            if (selectedCount == selected.length) {
+                selected = Arrays.copyOf(selected, selectedCount * 2);
+            }
+            selected[selectedCount++] = node;
+            selectedPerLevel[nodeLevel[node]]++;
+        }
+        return selectedCount;
+    }
+
+    /**
+     * @param node node
+     * @param cameraPosition world position of the camera
+     * @return geometric error of the patch projected to the screen in pixels, taken at the point of
+     *         its box closest to the camera
+     */
+    public float getPixelError(int node, Vector3f cameraPosition) {
+        return errors[node] * projectionScale / getDistance(node, cameraPosition);
+    }
+
+    /**
+     * @param node node
+     * @return true if the box of the node is completely outside of a plane of the frustum
+     */
+    private boolean isOutside(int node) {
+        float minX = getMinX(node);
+        float maxX = getMaxX(node);
+        float minZ = getMinZ(node);
+        float maxZ = getMaxZ(node);
+        for (int p = 0; p < FrustumCuller.PLANES * FrustumCuller.PLANE_FLOATS; p += FrustumCuller.PLANE_FLOATS) {
+            float x = planes[p] >= 0 ? maxX : minX;
+            float y = planes[p + 1] >= 0 ? maxY[node] : minY[node];
+            float z = planes[p + 2] >= 0 ? maxZ : minZ;
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param node node
+     * @param position world position
+     * @return distance from the position to the box of the node, at least one cell
+     */
+    private float getDistance(int node, Vector3f position) {
+        float dx = Math.max(Math.max(getMinX(node) - position.x, position.x - getMaxX(node)), 0);
+        float dy = Math.max(Math.max(minY[node] - position.y, position.y - maxY[node]), 0);
+        float dz = Math.max(Math.max(getMinZ(node) - position.z, position.z - getMaxZ(node)), 0);
+        return Math.max((float) Math.sqrt(dx * dx + dy * dy + dz * dz), cellSize);
+    }
+
+    /**
+     * fills the vertices of a patch, the arrays need getPatchVertexCount() vertices
+     *
+     * @param node node of the patch
+     * @param positions receives the world positions, 3 floats per vertex
+     * @param textCoords receives the texture coordinates, 2 floats per vertex
+     * @param normals receives the normals, 3 floats per vertex
+     * @param textInc number of times the texture is repeated over the grid
+     */
+    public void buildPatch(int node, float[] positions, float[] textCoords, float[] normals, float textInc) {
+        int x = nodeX[node];
+        int z = nodeZ[node];
+        int step = nodeStep[node];
+        int side = patchCells + 1;
+        for (int row = 0; row <= patchCells; row++) {
+            int gz = Math.min(z + row * step, mapCellsZ);
+            for (int col = 0; col <= patchCells; col++) {
+                int gx = Math.min(x + col * step, mapCellsX);
+                setVertex(row * side + col, gx, gz, 0, positions, textCoords, normals, textInc);
+            }
+        }
+
+        // skirts of the north, east, south and west edge, walked so that they face outwards
+        float depth = getSkirtDepth(node);
+        int skirt = side * side;
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k <= patchCells; k++) {
+                int border = getBorderVertex(patchCells, edge, k);
+                int gx = Math.min(x + (border % side) * step, mapCellsX);
+                int gz = Math.min(z + (border / side) * step, mapCellsZ);
+                setVertex(skirt + edge * side + k, gx, gz, depth, positions, textCoords, normals, textInc);
+            }
+        }
+    }
+
+    /**
+     * @param vertex index of the vertex
+     * @param gx column of the grid
+     * @param gz row of the grid
+     * @param drop distance the vertex is moved down
+     */
+    private void setVertex(int vertex, int gx, int gz, float drop, float[] positions, float[] textCoords, float[] normals, float textInc) {
+        positions[vertex * 3] = originX + gx * cellSize;
+        positions[vertex * 3 + 1] = getGridHeight(gx, gz) - drop;
+        positions[vertex * 3 + 2] = originZ + gz * cellSize;
+
+        textCoords[vertex * 2] = textInc * gx / (float) (mapCellsX + 1);
+        textCoords[vertex * 2 + 1] = textInc * gz / (float) (mapCellsZ + 1);
+
+        // central differences of the full resolution grid
+        float nx = getGridHeight(gx - 1, gz) - getGridHeight(gx + 1, gz);
+        float ny = 2 * cellSize;
+        float nz = getGridHeight(gx, gz - 1) - getGridHeight(gx, gz + 1);
+        float inverseLength = 1.0f / (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        normals[vertex * 3] = nx * inverseLength;
+        normals[vertex * 3 + 1] = ny * inverseLength;
+        normals[vertex * 3 + 2] = nz * inverseLength;
+    }
+
+    /**
+     * @param patchCells number of cells of a patch along each side
+     * @param edge north, east, south or west edge
+     * @param k position along the edge
+     * @return index of the grid vertex of the patch on the edge
+     */
+    private static int getBorderVertex(int patchCells, int edge, int k) {
+        int side = patchCells + 1;
+        switch (edge) {
+            case 0:
+                return k;
+            case 1:
+                return k * side + patchCells;
+            case 2:
+                return patchCells * side + patchCells - k;
+            default:
+                return (patchCells - k) * side;
+        }
+    }
+
+    /**
+     * builds the indices shared by all patches: two triangles per cell, split like the height map
+     * mesh, and two triangles per segment of the skirts
+     *
+     * @param patchCells number of cells of a patch along each side
+     * @return indices of a patch
+     */
+    public static int[] buildIndices(int patchCells) {
+        int side = patchCells + 1;
+        int[] indices = new int[getIndexCount(patchCells)];
+        int i = 0;
+        for (int row = 0; row < patchCells; row++) {
+            for (int col = 0; col < patchCells; col++) {
+                int leftTop = row * side + col;
+                int leftBottom = (row + 1) * side + col;
+                int rightBottom = (row + 1) * side + col + 1;
+                int rightTop = row * side + col + 1;
+                indices[i++] = leftTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightTop;
+                indices[i++] = rightTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightBottom;
+            }
+        }
+
+        int skirt = side * side;
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k < patchCells; k++) {
+                int a = getBorderVertex(patchCells, edge, k);
+                int b = getBorderVertex(patchCells, edge, k + 1);
+                int skirtA = skirt + edge * side + k;
+                int skirtB = skirtA + 1;
+                indices[i++] = a;
+                indices[i++] = b;
+                indices[i++] = skirtA;
+                indices[i++] = b;
+                indices[i++] = skirtB;
+                indices[i++] = skirtA;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @param patchCells number of cells of a patch along each side
+     * @return number of indices of a patch
+     */
+    public static int getIndexCount(int patchCells) {
+        return (patchCells * patchCells + 4 * patchCells) * 6;
+    }
+
+    /**
+     * @return number of vertices of a patch, including the skirts
+     */
+    public int getPatchVertexCount() {
+        int side = patchCells + 1;
+        return side * side + 4 * side;
+    }
+
+    /**
+     * @return number of triangles of a patch, including the skirts
+     */
+    public int getPatchTriangleCount() {
+        return getIndexCount(patchCells) / 3;
+    }
+
+    /**
+     * @param gx column of the grid, clamped to the grid
+     * @param gz row of the grid, clamped to the grid
+     * @return world height of the grid
+     */
+    public float getGridHeight(int gx, int gz) {
+        gx = Math.max(0, Math.min(gx, mapCellsX));
+        gz = Math.max(0, Math.min(gz, mapCellsZ));
+        return heights.getHeight(gz, gx) * heightScale;
+    }
+
+    /**
+     * computes the height of the surface of a patch above a point of the grid, interpolated on
+     * the triangle of the patch cell the point lies in
+     *
+     * @param node node of the patch
+     * @param gx column of the grid inside of the patch
+     * @param gz row of the grid inside of the patch
+     * @return world height of the patch
+     */
+    public float getPatchHeight(int node, int gx, int gz) {
+        int x = nodeX[node];
+        int z = nodeZ[node];
+        int step = nodeStep[node];
+        int col = Math.min((gx - x) / step, patchCells - 1);
+        int row = Math.min((gz - z) / step, patchCells - 1);
+
+        // the vertices of cells reaching over the grid are clamped to its edge
+        int x0 = x + col * step;
+        int z0 = z + row * step;
+        int x1 = Math.min(x0 + step, mapCellsX);
+        int z1 = Math.min(z0 + step, mapCellsZ);
+        float u = x1 > x0 ? (float) (gx - x0) / (x1 - x0) : 0;
+        float v = z1 > z0 ? (float) (gz - z0) / (z1 - z0) : 0;
+
+        float leftTop = getGridHeight(x0, z0);
+        float rightTop = getGridHeight(x1, z0);
+        float leftBottom = getGridHeight(x0, z1);
+        float rightBottom = getGridHeight(x1, z1);
+
+        // the cell is split along the diagonal from its bottom left to its top right corner
+        if (u + v <= 1) {
+            return leftTop + u * (rightTop - leftTop) + v * (leftBottom - leftTop);
+        }
+        return rightBottom + (1 - u) * (leftBottom - rightBottom) + (1 - v) * (rightTop - rightBottom);
+    }
+
+    /**
+     * the skirt has to cover the gap to a neighbour with fewer vertices. the heights of both
+     * surfaces on the shared edge lie between the lowest and highest height of the ancestor on the
+     * level of the neighbour, so the height range of the ancestor SKIRT_LEVELS above is used
+     *
+     * @param node node of the patch
+     * @return distance the skirt of the patch hangs down
+     */
+    public float getSkirtDepth(int node) {
+        int ancestor = node;
+        for (int i = 0; i < SKIRT_LEVELS && parents[ancestor] >= 0; i++) {
+            ancestor = parents[ancestor];
+        }
+        return Math.max(maxY[ancestor] - minY[ancestor], cellSize);
+    }
+
+    private float getMinX(int node) {
+        return originX + nodeX[node] * cellSize;
+    }
+
+    private float getMaxX(int node) {
+        return originX + Math.min(nodeX[node] + patchCells * nodeStep[node], mapCellsX) * cellSize;
+    }
+
+    private float getMinZ(int node) {
+        return originZ + nodeZ[node] * cellSize;
+    }
+
+    private float getMaxZ(int node) {
+        return originZ + Math.min(nodeZ[node] + patchCells * nodeStep[node], mapCellsZ) * cellSize;
+    }
+
+    /**
+     * @return nodes selected by the last selection, getSelectedCount entries are valid
+     */
+    public int[] getSelected() {
+        return selected;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /**
+     * @return number of patches selected per level by the last selection, level 0 has full resolution
+     */
+    public int[] getSelectedPerLevel() {
+        return selectedPerLevel;
+    }
+
+    /**
+     * @return number of patches culled by the frustum during the last selection
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * @return number of triangles of the patches of the last selection, including the skirts
+     */
+    public long getTriangleCount() {
+        return (long) selectedCount * getPatchTriangleCount();
+    }
+
+    /**
+     * @return number of triangles of the whole grid at full resolution
+     */
+    public long getFullResolutionTriangleCount() {
+        return 2L * mapCellsX * mapCellsZ;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public int getPatchCells() {
+        return patchCells;
+    }
+
+    public int getMapCellsX() {
+        return mapCellsX;
+    }
+
+    public int getMapCellsZ() {
+        return mapCellsZ;
+    }
+
+    /**
+     * @param node node
+     * @return first column of the grid covered by the node
+     */
+    public int getNodeX(int node) {
+        return nodeX[node];
+    }
+
+    /**
+     * @param node node
+     * @return first row of the grid covered by the node
+     */
+    public int getNodeZ(int node) {
+        return nodeZ[node];
+    }
+
+    /**
+     * @param node node
+     * @return distance between the vertices of the node in cells of the grid
+     */
+    public int getNodeStep(int node) {
+        return nodeStep[node];
+    }
+
+    /**
+     * @param node node
+     * @return level of the node, 0 for full resolution
+     */
+    public int getNodeLevel(int node) {
+        return nodeLevel[node];
+    }
+
+    /**
+     * @param node node
+     * @return largest height difference between the patch of the node and the grid
+     */
+    public float getNodeError(int node) {
+        return errors[node];
+    }
+}
@@ -0,0 +1,339 @@
+package engine.graph.environment;
+
+import org.joml.Vector3f;
+
+/**
+ * heights and normals of one square tile of a streaming terrain in compact form
+ *
+ * a tile of n cells has (n + 1) x (n + 1) vertices laid out row by row, neighbouring tiles share
+ * the vertices of their common edge. the heights are quantized to 16 bit between the lowest and the
+ * highest height of the terrain, the normals keep their x and z component as half floats, y is
+ * positive on a height field and follows from the other two. a vertex needs 6 bytes instead of the
+ * 24 bytes of float positions and normals. the normals are computed from the quantized heights of
+ * the vertex and its four neighbours, reaching one vertex into the neighbouring tiles, so shared
+ * edge vertices get the same height and normal in both tiles. a tile is not changed after it was
+ * generated, so it can be read from several threads
+ */
+@SuppressWarnings("unused")
+public class TerrainTile {
+
+    /** largest quantized height */
+    private static final int MAX_QUANTIZED = 0xFFFF;
+
+    /** column and row of the tile in the grid of tiles */
+    private final int tileX;
+    private final int tileZ;
+
+    /** number of cells along each side */
+    private final int cells;
+
+    /** world distance between two vertices */
+    private final float cellSize;
+
+    /** world height of the quantized height 0 and the world height of one quantization step */
+    private final float minY;
+    private final float heightStep;
+
+    /** quantized heights, unsigned, one per vertex */
+    private final short[] heights;
+
+    /** x and z component of the normals as half floats, two per vertex */
+    private final short[] normals;
+
+    /** lowest and highest world height of the tile */
+    private final float lowest;
+    private final float highest;
+
+    private TerrainTile(int tileX, int tileZ, int cells, float cellSize, float minY, float heightStep,
+                        short[] heights, short[] normals, float lowest, float highest) {
+        this.tileX = tileX;
+        this.tileZ = tileZ;
+        this.cells = cells;
+        this.cellSize = cellSize;
+        this.minY = minY;
+        this.heightStep = heightStep;
+        this.heights = heights;
+        this.normals = normals;
+        this.lowest = lowest;
+        this.highest = highest;
+    }
+
+    /**
+     * samples the heights of a tile and its border from the source and computes the normals, runs
+     * on a worker thread
+     *
+     * @param tileX column of the tile
+     * @param tileZ row of the tile
+     * @param cells number of cells along each side
+     * @param cellSize world distance between two vertices
+     * @param minY world height of the source height 0
+     * @param maxY world height of the source height 1
+     * @param source heights of the infinite grid
+     * @return the tile
+     * @throws Exception if the source cant provide the heights
+     */
+    public static TerrainTile generate(int tileX, int tileZ, int cells, float cellSize, float minY, float maxY,
+                                       StreamingTerrain.HeightSource source) throws Exception {
+        int side = cells + 1;
+        float heightStep = (maxY - minY) / MAX_QUANTIZED;
+
+        // the heights with a border of one vertex for the normals
+        int bordered = side + 2;
+        int firstX = tileX * cells - 1;
+        int firstZ = tileZ * cells - 1;
+        int[] quantized = new int[bordered * bordered];
+        for (int row = 0; row < bordered; row++) {
+            for (int col = 0; col < bordered; col++) {
+                float height = Math.max(0, Math.min(source.getHeight(firstX + col, firstZ + row), 1));
+                quantized[row * bordered + col] = Math.round(height * MAX_QUANTIZED);
+            }
+        }
+
+        short[] heights = new short[side * side];
+        short[] normals = new short[side * side * 2];
+        int lowest = MAX_QUANTIZED;
+        int highest = 0;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int center = (row + 1) * bordered + col + 1;
+                int height = quantized[center];
+                heights[row * side + col] = (short) height;
+                lowest = Math.min(lowest, height);
+                highest = Math.max(highest, height);
+
+                // central differences, the same as averaging the four cross products of the neighbours
+                float nx = (quantized[center - 1] - quantized[center + 1]) * heightStep;
+                float ny = 2 * cellSize;
+                float nz = (quantized[center - bordered] - quantized[center + bordered]) * heightStep;
+                float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                normals[(row * side + col) * 2] = toHalf(nx / length);
+                normals[(row * side + col) * 2 + 1] = toHalf(nz / length);
+            }
+        }
+        return new TerrainTile(tileX, tileZ, cells, cellSize, minY, heightStep, heights, normals,
+                minY + lowest * heightStep, minY + highest * heightStep);
+    }
+
+    /**
+     * @param col column of the vertex in the tile
+     * @param row row of the vertex in the tile
+     * @return world height of the vertex
+     */
+    public float getHeight(int col, int row) {
+        return minY + (heights[row * (cells + 1) + col] & MAX_QUANTIZED) * heightStep;
+    }
+
+    /**
+     * interpolates the height on the triangle under the position, the cells are split along the
+     * same diagonal as the triangles of the height map mesh
+     *
+     * @param x world x coordinate inside of the tile
+     * @param z world z coordinate inside of the tile
+     * @return world height at the position
+     */
+    public float getHeight(float x, float z) {
+        float localX = (x - getOriginX()) / cellSize;
+        float localZ = (z - getOriginZ()) / cellSize;
+        int col = Math.max(0, Math.min((int) Math.floor(localX), cells - 1));
+        int row = Math.max(0, Math.min((int) Math.floor(localZ), cells - 1));
+        float fx = localX - col;
+        float fz = localZ - row;
+
+        float leftBottom = getHeight(col, row + 1);
+        float rightTop = getHeight(col + 1, row);
+        if (fx + fz < 1) {
+            float leftTop = getHeight(col, row);
+            return leftTop + fx * (rightTop - leftTop) + fz * (leftBottom - leftTop);
+        }
+        float rightBottom = getHeight(col + 1, row + 1);
+        return rightBottom + (1 - fx) * (leftBottom - rightBottom) + (1 - fz) * (rightTop - rightBottom);
+    }
+
+    /**
+     * @param col column of the vertex in the tile
+     * @param row row of the vertex in the tile
+     * @param dest receives the normal
+     * @return dest
+     */
+    public Vector3f getNormal(int col, int row, Vector3f dest) {
+        int index = (row * (cells + 1) + col) * 2;
+        float nx = fromHalf(normals[index]);
+        float nz = fromHalf(normals[index + 1]);
+        return dest.set(nx, (float) Math.sqrt(Math.max(0, 1 - nx * nx - nz * nz)), nz);
+    }
+
+    /**
+     * fills the vertices of the mesh of the tile, the positions are relative to the origin of the
+     * tile. the arrays need getVertexCount() vertices
+     *
+     * @param positions receives the positions, 3 floats per vertex
+     * @param textCoords receives the texture coordinates, 2 floats per vertex
+     * @param normals receives the normals, 3 floats per vertex
+     * @param textInc number of times the texture is repeated over the tile
+     */
+    public void fillVertices(float[] positions, float[] textCoords, float[] normals, float textInc) {
+        Vector3f normal = new Vector3f();
+        int side = cells + 1;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int vertex = row * side + col;
+                positions[vertex * 3] = col * cellSize;
+                positions[vertex * 3 + 1] = getHeight(col, row);
+                positions[vertex * 3 + 2] = row * cellSize;
+                textCoords[vertex * 2] = textInc * col / cells;
+                textCoords[vertex * 2 + 1] = textInc * row / cells;
+                getNormal(col, row, normal);
+                normals[vertex * 3] = normal.x;
+                normals[vertex * 3 + 1] = normal.y;
+                normals[vertex * 3 + 2] = normal.z;
+            }
+        }
+    }
+
+    /**
+     * builds the indices of a tile, the triangles are split like the ones of the height map mesh.
+     * all tiles with the same number of cells share them
+     *
+     * @param cells number of cells along each side
+     * @return indices
+     */
+    public static int[] buildIndices(int cells) {
+        int side = cells + 1;
+        int[] indices = new int[cells * cells * 6];
+        int i = 0;
+        for (int row = 0; row < cells; row++) {
+            for (int col = 0; col < cells; col++) {
+                int leftTop = row * side + col;
+                int leftBottom = (row + 1) * side + col;
+                int rightBottom = (row + 1) * side + col + 1;
+                int rightTop = row * side + col + 1;
+                indices[i++] = leftTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightTop;
+                indices[i++] = rightTop;
+                indices[i++] = leftBottom;
+                indices[i++] = rightBottom;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * converts a float to a half float, rounding to the nearest half float
+     *
+     * @param value value
+     * @return bits of the half float
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent <= 0) {
+            // too small for a normal half float
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        if (exponent >= 31) {
+            return (short) (sign | 0x7C00);
+        }
+        // a carry of the rounding into the exponent gives the next larger power of two
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    /**
+     * @param half bits of a half float
+     * @return value of the half float
+     */
+    public static float fromHalf(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @return world x of the first vertex
+     */
+    public float getOriginX() {
+        return tileX * cells * cellSize;
+    }
+
+    /**
+     * @return world z of the first vertex
+     */
+    public float getOriginZ() {
+        return tileZ * cells * cellSize;
+    }
+
+    /**
+     * @return bytes used by the heights and the normals
+     */
+    public int getMemoryBytes() {
+        return (heights.length + normals.length) * Short.BYTES;
+    }
+
+    /**
+     * @return number of vertices of the mesh of the tile
+     */
+    public int getVertexCount() {
+        return (cells + 1) * (cells + 1);
+    }
+
+    public int getTileX() {
+        return tileX;
+    }
+
+    public int getTileZ() {
+        return tileZ;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return world height of one quantization step
+     */
+    public float getHeightStep() {
+        return heightStep;
+    }
+
+    /**
+     * @return lowest world height of the tile
+     */
+    public float getLowest() {
+        return lowest;
+    }
+
+    /**
+     * @return highest world height of the tile
+     */
+    public float getHighest() {
+        return highest;
+    }
+}
@@ -0,0 +1,800 @@
+package engine.graph.general;
+
+import engine.render.FrustumCuller;
+import org.joml.Matrix4f;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * dynamic bounding volume hierarchy of axis aligned boxes for region queries
+ *
+ * the leaves store the box of an item enlarged by a margin, an item that moves inside of its
+ * enlarged box only updates its tight box, otherwise it is removed and inserted again. insertion
+ * walks down to the sibling with the smallest increase of surface area and the tree is kept
+ * balanced with rotations on the way up, so queries stay logarithmic while items move
+ *
+ * the nodes are kept in flat arrays and referenced by index, freed nodes are reused. leaves are
+ * returned as proxies which have to be passed to move and remove
+ *
+ * every query walks the tree with its own traversal stack taken from a pool, so a consumer may
+ * start another query, for example a box query for an item found by a frustum query. the tree
+ * must not be changed while a query runs
+ *
+ * @param <T> type of the items
+ */
+@SuppressWarnings("unused")
+public class BoundingVolumeTree<T> {
+
+    /** index of no node */
+    public static final int NULL_NODE = -1;
+
+    /** floats per box: min x, y, z and max x, y, z */
+    private static final int BOX_FLOATS = 6;
+
+    /** enlarged boxes of the leaves and boxes around the children of inner nodes */
+    private float[] boxes;
+
+    /** tight boxes of the items of the leaves */
+    private float[] itemBoxes;
+
+    /** parent of every node, the next free node for freed nodes */
+    private int[] parents;
+
+    /** first child of inner nodes, NULL_NODE for leaves */
+    private int[] firstChildren;
+
+    /** second child of inner nodes */
+    private int[] secondChildren;
+
+    /** height of the subtree, 0 for leaves, -1 for freed nodes */
+    private int[] heights;
+
+    /** items of the leaves */
+    private Object[] items;
+
+    /** root node */
+    private int root = NULL_NODE;
+
+    /** first free node */
+    private int freeList = NULL_NODE;
+
+    /** number of nodes ever used */
+    private int nodeCount;
+
+    /** number of leaves */
+    private int leafCount;
+
+    /** enlargement of the leaf boxes on every side */
+    private final float margin;
+
+    /** traversals not used by a running query */
+    private final ArrayDeque<Traversal> traversals = new ArrayDeque<>();
+
+    /**
+     * creates a tree with a margin of 1 unit
+     */
+    public BoundingVolumeTree() {
+        this(1, 64);
+    }
+
+    /**
+     * @param margin enlargement of the leaf boxes on every side, larger margins cause less
+     *               reinsertions of moving items but looser queries
+     * @param capacity number of nodes before the arrays grow, a tree with n items needs 2n - 1 nodes
+     */
+    public BoundingVolumeTree(float margin, int capacity) {
+        this.margin = margin;
+        capacity = Math.max(capacity, 1);
+        boxes = new float[capacity * BOX_FLOATS];
+        itemBoxes = new float[capacity * BOX_FLOATS];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        secondChildren = new int[capacity];
+        heights = new int[capacity];
+        items = new Object[capacity];
+    }
+
+    /**
+     * inserts an item
+     *
+     * @param item item
+     * @param box min x, y, z and max x, y, z of the item
+     * @return proxy of the item
+     */
+    public int insert(T item, float[] box) {
+        int leaf = allocateNode();
+        items[leaf] = item;
+        heights[leaf] = 0;
+        setItemBox(leaf, box);
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    /**
+     * removes an item
+     *
+     * @param proxy proxy returned by insert
+     */
+    public void remove(int proxy) {
+        checkLeaf(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * updates the box of an item, the item is only inserted again if it left its enlarged box
+     *
+     * @param proxy proxy returned by insert
+     * @param box new min x, y, z and max x, y, z of the item
+     * @return true if the item was inserted again
+     */
+    public boolean move(int proxy, float[] box) {
+        checkLeaf(proxy);
+        int b = proxy * BOX_FLOATS;
+        System.arraycopy(box, 0, itemBoxes, b, BOX_FLOATS);
+        if (boxes[b] <= box[0] && boxes[b + 1] <= box[1] && boxes[b + 2] <= box[2]
+                && boxes[b + 3] >= box[3] && boxes[b + 4] >= box[4] && boxes[b + 5] >= box[5]) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setItemBox(proxy, box);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    /**
+     * @param proxy proxy returned by insert
+     * @return item of the proxy
+     */
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxy) {
+        checkLeaf(proxy);
+        return (T) items[proxy];
+    }
+
+    /**
+     * @return number of items
+     */
+    public int size() {
+        return leafCount;
+    }
+
+    /**
+     * @return height of the tree, -1 if it is empty
+     */
+    public int getHeight() {
+        return root == NULL_NODE ? -1 : heights[root];
+    }
+
+    /**
+     * removes all items
+     */
+    public void clear() {
+        Arrays.fill(items, 0, nodeCount, null);
+        root = NULL_NODE;
+        freeList = NULL_NODE;
+        nodeCount = 0;
+        leafCount = 0;
+    }
+
+    /**
+     * visits all items whose box intersects the frustum of a view projection matrix
+     *
+     * @param viewProjection projection matrix multiplied with the view matrix
+     * @param consumer receives the items
+     */
+    public void queryFrustum(Matrix4f viewProjection, Consumer<? super T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        Traversal traversal = acquireTraversal();
+        try {
+            queryFrustum(viewProjection, consumer, traversal);
+        } finally {
+            traversals.push(traversal);
+        }
+    }
+
+    private void queryFrustum(Matrix4f viewProjection, Consumer<? super T> consumer, Traversal traversal) {
+        float[] planes = traversal.planes;
+        FrustumCuller.extractPlanes(viewProjection, planes);
+        traversal.push(root);
+        while (traversal.top > 0) {
+            int node = traversal.pop();
+            int b = node * BOX_FLOATS;
+            float[] nodeBoxes = isLeaf(node) ? itemBoxes : boxes;
+
+            // the corner farthest along the normal decides if the box is outside, the nearest if it is inside
+            boolean inside = true;
+            boolean outside = false;
+            for (int p = 0; p < planes.length; p += FrustumCuller.PLANE_FLOATS) {
+                float nx = planes[p], ny = planes[p + 1], nz = planes[p + 2], d = planes[p + 3];
+                float far = nx * nodeBoxes[nx >= 0 ? b + 3 : b] + ny * nodeBoxes[ny >= 0 ? b + 4 : b + 1] + nz * nodeBoxes[nz >= 0 ? b + 5 : b + 2] + d;
+                if (far < 0) {
+                    outside = true;
+                    break;
+                }
+                float near = nx * nodeBoxes[nx >= 0 ? b : b + 3] + ny * nodeBoxes[ny >= 0 ? b + 1 : b + 4] + nz * nodeBoxes[nz >= 0 ? b + 2 : b + 5] + d;
+                if (near < 0) {
+                    inside = false;
+                }
+            }
+            if (outside) {
+                continue;
+            }
+            if (inside) {
+                visitSubtree(node, consumer);
+            } else if (isLeaf(node)) {
+                accept(node, consumer);
+            } else {
+                traversal.push(firstChildren[node]);
+                traversal.push(secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * visits all items whose box overlaps a box
+     *
+     * @param box min x, y, z and max x, y, z of the box
+     * @param consumer receives the items
+     */
+    public void queryBox(float[] box, Consumer<? super T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        Traversal traversal = acquireTraversal();
+        try {
+            queryBox(box, consumer, traversal);
+        } finally {
+            traversals.push(traversal);
+        }
+    }
+
+    private void queryBox(float[] box, Consumer<? super T> consumer, Traversal traversal) {
+        traversal.push(root);
+        while (traversal.top > 0) {
+            int node = traversal.pop();
+            int b = node * BOX_FLOATS;
+            float[] nodeBoxes = isLeaf(node) ? itemBoxes : boxes;
+            if (nodeBoxes[b] > box[3] || nodeBoxes[b + 1] > box[4] || nodeBoxes[b + 2] > box[5]
+                    || nodeBoxes[b + 3] < box[0] || nodeBoxes[b + 4] < box[1] || nodeBoxes[b + 5] < box[2]) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                accept(node, consumer);
+            } else {
+                traversal.push(firstChildren[node]);
+                traversal.push(secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * visits all items whose box overlaps a sphere
+     *
+     * @param x x of the center
+     * @param y y of the center
+     * @param z z of the center
+     * @param radius radius of the sphere
+     * @param consumer receives the items
+     */
+    public void querySphere(float x, float y, float z, float radius, Consumer<? super T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        Traversal traversal = acquireTraversal();
+        try {
+            querySphere(x, y, z, radius, consumer, traversal);
+        } finally {
+            traversals.push(traversal);
+        }
+    }
+
+    private void querySphere(float x, float y, float z, float radius, Consumer<? super T> consumer, Traversal traversal) {
+        float radiusSquared = radius * radius;
+        traversal.push(root);
+        while (traversal.top > 0) {
+            int node = traversal.pop();
+            int b = node * BOX_FLOATS;
+            float[] nodeBoxes = isLeaf(node) ? itemBoxes : boxes;
+
+            // distance from the center to the nearest point of the box
+            float dx = Math.max(Math.max(nodeBoxes[b] - x, x - nodeBoxes[b + 3]), 0);
+            float dy = Math.max(Math.max(nodeBoxes[b + 1] - y, y - nodeBoxes[b + 4]), 0);
+            float dz = Math.max(Math.max(nodeBoxes[b + 2] - z, z - nodeBoxes[b + 5]), 0);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                accept(node, consumer);
+            } else {
+                traversal.push(firstChildren[node]);
+                traversal.push(secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * visits all items whose box is hit by a ray
+     *
+     * @param originX x of the origin
+     * @param originY y of the origin
+     * @param originZ z of the origin
+     * @param directionX x of the direction
+     * @param directionY y of the direction
+     * @param directionZ z of the direction
+     * @param maxDistance length of the ray in multiples of the direction
+     * @param consumer receives the items
+     */
+    public void queryRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                         float maxDistance, Consumer<? super T> consumer) {
+        if (root == NULL_NODE) {
+            return;
+        }
+        Traversal traversal = acquireTraversal();
+        try {
+            queryRay(originX, originY, originZ, directionX, directionY, directionZ, maxDistance, consumer, traversal);
+        } finally {
+            traversals.push(traversal);
+        }
+    }
+
+    private void queryRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                          float maxDistance, Consumer<? super T> consumer, Traversal traversal) {
+        float inverseX = 1.0f / directionX;
+        float inverseY = 1.0f / directionY;
+        float inverseZ = 1.0f / directionZ;
+        traversal.push(root);
+        while (traversal.top > 0) {
+            int node = traversal.pop();
+            int b = node * BOX_FLOATS;
+            float[] nodeBoxes = isLeaf(node) ? itemBoxes : boxes;
+            if (!intersectsRay(nodeBoxes, b, originX, originY, originZ, inverseX, inverseY, inverseZ, maxDistance)) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                accept(node, consumer);
+            } else {
+                traversal.push(firstChildren[node]);
+                traversal.push(secondChildren[node]);
+            }
+        }
+    }
+
+    /**
+     * slab test of a ray against a box
+     *
+     * @return true if the ray hits the box between 0 and maxDistance
+     */
+    private static boolean intersectsRay(float[] nodeBoxes, int b, float originX, float originY, float originZ,
+                                         float inverseX, float inverseY, float inverseZ, float maxDistance) {
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            float origin = axis == 0 ? originX : axis == 1 ? originY : originZ;
+            float inverse = axis == 0 ? inverseX : axis == 1 ? inverseY : inverseZ;
+            float min = nodeBoxes[b + axis];
+            float max = nodeBoxes[b + axis + 3];
+            if (Float.isInfinite(inverse)) {
+                // parallel to the slab, an origin on a face would give 0 * infinity
+                if (origin < min || origin > max) {
+                    return false;
+                }
+                continue;
+            }
+            float t1 = (min - origin) * inverse;
+            float t2 = (max - origin) * inverse;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return far >= Math.max(near, 0) && near <= maxDistance;
+    }
+
+    /**
+     * visits all items of a subtree without testing their boxes
+     *
+     * @param node root of the subtree
+     * @param consumer receives the items
+     */
+    private void visitSubtree(int node, Consumer<? super T> consumer) {
+        if (isLeaf(node)) {
+            accept(node, consumer);
+            return;
+        }
+        visitSubtree(firstChildren[node], consumer);
+        visitSubtree(secondChildren[node], consumer);
+    }
+
+    /**
+     * @param leaf leaf node
+     * @param consumer receives the item of the leaf
+     */
+    @SuppressWarnings("unchecked")
+    private void accept(int leaf, Consumer<? super T> consumer) {
+        consumer.accept((T) items[leaf]);
+    }
+
+    /**
+     * @return an unused traversal of the pool or a new one if all are used by running queries
+     */
+    private Traversal acquireTraversal() {
+        Traversal traversal = traversals.poll();
+        if (traversal == null) {
+            return new Traversal();
+        }
+        traversal.top = 0;
+        return traversal;
+    }
+
+    /**
+     * @param node node index
+     * @return true if the node is a leaf
+     */
+    private boolean isLeaf(int node) {
+        return firstChildren[node] == NULL_NODE;
+    }
+
+    /**
+     * @param proxy proxy to check
+     */
+    private void checkLeaf(int proxy) {
+        if (proxy < 0 || proxy >= nodeCount || heights[proxy] != 0) {
+            throw new IllegalArgumentException("no item with the proxy " + proxy);
+        }
+    }
+
+    /**
+     * stores the tight box of a leaf and its enlarged box
+     *
+     * @param leaf leaf node
+     * @param box min x, y, z and max x, y, z of the item
+     */
+    private void setItemBox(int leaf, float[] box) {
+        int b = leaf * BOX_FLOATS;
+        System.arraycopy(box, 0, itemBoxes, b, BOX_FLOATS);
+        boxes[b] = box[0] - margin;
+        boxes[b + 1] = box[1] - margin;
+        boxes[b + 2] = box[2] - margin;
+        boxes[b + 3] = box[3] + margin;
+        boxes[b + 4] = box[4] + margin;
+        boxes[b + 5] = box[5] + margin;
+    }
+
+    /**
+     * @return index of an unused node
+     */
+    private int allocateNode() {
+        int node;
+        if (freeList != NULL_NODE) {
+            node = freeList;
+            freeList = parents[node];
+        } else {
+            if (nodeCount == parents.length) {
+                int capacity = nodeCount * 2;
+                boxes = Arrays.copyOf(boxes, capacity * BOX_FLOATS);
+                itemBoxes = Arrays.copyOf(itemBoxes, capacity * BOX_FLOATS);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                secondChildren = Arrays.copyOf(secondChildren, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                items = Arrays.copyOf(items, capacity);
+            }
+            node = nodeCount++;
+        }
+        parents[node] = NULL_NODE;
+        firstChildren[node] = NULL_NODE;
+        secondChildren[node] = NULL_NODE;
+        heights[node] = 0;
+        return node;
+    }
+
+    /**
+     * @param node node to put on the free list
+     */
+    private void freeNode(int node) {
+        items[node] = null;
+        heights[node] = -1;
+        parents[node] = freeList;
+        freeList = node;
+    }
+
+    /**
+     * @param a first node
+     * @param b second node
+     * @return surface area of the box around both nodes, halved
+     */
+    private float unionArea(int a, int b) {
+        int i = a * BOX_FLOATS, j = b * BOX_FLOATS;
+        float dx = Math.max(boxes[i + 3], boxes[j + 3]) - Math.min(boxes[i], boxes[j]);
+        float dy = Math.max(boxes[i + 4], boxes[j + 4]) - Math.min(boxes[i + 1], boxes[j + 1]);
+        float dz = Math.max(boxes[i + 5], boxes[j + 5]) - Math.min(boxes[i + 2], boxes[j + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * @param node node
+     * @return surface area of the box of the node, halved
+     */
+    private float area(int node) {
+        int i = node * BOX_FLOATS;
+        float dx = boxes[i + 3] - boxes[i];
+        float dy = boxes[i + 4] - boxes[i + 1];
+        float dz = boxes[i + 5] - boxes[i + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * sets the box of a node to the box around two other nodes
+     *
+     * @param node node to set
+     * @param a first node
+     * @param b second node
+     */
+    private void union(int node, int a, int b) {
+        int n = node * BOX_FLOATS, i = a * BOX_FLOATS, j = b * BOX_FLOATS;
+        boxes[n] = Math.min(boxes[i], boxes[j]);
+        boxes[n + 1] = Math.min(boxes[i + 1], boxes[j + 1]);
+        boxes[n + 2] = Math.min(boxes[i + 2], boxes[j + 2]);
+        boxes[n + 3] = Math.max(boxes[i + 3], boxes[j + 3]);
+        boxes[n + 4] = Math.max(boxes[i + 4], boxes[j + 4]);
+        boxes[n + 5] = Math.max(boxes[i + 5], boxes[j + 5]);
+    }
+
+    /**
+     * inserts a leaf as sibling of the node where the surface area grows the least
+     *
+     * @param leaf leaf to insert
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parents[leaf] = NULL_NODE;
+            return;
+        }
+
+        int index = root;
+        while (!isLeaf(index)) {
+            int first = firstChildren[index];
+            int second = secondChildren[index];
+
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            // cost of making the leaf and the node siblings and the cost every level below pays
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+            float firstCost = childCost(first, leaf) + inheritanceCost;
+            float secondCost = childCost(second, leaf) + inheritanceCost;
+
+            if (cost < firstCost && cost < secondCost) {
+                break;
+            }
+            index = firstCost < secondCost ? first : second;
+        }
+
+        int sibling = index;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        union(newParent, leaf, sibling);
+        heights[newParent] = heights[sibling] + 1;
+        firstChildren[newParent] = sibling;
+        secondChildren[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        if (oldParent == NULL_NODE) {
+            root = newParent;
+        } else if (firstChildren[oldParent] == sibling) {
+            firstChildren[oldParent] = newParent;
+        } else {
+            secondChildren[oldParent] = newParent;
+        }
+
+        refit(parents[leaf]);
+    }
+
+    /**
+     * @param child child a leaf could descend to
+     * @param leaf leaf to insert
+     * @return cost of descending to the child
+     */
+    private float childCost(int child, int leaf) {
+        if (isLeaf(child)) {
+            return unionArea(child, leaf);
+        }
+        return unionArea(child, leaf) - area(child);
+    }
+
+    /**
+     * removes a leaf, its sibling takes the place of their parent
+     *
+     * @param leaf leaf to remove
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = firstChildren[parent] == leaf ? secondChildren[parent] : firstChildren[parent];
+        freeNode(parent);
+
+        if (grandParent == NULL_NODE) {
+            root = sibling;
+            parents[sibling] = NULL_NODE;
+            return;
+        }
+        if (firstChildren[grandParent] == parent) {
+            firstChildren[grandParent] = sibling;
+        } else {
+            secondChildren[grandParent] = sibling;
+        }
+        parents[sibling] = grandParent;
+        refit(grandParent);
+    }
+
+    /**
+     * balances and updates boxes and heights from a node up to the root
+     *
+     * @param node first node to update
+     */
+    private void refit(int node) {
+        while (node != NULL_NODE) {
+            node = balance(node);
+            int first = firstChildren[node];
+            int second = secondChildren[node];
+            heights[node] = 1 + Math.max(heights[first], heights[second]);
+            union(node, first, second);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * rotates the higher grandchild of an unbalanced node up
+     *
+     * @param a node to balance
+     * @return node that took the place of a
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || heights[a] < 2) {
+            return a;
+        }
+        int b = firstChildren[a];
+        int c = secondChildren[a];
+        int difference = heights[c] - heights[b];
+
+        if (difference > 1) {
+            rotateUp(a, c, b, false);
+            return c;
+        }
+        if (difference < -1) {
+            rotateUp(a, b, c, true);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * rotates a child up into the place of its parent, the parent takes the lower grandchild
+     *
+     * @param a unbalanced node
+     * @param up higher child of a that takes its place
+     * @param other other child of a
+     * @param upIsFirst true if up is the first child of a
+     */
+    private void rotateUp(int a, int up, int other, boolean upIsFirst) {
+        int f = firstChildren[up];
+        int g = secondChildren[up];
+
+        firstChildren[up] = a;
+        parents[up] = parents[a];
+        parents[a] = up;
+        int parent = parents[up];
+        if (parent == NULL_NODE) {
+            root = up;
+        } else if (firstChildren[parent] == a) {
+            firstChildren[parent] = up;
+        } else {
+            secondChildren[parent] = up;
+        }
+
+        // the higher grandchild stays below up, the lower one replaces up below a
+        int keep = heights[f] > heights[g] ? f : g;
+        int move = keep == f ? g : f;
+        secondChildren[up] = keep;
+        if (upIsFirst) {
+            firstChildren[a] = move;
+        } else {
+            secondChildren[a] = move;
+        }
+        parents[move] = a;
+
+        union(a, other, move);
+        union(up, a, keep);
+        heights[a] = 1 + Math.max(heights[other], heights[move]);
+        heights[up] = 1 + Math.max(heights[a], heights[keep]);
+    }
+
+    /**
+     * checks the structure of the tree, used by tests and benchmarks
+     *
+     * @throws IllegalStateException if a parent, height or box is inconsistent
+     */
+    public void validate() {
+        if (root != NULL_NODE) {
+            if (parents[root] != NULL_NODE) {
+                throw new IllegalStateException("root has a parent");
+            }
+            int leaves = validate(root);
+            if (leaves != leafCount) {
+                throw new IllegalStateException(leaves + " leaves in the tree but " + leafCount + " items");
+            }
+        } else if (leafCount != 0) {
+            throw new IllegalStateException("empty tree with " + leafCount + " items");
+        }
+    }
+
+    /**
+     * @param node root of the subtree to check
+     * @return number of leaves of the subtree
+     */
+    private int validate(int node) {
+        if (isLeaf(node)) {
+            if (heights[node] != 0) {
+                throw new IllegalStateException("leaf " + node + " has height " + heights[node]);
+            }
+            return 1;
+        }
+        int first = firstChildren[node];
+        int second = secondChildren[node];
+        if (parents[first] != node || parents[second] != node) {
+            throw new IllegalStateException("wrong parent below " + node);
+        }
+        if (heights[node] != 1 + Math.max(heights[first], heights[second])) {
+            throw new IllegalStateException("wrong height of " + node);
+        }
+        int n = node * BOX_FLOATS;
+        for (int child : new int[]{first, second}) {
+            int c = child * BOX_FLOATS;
+            for (int k = 0; k < 3; k++) {
+                if (boxes[c + k] < boxes[n + k] || boxes[c + 3 + k] > boxes[n + 3 + k]) {
+                    throw new IllegalStateException("box of " + node + " does not contain " + child);
+                }
+            }
+        }
+        return validate(first) + validate(second);
+    }
+
+    /**
+     * stack of nodes and frustum planes of one running query
+     */
+    private static class Traversal {
+
+        /** nodes still to visit */
+        private int[] stack = new int[64];
+
+        /** number of nodes on the stack */
+        private int top;
+
+        /** planes of the frustum query */
+        private final float[] planes = new float[FrustumCuller.PLANES * FrustumCuller.PLANE_FLOATS];
+
+        private void push(int node) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = node;
+        }
+
+        private int pop() {
+            return stack[--top];
+        }
+    }
+}
@@ -3,14 +3,21 @@ package engine.graph.general;
 
 import engine.graph.environment.Fog;
 import engine.graph.environment.Skybox;
+import engine.graph.items.BoundingVolume;
 import engine.graph.items.GameItem;
 import engine.graph.items.Mesh;
 import engine.graph.light.LightHandler;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class Scene {
 
@@ -32,6 +39,18 @@ public class Scene {
      */
     private final Map<Mesh, List<GameItem>> meshMap;
 
+    /** world space boxes of the game items for region queries */
+    private final BoundingVolumeTree<GameItem> spatialIndex;
+
+    /** proxies of the game items in the spatial index */
+    private final Map<GameItem, Integer> proxies;
+
+    /** game items whose transformation changed since the spatial index was updated */
+    private final Set<GameItem> movedItems;
+
+    /** world space box used to update the spatial index */
+    private final float[] box = new float[6];
+
     /**
      * constructor creates hashMap and lightHandler
      */
@@ -39,6 +58,9 @@ public class Scene {
         lightHandler = new LightHandler();
         meshMap = new HashMap<>();
         fog = Fog.NO_FOG;
+        spatialIndex = new BoundingVolumeTree<>();
+        proxies = new IdentityHashMap<>();
+        movedItems = Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
     /**
@@ -62,9 +84,154 @@ public class Scene {
             Mesh mesh = gameItem.getMesh();
             List<GameItem> list = meshMap.computeIfAbsent(mesh, k -> new ArrayList<>());
             list.add(gameItem);
+            addToSpatialIndex(gameItem);
+        }
+    }
+
+    /**
+     * removes a game item from the scene
+     *
+     * @param gameItem game item to remove
+     */
+    @SuppressWarnings("unused")
+    public void removeGameItem(GameItem gameItem) {
+        List<GameItem> list = meshMap.get(gameItem.getMesh());
+        if (list != null && list.remove(gameItem) && list.isEmpty()) {
+            meshMap.remove(gameItem.getMesh());
+        }
+        Integer proxy = proxies.remove(gameItem);
+        if (proxy != null) {
+            spatialIndex.remove(proxy);
+            gameItem.setTransformListener(null);
+        }
+        movedItems.remove(gameItem);
+    }
+
+    /**
+     * inserts a game item into the spatial index and listens to its transformation
+     *
+     * @param gameItem game item to insert
+     */
+    private void addToSpatialIndex(GameItem gameItem) {
+        if (proxies.containsKey(gameItem)) {
+            return;
+        }
+        computeBox(gameItem);
+        proxies.put(gameItem, spatialIndex.insert(gameItem, box));
+        gameItem.setTransformListener(movedItems::add);
+    }
+
+    /**
+     * computes the world space box of a game item into box
+     *
+     * @param gameItem game item
+     */
+    private void computeBox(GameItem gameItem) {
+        Mesh mesh = gameItem.getMesh();
+        BoundingVolume bounds = mesh != null ? mesh.getBounds() : null;
+        if (bounds != null) {
+            bounds.transformBox(gameItem.getModelMatrix(), box, 0);
+        } else {
+            Vector3f position = gameItem.getPosition();
+            box[0] = box[3] = position.x;
+            box[1] = box[4] = position.y;
+            box[2] = box[5] = position.z;
+        }
+    }
+
+    /**
+     * moves the boxes of the game items whose transformation changed through a setter in the
+     * spatial index, called by the queries. game items changed through the vectors of their getters
+     * have to be passed to updateGameItem
+     */
+    public void updateSpatialIndex() {
+        if (movedItems.isEmpty()) {
+            return;
+        }
+        for (GameItem gameItem : movedItems) {
+            Integer proxy = proxies.get(gameItem);
+            if (proxy != null) {
+                computeBox(gameItem);
+                spatialIndex.move(proxy, box);
+            }
+        }
+        movedItems.clear();
+    }
+
+    /**
+     * marks a game item as moved, needed if its position, rotation or scale vectors were changed
+     * directly. also marks its cached model matrix as outdated
+     *
+     * @param gameItem game item that moved
+     */
+    @SuppressWarnings("unused")
+    public void updateGameItem(GameItem gameItem) {
+        gameItem.markModelMatrixDirty();
+        if (proxies.containsKey(gameItem)) {
+            movedItems.add(gameItem);
         }
     }
 
+    /**
+     * visits all game items whose box intersects the frustum of a view projection matrix
+     *
+     * @param viewProjection projection matrix multiplied with the view matrix
+     * @param consumer receives the game items
+     */
+    @SuppressWarnings("unused")
+    public void queryFrustum(Matrix4f viewProjection, Consumer<GameItem> consumer) {
+        updateSpatialIndex();
+        spatialIndex.queryFrustum(viewProjection, consumer);
+    }
+
+    /**
+     * visits all game items whose box is hit by a ray
+     *
+     * @param origin origin of the ray
+     * @param direction direction of the ray
+     * @param maxDistance length of the ray in multiples of the direction
+     * @param consumer receives the game items
+     */
+    @SuppressWarnings("unused")
+    public void queryRay(Vector3f origin, Vector3f direction, float maxDistance, Consumer<GameItem> consumer) {
+        updateSpatialIndex();
+        spatialIndex.queryRay(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance, consumer);
+    }
+
+    /**
+     * visits all game items whose box overlaps a sphere
+     *
+     * @param center center of the sphere
+     * @param radius radius of the sphere
+     * @param consumer receives the game items
+     */
+    @SuppressWarnings("unused")
+    public void querySphere(Vector3f center, float radius, Consumer<GameItem> consumer) {
+        updateSpatialIndex();
+        spatialIndex.querySphere(center.x, center.y, center.z, radius, consumer);
+    }
+
+    /**
+     * visits all game items whose box overlaps a box
+     *
+     * @param min corner of the box with the smallest coordinates
+     * @param max corner of the box with the largest coordinates
+     * @param consumer receives the game items
+     */
+    @SuppressWarnings("unused")
+    public void queryBox(Vector3f min, Vector3f max, Consumer<GameItem> consumer) {
+        updateSpatialIndex();
+        spatialIndex.queryBox(new float[]{min.x, min.y, min.z, max.x, max.y, max.z}, consumer);
+    }
+
+    /**
+     * @return spatial index of the game items, updateSpatialIndex has to be called before querying it directly
+     */
+    @SuppressWarnings("unused")
+    public BoundingVolumeTree<GameItem> getSpatialIndex() {
+        return spatialIndex;
+    }
+
     /**
      * @param skybox new skybox
      */
@@ -0,0 +1,153 @@
+package engine.graph.items;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.FloatBuffer;
+
+/**
+ * axis aligned bounding box and bounding sphere of the vertices of a mesh in model space
+ * the sphere is centered in the box, its radius is the distance to the farthest vertex
+ */
+@SuppressWarnings("unused")
+public class BoundingVolume {
+
+    /** corner of the box with the smallest coordinates */
+    private final Vector3f min;
+
+    /** corner of the box with the largest coordinates */
+    private final Vector3f max;
+
+    /** center of the sphere */
+    private final Vector3f center;
+
+    /** radius of the sphere */
+    private final float radius;
+
+    /**
+     * @param min corner of the box with the smallest coordinates
+     * @param max corner of the box with the largest coordinates
+     * @param center center of the sphere
+     * @param radius radius of the sphere
+     */
+    public BoundingVolume(Vector3f min, Vector3f max, Vector3f center, float radius) {
+        this.min = min;
+        this.max = max;
+        this.center = center;
+        this.radius = radius;
+    }
+
+    /**
+     * computes the bounding volume of positions with three floats per vertex, the content between
+     * position and limit is read without changing the buffer
+     *
+     * @param positions positions of the vertices
+     * @return bounding volume, a point at the origin for empty buffers
+     */
+    public static BoundingVolume of(FloatBuffer positions) {
+        int start = positions.position();
+        int end = start + positions.remaining() / 3 * 3;
+        if (end == start) {
+            return new BoundingVolume(new Vector3f(), new Vector3f(), new Vector3f(), 0);
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i += 3) {
+            float x = positions.get(i);
+            float y = positions.get(i + 1);
+            float z = positions.get(i + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        float centerX = (minX + maxX) * 0.5f;
+        float centerY = (minY + maxY) * 0.5f;
+        float centerZ = (minZ + maxZ) * 0.5f;
+        float radiusSquared = 0;
+        for (int i = start; i < end; i += 3) {
+            float dx = positions.get(i) - centerX;
+            float dy = positions.get(i + 1) - centerY;
+            float dz = positions.get(i + 2) - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+
+        return new BoundingVolume(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ),
+                new Vector3f(centerX, centerY, centerZ), (float) Math.sqrt(radiusSquared));
+    }
+
+    /**
+     * writes the box around the box transformed by a matrix, every column of the matrix adds the
+     * smaller and the larger product of its axis to min and max
+     *
+     * @param matrix model matrix
+     * @param dest receives min x, y, z and max x, y, z
+     * @param offset index of min x in dest
+     */
+    public void transformBox(Matrix4f matrix, float[] dest, int offset) {
+        dest[offset] = matrix.m30();
+        dest[offset + 1] = matrix.m31();
+        dest[offset + 2] = matrix.m32();
+        dest[offset + 3] = matrix.m30();
+        dest[offset + 4] = matrix.m31();
+        dest[offset + 5] = matrix.m32();
+        addAxis(dest, offset, matrix.m00(), matrix.m01(), matrix.m02(), min.x, max.x);
+        addAxis(dest, offset, matrix.m10(), matrix.m11(), matrix.m12(), min.y, max.y);
+        addAxis(dest, offset, matrix.m20(), matrix.m21(), matrix.m22(), min.z, max.z);
+    }
+
+    /**
+     * @param dest box to extend
+     * @param offset index of min x in dest
+     * @param x x component of the transformed axis
+     * @param y y component of the transformed axis
+     * @param z z component of the transformed axis
+     * @param min smallest model space coordinate on the axis
+     * @param max largest model space coordinate on the axis
+     */
+    private static void addAxis(float[] dest, int offset, float x, float y, float z, float min, float max) {
+        float a = x * min, b = x * max;
+        dest[offset] += Math.min(a, b);
+        dest[offset + 3] += Math.max(a, b);
+        a = y * min;
+        b = y * max;
+        dest[offset + 1] += Math.min(a, b);
+        dest[offset + 4] += Math.max(a, b);
+        a = z * min;
+        b = z * max;
+        dest[offset + 2] += Math.min(a, b);
+        dest[offset + 5] += Math.max(a, b);
+    }
+
+    /**
+     * @return corner of the box with the smallest coordinates
+     */
+    public Vector3f getMin() {
+        return min;
+    }
+
+    /**
+     * @return corner of the box with the largest coordinates
+     */
+    public Vector3f getMax() {
+        return max;
+    }
+
+    /**
+     * @return center of the sphere
+     */
+    public Vector3f getCenter() {
+        return center;
+    }
+
+    /**
+     * @return radius of the sphere
+     */
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -1,7 +1,10 @@
 package engine.graph.items;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.util.function.Consumer;
+
 public class GameItem {
 
     /** mesh - drawable object of the GameItem */
@@ -19,10 +22,28 @@ public class GameItem {
     /** rotation as Vector */
     private final Vector3f rotation;
 
+    /** model matrix cached until a setter changes position, rotation or scale */
+    private final Matrix4f modelMatrix;
+
+    /** true if the cached model matrix has to be built again */
+    private boolean modelMatrixDirty;
+
+    /** store holding the transformation if the item is a view over one of its slots, null otherwise */
+    private TransformStore transformStore;
+
+    /** slot of the item in the transform store */
+    private int transformSlot = -1;
+
+    /** notified when the mesh, position, rotation or scale changes through a setter */
+    private Consumer<GameItem> transformListener;
+
     /*
-      For all Vector Attributes the changes can also be applied by using the get Method
+      Changes of the Vector Attributes have to go through the set Methods. If the vectors returned by
+      the get Methods are changed directly, markModelMatrixDirty has to be called afterwards, or
+      Scene.updateGameItem if the item is part of a scene, else the cached model matrix and the
+      spatial index keep the old Values
 
-      The new Values a used in the Transformation Methods to scale, rotate and position the mesh in the scene
+      The Values are used in the Transformation Methods to scale, rotate and position the mesh in the scene
      */
 
     /**
@@ -47,6 +68,8 @@ public class GameItem {
         scale = 1;
         rotation = new Vector3f(0,0,0);
         scale3 = new Vector3f(1,1,1);
+        modelMatrix = new Matrix4f();
+        modelMatrixDirty = true;
     }
 
     /**
@@ -62,6 +85,9 @@ public class GameItem {
      */
 
     public Vector3f getPosition() {
+        if (transformStore != null) {
+            transformStore.getPosition(transformSlot, position);
+        }
         return position;
     }
 
@@ -70,6 +96,9 @@ public class GameItem {
      */
 
     public float getScale() {
+        if (transformStore != null) {
+            scale = transformStore.getScale(transformSlot);
+        }
         return scale;
     }
 
@@ -78,6 +107,9 @@ public class GameItem {
      */
 
     public Vector3f getRotation() {
+        if (transformStore != null) {
+            transformStore.getRotation(transformSlot, rotation);
+        }
         return rotation;
     }
 
@@ -86,6 +118,9 @@ public class GameItem {
      */
 
     public Vector3f getScale3() {
+        if (transformStore != null) {
+            transformStore.getScale3(transformSlot, scale3);
+        }
         return scale3;
     }
 
@@ -98,6 +133,11 @@ public class GameItem {
     @SuppressWarnings("unused")
     public void setScale(float scale) {
         this.scale = scale;
+        if (transformStore != null) {
+            transformStore.setScale(transformSlot, scale);
+        }
+        modelMatrixDirty = true;
+        transformChanged();
     }
 
     /**
@@ -112,6 +152,11 @@ public class GameItem {
         this.position.x = x;
         this.position.y = y;
         this.position.z = z;
+        if (transformStore != null) {
+            transformStore.setPosition(transformSlot, x, y, z);
+        }
+        modelMatrixDirty = true;
+        transformChanged();
     }
 
     /**
@@ -127,6 +172,11 @@ public class GameItem {
         this.rotation.x = x;
         this.rotation.y = y;
         this.rotation.z = z;
+        if (transformStore != null) {
+            transformStore.setRotation(transformSlot, x, y, z);
+        }
+        modelMatrixDirty = true;
+        transformChanged();
     }
 
     /**
@@ -142,6 +192,11 @@ public class GameItem {
         this.scale3.x = x;
         this.scale3.y = y;
         this.scale3.z = z;
+        if (transformStore != null) {
+            transformStore.setScale3(transformSlot, x, y, z);
+        }
+        modelMatrixDirty = true;
+        transformChanged();
     }
 
     /**
@@ -152,5 +207,115 @@ public class GameItem {
 
     public void setMesh(Mesh mesh) {
         this.mesh = mesh;
+        transformChanged();
+    }
+
+    /**
+     * builds the model matrix from position, rotation and scale
+     *
+     * @param dest matrix to write to
+     * @return dest
+     */
+    public Matrix4f buildModelMatrix(Matrix4f dest) {
+        Vector3f rotation = getRotation();
+        return dest.identity().translate(getPosition()).
+                rotateX((float)Math.toRadians(-rotation.x)).
+                rotateY((float)Math.toRadians(-rotation.y)).
+                rotateZ((float)Math.toRadians(-rotation.z)).
+                scale(getScale()).scale(getScale3());
+    }
+
+    /**
+     * returns the model matrix, it is only built again after a setter changed the position,
+     * rotation or scale, so static items build it once. the matrix must not be changed
+     *
+     * @return cached model matrix
+     */
+    public Matrix4f getModelMatrix() {
+        if (transformStore != null) {
+            return transformStore.getModelMatrix(transformSlot, modelMatrix);
+        }
+        if (modelMatrixDirty) {
+            buildModelMatrix(modelMatrix);
+            modelMatrixDirty = false;
+        }
+        return modelMatrix;
+    }
+
+    /**
+     * moves the transformation of the item into a slot of a transform store, the item becomes a
+     * view over the slot: setters write to the store, getters read from it and the model matrix is
+     * the one built by the store. changes to the vectors returned by the getters are overwritten
+     * by the store
+     *
+     * @param transformStore store to move the transformation to
+     */
+    public void attachTransformStore(TransformStore transformStore) {
+        detachTransformStore();
+        int slot = transformStore.allocate();
+        transformStore.setPosition(slot, position.x, position.y, position.z);
+        transformStore.setRotation(slot, rotation.x, rotation.y, rotation.z);
+        transformStore.setScale(slot, scale);
+        transformStore.setScale3(slot, scale3.x, scale3.y, scale3.z);
+        this.transformStore = transformStore;
+        this.transformSlot = slot;
+    }
+
+    /**
+     * copies the transformation back from the transform store and frees the slot
+     */
+    public void detachTransformStore() {
+        if (transformStore == null) {
+            return;
+        }
+        getPosition();
+        getRotation();
+        getScale();
+        getScale3();
+        transformStore.free(transformSlot);
+        transformStore = null;
+        transformSlot = -1;
+        modelMatrixDirty = true;
+    }
+
+    /**
+     * @return store holding the transformation or null
+     */
+    public TransformStore getTransformStore() {
+        return transformStore;
+    }
+
+    /**
+     * @return slot of the item in the transform store, -1 if it is not attached
+     */
+    public int getTransformSlot() {
+        return transformSlot;
+    }
+
+    /**
+     * marks the cached model matrix as outdated, needed if the position, rotation or scale vectors
+     * returned by the getters were changed directly
+     */
+    public void markModelMatrixDirty() {
+        modelMatrixDirty = true;
+    }
+
+    /**
+     * sets the listener notified when the mesh, position, rotation or scale changes through a setter
+     * changes applied to the vectors returned by the getters are not noticed
+     *
+     * @param transformListener listener or null
+     */
+    public void setTransformListener(Consumer<GameItem> transformListener) {
+        this.transformListener = transformListener;
+    }
+
+    /**
+     * notifies the listener about a changed transformation
+     */
+    private void transformChanged() {
+        if (transformListener != null) {
+            transformListener.accept(this);
+        }
     }
 }
@@ -0,0 +1,98 @@
+package engine.graph.items;
+
+import org.joml.Vector4f;
+
+/**
+ * plain description of a material read from a model file. like MeshData it does not touch
+ * open gl, so it can be created on any thread. the texture is only loaded when the material
+ * is created on the thread owning the graphics context
+ */
+@SuppressWarnings("unused")
+public class MaterialData {
+
+    /** color of a single colored material, null if the material is built from its parts */
+    private Vector4f color;
+
+    /** path of the texture image, null if the material has no texture */
+    private String texturePath;
+
+    /** ambient color, null to keep the default */
+    private Vector4f ambientColor;
+
+    /** reflectance of the surface */
+    private float reflectance;
+
+    /**
+     * creates the description of a default material
+     */
+    public MaterialData() {
+    }
+
+    /**
+     * creates the description of a single colored material
+     *
+     * @param color mesh color
+     * @param reflectance mesh reflectance
+     */
+    public MaterialData(Vector4f color, float reflectance) {
+        this.color = color;
+        this.reflectance = reflectance;
+    }
+
+    /**
+     * creates the material and loads its texture, has to be called on the open gl thread
+     * if the texture cant be loaded the material is created without it
+     *
+     * @return new material
+     */
+    public Material createMaterial() {
+        if (color != null) {
+            return new Material(color, reflectance);
+        }
+
+        Material result = new Material();
+        if (texturePath != null) {
+            try {
+                result = new Material(new Texture(texturePath, Texture.FilterMode.NEAREST));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (ambientColor != null) {
+            result.setAmbientColor(ambientColor);
+        }
+        result.setReflectance(reflectance);
+        return result;
+    }
+
+    public String getTexturePath() {
+        return texturePath;
+    }
+
+    /**
+     * sets the texture, a previously set ambient color is dropped like it is when a textured
+     * material replaces a colored one
+     *
+     * @param texturePath path of the texture image
+     */
+    public void setTexturePath(String texturePath) {
+        this.texturePath = texturePath;
+        this.ambientColor = null;
+    }
+
+    public Vector4f getAmbientColor() {
+        return ambientColor;
+    }
+
+    public void setAmbientColor(Vector4f ambientColor) {
+        this.ambientColor = ambientColor;
+    }
+
+    public float getReflectance() {
+        return reflectance;
+    }
+
+    public void setReflectance(float reflectance) {
+        this.reflectance = reflectance;
+    }
+}
@@ -1,5 +1,8 @@
 package engine.graph.items;
 
+import engine.render.IndexBuffer;
+import engine.render.InstanceBuffer;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.system.MemoryUtil;
 
 import java.nio.FloatBuffer;
@@ -14,9 +17,16 @@ import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
 
 public class Mesh {
 
+    /** empty buffer for attributes a mesh does not have */
+    private static final FloatBuffer EMPTY_FLOATS = BufferUtils.createFloatBuffer(0);
+
+    /** empty buffer for attributes a mesh does not have */
+    private static final IntBuffer EMPTY_INTS = BufferUtils.createIntBuffer(0);
+
     /** vertex array object id */
     private final int vaoId;
 
@@ -29,6 +39,12 @@ public class Mesh {
     /** number of vertices */
     private final int vertexCount;
 
+    /** size of all vbos in bytes */
+    private long gpuBytes;
+
+    /** bounds of the vertices in model space */
+    private BoundingVolume bounds;
+
     /**
      * Method creates an vao that can be used by the open gl graphics context form the
      * position Array, texture coordinates, normal Vectors and an indices array used to identify vertices.
@@ -44,45 +60,54 @@ public class Mesh {
 
 
     /**
-     * creates a float vbo from a float array
+     * creates a float vbo from a buffer
      *
      * @param index index of the vbo
      * @param size size of the vbo elements
      * @param content content of the vbo
-     * @param empty if true an empty vbo is created
      */
-    private void createFloatVBO(int index, int size, float[] content,boolean empty) {
-
-        FloatBuffer buffer;
-
-        //Position VBO
+    private void createFloatVBO(int index, int size, FloatBuffer content) {
         int vboId = glGenBuffers();
         vboidList.add(vboId);
-        buffer = MemoryUtil.memAllocFloat(content.length);
-        if(!empty) buffer.put(content).flip();
+        gpuBytes += (long) content.remaining() * Float.BYTES;
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER,buffer,GL_STATIC_DRAW);
+        glBufferData(GL_ARRAY_BUFFER,content,GL_STATIC_DRAW);
         glEnableVertexAttribArray(index);
         glVertexAttribPointer(index,size,GL_FLOAT,false,0,0);
-
-        MemoryUtil.memFree(buffer);
     }
 
-    private void createIntVBO(int index, int size, int[] content,boolean empty) {
-
-        IntBuffer buffer;
+    /**
+     * creates a float vbo with uninitialized content
+     *
+     * @param index index of the vbo
+     * @param size size of the vbo elements
+     * @param length number of floats in the vbo
+     */
+    private void createEmptyFloatVBO(int index, int size, int length) {
+        int vboId = glGenBuffers();
+        vboidList.add(vboId);
+        gpuBytes += (long) length * Float.BYTES;
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER,(long) length * Float.BYTES,GL_STATIC_DRAW);
+        glEnableVertexAttribArray(index);
+        glVertexAttribPointer(index,size,GL_FLOAT,false,0,0);
+    }
 
-        //Position VBO
+    /**
+     * creates an int vbo from a buffer
+     *
+     * @param index index of the vbo
+     * @param size size of the vbo elements
+     * @param content content of the vbo
+     */
+    private void createIntVBO(int index, int size, IntBuffer content) {
         int vboId = glGenBuffers();
         vboidList.add(vboId);
-        buffer = MemoryUtil.memAllocInt(content.length);
-        if(!empty) buffer.put(content).flip();
+        gpuBytes += (long) content.remaining() * Integer.BYTES;
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER,buffer,GL_STATIC_DRAW);
+        glBufferData(GL_ARRAY_BUFFER,content,GL_STATIC_DRAW);
         glEnableVertexAttribArray(index);
         glVertexAttribIPointer(index,size,GL_INT,0,0);
-
-        MemoryUtil.memFree(buffer);
     }
 
 
@@ -103,71 +128,173 @@ public class Mesh {
 
         System.out.println(weights.length);
 
+        FloatBuffer positionsBuffer = null;
+        FloatBuffer textCoordsBuffer = null;
+        FloatBuffer normalsBuffer = null;
+        FloatBuffer tangentsBuffer = null;
+        FloatBuffer biTangentsBuffer = null;
+        IntBuffer jointIDsBuffer = null;
+        FloatBuffer weightsBuffer = null;
         IntBuffer indicesBuffer = null;
         material = new Material();
         try{
+            positionsBuffer = MemoryUtil.memAllocFloat(positions.length);
+            positionsBuffer.put(positions).flip();
+            textCoordsBuffer = MemoryUtil.memAllocFloat(textCoords.length);
+            textCoordsBuffer.put(textCoords).flip();
+            normalsBuffer = MemoryUtil.memAllocFloat(normals.length);
+            normalsBuffer.put(normals).flip();
+            tangentsBuffer = MemoryUtil.memAllocFloat(tangents.length);
+            tangentsBuffer.put(tangents).flip();
+            biTangentsBuffer = MemoryUtil.memAllocFloat(biTangents.length);
+            biTangentsBuffer.put(biTangents).flip();
+            jointIDsBuffer = MemoryUtil.memAllocInt(jointIDs.length);
+            jointIDsBuffer.put(jointIDs).flip();
+            weightsBuffer = MemoryUtil.memAllocFloat(weights.length);
+            weightsBuffer.put(weights).flip();
+            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
+            indicesBuffer.put(indices).flip();
+
             vertexCount = indices.length;
             vboidList = new ArrayList<>();
+            vaoId = createVertexArray(positionsBuffer, textCoordsBuffer, normalsBuffer, tangentsBuffer, biTangentsBuffer, jointIDsBuffer, weightsBuffer, indicesBuffer, null);
+
+        }finally {
+            MemoryUtil.memFree(positionsBuffer);
+            MemoryUtil.memFree(textCoordsBuffer);
+            MemoryUtil.memFree(normalsBuffer);
+            MemoryUtil.memFree(tangentsBuffer);
+            MemoryUtil.memFree(biTangentsBuffer);
+            MemoryUtil.memFree(jointIDsBuffer);
+            MemoryUtil.memFree(weightsBuffer);
+            MemoryUtil.memFree(indicesBuffer);
+        }
+    }
+
+    /**
+     * Method creates an vao directly from direct buffers without tangents and animation data
+     *
+     * @param positions positions of the vertices
+     * @param textCoords texture coordinates
+     * @param normals normal vectors
+     * @param indices indices of the vertices
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices) {
+        this(positions, textCoords, normals, EMPTY_FLOATS, EMPTY_FLOATS, EMPTY_INTS, EMPTY_FLOATS, indices);
+    }
+
+    /**
+     * Method creates an vao directly from direct buffers, the content of the buffers between
+     * position and limit is uploaded without copying it first. can be used with memory mapped files
+     * empty buffers are treated like empty arrays in the array constructor
+     *
+     * @param positions positions of the vertices
+     * @param textCoords texture coordinates
+     * @param normals normal vectors
+     * @param tangents tangent vectors
+     * @param biTangents biTangent vectors
+     * @param jointIDs ids of the joints
+     * @param weights weights of the joints
+     * @param indices indices of the vertices
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, FloatBuffer tangents, FloatBuffer biTangents, IntBuffer jointIDs, FloatBuffer weights, IntBuffer indices) {
+        material = new Material();
+        vertexCount = indices.remaining();
+        vboidList = new ArrayList<>();
+        vaoId = createVertexArray(positions, textCoords, normals, tangents, biTangents, jointIDs, weights, indices, null);
+    }
+
+    /**
+     * Method creates an vao from direct buffers that uses an element buffer shared with other
+     * meshes of the same index layout. the mesh does not own the shared buffer, deleting the mesh
+     * keeps it
+     *
+     * @param positions positions of the vertices
+     * @param textCoords texture coordinates
+     * @param normals normal vectors
+     * @param indices shared indices of the vertices
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IndexBuffer indices) {
+        material = new Material();
+        vertexCount = indices.getCount();
+        vboidList = new ArrayList<>();
+        vaoId = createVertexArray(positions, textCoords, normals, EMPTY_FLOATS, EMPTY_FLOATS, EMPTY_INTS, EMPTY_FLOATS, null, indices);
+    }
+
+    /**
+     * creates the vao and the vbos of the mesh
+     *
+     * @param positions positions of the vertices
+     * @param textCoords texture coordinates
+     * @param normals normal vectors
+     * @param tangents tangent vectors
+     * @param biTangents biTangent vectors
+     * @param jointIDs ids of the joints
+     * @param weights weights of the joints
+     * @param indices indices of the vertices, null if the shared indices are used
+     * @param sharedIndices element buffer shared with other meshes, null if the mesh has its own indices
+     * @return vao id
+     */
+    private int createVertexArray(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, FloatBuffer tangents, FloatBuffer biTangents, IntBuffer jointIDs, FloatBuffer weights, IntBuffer indices, IndexBuffer sharedIndices) {
+        bounds = BoundingVolume.of(positions);
 
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
+        int vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
 
-            //Position VBO
-            createFloatVBO(0,3,positions,false);
+        //Position VBO
+        createFloatVBO(0,3,positions);
 
-            // texture coordinates VBO
-            createFloatVBO(1,2,textCoords,false);
+        // texture coordinates VBO
+        createFloatVBO(1,2,textCoords);
 
-            // normals VBO
-            if(normals.length > 0) {
-                createFloatVBO(2, 3, normals,false);
-            } else {
-                createFloatVBO(2,3,positions,true);
-            }
+        // normals VBO
+        if(normals.remaining() > 0) {
+            createFloatVBO(2, 3, normals);
+        } else {
+            createEmptyFloatVBO(2,3,positions.remaining());
+        }
 
-            // Tangent VBO
-            if(tangents.length > 0) {
-                createFloatVBO(3, 3, tangents,false);
-            } else {
-                createFloatVBO(3,3,positions,true);
-            }
+        // Tangent VBO
+        if(tangents.remaining() > 0) {
+            createFloatVBO(3, 3, tangents);
+        } else {
+            createEmptyFloatVBO(3,3,positions.remaining());
+        }
 
-            // BiTangent VBO
-            if(biTangents.length > 0) {
-                createFloatVBO(4, 3, biTangents,false);
-            } else {
-                createFloatVBO(4,3,positions,true);
-            }
+        // BiTangent VBO
+        if(biTangents.remaining() > 0) {
+            createFloatVBO(4, 3, biTangents);
+        } else {
+            createEmptyFloatVBO(4,3,positions.remaining());
+        }
 
-            // weights
-            if(weights.length > 0) {
-                createFloatVBO(5, 3, weights,false);
-            }
+        // weights
+        if(weights.remaining() > 0) {
+            createFloatVBO(5, 3, weights);
+        }
 
-            // joint ids
-            if (jointIDs.length > 0) {
-                createIntVBO(6, 3, jointIDs, false);
-            }
+        // joint ids
+        if (jointIDs.remaining() > 0) {
+            createIntVBO(6, 3, jointIDs);
+        }
 
 
 
-            //Index VBO
+        //Index VBO
+        if (sharedIndices != null) {
+            sharedIndices.bind();
+        } else {
             int vboId = glGenBuffers();
             vboidList.add(vboId);
-            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
+            gpuBytes += (long) indices.remaining() * Integer.BYTES;
             glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer,GL_STATIC_DRAW);
-
-            glBindBuffer(GL_ARRAY_BUFFER,0);
-            glBindVertexArray(0);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices,GL_STATIC_DRAW);
+        }
 
-        }finally {
+        glBindBuffer(GL_ARRAY_BUFFER,0);
+        glBindVertexArray(0);
 
-            if(indicesBuffer != null){
-                MemoryUtil.memFree(indicesBuffer);
-            }
-        }
+        return vaoId;
     }
 
     /**
@@ -205,6 +332,42 @@ public class Mesh {
         return vertexCount;
     }
 
+    /**
+     * @return size of the vbos of the mesh in bytes
+     */
+    public long getGpuBytes() {
+        return gpuBytes;
+    }
+
+    /**
+     * @return bounds of the vertices in model space, computed when the mesh was created
+     */
+    public BoundingVolume getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @param bounds bounds of the vertices in model space after their positions were changed
+     */
+    public void setBounds(BoundingVolume bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * replaces a part of a float vbo with glBufferSubData, the rest of the vbo is kept. has to be
+     * called on the open gl thread
+     *
+     * @param index index of the vbo: 0 positions, 1 texture coordinates, 2 normals, 3 tangents,
+     *              4 bi tangents
+     * @param firstFloat index of the first float that is replaced
+     * @param content new values between position and limit
+     */
+    public void updateFloatVBO(int index, int firstFloat, FloatBuffer content) {
+        glBindBuffer(GL_ARRAY_BUFFER, vboidList.get(index));
+        glBufferSubData(GL_ARRAY_BUFFER, (long) firstFloat * Float.BYTES, content);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
     /**
      * initialises the rendering by binding the texture and the Vertex Array
      * to make them ready to be rendered
@@ -272,6 +435,28 @@ public class Mesh {
         endRender();
     }
 
+    /**
+     * draws the mesh once for every instance of the instance buffer with a single draw call
+     * the shader has to read the model matrix from the instance attribute
+     *
+     * @param instances packed model matrices of the instances
+     */
+    public void renderInstanced(InstanceBuffer instances) {
+        if (instances.getCount() == 0) {
+            return;
+        }
+        initRender();
+
+        instances.upload();
+        instances.enableAttributes();
+
+        glDrawElementsInstanced(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0, instances.getCount());
+
+        instances.disableAttributes();
+
+        endRender();
+    }
+
     /**
      * frees resources and cleans up memory
      */
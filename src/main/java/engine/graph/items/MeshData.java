@@ -0,0 +1,129 @@
+package engine.graph.items;
+
+/**
+ * plain vertex data of a mesh, exactly in the form the mesh constructor takes it.
+ * it does not touch open gl, so it can be created on any thread and turned into a
+ * mesh later on the thread owning the graphics context
+ */
+public class MeshData {
+
+    /** positions of the vertices */
+    private final float[] positions;
+
+    /** texture coordinates */
+    private final float[] textCords;
+
+    /** normal vectors */
+    private final float[] normals;
+
+    /** tangent vectors */
+    private final float[] tangents;
+
+    /** bi tangent vectors */
+    private final float[] biTangents;
+
+    /** ids of the joints influencing each vertex */
+    private final int[] jointIDs;
+
+    /** weights of the joints influencing each vertex */
+    private final float[] weights;
+
+    /** indices of the vertices */
+    private final int[] indices;
+
+    /**
+     * creates mesh data without tangents and animation data
+     *
+     * @param positions positions of the vertices
+     * @param textCords texture coordinates
+     * @param normals normal vectors
+     * @param indices indices of the vertices
+     */
+    public MeshData(float[] positions, float[] textCords, float[] normals, int[] indices) {
+        this(positions, textCords, normals, new float[0], new float[0], new int[0], new float[0], indices);
+    }
+
+    /**
+     * creates mesh data with all vertex attributes
+     *
+     * @param positions positions of the vertices
+     * @param textCords texture coordinates
+     * @param normals normal vectors
+     * @param tangents tangent vectors
+     * @param biTangents bi tangent vectors
+     * @param jointIDs ids of the joints
+     * @param weights weights of the joints
+     * @param indices indices of the vertices
+     */
+    public MeshData(float[] positions, float[] textCords, float[] normals, float[] tangents, float[] biTangents, int[] jointIDs, float[] weights, int[] indices) {
+        this.positions = positions;
+        this.textCords = textCords;
+        this.normals = normals;
+        this.tangents = tangents;
+        this.biTangents = biTangents;
+        this.jointIDs = jointIDs;
+        this.weights = weights;
+        this.indices = indices;
+    }
+
+    /**
+     * creates the mesh from the data, has to be called on the open gl thread
+     *
+     * @return new mesh
+     */
+    public Mesh createMesh() {
+        return new Mesh(positions, textCords, normals, tangents, biTangents, jointIDs, weights, indices);
+    }
+
+    /**
+     * @return bytes of all arrays, the size of the vertex buffers the mesh creates
+     */
+    public long getByteSize() {
+        long floats = length(positions) + length(textCords) + length(normals) + length(tangents) + length(biTangents) + length(weights);
+        long ints = (jointIDs != null ? jointIDs.length : 0) + (indices != null ? indices.length : 0);
+        return (floats + ints) * 4;
+    }
+
+    private static int length(float[] array) {
+        return array != null ? array.length : 0;
+    }
+
+    /**
+     * @return number of vertices ( positions / 3 )
+     */
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getTextCords() {
+        return textCords;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public float[] getTangents() {
+        return tangents;
+    }
+
+    public float[] getBiTangents() {
+        return biTangents;
+    }
+
+    public int[] getJointIDs() {
+        return jointIDs;
+    }
+
+    public float[] getWeights() {
+        return weights;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+}
@@ -66,24 +66,21 @@ public class Texture {
      * @throws Exception if stbi_load cant load the image into a buffer
      */
     public Texture(String filename,FilterMode filterMode) throws Exception {
-        this.filterMode = filterMode;
-        ByteBuffer buf;
-        //Load texture File
-        try(MemoryStack stack = MemoryStack.stackPush()){
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
-            buf = stbi_load(filename,w,h,channels,4);
-            if(buf == null){
-                throw new Exception("Image file ["+filename +"] not loaded: "+stbi_failure_reason());
-            }
-
-            //Get width and height of image
-            width = w.get();
-            height = h.get();
-        }
+        this(TextureData.load(filename), filterMode);
+    }
 
-        this.id =  createTexture(buf);
+    /**
+     * creates texture from decoded image data and stores the texture id in the id field
+     * the pixels of the data are freed afterwards
+     *
+     * @param data decoded image
+     * @param filterMode filtering mode for the texture
+     */
+    public Texture(TextureData data, FilterMode filterMode) {
+        this.filterMode = filterMode;
+        this.width = data.getWidth();
+        this.height = data.getHeight();
+        this.id = createTexture(data.takePixels());
     }
 
     /**
@@ -160,6 +157,16 @@ public class Texture {
         return height;
     }
 
+    /**
+     * estimates the video memory used by the texture: four bytes per pixel plus a third for the
+     * mip maps
+     *
+     * @return size of the texture in bytes
+     */
+    public long getGpuBytes() {
+        return (long) width * height * 4 * 4 / 3;
+    }
+
     /**
      * binds texture
      */
@@ -0,0 +1,107 @@
+package engine.graph.items;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * decoded rgba pixels of an image. decoding does not touch open gl, so it can be done on any
+ * thread and the texture is created later on the thread owning the graphics context.
+ * the pixels are freed when the texture is created, otherwise free has to be called
+ */
+@SuppressWarnings("unused")
+public class TextureData {
+
+    /** rgba pixels allocated by stb image, null after they were handed to a texture */
+    private ByteBuffer pixels;
+
+    /** image width in pixels */
+    private final int width;
+
+    /** image height in pixels */
+    private final int height;
+
+    /**
+     * @param pixels rgba pixels allocated by stb image
+     * @param width image width in pixels
+     * @param height image height in pixels
+     */
+    private TextureData(ByteBuffer pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * decodes an image file
+     *
+     * @param filename name of the image file
+     * @return decoded image
+     * @throws Exception if stbi_load cant load the image
+     */
+    public static TextureData load(String filename) throws Exception {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            ByteBuffer buf = stbi_load(filename, w, h, channels, 4);
+            if (buf == null) {
+                throw new Exception("Image file [" + filename + "] not loaded: " + stbi_failure_reason());
+            }
+            return new TextureData(buf, w.get(), h.get());
+        }
+    }
+
+    /**
+     * creates the texture from the pixels, has to be called on the open gl thread
+     * the pixels are freed afterwards, so it can only be called once
+     *
+     * @param filterMode filtering mode for the texture
+     * @return new texture
+     */
+    public Texture createTexture(Texture.FilterMode filterMode) {
+        return new Texture(this, filterMode);
+    }
+
+    /**
+     * @return image width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return image height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * hands the pixels to a texture which frees them after the upload
+     *
+     * @return rgba pixels
+     * @throws IllegalStateException if the pixels were already used or freed
+     */
+    ByteBuffer takePixels() {
+        if (pixels == null) {
+            throw new IllegalStateException("Texture data was already used");
+        }
+        ByteBuffer result = pixels;
+        pixels = null;
+        return result;
+    }
+
+    /**
+     * frees the pixels if no texture was created from them
+     */
+    public void free() {
+        if (pixels != null) {
+            stbi_image_free(pixels);
+            pixels = null;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package engine.graph.items;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * transformations of many entities in contiguous float arrays indexed by slot, a structure of
+ * arrays instead of the vectors of every game item
+ *
+ * the model matrices and the model view matrices are built for all slots in one loop over the
+ * arrays, optionally split across a fork join pool. the matrices are composed directly from the
+ * sines and cosines of the rotation instead of multiplying rotation matrices, the result is the
+ * same as GameItem.buildModelMatrix. a game item can be attached to a slot and then reads and
+ * writes its transformation here
+ *
+ * ARRAY LAYOUT ( per slot ):
+ *
+ *      positions:           x, y, z
+ *      rotations:           x, y, z in degrees
+ *      scales:              uniform scale, x, y, z
+ *      model matrices:      16 floats, column major
+ *      model view matrices: 16 floats, column major
+ */
+@SuppressWarnings("unused")
+public class TransformStore {
+
+    /** floats of a matrix */
+    public static final int MATRIX_FLOATS = 16;
+
+    /** slots computed by one task of the fork join pool */
+    private static final int BATCH_SIZE = 4096;
+
+    /** positions of the slots */
+    private float[] positions;
+
+    /** rotations of the slots in degrees */
+    private float[] rotations;
+
+    /** uniform scale and scale per axis of the slots */
+    private float[] scales;
+
+    /** model matrices of the slots */
+    private float[] modelMatrices;
+
+    /** model view matrices of the slots, valid after updateMatrices with a view matrix */
+    private float[] modelViewMatrices;
+
+    /** true if the model matrix of a slot has to be built again */
+    private boolean[] dirty;
+
+    /** true if a slot is allocated */
+    private boolean[] used;
+
+    /** freed slots */
+    private int[] freeSlots = new int[16];
+
+    /** number of freed slots */
+    private int freeCount;
+
+    /** number of slots ever allocated */
+    private int slotCount;
+
+    /**
+     * creates a store for 64 slots
+     */
+    public TransformStore() {
+        this(64);
+    }
+
+    /**
+     * @param capacity number of slots before the arrays grow
+     */
+    public TransformStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        positions = new float[capacity * 3];
+        rotations = new float[capacity * 3];
+        scales = new float[capacity * 4];
+        modelMatrices = new float[capacity * MATRIX_FLOATS];
+        modelViewMatrices = new float[capacity * MATRIX_FLOATS];
+        dirty = new boolean[capacity];
+        used = new boolean[capacity];
+    }
+
+    /**
+     * allocates a slot at the origin without rotation and with a scale of 1
+     *
+     * @return slot
+     */
+    public int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == used.length) {
+                int capacity = slotCount * 2;
+                positions = Arrays.copyOf(positions, capacity * 3);
+                rotations = Arrays.copyOf(rotations, capacity * 3);
+                scales = Arrays.copyOf(scales, capacity * 4);
+                modelMatrices = Arrays.copyOf(modelMatrices, capacity * MATRIX_FLOATS);
+                modelViewMatrices = Arrays.copyOf(modelViewMatrices, capacity * MATRIX_FLOATS);
+                dirty = Arrays.copyOf(dirty, capacity);
+                used = Arrays.copyOf(used, capacity);
+            }
+            slot = slotCount++;
+        }
+        setPosition(slot, 0, 0, 0);
+        setRotation(slot, 0, 0, 0);
+        setScale(slot, 1);
+        setScale3(slot, 1, 1, 1);
+        used[slot] = true;
+        return slot;
+    }
+
+    /**
+     * frees a slot, it is skipped by the batch updates until it is allocated again
+     *
+     * @param slot slot to free
+     */
+    public void free(int slot) {
+        checkSlot(slot);
+        used[slot] = false;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * @return number of allocated slots
+     */
+    public int size() {
+        return slotCount - freeCount;
+    }
+
+    /**
+     * @return number of slots ever allocated, the slots are smaller than this
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @param slot slot
+     * @param x position
+     * @param y position
+     * @param z position
+     */
+    public void setPosition(int slot, float x, float y, float z) {
+        int i = slot * 3;
+        positions[i] = x;
+        positions[i + 1] = y;
+        positions[i + 2] = z;
+        dirty[slot] = true;
+    }
+
+    /**
+     * @param slot slot
+     * @param x rotation in degrees
+     * @param y rotation in degrees
+     * @param z rotation in degrees
+     */
+    public void setRotation(int slot, float x, float y, float z) {
+        int i = slot * 3;
+        rotations[i] = x;
+        rotations[i + 1] = y;
+        rotations[i + 2] = z;
+        dirty[slot] = true;
+    }
+
+    /**
+     * @param slot slot
+     * @param scale uniform scale
+     */
+    public void setScale(int slot, float scale) {
+        scales[slot * 4] = scale;
+        dirty[slot] = true;
+    }
+
+    /**
+     * @param slot slot
+     * @param x scale
+     * @param y scale
+     * @param z scale
+     */
+    public void setScale3(int slot, float x, float y, float z) {
+        int i = slot * 4;
+        scales[i + 1] = x;
+        scales[i + 2] = y;
+        scales[i + 3] = z;
+        dirty[slot] = true;
+    }
+
+    /**
+     * @param slot slot
+     * @param dest receives the position
+     * @return dest
+     */
+    public Vector3f getPosition(int slot, Vector3f dest) {
+        int i = slot * 3;
+        return dest.set(positions[i], positions[i + 1], positions[i + 2]);
+    }
+
+    /**
+     * @param slot slot
+     * @param dest receives the rotation in degrees
+     * @return dest
+     */
+    public Vector3f getRotation(int slot, Vector3f dest) {
+        int i = slot * 3;
+        return dest.set(rotations[i], rotations[i + 1], rotations[i + 2]);
+    }
+
+    /**
+     * @param slot slot
+     * @return uniform scale
+     */
+    public float getScale(int slot) {
+        return scales[slot * 4];
+    }
+
+    /**
+     * @param slot slot
+     * @param dest receives the scale per axis
+     * @return dest
+     */
+    public Vector3f getScale3(int slot, Vector3f dest) {
+        int i = slot * 4;
+        return dest.set(scales[i + 1], scales[i + 2], scales[i + 3]);
+    }
+
+    /**
+     * returns the model matrix of a slot, it is built first if the slot changed
+     *
+     * @param slot slot
+     * @param dest receives the model matrix
+     * @return dest
+     */
+    public Matrix4f getModelMatrix(int slot, Matrix4f dest) {
+        if (dirty[slot]) {
+            buildModelMatrix(slot);
+            dirty[slot] = false;
+        }
+        return dest.set(modelMatrices, slot * MATRIX_FLOATS);
+    }
+
+    /**
+     * @param slot slot
+     * @param dest receives the model view matrix of the last updateMatrices with a view matrix
+     * @return dest
+     */
+    public Matrix4f getModelViewMatrix(int slot, Matrix4f dest) {
+        return dest.set(modelViewMatrices, slot * MATRIX_FLOATS);
+    }
+
+    /**
+     * @return model matrices of all slots, 16 floats per slot in column major order
+     */
+    public float[] getModelMatrices() {
+        return modelMatrices;
+    }
+
+    /**
+     * @return model view matrices of all slots, 16 floats per slot in column major order
+     */
+    public float[] getModelViewMatrices() {
+        return modelViewMatrices;
+    }
+
+    /**
+     * builds the model matrices of all changed slots and the model view matrices of all slots
+     *
+     * @param viewMatrix affine view matrix, null to only build the model matrices
+     */
+    public void updateMatrices(Matrix4f viewMatrix) {
+        updateRange(toArray(viewMatrix), 0, slotCount);
+    }
+
+    /**
+     * builds the model matrices of all changed slots and the model view matrices of all slots,
+     * split into tasks of BATCH_SIZE slots on a fork join pool
+     *
+     * @param viewMatrix affine view matrix, null to only build the model matrices
+     * @param pool pool running the tasks, the call returns when all are done
+     */
+    public void updateMatrices(Matrix4f viewMatrix, ForkJoinPool pool) {
+        pool.invoke(new UpdateTask(toArray(viewMatrix), 0, slotCount));
+    }
+
+    /**
+     * @param matrix matrix or null
+     * @return the matrix in column major order or null
+     */
+    private static float[] toArray(Matrix4f matrix) {
+        return matrix != null ? matrix.get(new float[MATRIX_FLOATS]) : null;
+    }
+
+    /**
+     * builds the matrices of a range of slots
+     *
+     * @param view view matrix in column major order or null
+     * @param from first slot
+     * @param to slot after the last one
+     */
+    private void updateRange(float[] view, int from, int to) {
+        for (int slot = from; slot < to; slot++) {
+            if (!used[slot]) {
+                continue;
+            }
+            if (dirty[slot]) {
+                buildModelMatrix(slot);
+                dirty[slot] = false;
+            }
+            if (view != null) {
+                multiplyAffine(view, slot * MATRIX_FLOATS);
+            }
+        }
+    }
+
+    /**
+     * builds the model matrix of a slot: translation * rotateX * rotateY * rotateZ * scale with
+     * the negated rotations in radians, written out instead of multiplying matrices
+     *
+     * @param slot slot
+     */
+    private void buildModelMatrix(int slot) {
+        int p = slot * 3;
+        int s = slot * 4;
+        int m = slot * MATRIX_FLOATS;
+
+        double ax = Math.toRadians(-rotations[p]);
+        double ay = Math.toRadians(-rotations[p + 1]);
+        double az = Math.toRadians(-rotations[p + 2]);
+        float sinX = (float) Math.sin(ax), cosX = (float) Math.cos(ax);
+        float sinY = (float) Math.sin(ay), cosY = (float) Math.cos(ay);
+        float sinZ = (float) Math.sin(az), cosZ = (float) Math.cos(az);
+
+        float scaleX = scales[s] * scales[s + 1];
+        float scaleY = scales[s] * scales[s + 2];
+        float scaleZ = scales[s] * scales[s + 3];
+
+        // columns of rotateX * rotateY * rotateZ, each scaled by its axis
+        modelMatrices[m] = cosY * cosZ * scaleX;
+        modelMatrices[m + 1] = (sinX * sinY * cosZ + cosX * sinZ) * scaleX;
+        modelMatrices[m + 2] = (sinX * sinZ - cosX * sinY * cosZ) * scaleX;
+        modelMatrices[m + 3] = 0;
+        modelMatrices[m + 4] = -cosY * sinZ * scaleY;
+        modelMatrices[m + 5] = (cosX * cosZ - sinX * sinY * sinZ) * scaleY;
+        modelMatrices[m + 6] = (cosX * sinY * sinZ + sinX * cosZ) * scaleY;
+        modelMatrices[m + 7] = 0;
+        modelMatrices[m + 8] = sinY * scaleZ;
+        modelMatrices[m + 9] = -sinX * cosY * scaleZ;
+        modelMatrices[m + 10] = cosX * cosY * scaleZ;
+        modelMatrices[m + 11] = 0;
+        modelMatrices[m + 12] = positions[p];
+        modelMatrices[m + 13] = positions[p + 1];
+        modelMatrices[m + 14] = positions[p + 2];
+        modelMatrices[m + 15] = 1;
+    }
+
+    /**
+     * multiplies the affine view matrix with the model matrix at an offset into the model view matrices
+     *
+     * @param v view matrix in column major order
+     * @param m offset of the matrix
+     */
+    private void multiplyAffine(float[] v, int m) {
+        float[] model = modelMatrices;
+        float[] dest = modelViewMatrices;
+        for (int column = 0; column < 16; column += 4) {
+            float x = model[m + column], y = model[m + column + 1], z = model[m + column + 2];
+            float w = column == 12 ? 1 : 0;
+            dest[m + column] = v[0] * x + v[4] * y + v[8] * z + v[12] * w;
+            dest[m + column + 1] = v[1] * x + v[5] * y + v[9] * z + v[13] * w;
+            dest[m + column + 2] = v[2] * x + v[6] * y + v[10] * z + v[14] * w;
+            dest[m + column + 3] = w;
+        }
+    }
+
+    /**
+     * @param slot slot to check
+     */
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= slotCount || !used[slot]) {
+            throw new IllegalArgumentException("slot " + slot + " is not allocated");
+        }
+    }
+
+    /**
+     * builds the matrices of a range of slots, splits itself while the range is larger than BATCH_SIZE
+     */
+    private class UpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** view matrix in column major order or null */
+        private final float[] view;
+
+        /** first slot */
+        private final int from;
+
+        /** slot after the last one */
+        private final int to;
+
+        private UpdateTask(float[] view, int from, int to) {
+            this.view = view;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                updateRange(view, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new UpdateTask(view, from, middle), new UpdateTask(view, middle, to));
+        }
+    }
+}
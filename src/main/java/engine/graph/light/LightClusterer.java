@@ -0,0 +1,572 @@
+package engine.graph.light;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * assigns point and spot lights to the clusters of the view frustum on the cpu, so the fragment
+ * shader only loops over the lights that can reach its cluster
+ *
+ * the frustum is split into tiles on the screen and into slices growing exponentially in depth.
+ * lights are collected every frame in view space into a compact light list, every light is bound
+ * by a sphere of its range and spot lights are additionally tested as cones. binning tests the
+ * lights against the view space box of every cluster and writes a list of light indices per
+ * cluster. the slices are binned independently, so they can be spread over a fork join pool.
+ * the result is the light list, an offset and count per cluster and the light indices, ready to
+ * be uploaded to texture buffers. binning does not touch open gl
+ *
+ * layout of a light in the light list, 4 vec4:
+ * position and range, color and intensity, attenuation and cutoff, cone direction and type
+ */
+@SuppressWarnings("unused")
+public class LightClusterer {
+
+    /** floats per light in the light list */
+    public static final int LIGHT_FLOATS = 16;
+
+    /** type of a point light in the light list */
+    public static final int POINT_LIGHT = 0;
+
+    /** type of a spot light in the light list */
+    public static final int SPOT_LIGHT = 1;
+
+    /** slices binned by one task, smaller ranges are not split further */
+    private static final int SLICES_PER_TASK = 2;
+
+    /** tiles along the width of the screen */
+    private final int tilesX;
+
+    /** tiles along the height of the screen */
+    private final int tilesY;
+
+    /** slices along the depth of the frustum */
+    private final int slices;
+
+    /** maximum number of light indices, lights above are dropped */
+    private final int maxIndices;
+
+    /** projection the cluster bounds were built for */
+    private float fov;
+    private float aspect;
+    private float near;
+    private float far;
+
+    /** depth of the borders of the slices, slices + 1 entries */
+    private final float[] sliceDepths;
+
+    /** view space x range of every column in every slice, min and max */
+    private final float[] columnBounds;
+
+    /** view space y range of every row in every slice, min and max */
+    private final float[] rowBounds;
+
+    /** lights of the frame in view space, LIGHT_FLOATS per light */
+    private float[] lights = new float[16 * LIGHT_FLOATS];
+
+    /** number of lights of the frame */
+    private int lightCount;
+
+    /** offset into the light indices and number of lights of every cluster */
+    private final int[] clusters;
+
+    /** light indices of all clusters, the lights of a cluster follow each other */
+    private int[] indices = new int[256];
+
+    /** number of light indices */
+    private int indexCount;
+
+    /** number of light indices dropped because maxIndices was reached */
+    private int droppedIndices;
+
+    /** binning state of every slice */
+    private final Slice[] sliceBins;
+
+    /** light position or direction transformed to view coordinates */
+    private final Vector4f aux = new Vector4f();
+
+    /**
+     * @param tilesX tiles along the width of the screen
+     * @param tilesY tiles along the height of the screen
+     * @param slices slices along the depth of the frustum
+     * @param maxIndices maximum number of light indices of all clusters
+     */
+    public LightClusterer(int tilesX, int tilesY, int slices, int maxIndices) {
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.slices = slices;
+        this.maxIndices = maxIndices;
+        sliceDepths = new float[slices + 1];
+        columnBounds = new float[slices * tilesX * 2];
+        rowBounds = new float[slices * tilesY * 2];
+        clusters = new int[tilesX * tilesY * slices * 2];
+        sliceBins = new Slice[slices];
+        for (int s = 0; s < slices; s++) {
+            sliceBins[s] = new Slice();
+        }
+    }
+
+    /**
+     * updates the bounds of the clusters if the projection changed, has to match the projection matrix
+     *
+     * @param fov vertical field of view in radians
+     * @param aspect width divided by height
+     * @param near distance of the near plane
+     * @param far distance of the far plane
+     */
+    public void setProjection(float fov, float aspect, float near, float far) {
+        if (fov == this.fov && aspect == this.aspect && near == this.near && far == this.far) {
+            return;
+        }
+        this.fov = fov;
+        this.aspect = aspect;
+        this.near = near;
+        this.far = far;
+
+        for (int s = 0; s <= slices; s++) {
+            sliceDepths[s] = near * (float) Math.pow(far / near, (double) s / slices);
+        }
+
+        // a point at depth d on the border of a tile has the view space coordinate t * d
+        float tanY = (float) Math.tan(fov / 2);
+        float tanX = tanY * aspect;
+        for (int s = 0; s < slices; s++) {
+            float depthNear = sliceDepths[s];
+            float depthFar = sliceDepths[s + 1];
+            for (int c = 0; c < tilesX; c++) {
+                float t0 = tanX * (2.0f * c / tilesX - 1);
+                float t1 = tanX * (2.0f * (c + 1) / tilesX - 1);
+                int b = (s * tilesX + c) * 2;
+                columnBounds[b] = Math.min(t0 * depthNear, t0 * depthFar);
+                columnBounds[b + 1] = Math.max(t1 * depthNear, t1 * depthFar);
+            }
+            for (int r = 0; r < tilesY; r++) {
+                float t0 = tanY * (2.0f * r / tilesY - 1);
+                float t1 = tanY * (2.0f * (r + 1) / tilesY - 1);
+                int b = (s * tilesY + r) * 2;
+                rowBounds[b] = Math.min(t0 * depthNear, t0 * depthFar);
+                rowBounds[b + 1] = Math.max(t1 * depthNear, t1 * depthFar);
+            }
+        }
+    }
+
+    /**
+     * removes the lights of the last frame
+     */
+    public void clear() {
+        lightCount = 0;
+    }
+
+    /**
+     * adds a point light to the light list
+     *
+     * @param light point light
+     * @param viewMatrix view matrix of the camera
+     */
+    public void addPointLight(PointLight light, Matrix4f viewMatrix) {
+        int o = addLight(light, viewMatrix);
+        lights[o + 11] = -2;
+        lights[o + 12] = 0;
+        lights[o + 13] = 0;
+        lights[o + 14] = 0;
+        lights[o + 15] = POINT_LIGHT;
+    }
+
+    /**
+     * adds a spot light to the light list
+     *
+     * @param light spot light
+     * @param viewMatrix view matrix of the camera
+     */
+    public void addSpotLight(SpotLight light, Matrix4f viewMatrix) {
+        int o = addLight(light.getPointLight(), viewMatrix);
+        Vector3f coneDirection = light.getConeDirection();
+        aux.set(coneDirection, 0).mul(viewMatrix);
+        float length = (float) Math.sqrt(aux.x * aux.x + aux.y * aux.y + aux.z * aux.z);
+        lights[o + 11] = light.getCutOff();
+        lights[o + 12] = aux.x / length;
+        lights[o + 13] = aux.y / length;
+        lights[o + 14] = aux.z / length;
+        lights[o + 15] = SPOT_LIGHT;
+    }
+
+    /**
+     * adds the point light part of a light to the light list
+     *
+     * @param light point light
+     * @param viewMatrix view matrix of the camera
+     * @return offset of the light in the light list
+     */
+    private int addLight(PointLight light, Matrix4f viewMatrix) {
+        if ((lightCount + 1) * LIGHT_FLOATS > lights.length) {
+            lights = Arrays.copyOf(lights, lights.length * 2);
+        }
+        int o = lightCount++ * LIGHT_FLOATS;
+        aux.set(light.getPosition(), 1).mul(viewMatrix);
+        Vector3f color = light.getColor();
+        PointLight.Attenuation att = light.getAttenuation();
+        lights[o] = aux.x;
+        lights[o + 1] = aux.y;
+        lights[o + 2] = aux.z;
+        lights[o + 3] = light.getRange();
+        lights[o + 4] = color.x;
+        lights[o + 5] = color.y;
+        lights[o + 6] = color.z;
+        lights[o + 7] = light.getIntensity();
+        lights[o + 8] = att.getConstant();
+        lights[o + 9] = att.getLinear();
+        lights[o + 10] = att.getExponent();
+        return o;
+    }
+
+    /**
+     * assigns the lights to the clusters on the calling thread
+     */
+    public void bin() {
+        for (int s = 0; s < slices; s++) {
+            binSlice(s);
+        }
+        merge();
+    }
+
+    /**
+     * assigns the lights to the clusters, the slices are spread over the pool
+     *
+     * @param pool pool binning the slices
+     */
+    public void bin(ForkJoinPool pool) {
+        pool.invoke(new BinTask(0, slices));
+        merge();
+    }
+
+    /**
+     * tests the lights against the clusters of one slice and writes the light indices of the
+     * clusters into the bin of the slice. the offsets written to the clusters are relative to
+     * the bin until the bins are merged
+     *
+     * @param s slice
+     */
+    private void binSlice(int s) {
+        Slice bin = sliceBins[s];
+        bin.count = 0;
+        float depthNear = sliceDepths[s];
+        float depthFar = sliceDepths[s + 1];
+
+        // candidates are the lights reaching into the slice, with the squared distances to the
+        // columns and rows they reach
+        int candidates = 0;
+        for (int l = 0; l < lightCount; l++) {
+            int o = l * LIGHT_FLOATS;
+            float x = lights[o];
+            float y = lights[o + 1];
+            float depth = -lights[o + 2];
+            float range = lights[o + 3];
+            float dz = Math.max(Math.max(depthNear - depth, depth - depthFar), 0);
+            float remaining = range * range - dz * dz;
+            if (remaining < 0) {
+                continue;
+            }
+            bin.ensureCandidates(candidates + 1, tilesX, tilesY);
+
+            int firstColumn = tilesX;
+            int lastColumn = -1;
+            for (int c = 0; c < tilesX; c++) {
+                int b = (s * tilesX + c) * 2;
+                float dx = Math.max(Math.max(columnBounds[b] - x, x - columnBounds[b + 1]), 0);
+                bin.dx2[candidates * tilesX + c] = dx * dx;
+                if (dx * dx <= remaining) {
+                    firstColumn = Math.min(firstColumn, c);
+                    lastColumn = c;
+                }
+            }
+            if (lastColumn < 0) {
+                continue;
+            }
+            int firstRow = tilesY;
+            int lastRow = -1;
+            for (int r = 0; r < tilesY; r++) {
+                int b = (s * tilesY + r) * 2;
+                float dy = Math.max(Math.max(rowBounds[b] - y, y - rowBounds[b + 1]), 0);
+                bin.dy2[candidates * tilesY + r] = dy * dy;
+                if (dy * dy <= remaining) {
+                    firstRow = Math.min(firstRow, r);
+                    lastRow = r;
+                }
+            }
+            if (lastRow < 0) {
+                continue;
+            }
+            int k = candidates * 5;
+            bin.candidates[k] = l;
+            bin.candidates[k + 1] = firstColumn;
+            bin.candidates[k + 2] = lastColumn;
+            bin.candidates[k + 3] = firstRow;
+            bin.candidates[k + 4] = lastRow;
+            bin.remaining[candidates] = remaining;
+            candidates++;
+        }
+
+        for (int r = 0; r < tilesY; r++) {
+            for (int c = 0; c < tilesX; c++) {
+                int cluster = (s * tilesY + r) * tilesX + c;
+                int offset = bin.count;
+                for (int candidate = 0; candidate < candidates; candidate++) {
+                    int k = candidate * 5;
+                    if (c < bin.candidates[k + 1] || c > bin.candidates[k + 2] || r < bin.candidates[k + 3] || r > bin.candidates[k + 4]) {
+                        continue;
+                    }
+                    if (bin.dx2[candidate * tilesX + c] + bin.dy2[candidate * tilesY + r] > bin.remaining[candidate]) {
+                        continue;
+                    }
+                    int light = bin.candidates[k];
+                    if (lights[light * LIGHT_FLOATS + 15] == SPOT_LIGHT && !coneReaches(light, s, r, c)) {
+                        continue;
+                    }
+                    bin.add(light);
+                }
+                clusters[cluster * 2] = offset;
+                clusters[cluster * 2 + 1] = bin.count - offset;
+            }
+        }
+    }
+
+    /**
+     * tests the cone of a spot light against the bounding sphere of a cluster
+     *
+     * @param light index of the spot light
+     * @param s slice of the cluster
+     * @param r row of the cluster
+     * @param c column of the cluster
+     * @return false if the cone can not reach the cluster
+     */
+    private boolean coneReaches(int light, int s, int r, int c) {
+        int o = light * LIGHT_FLOATS;
+        int cb = (s * tilesX + c) * 2;
+        int rb = (s * tilesY + r) * 2;
+        float halfX = (columnBounds[cb + 1] - columnBounds[cb]) / 2;
+        float halfY = (rowBounds[rb + 1] - rowBounds[rb]) / 2;
+        float halfZ = (sliceDepths[s + 1] - sliceDepths[s]) / 2;
+        float radius = (float) Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+
+        float vx = columnBounds[cb] + halfX - lights[o];
+        float vy = rowBounds[rb] + halfY - lights[o + 1];
+        float vz = -(sliceDepths[s] + halfZ) - lights[o + 2];
+        float lengthSquared = vx * vx + vy * vy + vz * vz;
+        float alongAxis = vx * lights[o + 12] + vy * lights[o + 13] + vz * lights[o + 14];
+        float cos = lights[o + 11];
+        float sin = (float) Math.sqrt(Math.max(1 - cos * cos, 0));
+        float distanceToCone = cos * (float) Math.sqrt(Math.max(lengthSquared - alongAxis * alongAxis, 0)) - alongAxis * sin;
+        return distanceToCone <= radius && alongAxis <= radius + lights[o + 3] && alongAxis >= -radius;
+    }
+
+    /**
+     * copies the bins of the slices into the light indices and makes the offsets absolute
+     */
+    private void merge() {
+        indexCount = 0;
+        droppedIndices = 0;
+        int clustersPerSlice = tilesX * tilesY;
+        for (int s = 0; s < slices; s++) {
+            Slice bin = sliceBins[s];
+            int base = indexCount;
+            int count = Math.min(bin.count, maxIndices - base);
+            for (int cluster = s * clustersPerSlice; cluster < (s + 1) * clustersPerSlice; cluster++) {
+                int offset = clusters[cluster * 2];
+                clusters[cluster * 2] = base + offset;
+                clusters[cluster * 2 + 1] = Math.max(Math.min(clusters[cluster * 2 + 1], count - offset), 0);
+            }
+            if (base + count > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(base + count, indices.length * 2));
+            }
+            System.arraycopy(bin.indices, 0, indices, base, count);
+            indexCount += count;
+            droppedIndices += bin.count - count;
+        }
+    }
+
+    /**
+     * @return index of the slice that contains the depth, -1 in front of and slices behind the frustum
+     */
+    public int getSlice(float depth) {
+        if (depth < near) {
+            return -1;
+        }
+        return Math.min((int) (Math.log(depth) * getSliceScale() + getSliceBias()), slices);
+    }
+
+    /**
+     * @return factor of the log of the depth in the slice calculation of the shader
+     */
+    public float getSliceScale() {
+        return (float) (slices / Math.log(far / near));
+    }
+
+    /**
+     * @return bias added in the slice calculation of the shader
+     */
+    public float getSliceBias() {
+        return (float) (-slices * Math.log(near) / Math.log(far / near));
+    }
+
+    /**
+     * @return lights of the frame in view space, LIGHT_FLOATS per light
+     */
+    public float[] getLights() {
+        return lights;
+    }
+
+    public int getLightCount() {
+        return lightCount;
+    }
+
+    /**
+     * @return offset into the light indices and number of lights of every cluster, the clusters are
+     * ordered by slice, row and column
+     */
+    public int[] getClusters() {
+        return clusters;
+    }
+
+    public int getClusterCount() {
+        return tilesX * tilesY * slices;
+    }
+
+    /**
+     * @return light indices of all clusters
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return number of light indices dropped in the last binning because maxIndices was reached
+     */
+    public int getDroppedIndices() {
+        return droppedIndices;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    /**
+     * @return depth of the borders of the slices, slices + 1 entries
+     */
+    public float[] getSliceDepths() {
+        return sliceDepths;
+    }
+
+    /**
+     * @return view space x range of every column in every slice, min and max
+     */
+    public float[] getColumnBounds() {
+        return columnBounds;
+    }
+
+    /**
+     * @return view space y range of every row in every slice, min and max
+     */
+    public float[] getRowBounds() {
+        return rowBounds;
+    }
+
+    /**
+     * light indices and scratch arrays of one slice, only touched by the task binning the slice
+     */
+    private static class Slice {
+
+        /** light indices of the clusters of the slice */
+        private int[] indices = new int[64];
+
+        /** number of light indices */
+        private int count;
+
+        /** light, first and last column, first and last row of every candidate */
+        private int[] candidates = new int[16 * 5];
+
+        /** squared range minus the squared depth distance of every candidate */
+        private float[] remaining = new float[16];
+
+        /** squared x distance of every candidate to every column */
+        private float[] dx2 = new float[0];
+
+        /** squared y distance of every candidate to every row */
+        private float[] dy2 = new float[0];
+
+        /**
+         * @param light light index added to the current cluster
+         */
+        private void add(int light) {
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+            }
+            indices[count++] = light;
+        }
+
+        /**
+         * grows the candidate arrays
+         *
+         * @param size number of candidates
+         * @param tilesX tiles along the width of the screen
+         * @param tilesY tiles along the height of the screen
+         */
+        private void ensureCandidates(int size, int tilesX, int tilesY) {
+            if (size > remaining.length) {
+                int capacity = Math.max(size, remaining.length * 2);
+                remaining = Arrays.copyOf(remaining, capacity);
+                candidates = Arrays.copyOf(candidates, capacity * 5);
+            }
+            if (size * tilesX > dx2.length) {
+                dx2 = Arrays.copyOf(dx2, remaining.length * tilesX);
+                dy2 = Arrays.copyOf(dy2, remaining.length * tilesY);
+            }
+        }
+    }
+
+    /**
+     * bins a range of slices, splits the range in half until it is small enough
+     */
+    private class BinTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** first slice */
+        private final int from;
+
+        /** slice behind the last slice */
+        private final int to;
+
+        private BinTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SLICES_PER_TASK) {
+                for (int s = from; s < to; s++) {
+                    binSlice(s);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BinTask(from, middle), new BinTask(middle, to));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package engine.graph.light;
 
 import engine.render.ShaderProgram;
+import engine.render.Std140Buffer;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -25,11 +26,17 @@ public class LightHandler {
     /** intensity of direct reflections ( glow / glance ) */
     private float specularPower;
 
-    /** maximum number of point lights used in scene */
-    private final int MAX_POINT_LIGHTS = 1;
+    /** name of the std140 uniform block holding the lights */
+    public static final String LIGHT_BLOCK = "LightData";
 
-    /** maximum number of spot lights used in scene */
-    private final int MAX_SPOT_LIGHTS = 1;
+    /** binding point of the uniform buffer holding the lights */
+    public static final int LIGHT_BLOCK_BINDING = 1;
+
+    /** size of the light block in bytes: ambient light and specular power, the directional light and the cluster grid */
+    public static final int LIGHT_BLOCK_SIZE = 16 + 32 + 16 + 16;
+
+    /** light direction transformed to view coordinates */
+    private final Vector4f aux = new Vector4f();
 
     /**
      * creates new empty light handler with 10 as specular power
@@ -43,71 +50,70 @@ public class LightHandler {
 
 
     /**
-     * initialises light handler by creating uniforms
+     * initialises light handler by linking the light block of the shader to the light uniform buffer
      *
      * @param shaderProgram shader used for lights ( normally scene shader )
-     * @throws Exception if uniform creation fails
+     * @throws Exception if the light block cant be found
      */
     public void init(ShaderProgram shaderProgram) throws Exception{
-
-        shaderProgram.createUniforms("specularPower");
-        shaderProgram.createUniforms("ambientLight");
-        shaderProgram.createPointLightListUniform("pointLights", MAX_POINT_LIGHTS);
-        shaderProgram.createSpotLightListUniform("spotLights", MAX_SPOT_LIGHTS);
-        shaderProgram.createDirectionalLightUniform("directionalLight");
+        shaderProgram.bindUniformBlock(LIGHT_BLOCK, LIGHT_BLOCK_BINDING);
     }
 
     /**
-     * method creates the uniforms for spot and point lights and sets their values along
-     * with the uniforms for the ambient light, specular power and directional light
+     * fills the light list of the clusterer with the point and spot lights of the scene in view
+     * coordinates, lights with an intensity of 0 are skipped. the clusterer has to bin the lights
+     * afterwards
      *
      * @param viewMatrix view matrix of scene (camera)
-     * @param shaderProgram shader program used to render
+     * @param clusterer clusterer assigning the lights to the clusters of the view frustum
      */
-    public void renderLights(Matrix4f viewMatrix, ShaderProgram shaderProgram) {
-
-        shaderProgram.setUniform("ambientLight", ambientLight);
-        shaderProgram.setUniform("specularPower",specularPower);
-
-        //Point Lights
-        PointLight[] pointLights = pointLightsList.toArray(new PointLight[MAX_POINT_LIGHTS]);
-        int numLights = Math.min(pointLightsList.size(), MAX_POINT_LIGHTS);
-        for(int i = 0; i < numLights;i++){
-            PointLight currPointLight = new PointLight(pointLights[i]);
-            Vector3f lightPos = currPointLight.getPosition();
-            Vector4f aux = new Vector4f(lightPos,1);
-            aux.mul(viewMatrix);
-            lightPos.x = aux.x;
-            lightPos.y = aux.y;
-            lightPos.z = aux.z;
-            shaderProgram.setUniform("pointLights",currPointLight,i);
+    public void collectLights(Matrix4f viewMatrix, LightClusterer clusterer) {
+        clusterer.clear();
+        for (PointLight pointLight : pointLightsList) {
+            if (pointLight.getIntensity() > 0) {
+                clusterer.addPointLight(pointLight, viewMatrix);
+            }
         }
-
-
-        SpotLight[] spotLights = spotLightsList.toArray(new SpotLight[MAX_SPOT_LIGHTS]);
-        numLights = Math.min(spotLightsList.size(), MAX_SPOT_LIGHTS);
-        for(int i = 0; i < numLights;i++){
-            SpotLight currSpotLight = new SpotLight(spotLights[i]);
-            Vector4f dir = new Vector4f(currSpotLight.getConeDirection(),0);
-            dir.mul(viewMatrix);
-            currSpotLight.setConeDirection(new Vector3f(dir.x,dir.y,dir.z));
-            Vector3f lightPos = currSpotLight.getPointLight().getPosition();
-            Vector4f aux = new Vector4f(lightPos,1);
-            aux.mul(viewMatrix);
-            lightPos.x = aux.x;
-            lightPos.y = aux.y;
-            lightPos.z = aux.z;
-            shaderProgram.setUniform("spotLights",currSpotLight,i);
+        for (SpotLight spotLight : spotLightsList) {
+            if (spotLight.getPointLight().getIntensity() > 0) {
+                clusterer.addSpotLight(spotLight, viewMatrix);
+            }
         }
+    }
 
+    /**
+     * packs the ambient light, specular power, directional light and the cluster grid into the
+     * light block. the direction of the directional light is transformed to view coordinates.
+     * the point and spot lights are not part of the block, they are uploaded as the light list
+     * of the clusterer
+     *
+     * layout of the block:
+     * vec3 ambientLight; float specularPower; DirectionalLight directionalLight;
+     * ivec4 clusterGrid ( tiles x, tiles y, slices, lights ); vec4 clusterDepth ( slice scale, slice bias )
+     *
+     * @param viewMatrix view matrix of scene (camera)
+     * @param clusterer clusterer that binned the lights of the frame
+     * @param buffer std140 buffer of the light block
+     */
+    public void writeLights(Matrix4f viewMatrix, LightClusterer clusterer, Std140Buffer buffer) {
+
+        buffer.putVec3(ambientLight);
+        buffer.putFloat(specularPower);
+
+        // directional light, only the direction is transformed
+        buffer.beginStruct();
+        if (directionalLight != null) {
+            aux.set(directionalLight.getDirection(), 0).mul(viewMatrix);
+            buffer.putVec3(directionalLight.getColor());
+            buffer.putVec3(aux.x, aux.y, aux.z);
+            buffer.putFloat(directionalLight.getIntensity());
+        } else {
+            buffer.putZeros(32);
+        }
+        buffer.endStruct();
 
-        // Get a copy of the directional light object and transform its position to view coordinates
-        DirectionalLight currDirLight = new DirectionalLight(directionalLight);
-        Vector4f dir = new Vector4f(currDirLight.getDirection(),0);
-        dir.mul(viewMatrix);
-        currDirLight.setDirection(new Vector3f(dir.x,dir.y,dir.z));
-        shaderProgram.setUniform("directionalLight",currDirLight);
-
+        buffer.putIVec4(clusterer.getTilesX(), clusterer.getTilesY(), clusterer.getSlices(), clusterer.getLightCount());
+        buffer.putVec4(clusterer.getSliceScale(), clusterer.getSliceBias(), 0, 0);
     }
 
     /**
@@ -147,7 +153,6 @@ public class LightHandler {
 
     /**
      * adds a point light to list
-     * if list exceeds MAX_POINT_LIGHTS the light is still added but not rendered
      *
      * @param light point light to add
      */
@@ -158,8 +163,6 @@ public class LightHandler {
 
     /**
      * removes point light from light list
-     * if number of point lights was over MAX_POINT_LIGHTS and the removed light was getting rendered
-     * another one will automatically be rendered instead now
      *
      * @param light point light to be removed
      */
@@ -170,7 +173,6 @@ public class LightHandler {
 
     /**
      * adds a spot light to list
-     * if list exceeds MAX_SPOT_LIGHTS the light is still added but not rendered
      *
      * @param light spot light to add
      */
@@ -181,8 +183,6 @@ public class LightHandler {
 
     /**
      * removes spot light from light list
-     * if number of point lights was over MAX_SPOT_LIGHTS and the removed light was getting rendered
-     * another one will automatically be rendered instead now
      *
      * @param light spot light to be removed
      */
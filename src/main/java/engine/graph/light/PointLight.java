@@ -4,6 +4,9 @@ import org.joml.Vector3f;
 
 public class PointLight {
 
+    /** fraction of the intensity at which the light is cut off, below one step of an 8 bit color */
+    public static final float RANGE_THRESHOLD = 1 / 256f;
+
     /** light color as Vector (no transparency) */
     private Vector3f color;
 
@@ -114,6 +117,32 @@ public class PointLight {
         this.attenuation = attenuation;
     }
 
+    /**
+     * distance at which the light falls below RANGE_THRESHOLD of its intensity:
+     * intensity / ( constant + linear * d + exponent * d * d ) = RANGE_THRESHOLD
+     * lights without linear and exponential attenuation reach infinitely far
+     *
+     * @return range of the light
+     */
+    public float getRange() {
+        if (intensity <= 0) {
+            return 0;
+        }
+        float c = attenuation.getConstant() - intensity / RANGE_THRESHOLD;
+        float l = attenuation.getLinear();
+        float e = attenuation.getExponent();
+        if (c >= 0) {
+            return 0;
+        }
+        if (e > 0) {
+            return (float) ((-l + Math.sqrt(l * l - 4 * e * c)) / (2 * e));
+        }
+        if (l > 0) {
+            return -c / l;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
     /**
      * inner class to store attributes for calculation of the lights behavior
      * all attributes are passed to shader using uniforms
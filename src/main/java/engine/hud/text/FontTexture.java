@@ -104,6 +104,32 @@ public class FontTexture {
         return texture;
     }
 
+    /**
+     * estimates the heap memory used by the character data of the font
+     *
+     * @return size of the character data in bytes
+     */
+    public long getCpuBytes() {
+        return (long) charData.size() * CharData.ESTIMATED_BYTES;
+    }
+
+    /**
+     * @return size of the sign distant field texture in bytes, 0 if it could not be loaded
+     */
+    public long getGpuBytes() {
+        return texture != null ? texture.getGpuBytes() : 0;
+    }
+
+    /**
+     * deletes the sign distant field texture
+     */
+    public void cleanup() {
+        if (texture != null) {
+            texture.cleanup();
+            texture = null;
+        }
+    }
+
     /**
      * returns the line height of the font
      *
@@ -128,6 +154,11 @@ public class FontTexture {
      */
     static class CharData {
 
+        /**
+         * estimated heap size of one char data object including its map entry
+         */
+        private static final int ESTIMATED_BYTES = 96;
+
         /**
          * x position of the char in the texture
          */
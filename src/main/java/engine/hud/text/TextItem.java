@@ -1,6 +1,7 @@
 package engine.hud.text;
 
-import engine.general.Utils;
+import engine.general.collections.FloatArrayBuilder;
+import engine.general.collections.IntArrayBuilder;
 import engine.graph.items.GameItem;
 import engine.graph.items.Material;
 import engine.graph.items.Mesh;
@@ -117,9 +118,9 @@ public class TextItem extends GameItem {
 
         lineData = new ArrayList<>();
 
-        List<Float> positions = new ArrayList<>();
-        List<Float> textCords = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
+        FloatArrayBuilder positions = new FloatArrayBuilder(text.length() * VERTICES_PER_QUAD * 3);
+        FloatArrayBuilder textCords = new FloatArrayBuilder(text.length() * VERTICES_PER_QUAD * 2);
+        IntArrayBuilder indices = new IntArrayBuilder(text.length() * 6);
 
         String[] lines = text.split("\n",-1);
         this.lines = lines.length;
@@ -160,40 +161,27 @@ public class TextItem extends GameItem {
                 int yOffset = charData.getYOffset() -(VERTICAL_PADDING_ZERO - verticalPadding) /2;
 
                 // Top left vertex
-                positions.add((float) (startX + charData.getXOffset())); // x
-                positions.add((float) (yPos + yOffset)); // y
-                positions.add(Z_POS); // z
-                textCords.add((float) (charData.getX()) / 512.0f); // texture x
-                textCords.add((float) (charData.getY()) / 512.0f); // texture y
+                positions.add((float) (startX + charData.getXOffset()), (float) (yPos + yOffset), Z_POS); // x, y, z
+                textCords.add((float) (charData.getX()) / 512.0f, (float) (charData.getY()) / 512.0f); // texture x, y
                 indices.add(nextIndex * VERTICES_PER_QUAD);
 
                 // Bottom left vertex
-                positions.add((float) (startX + charData.getXOffset())); // x
-                positions.add((float) (yPos + yOffset + charData.getHeight())); // y
-                positions.add(Z_POS); // z
-                textCords.add((float) (charData.getX()) / 512.0f); // texture x
-                textCords.add((float) (charData.getY() + charData.getHeight()) / 512.0f); // texture y
+                positions.add((float) (startX + charData.getXOffset()), (float) (yPos + yOffset + charData.getHeight()), Z_POS); // x, y, z
+                textCords.add((float) (charData.getX()) / 512.0f, (float) (charData.getY() + charData.getHeight()) / 512.0f); // texture x, y
                 indices.add(nextIndex * VERTICES_PER_QUAD + 1);
 
                 // Top right vertex
-                positions.add((float) (startX + charData.getXOffset() + charData.getWidth())); // x
-                positions.add((float) (yPos + yOffset)); // y
-                positions.add(Z_POS); // z
-                textCords.add((float) (charData.getX() + charData.getWidth()) / 512.0f); // texture x
-                textCords.add((float) (charData.getY()) / 512.0f); // texture y
+                positions.add((float) (startX + charData.getXOffset() + charData.getWidth()), (float) (yPos + yOffset), Z_POS); // x, y, z
+                textCords.add((float) (charData.getX() + charData.getWidth()) / 512.0f, (float) (charData.getY()) / 512.0f); // texture x, y
                 indices.add(nextIndex * VERTICES_PER_QUAD + 2);
 
                 // Bottom right vertex
-                positions.add((float) (startX + charData.getXOffset() + charData.getWidth())); // x
-                positions.add((float) (yPos + yOffset + charData.getHeight())); // y
-                positions.add(Z_POS); // z
-                textCords.add((float) (charData.getX() + charData.getWidth()) / 512.0f); // texture x
-                textCords.add((float) (charData.getY() + charData.getHeight()) / 512.0f); // texture y
+                positions.add((float) (startX + charData.getXOffset() + charData.getWidth()), (float) (yPos + yOffset + charData.getHeight()), Z_POS); // x, y, z
+                textCords.add((float) (charData.getX() + charData.getWidth()) / 512.0f, (float) (charData.getY() + charData.getHeight()) / 512.0f); // texture x, y
                 indices.add(nextIndex * VERTICES_PER_QUAD + 3);
 
                 //add indices for left top and bottom right vertices
-                indices.add(nextIndex * VERTICES_PER_QUAD + 2);
-                indices.add(nextIndex * VERTICES_PER_QUAD + 1);
+                indices.add(nextIndex * VERTICES_PER_QUAD + 2, nextIndex * VERTICES_PER_QUAD + 1);
 
                 nextIndex++;
                 startX += charData.getXAdvance();
@@ -208,9 +196,9 @@ public class TextItem extends GameItem {
         maxLineWidth = calculateMaxWidth();
 
         // creates the mesh
-        posArr = Utils.listToArray(positions);
-        texArr = Utils.listToArray(textCords);
-        indicesArr = indices.stream().mapToInt(i->i).toArray();
+        posArr = positions.toArray();
+        texArr = textCords.toArray();
+        indicesArr = indices.toArray();
         Mesh mesh = new Mesh(posArr,texArr,normals,indicesArr);
         mesh.setMaterial(new Material(fontTexture.getTexture()));
         return mesh;
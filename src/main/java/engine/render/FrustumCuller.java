@@ -0,0 +1,231 @@
+package engine.render;
+
+import engine.graph.items.BoundingVolume;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * culls the bounding volumes of the items of a frame against the frustum of a view projection
+ * matrix, perspective or orthographic. the world space bounds are kept in flat float arrays, so
+ * they are transformed once per frame and can be culled against several frustums, for example the
+ * camera and the shadow map. it does not touch open gl
+ *
+ * every item is tested against its bounding sphere first, only items intersecting a plane of the
+ * frustum are tested against their axis aligned box
+ */
+@SuppressWarnings("unused")
+public class FrustumCuller {
+
+    /** floats per sphere: center x, y, z and radius, a negative radius marks unbounded items */
+    private static final int SPHERE_FLOATS = 4;
+
+    /** floats per box: min x, y, z and max x, y, z */
+    private static final int BOX_FLOATS = 6;
+
+    /** floats per plane: normal x, y, z and distance */
+    public static final int PLANE_FLOATS = 4;
+
+    /** number of planes of a frustum */
+    public static final int PLANES = 6;
+
+    /** world space bounding spheres */
+    private float[] spheres;
+
+    /** world space bounding boxes */
+    private float[] boxes;
+
+    /** planes of the frustum of the last cull, normals point inside */
+    private final float[] planes = new float[PLANES * PLANE_FLOATS];
+
+    /** number of added items */
+    private int size;
+
+    /**
+     * creates an empty culler
+     */
+    public FrustumCuller() {
+        this(64);
+    }
+
+    /**
+     * @param capacity number of items that can be added before the arrays grow
+     */
+    public FrustumCuller(int capacity) {
+        capacity = Math.max(capacity, 1);
+        spheres = new float[capacity * SPHERE_FLOATS];
+        boxes = new float[capacity * BOX_FLOATS];
+    }
+
+    /**
+     * removes all items, the storage is kept for the next frame
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return number of added items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return world space boxes of the items, min x, y, z and max x, y, z per item
+     */
+    public float[] getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @param i index of the item
+     * @return false if the item was added unbounded and has no box
+     */
+    public boolean isBounded(int i) {
+        return spheres[i * SPHERE_FLOATS + 3] >= 0;
+    }
+
+    /**
+     * transforms the model space bounds of an item to world space and adds them
+     * the box is the box around the transformed box, the radius is scaled by the largest scale
+     *
+     * @param bounds model space bounds of the mesh
+     * @param modelMatrix model matrix of the item
+     * @return index of the item
+     */
+    public int add(BoundingVolume bounds, Matrix4f modelMatrix) {
+        ensureCapacity();
+        Vector3f center = bounds.getCenter();
+
+        int s = size * SPHERE_FLOATS;
+        spheres[s] = modelMatrix.m00() * center.x + modelMatrix.m10() * center.y + modelMatrix.m20() * center.z + modelMatrix.m30();
+        spheres[s + 1] = modelMatrix.m01() * center.x + modelMatrix.m11() * center.y + modelMatrix.m21() * center.z + modelMatrix.m31();
+        spheres[s + 2] = modelMatrix.m02() * center.x + modelMatrix.m12() * center.y + modelMatrix.m22() * center.z + modelMatrix.m32();
+        float scaleX = modelMatrix.m00() * modelMatrix.m00() + modelMatrix.m01() * modelMatrix.m01() + modelMatrix.m02() * modelMatrix.m02();
+        float scaleY = modelMatrix.m10() * modelMatrix.m10() + modelMatrix.m11() * modelMatrix.m11() + modelMatrix.m12() * modelMatrix.m12();
+        float scaleZ = modelMatrix.m20() * modelMatrix.m20() + modelMatrix.m21() * modelMatrix.m21() + modelMatrix.m22() * modelMatrix.m22();
+        spheres[s + 3] = bounds.getRadius() * (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+
+        bounds.transformBox(modelMatrix, boxes, size * BOX_FLOATS);
+
+        return size++;
+    }
+
+    /**
+     * adds an item that is never culled, for example an animated item whose vertices leave the
+     * bounds of the mesh
+     *
+     * @return index of the item
+     */
+    public int addUnbounded() {
+        ensureCapacity();
+        spheres[size * SPHERE_FLOATS + 3] = -1;
+        return size++;
+    }
+
+    /**
+     * grows the arrays if they are full
+     */
+    private void ensureCapacity() {
+        if ((size + 1) * SPHERE_FLOATS > spheres.length) {
+            int capacity = size * 2;
+            spheres = Arrays.copyOf(spheres, capacity * SPHERE_FLOATS);
+            boxes = Arrays.copyOf(boxes, capacity * BOX_FLOATS);
+        }
+    }
+
+    /**
+     * culls all items against the frustum of a view projection matrix
+     *
+     * @param viewProjection projection matrix multiplied with the view matrix
+     * @param visible receives for every item if it is visible, needs at least size entries
+     * @return number of visible items
+     */
+    public int cull(Matrix4f viewProjection, boolean[] visible) {
+        extractPlanes(viewProjection, planes);
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            boolean inside = isVisible(i);
+            visible[i] = inside;
+            if (inside) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param i index of the item
+     * @return false if the item is completely outside of the frustum of the last extracted planes
+     */
+    private boolean isVisible(int i) {
+        int s = i * SPHERE_FLOATS;
+        float radius = spheres[s + 3];
+        if (radius < 0) {
+            return true;
+        }
+
+        boolean intersects = false;
+        for (int p = 0; p < PLANES * PLANE_FLOATS; p += PLANE_FLOATS) {
+            float distance = planes[p] * spheres[s] + planes[p + 1] * spheres[s + 1] + planes[p + 2] * spheres[s + 2] + planes[p + 3];
+            if (distance < -radius) {
+                return false;
+            }
+            if (distance < radius) {
+                intersects = true;
+            }
+        }
+        if (!intersects) {
+            return true;
+        }
+
+        // the corner of the box farthest along the normal has to be inside of every plane
+        int b = i * BOX_FLOATS;
+        for (int p = 0; p < PLANES * PLANE_FLOATS; p += PLANE_FLOATS) {
+            float x = planes[p] >= 0 ? boxes[b + 3] : boxes[b];
+            float y = planes[p + 1] >= 0 ? boxes[b + 4] : boxes[b + 1];
+            float z = planes[p + 2] >= 0 ? boxes[b + 5] : boxes[b + 2];
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * extracts the normalized planes of the frustum from the rows of the matrix
+     * the normals point inside, a point p is inside of a plane if dot(normal, p) + distance >= 0
+     *
+     * @param m view projection matrix
+     * @param planes receives left, right, bottom, top, near and far plane, needs PLANES * PLANE_FLOATS entries
+     */
+    public static void extractPlanes(Matrix4f m, float[] planes) {
+        // left, right, bottom, top, near, far
+        setPlane(planes, 0, m.m03() + m.m00(), m.m13() + m.m10(), m.m23() + m.m20(), m.m33() + m.m30());
+        setPlane(planes, 1, m.m03() - m.m00(), m.m13() - m.m10(), m.m23() - m.m20(), m.m33() - m.m30());
+        setPlane(planes, 2, m.m03() + m.m01(), m.m13() + m.m11(), m.m23() + m.m21(), m.m33() + m.m31());
+        setPlane(planes, 3, m.m03() - m.m01(), m.m13() - m.m11(), m.m23() - m.m21(), m.m33() - m.m31());
+        setPlane(planes, 4, m.m03() + m.m02(), m.m13() + m.m12(), m.m23() + m.m22(), m.m33() + m.m32());
+        setPlane(planes, 5, m.m03() - m.m02(), m.m13() - m.m12(), m.m23() - m.m22(), m.m33() - m.m32());
+    }
+
+    /**
+     * @param planes planes of the frustum
+     * @param plane index of the plane
+     * @param x x component of the normal
+     * @param y y component of the normal
+     * @param z z component of the normal
+     * @param w distance
+     */
+    private static void setPlane(float[] planes, int plane, float x, float y, float z, float w) {
+        float inverseLength = 1.0f / (float) Math.sqrt(x * x + y * y + z * z);
+        int p = plane * PLANE_FLOATS;
+        planes[p] = x * inverseLength;
+        planes[p + 1] = y * inverseLength;
+        planes[p + 2] = z * inverseLength;
+        planes[p + 3] = w * inverseLength;
+    }
+}
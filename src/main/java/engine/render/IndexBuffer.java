@@ -0,0 +1,66 @@
+package engine.render;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * element buffer shared by the vertex arrays of several meshes that use the same index layout,
+ * for example the patches of a terrain. the meshes do not own the buffer, it is deleted once
+ * with cleanup after all meshes using it are deleted
+ */
+@SuppressWarnings("unused")
+public class IndexBuffer {
+
+    /** id of the element buffer */
+    private final int bufferId;
+
+    /** number of indices */
+    private final int count;
+
+    /**
+     * uploads the indices, has to be called on the open gl thread
+     *
+     * @param indices indices
+     */
+    public IndexBuffer(int[] indices) {
+        count = indices.length;
+        IntBuffer buffer = MemoryUtil.memAllocInt(count);
+        try {
+            buffer.put(indices).flip();
+            bufferId = glGenBuffers();
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferId);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        } finally {
+            MemoryUtil.memFree(buffer);
+        }
+    }
+
+    /**
+     * binds the buffer to the vertex array that is bound
+     */
+    public void bind() {
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferId);
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    /**
+     * @return number of indices
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * deletes the buffer
+     */
+    public void cleanup() {
+        glDeleteBuffers(bufferId);
+    }
+}
@@ -0,0 +1,147 @@
+package engine.render;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * per instance model matrices of an instanced draw call
+ *
+ * the matrices are packed into an off heap buffer that is reused every frame and only grows if
+ * more instances are drawn than ever before, so packing allocates nothing in a steady state.
+ * packing does not touch open gl. upload copies the packed matrices into one stream vbo which is
+ * attached to the bound vao as the mat4 attribute at location 7 to 10 with a divisor of 1
+ */
+@SuppressWarnings("unused")
+public class InstanceBuffer {
+
+    /** first attribute location of the instance model matrix, a mat4 uses four locations */
+    public static final int ATTRIBUTE = 7;
+
+    /** floats per instance */
+    public static final int MATRIX_FLOATS = 16;
+
+    /** bytes per instance */
+    private static final int MATRIX_BYTES = MATRIX_FLOATS * Float.BYTES;
+
+    /** packed matrices in column major order */
+    private FloatBuffer data;
+
+    /** number of packed instances */
+    private int count;
+
+    /** id of the vbo, 0 until the first upload */
+    private int vboId;
+
+    /**
+     * @param capacity number of instances that can be packed before the buffer grows
+     */
+    public InstanceBuffer(int capacity) {
+        data = MemoryUtil.memAllocFloat(Math.max(capacity, 1) * MATRIX_FLOATS);
+    }
+
+    /**
+     * removes all packed instances, the storage is kept
+     */
+    public void clear() {
+        count = 0;
+        data.clear();
+    }
+
+    /**
+     * packs the model matrix of one instance
+     *
+     * @param modelMatrix model matrix of the instance
+     */
+    public void add(Matrix4f modelMatrix) {
+        if ((count + 1) * MATRIX_FLOATS > data.capacity()) {
+            data = MemoryUtil.memRealloc(data, Math.max((count + 1) * MATRIX_FLOATS, data.capacity() * 2));
+            data.clear();
+        }
+        modelMatrix.get(count * MATRIX_FLOATS, data);
+        count++;
+    }
+
+    /**
+     * @return number of packed instances
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * sets position and limit of the buffer to the packed matrices, the buffer is only valid until
+     * the next instance is added
+     *
+     * @return the packed matrices
+     */
+    public FloatBuffer getData() {
+        data.limit(count * MATRIX_FLOATS).position(0);
+        return data;
+    }
+
+    /**
+     * @return number of instances that fit without growing
+     */
+    public int getCapacity() {
+        return data.capacity() / MATRIX_FLOATS;
+    }
+
+    /**
+     * copies the packed matrices into the vbo, has to be called on the open gl thread
+     * the vbo is orphaned before the upload, so the driver does not wait for draws still
+     * reading the matrices of the previous upload
+     */
+    public void upload() {
+        if (vboId == 0) {
+            vboId = glGenBuffers();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) data.capacity() * Float.BYTES, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, getData());
+        data.clear();
+    }
+
+    /**
+     * attaches the vbo to the bound vao as the instance model matrix, upload has to be called first
+     */
+    public void enableAttributes() {
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        for (int column = 0; column < 4; column++) {
+            int location = ATTRIBUTE + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, MATRIX_BYTES, (long) column * 4 * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * detaches the instance model matrix from the bound vao
+     */
+    public void disableAttributes() {
+        for (int column = 0; column < 4; column++) {
+            glDisableVertexAttribArray(ATTRIBUTE + column);
+        }
+    }
+
+    /**
+     * deletes the vbo and frees the packed matrices
+     */
+    public void cleanup() {
+        if (vboId != 0) {
+            glDeleteBuffers(vboId);
+            vboId = 0;
+        }
+        if (data != null) {
+            MemoryUtil.memFree(data);
+            data = null;
+        }
+    }
+}
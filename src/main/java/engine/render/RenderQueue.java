@@ -0,0 +1,270 @@
+package engine.render;
+
+import java.util.Arrays;
+
+/**
+ * collects the draw items of a frame with a 64 bit sort key and sorts them, so items sharing
+ * a shader, textures, material and vao are drawn one after another and the renderer only has to
+ * change the state when the key changes. it does not touch open gl
+ *
+ * KEY LAYOUT ( most significant first, the sign bit is always 0 ):
+ *
+ *      shader:         5 bits
+ *      texture set:   16 bits
+ *      material:      14 bits
+ *      vao:           12 bits
+ *      depth:         16 bits
+ *
+ * the ids are small per frame indices, not open gl names, ids that dont fit are wrapped, which
+ * only makes the order less optimal. depth is the distance to the camera from 0 to 1, so opaque
+ * items with the same state are drawn front to back
+ *
+ * @param <T> type of the draw items
+ */
+@SuppressWarnings("unused")
+public class RenderQueue<T> {
+
+    /** bits of the shader id */
+    public static final int SHADER_BITS = 5;
+
+    /** bits of the texture set id */
+    public static final int TEXTURE_BITS = 16;
+
+    /** bits of the material id */
+    public static final int MATERIAL_BITS = 14;
+
+    /** bits of the vao id */
+    public static final int VAO_BITS = 12;
+
+    /** bits of the quantized depth */
+    public static final int DEPTH_BITS = 16;
+
+    private static final int VAO_SHIFT = DEPTH_BITS;
+    private static final int MATERIAL_SHIFT = VAO_SHIFT + VAO_BITS;
+    private static final int TEXTURE_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+    private static final int SHADER_SHIFT = TEXTURE_SHIFT + TEXTURE_BITS;
+
+    /** bits used by the radix sort per pass */
+    private static final int RADIX_BITS = 8;
+
+    /** number of radix sort passes needed for the 63 key bits */
+    private static final int RADIX_PASSES = (SHADER_SHIFT + SHADER_BITS + RADIX_BITS - 1) / RADIX_BITS;
+
+    /** sort keys */
+    private long[] keys;
+
+    /** draw items in the same order as the keys */
+    private Object[] items;
+
+    /** buffers used by the radix sort */
+    private long[] keyBuffer;
+    private Object[] itemBuffer;
+
+    /** counts of the radix sort */
+    private final int[] counts = new int[1 << RADIX_BITS];
+
+    /** number of added items */
+    private int size;
+
+    /**
+     * creates an empty queue
+     */
+    public RenderQueue() {
+        this(64);
+    }
+
+    /**
+     * @param capacity number of items that can be added before the queue grows
+     */
+    public RenderQueue(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new long[capacity];
+        items = new Object[capacity];
+        keyBuffer = new long[capacity];
+        itemBuffer = new Object[capacity];
+    }
+
+    /**
+     * packs the state of a draw item into a sort key
+     *
+     * @param shader id of the shader program
+     * @param textureSet id of the combination of textures
+     * @param material id of the material
+     * @param vao id of the vertex array
+     * @param depth distance to the camera from 0 ( near ) to 1 ( far ), clamped
+     * @return sort key
+     */
+    public static long key(int shader, int textureSet, int material, int vao, float depth) {
+        return (long) (shader & mask(SHADER_BITS)) << SHADER_SHIFT
+                | (long) (textureSet & mask(TEXTURE_BITS)) << TEXTURE_SHIFT
+                | (long) (material & mask(MATERIAL_BITS)) << MATERIAL_SHIFT
+                | (long) (vao & mask(VAO_BITS)) << VAO_SHIFT
+                | quantizeDepth(depth);
+    }
+
+    /**
+     * @param depth distance to the camera from 0 to 1
+     * @return depth as 16 bit integer
+     */
+    public static int quantizeDepth(float depth) {
+        float clamped = depth > 0 ? (depth < 1 ? depth : 1) : 0;
+        return (int) (clamped * mask(DEPTH_BITS));
+    }
+
+    /**
+     * @param key sort key
+     * @return shader id of the key
+     */
+    public static int getShader(long key) {
+        return (int) (key >>> SHADER_SHIFT) & mask(SHADER_BITS);
+    }
+
+    /**
+     * @param key sort key
+     * @return texture set id of the key
+     */
+    public static int getTextureSet(long key) {
+        return (int) (key >>> TEXTURE_SHIFT) & mask(TEXTURE_BITS);
+    }
+
+    /**
+     * @param key sort key
+     * @return material id of the key
+     */
+    public static int getMaterial(long key) {
+        return (int) (key >>> MATERIAL_SHIFT) & mask(MATERIAL_BITS);
+    }
+
+    /**
+     * @param key sort key
+     * @return vao id of the key
+     */
+    public static int getVao(long key) {
+        return (int) (key >>> VAO_SHIFT) & mask(VAO_BITS);
+    }
+
+    /**
+     * @param key sort key
+     * @return quantized depth of the key
+     */
+    public static int getDepth(long key) {
+        return (int) key & mask(DEPTH_BITS);
+    }
+
+    /**
+     * @param bits number of bits
+     * @return mask of the lowest bits
+     */
+    private static int mask(int bits) {
+        return (1 << bits) - 1;
+    }
+
+    /**
+     * @param key sort key built with key
+     * @param item draw item
+     */
+    public void add(long key, T item) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            items = Arrays.copyOf(items, capacity);
+            keyBuffer = new long[capacity];
+            itemBuffer = new Object[capacity];
+        }
+        keys[size] = key;
+        items[size] = item;
+        size++;
+    }
+
+    /**
+     * sorts the items by their keys with a stable lsd radix sort, passes in which all keys have
+     * the same digit are skipped, so the unused high bits cost nothing
+     */
+    public void sort() {
+        long[] source = keys;
+        Object[] sourceItems = items;
+        long[] target = keyBuffer;
+        Object[] targetItems = itemBuffer;
+
+        int radix = 1 << RADIX_BITS;
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int shift = pass * RADIX_BITS;
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (source[i] >>> shift) & (radix - 1)]++;
+            }
+            if (size == 0 || counts[(int) (source[0] >>> shift) & (radix - 1)] == size) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int digit = 0; digit < radix; digit++) {
+                int count = counts[digit];
+                counts[digit] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int position = counts[(int) (source[i] >>> shift) & (radix - 1)]++;
+                target[position] = source[i];
+                targetItems[position] = sourceItems[i];
+            }
+
+            long[] swapKeys = source;
+            source = target;
+            target = swapKeys;
+            Object[] swapItems = sourceItems;
+            sourceItems = targetItems;
+            targetItems = swapItems;
+        }
+
+        keys = source;
+        items = sourceItems;
+        keyBuffer = target;
+        itemBuffer = targetItems;
+    }
+
+    /**
+     * @return number of added items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index in the queue
+     * @return key of the item
+     */
+    public long getKey(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    /**
+     * @param index index in the queue
+     * @return item at the index
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index);
+        return (T) items[index];
+    }
+
+    /**
+     * removes all items, the storage is kept for the next frame
+     */
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        Arrays.fill(itemBuffer, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @param index index to check
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
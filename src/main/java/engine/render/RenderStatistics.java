@@ -0,0 +1,185 @@
+package engine.render;
+
+/**
+ * counts the state changes and draw calls of one frame, reset by the renderer at the start of
+ * every frame
+ */
+@SuppressWarnings("unused")
+public class RenderStatistics {
+
+    /** number of glDrawElements calls, an instanced draw call counts once */
+    private int drawCalls;
+
+    /** number of items drawn by instanced draw calls */
+    private int instances;
+
+    /** number of game items inside of the camera frustum */
+    private int visibleItems;
+
+    /** number of game items outside of the camera frustum */
+    private int culledItems;
+
+    /** number of game items inside of the ortho box of the light */
+    private int shadowVisibleItems;
+
+    /** number of game items outside of the ortho box of the light */
+    private int shadowCulledItems;
+
+    /** number of point and spot lights assigned to the light clusters */
+    private int lights;
+
+    /** number of light indices of all light clusters */
+    private int lightIndices;
+
+    /** number of vertex array binds */
+    private int vaoBinds;
+
+    /** number of texture binds */
+    private int textureBinds;
+
+    /** number of materials uploaded to the shader */
+    private int materialUploads;
+
+    /** number of single uniform uploads */
+    private int uniformUploads;
+
+    /** number of uniform uploads skipped because the value did not change */
+    private int skippedUniformUploads;
+
+    /**
+     * sets all counters to 0
+     */
+    public void reset() {
+        drawCalls = 0;
+        instances = 0;
+        visibleItems = 0;
+        culledItems = 0;
+        shadowVisibleItems = 0;
+        shadowCulledItems = 0;
+        lights = 0;
+        lightIndices = 0;
+        vaoBinds = 0;
+        textureBinds = 0;
+        materialUploads = 0;
+        uniformUploads = 0;
+        skippedUniformUploads = 0;
+    }
+
+    void countDrawCall() {
+        drawCalls++;
+    }
+
+    /**
+     * @param count number of items drawn by one instanced draw call
+     */
+    void countInstances(int count) {
+        instances += count;
+    }
+
+    /**
+     * @param visible number of game items inside of the camera frustum
+     * @param culled number of game items outside of the camera frustum
+     */
+    void countCulling(int visible, int culled) {
+        visibleItems += visible;
+        culledItems += culled;
+    }
+
+    /**
+     * @param visible number of game items inside of the ortho box of the light
+     * @param culled number of game items outside of the ortho box of the light
+     */
+    void countShadowCulling(int visible, int culled) {
+        shadowVisibleItems += visible;
+        shadowCulledItems += culled;
+    }
+
+    /**
+     * @param lights number of point and spot lights assigned to the light clusters
+     * @param indices number of light indices of all light clusters
+     */
+    void countLights(int lights, int indices) {
+        this.lights += lights;
+        lightIndices += indices;
+    }
+
+    void countVaoBind() {
+        vaoBinds++;
+    }
+
+    void countTextureBind() {
+        textureBinds++;
+    }
+
+    void countMaterialUpload() {
+        materialUploads++;
+    }
+
+    /**
+     * @param uploads number of uniforms uploaded
+     * @param skipped number of uploads skipped because the value did not change
+     */
+    void countUniformUploads(int uploads, int skipped) {
+        uniformUploads += uploads;
+        skippedUniformUploads += skipped;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public int getVisibleItems() {
+        return visibleItems;
+    }
+
+    public int getCulledItems() {
+        return culledItems;
+    }
+
+    public int getShadowVisibleItems() {
+        return shadowVisibleItems;
+    }
+
+    public int getShadowCulledItems() {
+        return shadowCulledItems;
+    }
+
+    public int getLights() {
+        return lights;
+    }
+
+    public int getLightIndices() {
+        return lightIndices;
+    }
+
+    public int getVaoBinds() {
+        return vaoBinds;
+    }
+
+    public int getTextureBinds() {
+        return textureBinds;
+    }
+
+    public int getMaterialUploads() {
+        return materialUploads;
+    }
+
+    public int getUniformUploads() {
+        return uniformUploads;
+    }
+
+    public int getSkippedUniformUploads() {
+        return skippedUniformUploads;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderStatistics( " + drawCalls + " draw calls, " + instances + " instances, " + visibleItems + " visible, " + culledItems + " culled, "
+                + shadowVisibleItems + " shadow visible, " + shadowCulledItems + " shadow culled, " + lights + " lights, " + lightIndices + " light indices, " + vaoBinds + " vao binds, " + textureBinds + " texture binds, "
+                + materialUploads + " material uploads, " + uniformUploads + " uniform uploads, " + skippedUniformUploads + " skipped )";
+    }
+}
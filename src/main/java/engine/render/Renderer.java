@@ -3,15 +3,19 @@ package engine.render;
 import engine.general.Transformation;
 import engine.general.Window;
 import engine.general.save.Resources;
+import engine.graph.environment.Fog;
 import engine.graph.environment.ShadowMap;
 import engine.graph.general.Camera;
 import engine.graph.general.Scene;
 import engine.graph.environment.Skybox;
+import engine.graph.items.BoundingVolume;
 import engine.graph.items.GameItem;
 import engine.graph.items.Material;
 import engine.graph.items.Mesh;
+import engine.graph.items.Texture;
 import engine.graph.items.animation.AnimationItem;
 import engine.graph.light.DirectionalLight;
+import engine.graph.light.LightClusterer;
 import engine.graph.light.LightHandler;
 import engine.hud.Hud;
 import engine.hud.assets.Quad;
@@ -21,14 +25,23 @@ import org.joml.Vector4f;
 import org.lwjgl.opengl.GL11;
 import test.MainGame;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.GL_TEXTURE2;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL13.*;
 import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.GL_R32UI;
+import static org.lwjgl.opengl.GL30.GL_RG32UI;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
 import static org.lwjgl.opengl.GL30.glBindFramebuffer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
 
 public class Renderer {
 
@@ -57,9 +70,103 @@ public class Renderer {
     /** shader program for the shadow maps */
     private ShaderProgram depthShaderProgram;
 
-    /** shadow map of the scene */
+    /** shadow map of the scene, one layer per cascade */
     private ShadowMap shadowMap;
 
+    /** number of cascades of the shadow map */
+    public static final int SHADOW_CASCADES = 4;
+
+    /** split distances, light space bounds and casters of the cascades */
+    private final ShadowCascades shadowCascades = new ShadowCascades(SHADOW_CASCADES, ShadowMap.SHADOW_MAP_WIDTH);
+
+    /** id of the scene shader in the sort keys */
+    private static final int SCENE_SHADER = 0;
+
+    /** draw items of the scene sorted by their state */
+    private final RenderQueue<DrawItem> renderQueue = new RenderQueue<>();
+
+    /** draw items reused every frame */
+    private final List<DrawItem> drawItems = new ArrayList<>();
+
+    /** per frame ids of the materials, texture combinations and meshes used in the sort keys */
+    private final Map<Material, Integer> materialIds = new IdentityHashMap<>();
+    private final Map<Long, Integer> textureSetIds = new HashMap<>();
+    private final Map<Mesh, Integer> vaoIds = new IdentityHashMap<>();
+
+    /** state changes and draw calls of the last frame */
+    private final RenderStatistics statistics = new RenderStatistics();
+
+    /** minimum number of game items sharing a mesh that are drawn with one instanced draw call */
+    public static final int MIN_INSTANCES = 4;
+
+    /** model matrices of the instanced draw calls */
+    private final InstanceBuffer instanceBuffer = new InstanceBuffer(256);
+
+    /** world space bounds of the game items of the frame, in the order of scene.getGameMeshes */
+    private final FrustumCuller frustumCuller = new FrustumCuller(256);
+
+    /** visibility of the game items for the camera */
+    private boolean[] cameraVisible = new boolean[256];
+
+    /** visibility of the game items for every cascade of the shadow map */
+    private boolean[][] shadowVisible = new boolean[SHADOW_CASCADES][256];
+
+    /** number of visible shadow casters of every cascade */
+    private final int[] shadowCasterCounts = new int[SHADOW_CASCADES];
+
+    /** view space to shadow map matrix of a cascade */
+    private final Matrix4f cascadeMatrix = new Matrix4f();
+
+    /** inverse of the camera view matrix, takes view space positions back to world space */
+    private final Matrix4f inverseViewMatrix = new Matrix4f();
+
+    /** far distances of the cascades */
+    private final float[] cascadeSplits = new float[ShadowCascades.MAX_CASCADES];
+
+    /** projection matrix multiplied with the view matrix of the pass that is culled */
+    private final Matrix4f cullMatrix = new Matrix4f();
+
+    /** name of the std140 uniform block holding the matrices and the fog of the frame */
+    public static final String FRAME_BLOCK = "FrameData";
+
+    /** binding point of the uniform buffer holding the frame block */
+    public static final int FRAME_BLOCK_BINDING = 0;
+
+    /** size of the frame block in bytes: three matrices, the cascade matrices, the cascade splits and the fog */
+    public static final int FRAME_BLOCK_SIZE = 3 * 64 + ShadowCascades.MAX_CASCADES * 64 + 16 + 32;
+
+    /** matrices and fog of the frame, shared by the scene, depth and sky box shader */
+    private final UniformBuffer frameBuffer = new UniformBuffer(FRAME_BLOCK_BINDING, FRAME_BLOCK_SIZE);
+
+    /** lights of the frame, used by the scene shader */
+    private final UniformBuffer lightBuffer = new UniformBuffer(LightHandler.LIGHT_BLOCK_BINDING, LightHandler.LIGHT_BLOCK_SIZE);
+
+    /** tiles of the light clusters along the width and height of the screen and slices along the depth */
+    public static final int LIGHT_TILES_X = 16;
+    public static final int LIGHT_TILES_Y = 9;
+    public static final int LIGHT_SLICES = 24;
+
+    /** maximum number of light indices of all clusters, within the minimum size of a buffer texture */
+    public static final int MAX_LIGHT_INDICES = 65536;
+
+    /** assigns the point and spot lights to the clusters of the view frustum */
+    private final LightClusterer lightClusterer = new LightClusterer(LIGHT_TILES_X, LIGHT_TILES_Y, LIGHT_SLICES, MAX_LIGHT_INDICES);
+
+    /** light list, offset and count of every cluster and light indices of the clusters */
+    private final TextureBuffer lightList = new TextureBuffer(GL_RGBA32F, 256 * LightClusterer.LIGHT_FLOATS);
+    private final TextureBuffer lightClusters = new TextureBuffer(GL_RG32UI, LIGHT_TILES_X * LIGHT_TILES_Y * LIGHT_SLICES * 2);
+    private final TextureBuffer lightIndices = new TextureBuffer(GL_R32UI, 4096);
+
+    /** handles of the uniforms set for every item, looked up once after the shaders are created */
+    private int modelViewMatrixUniform;
+    private int isAnimationUniform;
+    private int isInstancedUniform;
+    private int[] jointTransformsUniform;
+    private ShaderProgram.MaterialUniform materialUniform;
+    private int depthModelLightViewMatrixUniform;
+    private int depthOrthoProjectionMatrixUniform;
+    private int depthIsInstancedUniform;
+
     /**
      * constructor creates transformation object
      */
@@ -76,7 +183,7 @@ public class Renderer {
      */
     @SuppressWarnings("unused")
     public void init(Window window, LightHandler lightHandler) throws Exception{
-        shadowMap = new ShadowMap();
+        shadowMap = new ShadowMap(SHADOW_CASCADES);
 
         setupDepthShader();
         setupSceneShader(lightHandler);
@@ -97,21 +204,26 @@ public class Renderer {
         sceneShaderProgram.createFragmentShader(Resources.loadResource("/shader/sceneShader/sceneFragmentShader.shader"));
         sceneShaderProgram.link();
 
-        sceneShaderProgram.createUniforms("projectionMatrix");
+        sceneShaderProgram.bindUniformBlock(FRAME_BLOCK, FRAME_BLOCK_BINDING);
         sceneShaderProgram.createUniforms("modelViewMatrix");
-        sceneShaderProgram.createUniforms("orthoProjectionMatrix");
-        sceneShaderProgram.createUniforms("modelLightViewMatrix");
         sceneShaderProgram.createUniforms("texture_sampler");
         sceneShaderProgram.createUniforms("normalMap");
         sceneShaderProgram.createUniforms("isAnimation");
+        sceneShaderProgram.createUniforms("isInstanced");
         sceneShaderProgram.createMatrix4fArrayUniform("jointTransforms", 50);
 
         sceneShaderProgram.createMaterialUniform("material");
 
-        sceneShaderProgram.createFogUniform("fog");
-
         sceneShaderProgram.createUniforms("shadowMap");
+        sceneShaderProgram.createUniforms("lights");
+        sceneShaderProgram.createUniforms("lightClusters");
+        sceneShaderProgram.createUniforms("lightIndices");
 
+        modelViewMatrixUniform = sceneShaderProgram.getUniform("modelViewMatrix");
+        isAnimationUniform = sceneShaderProgram.getUniform("isAnimation");
+        isInstancedUniform = sceneShaderProgram.getUniform("isInstanced");
+        jointTransformsUniform = sceneShaderProgram.getArrayUniform("jointTransforms");
+        materialUniform = sceneShaderProgram.getMaterialUniform("material");
 
         lightHandler.init(sceneShaderProgram);
     }
@@ -128,8 +240,14 @@ public class Renderer {
         depthShaderProgram.createFragmentShader(Resources.loadResource("/shader/depth/depthFragmentShader.shader"));
         depthShaderProgram.link();
 
-        depthShaderProgram.createUniforms("orthoProjectionMatrix");
+        depthShaderProgram.bindUniformBlock(FRAME_BLOCK, FRAME_BLOCK_BINDING);
         depthShaderProgram.createUniforms("modelLightViewMatrix");
+        depthShaderProgram.createUniforms("orthoProjectionMatrix");
+        depthShaderProgram.createUniforms("isInstanced");
+
+        depthModelLightViewMatrixUniform = depthShaderProgram.getUniform("modelLightViewMatrix");
+        depthOrthoProjectionMatrixUniform = depthShaderProgram.getUniform("orthoProjectionMatrix");
+        depthIsInstancedUniform = depthShaderProgram.getUniform("isInstanced");
     }
 
     /**
@@ -144,7 +262,7 @@ public class Renderer {
         skyBoyShaderProgram.createVertexShader(Resources.loadResource("/shader/skyboxShader/skyboxVertexShader.shader"));
         skyBoyShaderProgram.createFragmentShader(Resources.loadResource("/shader/skyboxShader/skyboxFragmentShader.shader"));
         skyBoyShaderProgram.link();
-        skyBoyShaderProgram.createUniforms("projectionMatrix");
+        skyBoyShaderProgram.bindUniformBlock(FRAME_BLOCK, FRAME_BLOCK_BINDING);
         skyBoyShaderProgram.createUniforms("modelViewMatrix");
         skyBoyShaderProgram.createUniforms("texture_sampler");
         skyBoyShaderProgram.createUniforms("ambientLight");
@@ -163,7 +281,20 @@ public class Renderer {
     public void render(Window window, Camera camera, Scene scene, Hud hud){
         clear();
 
+        statistics.reset();
+        sceneShaderProgram.resetCounters();
+        depthShaderProgram.resetCounters();
+        skyBoyShaderProgram.resetCounters();
+
+        updateBounds(scene);
 
+        transformation.updateProjectionMatrix(FOV, window.getWidth(),window.getHeight(),Z_NEAR,Z_FAR);
+        transformation.updateViewMatrix(camera);
+        updateShadowCascades(window, scene);
+
+        // the frame and light blocks are uploaded once and used by all passes
+        writeFrameData(scene);
+        updateLights(window, scene);
 
         // render depth map before the view port has been set up
         renderDepthMap(window, camera, scene);
@@ -174,13 +305,15 @@ public class Renderer {
             hud.updateBounds();
         }
 
-        transformation.updateProjectionMatrix(FOV, window.getWidth(),window.getHeight(),Z_NEAR,Z_FAR);
-        transformation.updateViewMatrix(camera);
-
         renderScene(scene);
 
         renderSkyBox(scene);
 
+        // the programs count their own uploads, including the light and fog uniforms
+        statistics.countUniformUploads(depthShaderProgram.getUploads(), depthShaderProgram.getSkippedUploads());
+        statistics.countUniformUploads(sceneShaderProgram.getUploads(), sceneShaderProgram.getSkippedUploads());
+        statistics.countUniformUploads(skyBoyShaderProgram.getUploads(), skyBoyShaderProgram.getSkippedUploads());
+
         glClear( GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT);
 
         renderHud(window, hud);
@@ -190,36 +323,31 @@ public class Renderer {
 
     }
 
+    /**
+     * renders the depth of the shadow casters into the layers of the shadow map, every cascade
+     * only draws the casters that can throw a shadow into its part of the view frustum
+     *
+     * @param window unused
+     * @param camera unused
+     * @param scene scene with the game items
+     */
     public void renderDepthMap(Window window, Camera camera, Scene scene) {
 
         // set the viewport to batch the depth texture dimensions
-        glBindFramebuffer(GL_FRAMEBUFFER, shadowMap.getDepthMapFBO());
         glViewport(0, 0, ShadowMap.SHADOW_MAP_WIDTH, ShadowMap.SHADOW_MAP_HEIGHT);
 
-
-        // clear the depth buffer
-        glClear(GL_DEPTH_BUFFER_BIT);
-
         depthShaderProgram.bind();
 
-        DirectionalLight light = scene.getLightHandler().getDirectionalLight();
-        Vector3f lightDirection = light.getDirection();
+        // the light view matrix is set in the frame block, the projection differs per cascade
+        Matrix4f lightViewMatrix = transformation.getLightViewMatrix();
+        for (int cascade = 0; cascade < shadowCascades.getCascadeCount(); cascade++) {
+            shadowMap.bindLayer(cascade);
+            glClear(GL_DEPTH_BUFFER_BIT);
 
-        // calculates the light position and the rotation angles
-        float lightAngleX = (float) Math.toDegrees(Math.acos(lightDirection.z));
-        float lightAngleY = (float) Math.toDegrees(Math.asin(lightDirection.x));
-        float lightAngleZ = 0;
-        Matrix4f lightViewMatrix = transformation.updateLightViewMatrix(new Vector3f(lightDirection).mul(light.getShadowPosMult()), new Vector3f(lightAngleX, lightAngleY, lightAngleZ));
-        DirectionalLight.OrthoCords orthoCords = light.getOrthoCords();
-        Matrix4f orthoProjMatrix = transformation.updateOrthoProjectionMatrix(orthoCords.left, orthoCords.right, orthoCords.bottom, orthoCords.top, orthoCords.near, orthoCords.far);
+            statistics.countShadowCulling(shadowCasterCounts[cascade], frustumCuller.size() - shadowCasterCounts[cascade]);
+            depthShaderProgram.setUniform(depthOrthoProjectionMatrixUniform, shadowCascades.getProjectionMatrix(cascade));
 
-        depthShaderProgram.setUniform("orthoProjectionMatrix", orthoProjMatrix);
-        Map<Mesh, List<GameItem>> mapMeshes = scene.getGameMeshes();
-        for (Mesh mesh : mapMeshes.keySet()) {
-            mesh.renderList(mapMeshes.get(mesh), (GameItem gameItem) -> {
-                Matrix4f modelLightViewMatrix = transformation.buildModelViewMatrix(gameItem, lightViewMatrix);
-                depthShaderProgram.setUniform("modelLightViewMatrix", modelLightViewMatrix);
-            });
+            renderCasters(scene, lightViewMatrix, shadowVisible[cascade]);
         }
 
         // unbind
@@ -227,6 +355,150 @@ public class Renderer {
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
+    /**
+     * draws the visible shadow casters into the bound layer of the shadow map
+     *
+     * @param scene scene with the game items
+     * @param lightViewMatrix light view matrix of the cascades
+     * @param shadowVisible visibility of the game items for the cascade
+     */
+    private void renderCasters(Scene scene, Matrix4f lightViewMatrix, boolean[] shadowVisible) {
+        // the depth shader does not use textures, so only the vertex arrays are bound
+        int isInstanced = -1;
+        int first = 0;
+        Map<Mesh, List<GameItem>> mapMeshes = scene.getGameMeshes();
+        for (Map.Entry<Mesh, List<GameItem>> entry : mapMeshes.entrySet()) {
+            Mesh mesh = entry.getKey();
+            List<GameItem> gameItems = entry.getValue();
+            int visible = 0;
+            for (int i = 0; i < gameItems.size(); i++) {
+                if (shadowVisible[first + i]) {
+                    visible++;
+                }
+            }
+            if (visible == 0) {
+                first += gameItems.size();
+                continue;
+            }
+            glBindVertexArray(mesh.getVaoId());
+            statistics.countVaoBind();
+
+            if (visible >= MIN_INSTANCES) {
+                if (isInstanced != 1) {
+                    depthShaderProgram.setUniform(depthIsInstancedUniform, 1);
+                    isInstanced = 1;
+                }
+                instanceBuffer.clear();
+                for (int i = 0; i < gameItems.size(); i++) {
+                    if (shadowVisible[first + i]) {
+                        instanceBuffer.add(transformation.buildModelMatrix(gameItems.get(i)));
+                    }
+                }
+                drawInstanced(mesh);
+                first += gameItems.size();
+                continue;
+            }
+
+            if (isInstanced != 0) {
+                depthShaderProgram.setUniform(depthIsInstancedUniform, 0);
+                isInstanced = 0;
+            }
+            for (int i = 0; i < gameItems.size(); i++) {
+                if (!shadowVisible[first + i]) {
+                    continue;
+                }
+                Matrix4f modelLightViewMatrix = transformation.buildModelViewMatrix(gameItems.get(i), lightViewMatrix);
+                depthShaderProgram.setUniform(depthModelLightViewMatrixUniform, modelLightViewMatrix);
+                glDrawElements(GL_TRIANGLES, mesh.getVertexCount(), GL_UNSIGNED_INT, 0);
+                statistics.countDrawCall();
+            }
+            first += gameItems.size();
+        }
+        glBindVertexArray(0);
+    }
+
+    /**
+     * fits the cascades of the shadow map to the view frustum, culls the shadow casters of every
+     * cascade and sets the light view matrix of the cascades as the light view matrix of the
+     * transformation. culling moves the near planes of the cascades, so it is done before the
+     * cascade matrices are written to the frame block
+     *
+     * @param window window with the aspect ratio of the projection
+     * @param scene scene with the directional light
+     */
+    private void updateShadowCascades(Window window, Scene scene) {
+        DirectionalLight light = scene.getLightHandler().getDirectionalLight();
+        shadowCascades.update(transformation.getViewMatrix(), FOV, (float) window.getWidth() / window.getHeight(), Z_NEAR, Z_FAR, light.getDirection());
+        transformation.setLightViewMatrix(shadowCascades.getLightViewMatrix());
+
+        // items outside of the box of a cascade extended towards the light do not cast shadows into it
+        for (int cascade = 0; cascade < shadowCascades.getCascadeCount(); cascade++) {
+            shadowCasterCounts[cascade] = shadowCascades.cullCasters(cascade, frustumCuller, shadowVisible[cascade]);
+        }
+    }
+
+    /**
+     * assigns the lights to the clusters, uploads the light list and the clusters to the buffer
+     * textures and packs and uploads the light block
+     *
+     * @param window window with the aspect ratio of the projection
+     * @param scene scene with the lights
+     */
+    private void updateLights(Window window, Scene scene) {
+        LightHandler lightHandler = scene.getLightHandler();
+        Matrix4f viewMatrix = transformation.getViewMatrix();
+        lightClusterer.setProjection(FOV, (float) window.getWidth() / window.getHeight(), Z_NEAR, Z_FAR);
+        lightHandler.collectLights(viewMatrix, lightClusterer);
+        lightClusterer.bin(ForkJoinPool.commonPool());
+        statistics.countLights(lightClusterer.getLightCount(), lightClusterer.getIndexCount());
+
+        lightList.upload(lightClusterer.getLights(), lightClusterer.getLightCount() * LightClusterer.LIGHT_FLOATS);
+        lightClusters.upload(lightClusterer.getClusters(), lightClusterer.getClusterCount() * 2);
+        lightIndices.upload(lightClusterer.getIndices(), lightClusterer.getIndexCount());
+
+        lightHandler.writeLights(viewMatrix, lightClusterer, lightBuffer.begin());
+        lightBuffer.upload();
+    }
+
+    /**
+     * packs the frame block and uploads it
+     *
+     * layout of the block:
+     * mat4 projectionMatrix; mat4 viewMatrix; mat4 lightViewMatrix; mat4 cascadeMatrices[MAX_CASCADES];
+     * vec4 cascadeSplits; Fog fog;
+     *
+     * the cascade matrices take view space positions to the shadow map of their cascade, the
+     * splits are the far distances of the cascades, unused cascades are written as zeros
+     *
+     * @param scene scene with the fog
+     */
+    private void writeFrameData(Scene scene) {
+        Std140Buffer buffer = frameBuffer.begin();
+        buffer.putMat4(transformation.getProjectionMatrix());
+        buffer.putMat4(transformation.getViewMatrix());
+        buffer.putMat4(transformation.getLightViewMatrix());
+
+        transformation.getViewMatrix().invertAffine(inverseViewMatrix);
+        for (int cascade = 0; cascade < ShadowCascades.MAX_CASCADES; cascade++) {
+            if (cascade < shadowCascades.getCascadeCount()) {
+                buffer.putMat4(shadowCascades.getLightViewProjectionMatrix(cascade).mul(inverseViewMatrix, cascadeMatrix));
+                cascadeSplits[cascade] = shadowCascades.getSplitDistance(cascade + 1);
+            } else {
+                buffer.putZeros(64);
+                cascadeSplits[cascade] = 0;
+            }
+        }
+        buffer.putVec4(cascadeSplits[0], cascadeSplits[1], cascadeSplits[2], cascadeSplits[3]);
+
+        Fog fog = scene.getFog() != null ? scene.getFog() : Fog.NO_FOG;
+        buffer.beginStruct();
+        buffer.putInt(fog.isActive() ? 1 : 0);
+        buffer.putVec3(fog.getColor());
+        buffer.putFloat(fog.getDensity());
+        buffer.endStruct();
+        frameBuffer.upload();
+    }
+
     /**
      * renders scene: lights and 3d objects
      *
@@ -238,57 +510,237 @@ public class Renderer {
 
         sceneShaderProgram.bind();
 
-        //Update projection Matrix
+        // the matrices, the fog and the lights are set in the frame and light blocks
         Matrix4f projectionMatrix = transformation.getProjectionMatrix();
-        sceneShaderProgram.setUniform("projectionMatrix",projectionMatrix);
-        Matrix4f orthoProjMatrix = transformation.getOrthoProjectionMatrix();
-        sceneShaderProgram.setUniform("orthoProjectionMatrix", orthoProjMatrix);
-        Matrix4f lightViewMatrix = transformation.getLightViewMatrix();
-
-        //Update viewMatrix
         Matrix4f viewMatrix = transformation.getViewMatrix();
 
-        scene.getLightHandler().renderLights(viewMatrix,sceneShaderProgram);
-
-        sceneShaderProgram.setUniform("fog",scene.getFog());
-
         sceneShaderProgram.setUniform("texture_sampler",0);
 
         sceneShaderProgram.setUniform("normalMap",1);
 
         sceneShaderProgram.setUniform("shadowMap",2);
 
-        //Render each mesh with the associated gameItem
-        Map<Mesh, List<GameItem>> mapMeshes = scene.getGameMeshes();
-        for(Mesh mesh : mapMeshes.keySet()){
-            sceneShaderProgram.setUniform("material",mesh.getMaterial());
-            glActiveTexture(GL_TEXTURE2);
-            glBindTexture(GL_TEXTURE_2D,shadowMap.getDepthMapTexture().getId());
-            mesh.renderList(mapMeshes.get(mesh), gameItem -> {
+        sceneShaderProgram.setUniform("lights",3);
+
+        sceneShaderProgram.setUniform("lightClusters",4);
+
+        sceneShaderProgram.setUniform("lightIndices",5);
+
+        // the light buffers use the units 3 to 5, they are bound once like the shadow map
+        lightList.bind(GL_TEXTURE3);
+        lightClusters.bind(GL_TEXTURE4);
+        lightIndices.bind(GL_TEXTURE5);
+
+        // the shadow map is the only texture on unit 2, so it is bound once
+        glActiveTexture(GL_TEXTURE2);
+        glBindTexture(GL_TEXTURE_2D_ARRAY,shadowMap.getDepthMapId());
+        statistics.countTextureBind();
+
+        int visibleCount = frustumCuller.cull(cullMatrix.set(projectionMatrix).mul(viewMatrix), cameraVisible);
+        statistics.countCulling(visibleCount, frustumCuller.size() - visibleCount);
+
+        fillRenderQueue(scene, viewMatrix);
+
+        // render the items sorted by their state and only change what differs from the previous item
+        int activeUnit = GL_TEXTURE2;
+        int boundTexture = -1;
+        int boundNormalMap = -1;
+        int boundVao = -1;
+        int isAnimation = -1;
+        int isInstanced = -1;
+        Material currentMaterial = null;
+        for (int i = 0; i < renderQueue.size(); ) {
+            DrawItem drawItem = renderQueue.get(i);
+            Mesh mesh = drawItem.mesh;
+            GameItem gameItem = drawItem.gameItem;
+            Material material = mesh.getMaterial();
+
+            if (material != currentMaterial) {
+                sceneShaderProgram.setUniform(materialUniform, material);
+                statistics.countMaterialUpload();
+                currentMaterial = material;
+            }
+
+            Texture texture = material.getTexture();
+            if (texture != null && texture.getId() != boundTexture) {
+                if (activeUnit != GL_TEXTURE0) {
+                    activeUnit = GL_TEXTURE0;
+                    glActiveTexture(activeUnit);
+                }
+                glBindTexture(GL_TEXTURE_2D, texture.getId());
+                statistics.countTextureBind();
+                boundTexture = texture.getId();
+            }
+
+            Texture normalMap = material.getNormalMap();
+            if (normalMap != null && normalMap.getId() != boundNormalMap) {
+                if (activeUnit != GL_TEXTURE1) {
+                    activeUnit = GL_TEXTURE1;
+                    glActiveTexture(activeUnit);
+                }
+                glBindTexture(GL_TEXTURE_2D, normalMap.getId());
+                statistics.countTextureBind();
+                boundNormalMap = normalMap.getId();
+            }
+
+            if (mesh.getVaoId() != boundVao) {
+                glBindVertexArray(mesh.getVaoId());
+                statistics.countVaoBind();
+                boundVao = mesh.getVaoId();
+            }
+
+            // items sharing the mesh that follow each other in the queue are drawn instanced
+            int end = i + 1;
+            if (!(gameItem instanceof AnimationItem)) {
+                while (end < renderQueue.size() && renderQueue.get(end).mesh == mesh && !(renderQueue.get(end).gameItem instanceof AnimationItem)) {
+                    end++;
+                }
+            }
+            if (end - i >= MIN_INSTANCES) {
+                if (isInstanced != 1) {
+                    sceneShaderProgram.setUniform(isInstancedUniform, 1);
+                    isInstanced = 1;
+                }
+                if (isAnimation != 0) {
+                    sceneShaderProgram.setUniform(isAnimationUniform, 0);
+                    isAnimation = 0;
+                }
+                instanceBuffer.clear();
+                for (int k = i; k < end; k++) {
+                    instanceBuffer.add(transformation.buildModelMatrix(renderQueue.get(k).gameItem));
+                }
+                drawInstanced(mesh);
+                i = end;
+                continue;
+            }
+
+            if (isInstanced != 0) {
+                sceneShaderProgram.setUniform(isInstancedUniform, 0);
+                isInstanced = 0;
+            }
+
+            if (gameItem instanceof AnimationItem) {
+                if (isAnimation != 1) {
+                    sceneShaderProgram.setUniform(isAnimationUniform, 1);
+                    isAnimation = 1;
+                }
+                Matrix4f[] jointTransforms = ((AnimationItem) gameItem).getJointTransforms();
+                sceneShaderProgram.setUniform(jointTransformsUniform, jointTransforms);
+            } else if (isAnimation != 0) {
+                sceneShaderProgram.setUniform(isAnimationUniform, 0);
+                isAnimation = 0;
+            }
+
+            Matrix4f modelViewMatrix = transformation.buildModelViewMatrix(gameItem, viewMatrix);
+            sceneShaderProgram.setUniform(modelViewMatrixUniform, modelViewMatrix);
+
+            glDrawElements(GL_TRIANGLES, mesh.getVertexCount(), GL_UNSIGNED_INT, 0);
+            statistics.countDrawCall();
+            i++;
+        }
+
+        //restore state
+        glBindVertexArray(0);
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        sceneShaderProgram.unbind();
 
+
+    }
+
+    /**
+     * draws the bound mesh once for every instance in the instance buffer, the vao of the mesh
+     * has to be bound
+     *
+     * @param mesh mesh to draw
+     */
+    private void drawInstanced(Mesh mesh) {
+        instanceBuffer.upload();
+        instanceBuffer.enableAttributes();
+        glDrawElementsInstanced(GL_TRIANGLES, mesh.getVertexCount(), GL_UNSIGNED_INT, 0, instanceBuffer.getCount());
+        instanceBuffer.disableAttributes();
+        statistics.countDrawCall();
+        statistics.countInstances(instanceBuffer.getCount());
+    }
+
+    /**
+     * transforms the bounds of all game items of the scene to world space for the culling of the
+     * shadow and the scene pass, animated items are never culled
+     *
+     * @param scene scene to be rendered
+     */
+    private void updateBounds(Scene scene) {
+        frustumCuller.clear();
+        for (Map.Entry<Mesh, List<GameItem>> entry : scene.getGameMeshes().entrySet()) {
+            BoundingVolume bounds = entry.getKey().getBounds();
+            for (GameItem gameItem : entry.getValue()) {
                 if (gameItem instanceof AnimationItem) {
-                    sceneShaderProgram.setUniform("isAnimation", 1);
-                    for (int i = 0; i < ((AnimationItem) gameItem).getJointTransforms().length; i++) {
-                        sceneShaderProgram.setUniform("jointTransforms",((AnimationItem)gameItem).getJointTransforms());
-                    }
-                    //System.out.println((((AnimationItem)gameItem).getJointTransforms()[1]).transform(new Vector4f(1,1,0,1)));
+                    frustumCuller.addUnbounded();
                 } else {
-                    sceneShaderProgram.setUniform("isAnimation", 0);
+                    frustumCuller.add(bounds, transformation.buildModelMatrix(gameItem));
                 }
+            }
+        }
 
+        if (cameraVisible.length < frustumCuller.size()) {
+            cameraVisible = new boolean[frustumCuller.size() * 2];
+            shadowVisible = new boolean[SHADOW_CASCADES][frustumCuller.size() * 2];
+        }
+    }
 
+    /**
+     * fills the render queue with one draw item per game item of the scene. the ids in the sort
+     * keys are assigned in the order the materials, texture combinations and meshes are found
+     *
+     * @param scene scene to be rendered
+     * @param viewMatrix view matrix of the camera, used for the depth
+     */
+    private void fillRenderQueue(Scene scene, Matrix4f viewMatrix) {
+        renderQueue.clear();
+        materialIds.clear();
+        textureSetIds.clear();
+        vaoIds.clear();
+
+        int used = 0;
+        int index = 0;
+        for (Map.Entry<Mesh, List<GameItem>> entry : scene.getGameMeshes().entrySet()) {
+            Mesh mesh = entry.getKey();
+            Material material = mesh.getMaterial();
+            Texture texture = material.getTexture();
+            Texture normalMap = material.getNormalMap();
+            long textures = (long) (texture != null ? texture.getId() + 1 : 0) << 32 | (normalMap != null ? normalMap.getId() + 1 : 0);
+
+            int textureSet = textureSetIds.computeIfAbsent(textures, k -> textureSetIds.size());
+            int materialId = materialIds.computeIfAbsent(material, k -> materialIds.size());
+            int vao = vaoIds.computeIfAbsent(mesh, k -> vaoIds.size());
+
+            for (GameItem gameItem : entry.getValue()) {
+                if (!cameraVisible[index++]) {
+                    continue;
+                }
+                Vector3f position = gameItem.getPosition();
+                float viewZ = viewMatrix.m02() * position.x + viewMatrix.m12() * position.y + viewMatrix.m22() * position.z + viewMatrix.m32();
 
-                Matrix4f modelViewMatrix = transformation.buildModelViewMatrix(gameItem, viewMatrix);
-                sceneShaderProgram.setUniform("modelViewMatrix", modelViewMatrix);
+                if (used == drawItems.size()) {
+                    drawItems.add(new DrawItem());
+                }
+                DrawItem drawItem = drawItems.get(used++);
+                drawItem.mesh = mesh;
+                drawItem.gameItem = gameItem;
 
-                Matrix4f modelLightViewMatrix = transformation.buildModelLightViewMatrix(gameItem, lightViewMatrix);
-                sceneShaderProgram.setUniform("modelLightViewMatrix", modelLightViewMatrix);
-            });
+                renderQueue.add(RenderQueue.key(SCENE_SHADER, textureSet, materialId, vao, -viewZ / Z_FAR), drawItem);
+            }
         }
 
-        sceneShaderProgram.unbind();
-
+        renderQueue.sort();
+    }
 
+    /**
+     * @return state changes and draw calls of the last frame
+     */
+    public RenderStatistics getStatistics() {
+        return statistics;
     }
 
     /**
@@ -303,9 +755,6 @@ public class Renderer {
 
             skyBoyShaderProgram.setUniform("texture_sampler", 0);
 
-            //Update Projection Matrix
-            Matrix4f projectionMatrix = transformation.getProjectionMatrix();
-            skyBoyShaderProgram.setUniform("projectionMatrix", projectionMatrix);
             Skybox skybox = scene.getSkybox();
             Matrix4f viewMatrix = transformation.getViewMatrix();
             viewMatrix.m30(0);
@@ -345,6 +794,12 @@ public class Renderer {
      * cleans up the shaders
      */
     public void cleanup(){
+        instanceBuffer.cleanup();
+        frameBuffer.cleanup();
+        lightBuffer.cleanup();
+        lightList.cleanup();
+        lightClusters.cleanup();
+        lightIndices.cleanup();
         if(skyBoyShaderProgram != null){
             skyBoyShaderProgram.cleanup();
         }
@@ -362,4 +817,16 @@ public class Renderer {
     private void clear(){
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT);
     }
+
+    /**
+     * mesh and game item of one draw call
+     */
+    private static class DrawItem {
+
+        /** mesh to draw */
+        private Mesh mesh;
+
+        /** game item providing the transformation */
+        private GameItem gameItem;
+    }
 }
@@ -9,17 +9,32 @@ import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
 
-import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
-
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
+
+/**
+ * shader program with compiled uniforms
+ *
+ * every uniform name is resolved once to an int handle when it is created, the setters taking a
+ * handle do not look up names. structs and arrays of the shader are resolved to handle objects,
+ * so setting a light or a material does not build names. the last value uploaded to every handle
+ * is cached and uploads of the same value are skipped, the values stay valid because uniforms are
+ * state of the program. the setters taking names look up the handle and are kept for code that
+ * is not performance critical
+ */
 @SuppressWarnings("unused")
 public class ShaderProgram {
 
+    /** floats cached per uniform, enough for a 4x4 matrix */
+    private static final int CACHE_FLOATS = 16;
+
     /** id of the program */
     private final int programId;
 
@@ -30,9 +45,36 @@ public class ShaderProgram {
     @SuppressWarnings("unused")
     private int fragmentShaderId;
 
-    /** uniform pointer */
+    /** uniform handles by name */
     private final Map<String, Integer> uniforms;
 
+    /** handle objects of structs and arrays by name */
+    private final Map<String, Object> compiledUniforms;
+
+    /** locations of the uniforms by handle */
+    private int[] locations = new int[16];
+
+    /** last uploaded float values by handle, CACHE_FLOATS per handle */
+    private float[] floatCache = new float[16 * CACHE_FLOATS];
+
+    /** last uploaded int values by handle */
+    private int[] intCache = new int[16];
+
+    /** true if a value was uploaded to the handle */
+    private boolean[] cached = new boolean[16];
+
+    /** number of handles */
+    private int uniformCount;
+
+    /** values of the matrix being uploaded */
+    private final float[] matrixValues = new float[16];
+
+    /** number of uploads since the counters were reset */
+    private int uploads;
+
+    /** number of skipped uploads of cached values since the counters were reset */
+    private int skippedUploads;
+
     /**
      * creates new shader program
      *
@@ -40,6 +82,7 @@ public class ShaderProgram {
      */
     public ShaderProgram() throws Exception{
         uniforms = new HashMap<>();
+        compiledUniforms = new HashMap<>();
         programId = glCreateProgram();
         if(programId == 0){
             throw new Exception("Could not create Shader");
@@ -150,7 +193,198 @@ public class ShaderProgram {
         if(uniformLocation < 0){
             throw new Exception("Could not find uniform: " +uniformName);
         }
-        uniforms.put(uniformName,uniformLocation);
+        if(uniformCount == locations.length){
+            int capacity = uniformCount * 2;
+            locations = Arrays.copyOf(locations, capacity);
+            floatCache = Arrays.copyOf(floatCache, capacity * CACHE_FLOATS);
+            intCache = Arrays.copyOf(intCache, capacity);
+            cached = Arrays.copyOf(cached, capacity);
+        }
+        locations[uniformCount] = uniformLocation;
+        uniforms.put(uniformName,uniformCount++);
+    }
+
+    /**
+     * links a std140 uniform block of the program to the binding point of a uniform buffer
+     *
+     * @param blockName name of the block (has to be exactly same as in shader code)
+     * @param binding binding point of the uniform buffer
+     * @throws Exception if the block cant be found
+     */
+    public void bindUniformBlock(String blockName, int binding) throws Exception{
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if(blockIndex == GL_INVALID_INDEX){
+            throw new Exception("Could not find uniform block: " + blockName);
+        }
+        glUniformBlockBinding(programId, blockIndex, binding);
+    }
+
+    /**
+     * resolves the name of a created uniform to its handle
+     *
+     * @param uniformName name of the uniform
+     * @return handle of the uniform
+     * @throws IllegalArgumentException if the uniform was not created
+     */
+    public int getUniform(String uniformName) {
+        Integer handle = uniforms.get(uniformName);
+        if(handle == null){
+            throw new IllegalArgumentException("Uniform was not created: " + uniformName);
+        }
+        return handle;
+    }
+
+    /**
+     * @param uniformName name of a struct or array
+     * @param type type of the handle object
+     * @return handle object created for the name
+     * @throws IllegalArgumentException if no struct or array of the type was created with the name
+     */
+    private <T> T getCompiledUniform(String uniformName, Class<T> type) {
+        Object compiled = compiledUniforms.get(uniformName);
+        if(!type.isInstance(compiled)){
+            throw new IllegalArgumentException("Uniform was not created: " + uniformName);
+        }
+        return type.cast(compiled);
+    }
+
+    /**
+     * @return number of uploads since the counters were reset
+     */
+    public int getUploads() {
+        return uploads;
+    }
+
+    /**
+     * @return number of uploads skipped since the counters were reset, because the value was already set
+     */
+    public int getSkippedUploads() {
+        return skippedUploads;
+    }
+
+    /**
+     * sets the upload counters to 0
+     */
+    public void resetCounters() {
+        uploads = 0;
+        skippedUploads = 0;
+    }
+
+    /**
+     * compares values with the cache of a handle and stores them if they differ
+     *
+     * @param uniform handle
+     * @param x first value
+     * @param y second value
+     * @param z third value
+     * @param w fourth value
+     * @param count number of values used
+     * @return true if the values have to be uploaded
+     */
+    private boolean changed(int uniform, float x, float y, float z, float w, int count) {
+        int c = uniform * CACHE_FLOATS;
+        if(cached[uniform] && floatCache[c] == x && (count < 2 || floatCache[c + 1] == y)
+                && (count < 3 || floatCache[c + 2] == z) && (count < 4 || floatCache[c + 3] == w)){
+            skippedUploads++;
+            return false;
+        }
+        floatCache[c] = x;
+        floatCache[c + 1] = y;
+        floatCache[c + 2] = z;
+        floatCache[c + 3] = w;
+        cached[uniform] = true;
+        uploads++;
+        return true;
+    }
+
+    /**
+     * sets value of a Matrix4f uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, Matrix4f value){
+        value.get(matrixValues);
+        int c = uniform * CACHE_FLOATS;
+        if(cached[uniform]){
+            boolean equal = true;
+            for(int i = 0; i < 16 && equal; i++){
+                equal = floatCache[c + i] == matrixValues[i];
+            }
+            if(equal){
+                skippedUploads++;
+                return;
+            }
+        }
+        System.arraycopy(matrixValues, 0, floatCache, c, 16);
+        cached[uniform] = true;
+        uploads++;
+        glUniformMatrix4fv(locations[uniform],false,matrixValues);
+    }
+
+    /**
+     * sets value of a int uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, int value){
+        if(cached[uniform] && intCache[uniform] == value){
+            skippedUploads++;
+            return;
+        }
+        intCache[uniform] = value;
+        cached[uniform] = true;
+        uploads++;
+        glUniform1i(locations[uniform],value);
+    }
+
+    /**
+     * sets value of a float uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, float value){
+        if(changed(uniform, value, 0, 0, 0, 1)){
+            glUniform1f(locations[uniform],value);
+        }
+    }
+
+    /**
+     * sets value of a Vector3f uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, Vector3f value){
+        if(changed(uniform, value.x, value.y, value.z, 0, 3)){
+            glUniform3f(locations[uniform],value.x,value.y,value.z);
+        }
+    }
+
+    /**
+     * sets value of a Vector2f uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, Vector2f value){
+        if(changed(uniform, value.x, value.y, 0, 0, 2)){
+            glUniform2f(locations[uniform],value.x,value.y);
+        }
+    }
+
+    /**
+     * sets value of a Vector4f uniform
+     *
+     * @param uniform handle
+     * @param value value
+     */
+    public void setUniform(int uniform, Vector4f value){
+        if(changed(uniform, value.x, value.y, value.z, value.w, 4)){
+            glUniform4f(locations[uniform],value.x,value.y,value.z,value.w);
+        }
     }
 
     /**
@@ -160,11 +394,7 @@ public class ShaderProgram {
      * @param value value
      */
     public void setUniform(String uniformName, Matrix4f value){
-        try(MemoryStack stack = MemoryStack.stackPush()){
-            FloatBuffer fb = stack.mallocFloat(16);
-            value.get(fb);
-            glUniformMatrix4fv(uniforms.get(uniformName),false,fb);
-        }
+        setUniform(getUniform(uniformName),value);
     }
 
     /**
@@ -174,7 +404,7 @@ public class ShaderProgram {
      * @param value value
      */
     public void setUniform(String uniformName, int value){
-        glUniform1i(uniforms.get(uniformName),value);
+        setUniform(getUniform(uniformName),value);
     }
 
     /**
@@ -184,7 +414,7 @@ public class ShaderProgram {
      * @param value value
      */
     public void setUniform(String uniformName, float value){
-        glUniform1f(uniforms.get(uniformName),value);
+        setUniform(getUniform(uniformName),value);
     }
 
     /**
@@ -194,7 +424,7 @@ public class ShaderProgram {
      * @param value value
      */
     public void setUniform(String uniformName, Vector3f value){
-        glUniform3f(uniforms.get(uniformName),value.x,value.y,value.z);
+        setUniform(getUniform(uniformName),value);
     }
 
     /**
@@ -204,7 +434,7 @@ public class ShaderProgram {
      * @param value value
      */
     public void setUniform(String uniformName, Vector2f value){
-        glUniform2f(uniforms.get(uniformName),value.x,value.y);
+        setUniform(getUniform(uniformName),value);
     }
 
 
@@ -217,7 +447,7 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void setUniform(String uniformName, Vector4f value){
-        glUniform4f(uniforms.get(uniformName),value.x,value.y,value.z,value.w);
+        setUniform(getUniform(uniformName),value);
     }
 
     public void createEdgeUniform(String uniformName) throws Exception {
@@ -242,6 +472,7 @@ public class ShaderProgram {
         createUniforms(uniformName + ".att.constant");
         createUniforms(uniformName + ".att.linear");
         createUniforms(uniformName + ".att.exponent");
+        compiledUniforms.put(uniformName, new PointLightUniform(this, uniformName));
     }
 
     /**
@@ -258,6 +489,7 @@ public class ShaderProgram {
         createUniforms(uniformName + ".hasTexture");
         createUniforms(uniformName + ".reflectance");
         createUniforms(uniformName + ".hasNormalMap");
+        compiledUniforms.put(uniformName, new MaterialUniform(this, uniformName));
     }
 
     /**
@@ -270,6 +502,27 @@ public class ShaderProgram {
         createUniforms(uniformName + ".activeValue");
         createUniforms(uniformName + ".color");
         createUniforms(uniformName + ".density");
+        compiledUniforms.put(uniformName, new FogUniform(this, uniformName));
+    }
+
+    /**
+     * @param uniformName name of a fog uniform
+     * @return handles of the fog uniform
+     */
+    public FogUniform getFogUniform(String uniformName) {
+        return getCompiledUniform(uniformName, FogUniform.class);
+    }
+
+    /**
+     * sets values of a fog uniform
+     *
+     * @param uniform handles of the fog uniform
+     * @param fog value
+     */
+    public void setUniform(FogUniform uniform, Fog fog) {
+        setUniform(uniform.activeValue, fog.isActive() ? 1 : 0);
+        setUniform(uniform.color, fog.getColor());
+        setUniform(uniform.density, fog.getDensity());
     }
 
     /**
@@ -279,9 +532,31 @@ public class ShaderProgram {
      * @param fog value
      */
     public void setUniform(String uniformName, Fog fog) {
-        setUniform(uniformName + ".activeValue", fog.isActive() ? 1 : 0);
-        setUniform(uniformName + ".color", fog.getColor());
-        setUniform(uniformName + ".density",fog.getDensity());
+        setUniform(getFogUniform(uniformName), fog);
+    }
+
+    /**
+     * @param uniformName name of a point light uniform
+     * @return handles of the point light uniform
+     */
+    public PointLightUniform getPointLightUniform(String uniformName) {
+        return getCompiledUniform(uniformName, PointLightUniform.class);
+    }
+
+    /**
+     * sets value of a PointLight uniform
+     *
+     * @param uniform handles of the point light uniform
+     * @param pointLight value
+     */
+    public void setUniform(PointLightUniform uniform, PointLight pointLight){
+        setUniform(uniform.color,pointLight.getColor());
+        setUniform(uniform.position,pointLight.getPosition());
+        setUniform(uniform.intensity,pointLight.getIntensity());
+        PointLight.Attenuation att = pointLight.getAttenuation();
+        setUniform(uniform.constant, att.getConstant());
+        setUniform(uniform.linear, att.getLinear());
+        setUniform(uniform.exponent, att.getExponent());
     }
 
     /**
@@ -292,13 +567,30 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void setUniform(String uniformName, PointLight pointLight){
-        setUniform(uniformName + ".color",pointLight.getColor());
-        setUniform(uniformName + ".position",pointLight.getPosition());
-        setUniform(uniformName + ".intensity",pointLight.getIntensity());
-        PointLight.Attenuation att = pointLight.getAttenuation();
-        setUniform(uniformName + ".att.constant", att.getConstant());
-        setUniform(uniformName + ".att.linear", att.getLinear());
-        setUniform(uniformName + ".att.exponent", att.getExponent());
+        setUniform(getPointLightUniform(uniformName), pointLight);
+    }
+
+    /**
+     * @param uniformName name of a material uniform
+     * @return handles of the material uniform
+     */
+    public MaterialUniform getMaterialUniform(String uniformName) {
+        return getCompiledUniform(uniformName, MaterialUniform.class);
+    }
+
+    /**
+     * sets value of a Material uniform
+     *
+     * @param uniform handles of the material uniform
+     * @param material value
+     */
+    public void setUniform(MaterialUniform uniform, Material material){
+        setUniform(uniform.ambient, material.getAmbientColor());
+        setUniform(uniform.diffuse, material.getDiffuseColor());
+        setUniform(uniform.specular, material.getSpecularColor());
+        setUniform(uniform.hasTexture, material.isTexture()? 1: 0);
+        setUniform(uniform.reflectance, material.getReflectance());
+        setUniform(uniform.hasNormalMap,material.isNormalMap() ? 1 : 0);
     }
 
     /**
@@ -309,13 +601,7 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void setUniform(String uniformName, Material material){
-        setUniform(uniformName + ".ambient", material.getAmbientColor());
-        setUniform(uniformName + ".diffuse", material.getDiffuseColor());
-        setUniform(uniformName + ".specular", material.getSpecularColor());
-        setUniform(uniformName + ".hasTexture", material.isTexture()? 1: 0);
-        setUniform(uniformName + ".reflectance", material.getReflectance());
-        setUniform(uniformName + ".hasNormalMap",material.isNormalMap() ? 1 : 0);
-
+        setUniform(getMaterialUniform(uniformName), material);
     }
 
     /**
@@ -328,6 +614,27 @@ public class ShaderProgram {
         createUniforms(uniformName + ".color");
         createUniforms(uniformName + ".direction");
         createUniforms(uniformName + ".intensity");
+        compiledUniforms.put(uniformName, new DirectionalLightUniform(this, uniformName));
+    }
+
+    /**
+     * @param uniformName name of a directional light uniform
+     * @return handles of the directional light uniform
+     */
+    public DirectionalLightUniform getDirectionalLightUniform(String uniformName) {
+        return getCompiledUniform(uniformName, DirectionalLightUniform.class);
+    }
+
+    /**
+     * sets value of a directional light uniform
+     *
+     * @param uniform handles of the directional light uniform
+     * @param directionalLight value
+     */
+    public void setUniform(DirectionalLightUniform uniform, DirectionalLight directionalLight){
+        setUniform(uniform.color,directionalLight.getColor());
+        setUniform(uniform.direction,directionalLight.getDirection());
+        setUniform(uniform.intensity,directionalLight.getIntensity());
     }
 
     /**
@@ -337,9 +644,7 @@ public class ShaderProgram {
      * @param directionalLight value
      */
     public void setUniform(String uniformName, DirectionalLight directionalLight){
-        setUniform(uniformName + ".color",directionalLight.getColor());
-        setUniform(uniformName + ".direction",directionalLight.getDirection());
-        setUniform(uniformName + ".intensity",directionalLight.getIntensity());
+        setUniform(getDirectionalLightUniform(uniformName), directionalLight);
     }
 
     /**
@@ -353,6 +658,27 @@ public class ShaderProgram {
         createPointLightUniform(uniformName +".pointLight");
         createUniforms(uniformName + ".coneDirection");
         createUniforms(uniformName + ".cutoff");
+        compiledUniforms.put(uniformName, new SpotLightUniform(this, uniformName));
+    }
+
+    /**
+     * @param uniformName name of a spot light uniform
+     * @return handles of the spot light uniform
+     */
+    public SpotLightUniform getSpotLightUniform(String uniformName) {
+        return getCompiledUniform(uniformName, SpotLightUniform.class);
+    }
+
+    /**
+     * sets value of a spot light uniform
+     *
+     * @param uniform handles of the spot light uniform
+     * @param spotLight value
+     */
+    public void setUniform(SpotLightUniform uniform, SpotLight spotLight){
+        setUniform(uniform.pointLight,spotLight.getPointLight());
+        setUniform(uniform.coneDirection,spotLight.getConeDirection());
+        setUniform(uniform.cutoff,spotLight.getCutOff());
     }
 
     /**
@@ -363,9 +689,7 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void setUniform(String uniformName, SpotLight spotLight){
-        setUniform(uniformName + ".pointLight",spotLight.getPointLight());
-        setUniform(uniformName + ".coneDirection",spotLight.getConeDirection());
-        setUniform(uniformName + ".cutoff",spotLight.getCutOff());
+        setUniform(getSpotLightUniform(uniformName), spotLight);
     }
 
     /**
@@ -376,9 +700,12 @@ public class ShaderProgram {
      * @throws Exception if uniform cant be found
      */
     public void createPointLightListUniform(String uniformName, int size) throws Exception {
+        PointLightUniform[] list = new PointLightUniform[size];
         for(int i = 0; i < size;i++){
             createPointLightUniform(uniformName + "["+i+"]");
+            list[i] = getPointLightUniform(uniformName + "["+i+"]");
         }
+        compiledUniforms.put(uniformName, list);
     }
 
     /**
@@ -389,9 +716,10 @@ public class ShaderProgram {
      */
     @SuppressWarnings("unused")
     public void setUniform(String uniformName, PointLight[] pointLights){
+        PointLightUniform[] list = getCompiledUniform(uniformName, PointLightUniform[].class);
         int numLights = pointLights != null ? pointLights.length:0;
         for(int i = 0; i < numLights;i++){
-            setUniform(uniformName,pointLights[i],i);
+            setUniform(list[i],pointLights[i]);
         }
     }
 
@@ -403,7 +731,7 @@ public class ShaderProgram {
      * @param pos position in array
      */
     public void setUniform(String uniformName, PointLight pointLight, int pos) {
-        setUniform(uniformName + "["+pos+"]",pointLight);
+        setUniform(getCompiledUniform(uniformName, PointLightUniform[].class)[pos],pointLight);
     }
 
     /**
@@ -414,9 +742,12 @@ public class ShaderProgram {
      * @throws Exception if uniform cant be found
      */
     public void createSpotLightListUniform(String uniformName, int size) throws Exception {
+        SpotLightUniform[] list = new SpotLightUniform[size];
         for(int i = 0; i < size;i++){
             createSpotLightUniform(uniformName + "["+i+"]");
+            list[i] = getSpotLightUniform(uniformName + "["+i+"]");
         }
+        compiledUniforms.put(uniformName, list);
     }
 
     /**
@@ -427,9 +758,10 @@ public class ShaderProgram {
      */
     @SuppressWarnings("unused")
     public void setUniform(String uniformName, SpotLight[] spotLights){
+        SpotLightUniform[] list = getCompiledUniform(uniformName, SpotLightUniform[].class);
         int numLights = spotLights != null ? spotLights.length:0;
         for(int i = 0; i < numLights;i++){
-            setUniform(uniformName,spotLights[i],i);
+            setUniform(list[i],spotLights[i]);
         }
     }
 
@@ -441,7 +773,15 @@ public class ShaderProgram {
      * @param pos position in array
      */
     public void setUniform(String uniformName, SpotLight spotLight, int pos) {
-        setUniform(uniformName + "["+pos+"]",spotLight);
+        setUniform(getCompiledUniform(uniformName, SpotLightUniform[].class)[pos],spotLight);
+    }
+
+    /**
+     * @param uniformName name of an array created with createVector4fArrayUniform or createMatrix4fArrayUniform
+     * @return handles of the elements
+     */
+    public int[] getArrayUniform(String uniformName) {
+        return getCompiledUniform(uniformName, int[].class);
     }
 
     /**
@@ -451,9 +791,10 @@ public class ShaderProgram {
      * @param colors colors ( max 4 )
      */
     public void setUniform(String uniformName, Vector4f[] colors) {
+        int[] handles = getArrayUniform(uniformName);
         int numColors = colors != null ? colors.length : 0;
         for(int i = 0; i < numColors;i++) {
-            setUniform(uniformName + "[" + i + "]",colors[i]);
+            setUniform(handles[i],colors[i]);
         }
     }
 
@@ -466,9 +807,7 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void createVector4fArrayUniform(String uniformName, int size) throws Exception {
-        for(int i = 0; i < size;i++){
-            createUniforms(uniformName + "["+i+"]");
-        }
+        createArrayUniform(uniformName, size);
     }
 
     /**
@@ -480,11 +819,37 @@ public class ShaderProgram {
      */
     @SuppressWarnings("WeakerAccess")
     public void createMatrix4fArrayUniform(String uniformName, int size) throws Exception {
+        createArrayUniform(uniformName, size);
+    }
+
+    /**
+     * creates the uniforms of the elements of an array
+     *
+     * @param uniformName name of the array
+     * @param size size of the array
+     * @throws Exception if array cant be found
+     */
+    private void createArrayUniform(String uniformName, int size) throws Exception {
+        int[] handles = new int[size];
         for(int i = 0; i < size;i++){
             createUniforms(uniformName + "["+i+"]");
+            handles[i] = getUniform(uniformName + "["+i+"]");
         }
+        compiledUniforms.put(uniformName, handles);
     }
 
+    /**
+     * sets array of Matrix4f uniforms
+     *
+     * @param uniform handles of the elements
+     * @param matrices value
+     */
+    public void setUniform(int[] uniform, Matrix4f[] matrices){
+        int numMatrices = matrices != null ? matrices.length:0;
+        for(int i = 0; i < numMatrices;i++){
+            setUniform(uniform[i],matrices[i]);
+        }
+    }
 
     /**
      * sets array of Matrix4f uniforms
@@ -494,10 +859,7 @@ public class ShaderProgram {
      */
     @SuppressWarnings("unused")
     public void setUniform(String uniformName, Matrix4f[] matrices){
-        int numLights = matrices != null ? matrices.length:0;
-        for(int i = 0; i < numLights;i++){
-            setUniform(uniformName,matrices[i],i);
-        }
+        setUniform(getArrayUniform(uniformName), matrices);
     }
 
     /**
@@ -508,9 +870,93 @@ public class ShaderProgram {
      * @param pos position in array
      */
     public void setUniform(String uniformName, Matrix4f matrix, int pos) {
-        setUniform(uniformName + "["+pos+"]",matrix);
+        setUniform(getArrayUniform(uniformName)[pos],matrix);
     }
 
+    /**
+     * handles of a material uniform
+     */
+    public static class MaterialUniform {
+        private final int ambient;
+        private final int diffuse;
+        private final int specular;
+        private final int hasTexture;
+        private final int reflectance;
+        private final int hasNormalMap;
 
+        private MaterialUniform(ShaderProgram program, String uniformName) {
+            ambient = program.getUniform(uniformName + ".ambient");
+            diffuse = program.getUniform(uniformName + ".diffuse");
+            specular = program.getUniform(uniformName + ".specular");
+            hasTexture = program.getUniform(uniformName + ".hasTexture");
+            reflectance = program.getUniform(uniformName + ".reflectance");
+            hasNormalMap = program.getUniform(uniformName + ".hasNormalMap");
+        }
+    }
 
+    /**
+     * handles of a point light uniform
+     */
+    public static class PointLightUniform {
+        private final int color;
+        private final int position;
+        private final int intensity;
+        private final int constant;
+        private final int linear;
+        private final int exponent;
+
+        private PointLightUniform(ShaderProgram program, String uniformName) {
+            color = program.getUniform(uniformName + ".color");
+            position = program.getUniform(uniformName + ".position");
+            intensity = program.getUniform(uniformName + ".intensity");
+            constant = program.getUniform(uniformName + ".att.constant");
+            linear = program.getUniform(uniformName + ".att.linear");
+            exponent = program.getUniform(uniformName + ".att.exponent");
+        }
+    }
+
+    /**
+     * handles of a spot light uniform
+     */
+    public static class SpotLightUniform {
+        private final PointLightUniform pointLight;
+        private final int coneDirection;
+        private final int cutoff;
+
+        private SpotLightUniform(ShaderProgram program, String uniformName) {
+            pointLight = program.getPointLightUniform(uniformName + ".pointLight");
+            coneDirection = program.getUniform(uniformName + ".coneDirection");
+            cutoff = program.getUniform(uniformName + ".cutoff");
+        }
+    }
+
+    /**
+     * handles of a directional light uniform
+     */
+    public static class DirectionalLightUniform {
+        private final int color;
+        private final int direction;
+        private final int intensity;
+
+        private DirectionalLightUniform(ShaderProgram program, String uniformName) {
+            color = program.getUniform(uniformName + ".color");
+            direction = program.getUniform(uniformName + ".direction");
+            intensity = program.getUniform(uniformName + ".intensity");
+        }
+    }
+
+    /**
+     * handles of a fog uniform
+     */
+    public static class FogUniform {
+        private final int activeValue;
+        private final int color;
+        private final int density;
+
+        private FogUniform(ShaderProgram program, String uniformName) {
+            activeValue = program.getUniform(uniformName + ".activeValue");
+            color = program.getUniform(uniformName + ".color");
+            density = program.getUniform(uniformName + ".density");
+        }
+    }
 }
@@ -0,0 +1,313 @@
+package engine.render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * fits the cascades of a cascaded shadow map to the view frustum of the camera and culls the
+ * shadow casters of every cascade
+ *
+ * the distance covered by shadows is split between the near plane of the camera and the shadow
+ * distance with a blend of logarithmic and uniform splits. every cascade covers the bounding sphere
+ * of its slice of the view frustum, so its size does not change when the camera turns, and the
+ * center is snapped to the texels of the shadow map, so the shadows do not flicker when the camera
+ * moves. the light view matrix only rotates, which keeps the snapping grid fixed in the world.
+ * casters are culled against the box of a cascade extended towards the light and the near plane
+ * of the cascade is pulled up to the nearest visible caster. fitting does not touch open gl
+ */
+@SuppressWarnings("unused")
+public class ShadowCascades {
+
+    /** maximum number of cascades, has to match the shaders */
+    public static final int MAX_CASCADES = 4;
+
+    /** number of cascades */
+    private final int cascadeCount;
+
+    /** width and height of the shadow map of one cascade in texels */
+    private final int mapSize;
+
+    /** blend between logarithmic ( 1 ) and uniform ( 0 ) split distances */
+    private float splitLambda = 0.75f;
+
+    /** distance from the camera up to which shadows are drawn */
+    private float shadowDistance = 100;
+
+    /** distance of the borders of the cascades from the camera, cascadeCount + 1 entries */
+    private final float[] splitDistances;
+
+    /** rotation from world space into light space, the light looks along -z */
+    private final Matrix4f lightViewMatrix = new Matrix4f();
+
+    /** ortho projection of every cascade */
+    private final Matrix4f[] projectionMatrices;
+
+    /** ortho projection multiplied with the light view matrix of every cascade */
+    private final Matrix4f[] lightViewProjectionMatrices;
+
+    /** light space box of the receivers of every cascade, min x, y, z and max x, y, z */
+    private final float[] receiverBounds;
+
+    /** largest light space z of the visible casters of every cascade */
+    private final float[] casterDepths;
+
+    /** inverse of the view matrix of the camera */
+    private final Matrix4f inverseViewMatrix = new Matrix4f();
+
+    /** corner or center being transformed */
+    private final Vector3f point = new Vector3f();
+
+    /** light space box of a caster */
+    private final float[] casterBox = new float[6];
+
+    /**
+     * @param cascadeCount number of cascades, at most MAX_CASCADES
+     * @param mapSize width and height of the shadow map of one cascade in texels
+     */
+    public ShadowCascades(int cascadeCount, int mapSize) {
+        if (cascadeCount < 1 || cascadeCount > MAX_CASCADES) {
+            throw new IllegalArgumentException("Cascade count has to be between 1 and " + MAX_CASCADES + ": " + cascadeCount);
+        }
+        this.cascadeCount = cascadeCount;
+        this.mapSize = mapSize;
+        splitDistances = new float[cascadeCount + 1];
+        projectionMatrices = new Matrix4f[cascadeCount];
+        lightViewProjectionMatrices = new Matrix4f[cascadeCount];
+        for (int c = 0; c < cascadeCount; c++) {
+            projectionMatrices[c] = new Matrix4f();
+            lightViewProjectionMatrices[c] = new Matrix4f();
+        }
+        receiverBounds = new float[cascadeCount * 6];
+        casterDepths = new float[cascadeCount];
+    }
+
+    /**
+     * computes the split distances, the light view matrix and the receiver boxes of the cascades
+     * the projections are set to the receiver boxes until the casters are culled
+     *
+     * @param viewMatrix view matrix of the camera
+     * @param fov vertical field of view of the camera in radians
+     * @param aspect width divided by height
+     * @param near near plane of the camera
+     * @param far far plane of the camera
+     * @param lightDirection direction to the light
+     */
+    public void update(Matrix4f viewMatrix, float fov, float aspect, float near, float far, Vector3f lightDirection) {
+        float end = Math.min(far, shadowDistance);
+        for (int c = 0; c <= cascadeCount; c++) {
+            float t = (float) c / cascadeCount;
+            float logarithmic = near * (float) Math.pow(end / near, t);
+            float uniform = near + (end - near) * t;
+            splitDistances[c] = splitLambda * logarithmic + (1 - splitLambda) * uniform;
+        }
+        splitDistances[0] = near;
+        splitDistances[cascadeCount] = end;
+
+        // the light looks along the negative light direction, up must not be parallel to it
+        float upY = Math.abs(lightDirection.y) > 0.99f * lightDirection.length() ? 0 : 1;
+        lightViewMatrix.setLookAt(0, 0, 0, -lightDirection.x, -lightDirection.y, -lightDirection.z, 0, upY, 1 - upY);
+        viewMatrix.invertAffine(inverseViewMatrix);
+
+        float tanY = (float) Math.tan(fov / 2);
+        float tanX = tanY * aspect;
+        for (int c = 0; c < cascadeCount; c++) {
+            float sliceNear = splitDistances[c];
+            float sliceFar = splitDistances[c + 1];
+
+            // the bounding sphere of the slice lies on the view axis, its radius only depends on
+            // the projection, so the cascade keeps its size when the camera turns
+            float nearSquared = (tanX * tanX + tanY * tanY) * sliceNear * sliceNear;
+            float farSquared = (tanX * tanX + tanY * tanY) * sliceFar * sliceFar;
+            float centerDepth = Math.min((sliceNear + sliceFar + (farSquared - nearSquared) / (sliceFar - sliceNear)) / 2, sliceFar);
+            float radius = (float) Math.sqrt(Math.max(farSquared + (sliceFar - centerDepth) * (sliceFar - centerDepth),
+                    nearSquared + (centerDepth - sliceNear) * (centerDepth - sliceNear)));
+            // rounding the radius keeps the texel size the same while the projection stays the same
+            radius = (float) Math.ceil(radius * 16) / 16;
+
+            inverseViewMatrix.transformPosition(point.set(0, 0, -centerDepth));
+            lightViewMatrix.transformPosition(point);
+
+            // snapping the center to whole texels moves the cascade in steps of texels
+            float texelSize = 2 * radius / mapSize;
+            float x = (float) Math.floor(point.x / texelSize) * texelSize;
+            float y = (float) Math.floor(point.y / texelSize) * texelSize;
+
+            int b = c * 6;
+            receiverBounds[b] = x - radius;
+            receiverBounds[b + 1] = y - radius;
+            receiverBounds[b + 2] = point.z - radius;
+            receiverBounds[b + 3] = x + radius;
+            receiverBounds[b + 4] = y + radius;
+            receiverBounds[b + 5] = point.z + radius;
+            casterDepths[c] = point.z + radius;
+            updateProjection(c);
+        }
+    }
+
+    /**
+     * culls the casters of a cascade: a caster is visible if its box overlaps the box of the
+     * cascade seen from the light and is not completely behind the receivers. the near plane of
+     * the cascade is moved to the nearest visible caster, unbounded items are always visible
+     *
+     * @param cascade cascade
+     * @param culler world space bounds of the items
+     * @param visible receives for every item if it casts a shadow into the cascade
+     * @return number of visible casters
+     */
+    public int cullCasters(int cascade, FrustumCuller culler, boolean[] visible) {
+        int b = cascade * 6;
+        float depth = receiverBounds[b + 5];
+        float[] boxes = culler.getBoxes();
+        int count = 0;
+        for (int i = 0; i < culler.size(); i++) {
+            if (!culler.isBounded(i)) {
+                visible[i] = true;
+                count++;
+                continue;
+            }
+            transformBox(boxes, i * 6, casterBox);
+            boolean inside = casterBox[0] <= receiverBounds[b + 3] && casterBox[3] >= receiverBounds[b]
+                    && casterBox[1] <= receiverBounds[b + 4] && casterBox[4] >= receiverBounds[b + 1]
+                    && casterBox[5] >= receiverBounds[b + 2];
+            visible[i] = inside;
+            if (inside) {
+                depth = Math.max(depth, casterBox[5]);
+                count++;
+            }
+        }
+        casterDepths[cascade] = depth;
+        updateProjection(cascade);
+        return count;
+    }
+
+    /**
+     * transforms a world space box into the light space box around it
+     *
+     * @param boxes world space boxes
+     * @param offset index of min x of the box
+     * @param dest receives the light space box
+     */
+    private void transformBox(float[] boxes, int offset, float[] dest) {
+        Matrix4f m = lightViewMatrix;
+        dest[0] = dest[3] = m.m30();
+        dest[1] = dest[4] = m.m31();
+        dest[2] = dest[5] = m.m32();
+        addAxis(dest, m.m00(), m.m01(), m.m02(), boxes[offset], boxes[offset + 3]);
+        addAxis(dest, m.m10(), m.m11(), m.m12(), boxes[offset + 1], boxes[offset + 4]);
+        addAxis(dest, m.m20(), m.m21(), m.m22(), boxes[offset + 2], boxes[offset + 5]);
+    }
+
+    /**
+     * @param dest box to extend
+     * @param x x component of the transformed axis
+     * @param y y component of the transformed axis
+     * @param z z component of the transformed axis
+     * @param min smallest world space coordinate on the axis
+     * @param max largest world space coordinate on the axis
+     */
+    private static void addAxis(float[] dest, float x, float y, float z, float min, float max) {
+        dest[0] += Math.min(x * min, x * max);
+        dest[3] += Math.max(x * min, x * max);
+        dest[1] += Math.min(y * min, y * max);
+        dest[4] += Math.max(y * min, y * max);
+        dest[2] += Math.min(z * min, z * max);
+        dest[5] += Math.max(z * min, z * max);
+    }
+
+    /**
+     * builds the ortho projection of a cascade from its receiver box and the depth of its casters
+     *
+     * @param cascade cascade
+     */
+    private void updateProjection(int cascade) {
+        int b = cascade * 6;
+        projectionMatrices[cascade].setOrtho(receiverBounds[b], receiverBounds[b + 3], receiverBounds[b + 1], receiverBounds[b + 4],
+                -casterDepths[cascade], -receiverBounds[b + 2]);
+        projectionMatrices[cascade].mul(lightViewMatrix, lightViewProjectionMatrices[cascade]);
+    }
+
+    /**
+     * @return number of cascades
+     */
+    public int getCascadeCount() {
+        return cascadeCount;
+    }
+
+    /**
+     * @return width and height of the shadow map of one cascade in texels
+     */
+    public int getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * @param index index of the border, 0 is the near plane of the camera
+     * @return distance of the border from the camera
+     */
+    public float getSplitDistance(int index) {
+        return splitDistances[index];
+    }
+
+    /**
+     * @return rotation from world space into light space
+     */
+    public Matrix4f getLightViewMatrix() {
+        return lightViewMatrix;
+    }
+
+    /**
+     * @param cascade cascade
+     * @return ortho projection of the cascade
+     */
+    public Matrix4f getProjectionMatrix(int cascade) {
+        return projectionMatrices[cascade];
+    }
+
+    /**
+     * @param cascade cascade
+     * @return ortho projection multiplied with the light view matrix
+     */
+    public Matrix4f getLightViewProjectionMatrix(int cascade) {
+        return lightViewProjectionMatrices[cascade];
+    }
+
+    /**
+     * @param cascade cascade
+     * @return size of a texel of the cascade in world units
+     */
+    public float getTexelSize(int cascade) {
+        return (receiverBounds[cascade * 6 + 3] - receiverBounds[cascade * 6]) / mapSize;
+    }
+
+    /**
+     * @param cascade cascade
+     * @param dest receives the light space box of the receivers, min x, y, z and max x, y, z
+     * @return dest
+     */
+    public float[] getReceiverBounds(int cascade, float[] dest) {
+        System.arraycopy(receiverBounds, cascade * 6, dest, 0, 6);
+        return dest;
+    }
+
+    public float getSplitLambda() {
+        return splitLambda;
+    }
+
+    /**
+     * @param splitLambda blend between logarithmic ( 1 ) and uniform ( 0 ) split distances
+     */
+    public void setSplitLambda(float splitLambda) {
+        this.splitLambda = splitLambda;
+    }
+
+    public float getShadowDistance() {
+        return shadowDistance;
+    }
+
+    /**
+     * @param shadowDistance distance from the camera up to which shadows are drawn, limited by the far plane
+     */
+    public void setShadowDistance(float shadowDistance) {
+        this.shadowDistance = shadowDistance;
+    }
+}
@@ -0,0 +1,256 @@
+package engine.render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * packs values into an off heap buffer following the std140 layout rules of uniform blocks
+ *
+ * every put aligns the position to the base alignment of the type before writing: 4 bytes for
+ * scalars, 8 for a vec2, 16 for vec3, vec4 and matrices. a vec3 takes 12 bytes, so a following
+ * scalar fills its fourth component. structs and the elements of arrays start and end on 16 bytes,
+ * beginStruct and endStruct add that padding. padding is written as zeros. the buffer is reused
+ * by clearing it and only grows if more is packed than ever before. packing does not touch open gl
+ */
+@SuppressWarnings("unused")
+public class Std140Buffer {
+
+    /** base alignment of vec3, vec4, matrices, structs and array elements */
+    public static final int VEC4_ALIGNMENT = 16;
+
+    /** packed bytes */
+    private ByteBuffer data;
+
+    /** number of packed bytes */
+    private int position;
+
+    /**
+     * @param capacity number of bytes that can be packed before the buffer grows
+     */
+    public Std140Buffer(int capacity) {
+        data = MemoryUtil.memAlloc(Math.max(capacity, VEC4_ALIGNMENT));
+    }
+
+    /**
+     * removes all packed values, the storage is kept
+     */
+    public void clear() {
+        position = 0;
+        data.clear();
+    }
+
+    /**
+     * @return number of packed bytes, which is the offset of the next value before its alignment
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * pads with zeros until the position is a multiple of the alignment
+     *
+     * @param alignment alignment in bytes
+     * @return the aligned position
+     */
+    public int align(int alignment) {
+        int aligned = (position + alignment - 1) / alignment * alignment;
+        ensure(aligned);
+        while (position < aligned) {
+            data.put(position++, (byte) 0);
+        }
+        return position;
+    }
+
+    /**
+     * packs zeros, used for members that are not set
+     *
+     * @param bytes number of bytes
+     */
+    public void putZeros(int bytes) {
+        ensure(position + bytes);
+        for (int i = 0; i < bytes; i++) {
+            data.put(position++, (byte) 0);
+        }
+    }
+
+    /**
+     * packs an int, a bool of the shader is packed as an int too
+     *
+     * @param value value
+     */
+    public void putInt(int value) {
+        int offset = reserve(Integer.BYTES, Integer.BYTES);
+        data.putInt(offset, value);
+    }
+
+    /**
+     * @param value value
+     */
+    public void putFloat(float value) {
+        int offset = reserve(Float.BYTES, Float.BYTES);
+        data.putFloat(offset, value);
+    }
+
+    /**
+     * @param x first component
+     * @param y second component
+     */
+    public void putVec2(float x, float y) {
+        int offset = reserve(2 * Float.BYTES, 2 * Float.BYTES);
+        data.putFloat(offset, x);
+        data.putFloat(offset + 4, y);
+    }
+
+    /**
+     * packs a vec3, which is aligned like a vec4 but takes only 12 bytes
+     *
+     * @param x first component
+     * @param y second component
+     * @param z third component
+     */
+    public void putVec3(float x, float y, float z) {
+        int offset = reserve(VEC4_ALIGNMENT, 3 * Float.BYTES);
+        data.putFloat(offset, x);
+        data.putFloat(offset + 4, y);
+        data.putFloat(offset + 8, z);
+    }
+
+    /**
+     * @param value value
+     */
+    public void putVec3(Vector3f value) {
+        putVec3(value.x, value.y, value.z);
+    }
+
+    /**
+     * @param x first component
+     * @param y second component
+     * @param z third component
+     * @param w fourth component
+     */
+    public void putVec4(float x, float y, float z, float w) {
+        int offset = reserve(VEC4_ALIGNMENT, 4 * Float.BYTES);
+        data.putFloat(offset, x);
+        data.putFloat(offset + 4, y);
+        data.putFloat(offset + 8, z);
+        data.putFloat(offset + 12, w);
+    }
+
+    /**
+     * @param value value
+     */
+    public void putVec4(Vector4f value) {
+        putVec4(value.x, value.y, value.z, value.w);
+    }
+
+    /**
+     * @param x first component
+     * @param y second component
+     * @param z third component
+     * @param w fourth component
+     */
+    public void putIVec4(int x, int y, int z, int w) {
+        int offset = reserve(VEC4_ALIGNMENT, 4 * Integer.BYTES);
+        data.putInt(offset, x);
+        data.putInt(offset + 4, y);
+        data.putInt(offset + 8, z);
+        data.putInt(offset + 12, w);
+    }
+
+    /**
+     * packs a mat4 as four vec4 columns
+     *
+     * @param value value
+     */
+    public void putMat4(Matrix4f value) {
+        int offset = reserve(VEC4_ALIGNMENT, 16 * Float.BYTES);
+        value.get(offset, data);
+    }
+
+    /**
+     * packs an array of floats, every element takes the 16 bytes of a vec4
+     * elements missing in the values are packed as zeros
+     *
+     * @param values values, may be shorter than the array
+     * @param length number of elements of the array in the shader
+     */
+    public void putFloatArray(float[] values, int length) {
+        for (int i = 0; i < length; i++) {
+            beginStruct();
+            putFloat(values != null && i < values.length ? values[i] : 0);
+            endStruct();
+        }
+    }
+
+    /**
+     * aligns the position to the start of a struct or array element
+     */
+    public void beginStruct() {
+        align(VEC4_ALIGNMENT);
+    }
+
+    /**
+     * pads the end of a struct or array element, so the next member starts on 16 bytes
+     */
+    public void endStruct() {
+        align(VEC4_ALIGNMENT);
+    }
+
+    /**
+     * sets position and limit of the buffer to the packed bytes, the buffer is only valid until
+     * the next value is packed
+     *
+     * @return the packed bytes
+     */
+    public ByteBuffer getData() {
+        data.limit(position).position(0);
+        return data;
+    }
+
+    /**
+     * @return number of bytes that fit without growing
+     */
+    public int getCapacity() {
+        return data.capacity();
+    }
+
+    /**
+     * frees the packed bytes
+     */
+    public void cleanup() {
+        if (data != null) {
+            MemoryUtil.memFree(data);
+            data = null;
+        }
+    }
+
+    /**
+     * aligns the position and moves it behind a value
+     *
+     * @param alignment base alignment of the value
+     * @param size size of the value in bytes
+     * @return offset of the value
+     */
+    private int reserve(int alignment, int size) {
+        int offset = align(alignment);
+        ensure(offset + size);
+        position = offset + size;
+        return offset;
+    }
+
+    /**
+     * grows the buffer if it is smaller than the size
+     *
+     * @param size number of bytes needed
+     */
+    private void ensure(int size) {
+        if (size > data.capacity()) {
+            data = MemoryUtil.memRealloc(data, Math.max(size, data.capacity() * 2));
+        }
+        data.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package engine.render;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+
+/**
+ * buffer texture holding data of variable length for the shaders, read with texelFetch from a
+ * samplerBuffer or usamplerBuffer
+ *
+ * the values are copied into an off heap staging buffer that is reused every frame and only grows
+ * if more values are uploaded than ever before. the buffer is orphaned before every upload, so the
+ * driver does not wait for draws still reading the values of the previous frame
+ */
+@SuppressWarnings("unused")
+public class TextureBuffer {
+
+    /** internal format of the texels, for example GL_RGBA32F */
+    private final int internalFormat;
+
+    /** values of the next upload */
+    private ByteBuffer staging;
+
+    /** id of the buffer, 0 until the first upload */
+    private int bufferId;
+
+    /** id of the buffer texture, 0 until the first upload */
+    private int textureId;
+
+    /**
+     * @param internalFormat internal format of the texels, 32 bit components are expected
+     * @param capacity number of values that can be uploaded before the staging buffer grows
+     */
+    public TextureBuffer(int internalFormat, int capacity) {
+        this.internalFormat = internalFormat;
+        staging = MemoryUtil.memAlloc(Math.max(capacity, 4) * Float.BYTES);
+    }
+
+    /**
+     * uploads floats, has to be called on the open gl thread
+     *
+     * @param values values
+     * @param count number of values uploaded
+     */
+    public void upload(float[] values, int count) {
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            staging.putFloat(i * Float.BYTES, values[i]);
+        }
+        upload(count);
+    }
+
+    /**
+     * uploads ints, has to be called on the open gl thread
+     *
+     * @param values values
+     * @param count number of values uploaded
+     */
+    public void upload(int[] values, int count) {
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            staging.putInt(i * Integer.BYTES, values[i]);
+        }
+        upload(count);
+    }
+
+    /**
+     * copies the staged values into the buffer
+     *
+     * @param count number of staged values
+     */
+    private void upload(int count) {
+        if (bufferId == 0) {
+            bufferId = glGenBuffers();
+            textureId = glGenTextures();
+        }
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        // the buffer keeps at least one texel, an empty buffer texture is not allowed
+        glBufferData(GL_TEXTURE_BUFFER, (long) Math.max(count, 4) * Float.BYTES, GL_STREAM_DRAW);
+        staging.limit(count * Float.BYTES).position(0);
+        glBufferSubData(GL_TEXTURE_BUFFER, 0, staging);
+        staging.clear();
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+
+        glBindTexture(GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, internalFormat, bufferId);
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+    }
+
+    /**
+     * binds the buffer texture, upload has to be called first
+     *
+     * @param unit texture unit, for example GL_TEXTURE3
+     */
+    public void bind(int unit) {
+        glActiveTexture(unit);
+        glBindTexture(GL_TEXTURE_BUFFER, textureId);
+    }
+
+    /**
+     * grows the staging buffer
+     *
+     * @param count number of values
+     */
+    private void ensure(int count) {
+        if (count * Float.BYTES > staging.capacity()) {
+            staging = MemoryUtil.memRealloc(staging, Math.max(count * Float.BYTES, staging.capacity() * 2));
+        }
+        staging.clear();
+    }
+
+    /**
+     * deletes the buffer and the texture and frees the staging buffer
+     */
+    public void cleanup() {
+        if (bufferId != 0) {
+            glDeleteBuffers(bufferId);
+            glDeleteTextures(textureId);
+            bufferId = 0;
+            textureId = 0;
+        }
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+    }
+}
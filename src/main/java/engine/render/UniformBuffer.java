@@ -0,0 +1,84 @@
+package engine.render;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+
+/**
+ * uniform buffer object backing a std140 uniform block that is shared by several shader programs
+ *
+ * the values are packed on the cpu into a std140 buffer that is kept for the lifetime of the
+ * uniform buffer, and copied to the ubo with one upload per frame. the ubo is attached to a
+ * binding point, programs link their block to the same binding point with
+ * ShaderProgram.bindUniformBlock
+ */
+@SuppressWarnings("unused")
+public class UniformBuffer {
+
+    /** binding point of the ubo */
+    private final int binding;
+
+    /** values packed for the next upload */
+    private final Std140Buffer data;
+
+    /** id of the ubo, 0 until the first upload */
+    private int uboId;
+
+    /** size of the storage of the ubo in bytes */
+    private int size;
+
+    /**
+     * @param binding binding point of the ubo
+     * @param capacity size of the block in bytes, the buffer grows if more is packed
+     */
+    public UniformBuffer(int binding, int capacity) {
+        this.binding = binding;
+        data = new Std140Buffer(capacity);
+    }
+
+    /**
+     * clears the packed values of the last frame
+     *
+     * @return the buffer to pack the values of the block into
+     */
+    public Std140Buffer begin() {
+        data.clear();
+        return data;
+    }
+
+    /**
+     * copies the packed values into the ubo and attaches it to its binding point, has to be
+     * called on the open gl thread. the storage is only created again if the block grew
+     */
+    public void upload() {
+        if (uboId == 0) {
+            uboId = glGenBuffers();
+        }
+        glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+        if (data.position() > size) {
+            size = data.getCapacity();
+            glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+            glBindBufferBase(GL_UNIFORM_BUFFER, binding, uboId);
+        }
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, data.getData());
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    /**
+     * @return binding point of the ubo
+     */
+    public int getBinding() {
+        return binding;
+    }
+
+    /**
+     * deletes the ubo and frees the packed values
+     */
+    public void cleanup() {
+        if (uboId != 0) {
+            glDeleteBuffers(uboId);
+            uboId = 0;
+        }
+        data.cleanup();
+    }
+}
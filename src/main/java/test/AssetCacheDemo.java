@@ -0,0 +1,76 @@
+package test;
+
+import engine.general.assets.AssetCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * runs the asset cache without a graphics context on fake assets: three levels are loaded one after
+ * another, neighbouring levels share half of their assets. prints the counters after every level
+ * transition to show how the gpu budget decides how much of the previous level can be reused
+ *
+ * usage: AssetCacheDemo [assets per level] [asset size in MB] [gpu budget in MB]
+ */
+public class AssetCacheDemo {
+
+    /** fake asset only carrying its size */
+    private static class FakeAsset {
+
+        /** estimated video memory */
+        private final long bytes;
+
+        /** true after the cache deleted it */
+        private boolean disposed;
+
+        private FakeAsset(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int assetsPerLevel = args.length >= 1 ? Integer.parseInt(args[0]) : 20;
+        long assetSize = (args.length >= 2 ? Long.parseLong(args[1]) : 8) << 20;
+        long budget = (args.length >= 3 ? Long.parseLong(args[2]) : 256) << 20;
+
+        List<FakeAsset> created = new ArrayList<>();
+        AssetCache.AssetType<FakeAsset> type = new AssetCache.AssetType<>("fake", FakeAsset.class,
+                asset -> 0, asset -> asset.bytes, asset -> asset.disposed = true);
+
+        AssetCache cache = new AssetCache();
+        cache.setGpuBudget(budget);
+
+        List<AssetCache.Handle<FakeAsset>> level = new ArrayList<>();
+        for (int l = 0; l < 3; l++) {
+            for (AssetCache.Handle<FakeAsset> handle : level) {
+                handle.release();
+            }
+            level.clear();
+            cache.resetCounters();
+
+            // neighbouring levels share half of their assets
+            int first = l * assetsPerLevel / 2;
+            for (int i = first; i < first + assetsPerLevel; i++) {
+                level.add(cache.acquire(type, "asset" + i, () -> {
+                    FakeAsset asset = new FakeAsset(assetSize);
+                    created.add(asset);
+                    return asset;
+                }));
+            }
+
+            System.out.println(String.format(Locale.ROOT, "level %d: %d hits, %d misses, %d evictions, %d entries, %.0f MB",
+                    l, cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getEntryCount(), cache.getGpuBytes() / 1048576.0));
+        }
+
+        for (AssetCache.Handle<FakeAsset> handle : level) {
+            if (handle.get().disposed) {
+                throw new IllegalStateException("referenced asset was disposed");
+            }
+        }
+
+        cache.cleanup();
+        long disposed = created.stream().filter(asset -> asset.disposed).count();
+        System.out.println(String.format(Locale.ROOT, "%d assets created, %d disposed after cleanup", created.size(), disposed));
+    }
+}
@@ -0,0 +1,103 @@
+package test;
+
+import engine.general.assets.Asset;
+import engine.general.assets.AssetManager;
+import engine.graph.items.MeshData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * runs the asset manager without a graphics context: the loaders sleep to simulate parsing and
+ * create mesh data of different sizes, the mock uploader only advances a fake clock by a time
+ * proportional to the bytes of the mesh. prints how many uploads every frame did and checks that
+ * no frame exceeded the upload budget, unless a single upload is larger than the budget
+ *
+ * usage: AssetStreamingDemo [assets] [average upload time in ms] [budget in ms]
+ */
+public class AssetStreamingDemo {
+
+    /** simulated time of one frame in nanoseconds */
+    private static final long FRAME_TIME = 16_000_000L;
+
+    /** vertices of a mesh of average size */
+    private static final int AVERAGE_VERTICES = 10_000;
+
+    /** fake clock advanced by the frames and the mock uploads */
+    private static long now;
+
+    public static void main(String[] args) throws Exception {
+        int assets = args.length >= 1 ? Integer.parseInt(args[0]) : 40;
+        long uploadTime = (args.length >= 2 ? Long.parseLong(args[1]) : 3) * 1_000_000L;
+        double nanosPerByte = (double) uploadTime / mesh(AVERAGE_VERTICES).getByteSize();
+        long budget = (args.length >= 3 ? Long.parseLong(args[2]) : 8) * 1_000_000L;
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        AssetManager manager = new AssetManager(workers, () -> now);
+        manager.setUploadBudget(budget);
+
+        // meshes between half and one and a half times the average size
+        List<Asset<String>> requested = new ArrayList<>();
+        long largestUpload = 0;
+        for (int i = 0; i < assets; i++) {
+            int id = i;
+            int vertices = AVERAGE_VERTICES / 2 + AVERAGE_VERTICES * (id * 7 % 11) / 10;
+            largestUpload = Math.max(largestUpload, (long) (mesh(vertices).getByteSize() * nanosPerByte));
+            requested.add(manager.request("asset " + i, () -> {
+                Thread.sleep(1 + id % 5);
+                return mesh(vertices);
+            }, data -> {
+                now += (long) (data.getByteSize() * nanosPerByte);
+                return "uploaded mesh " + id + " with " + data.getVertexCount() + " vertices";
+            }, "placeholder"));
+        }
+
+        System.out.println("first frame sees: " + requested.get(0).get());
+
+        int frame = 0;
+        long worstFrame = 0;
+        int deferredFrames = 0;
+        while (manager.getPendingCount() > 0) {
+            long start = now;
+            int uploaded = manager.processUploads();
+            long uploadTimeOfFrame = now - start;
+            if (uploaded > 1 || uploadTimeOfFrame <= budget) {
+                worstFrame = Math.max(worstFrame, uploadTimeOfFrame);
+            }
+            if (manager.isLastUploadDeferred()) {
+                deferredFrames++;
+            }
+            if (uploaded > 0) {
+                System.out.println(String.format(Locale.ROOT, "frame %3d: %2d uploads in %4.1f ms, %2d pending%s", frame, uploaded,
+                        uploadTimeOfFrame / 1e6, manager.getPendingCount(), manager.isLastUploadDeferred() ? ", next upload deferred" : ""));
+            }
+            now += FRAME_TIME;
+            frame++;
+            Thread.sleep(1);
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.SECONDS);
+
+        long loaded = requested.stream().filter(Asset::isLoaded).count();
+        System.out.println(String.format(Locale.ROOT, "%d of %d assets loaded in %d frames, worst frame %.1f ms without single uploads "
+                        + "larger than the budget ( budget %.1f ms, largest upload %.1f ms ), %d frames deferred an upload",
+                loaded, assets, frame, worstFrame / 1e6, budget / 1e6, largestUpload / 1e6, deferredFrames));
+        if (worstFrame > budget) {
+            throw new IllegalStateException("upload budget exceeded: " + worstFrame / 1e6 + " ms");
+        }
+        System.out.println("last asset: " + requested.get(assets - 1).get());
+    }
+
+    /**
+     * @param vertices number of vertices
+     * @return mesh data with positions, texture coordinates, normals and two triangles per vertex
+     */
+    private static MeshData mesh(int vertices) {
+        return new MeshData(new float[vertices * 3], new float[vertices * 2], new float[vertices * 3], new int[vertices * 6]);
+    }
+}
@@ -0,0 +1,122 @@
+package test;
+
+import engine.general.blender.BlendArchive;
+import engine.general.blender.BlenderListIterator;
+import org.blender.dna.BlenderObject;
+import org.blender.dna.FCurve;
+import org.blender.dna.ListBase;
+import org.blender.dna.bAction;
+import org.cakelab.blender.nio.CPointer;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * compares the BlenderListIterator with the reflective iteration it replaced on the f curves of
+ * the action of the first armature of a blend file
+ *
+ * usage: BlenderIteratorBenchmark [blend file in the model directory] [repetitions]
+ */
+public class BlenderIteratorBenchmark {
+
+    /** blender object type of armatures */
+    private static final int ARMATURE = 25;
+
+    /** runs before measuring to let the jit compile the iterators */
+    private static final int WARMUP_RUNS = 3;
+
+    /** measured runs */
+    private static final int RUNS = 5;
+
+    /** used to keep the results alive */
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        String filename = args.length >= 1 ? args[0] : "animation.blend";
+        int repetitions = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+
+        BlenderObject armature = BlendArchive.open(filename).getFirstObject(ARMATURE);
+        if (armature == null) {
+            System.out.println("no armature in " + filename);
+            return;
+        }
+        bAction action = armature.getAdt().get().getAction().get();
+        ListBase curves = action.getCurves();
+
+        System.out.println(String.format(Locale.ROOT, "%d f curves", iterateAccessor(curves)));
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            measure(curves, repetitions, false);
+            measure(curves, repetitions, true);
+        }
+
+        long reflection = Long.MAX_VALUE;
+        long accessor = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            reflection = Math.min(reflection, measure(curves, repetitions, true));
+            accessor = Math.min(accessor, measure(curves, repetitions, false));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "reflection %8.2f ms", reflection / 1e6));
+        System.out.println(String.format(Locale.ROOT, "accessor   %8.2f ms", accessor / 1e6));
+        System.out.println(sink);
+    }
+
+    /**
+     * @param curves list of f curves
+     * @param repetitions how often the list is iterated
+     * @param reflective true to iterate with reflection
+     * @return time in nanoseconds
+     * @throws Exception if the list cant be read
+     */
+    private static long measure(ListBase curves, int repetitions, boolean reflective) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            sink += reflective ? iterateReflective(curves) : iterateAccessor(curves);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @param curves list of f curves
+     * @return number of curves
+     * @throws Exception if the list cant be read
+     */
+    private static int iterateAccessor(ListBase curves) throws Exception {
+        int count = 0;
+        Iterator<FCurve> iterator = BlenderListIterator.create(curves, FCurve.class);
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * iterates the way the BlenderListIterator did before: getMethod for every iterator, one
+     * probing call and Method.invoke for every element
+     *
+     * @param curves list of f curves
+     * @return number of curves
+     * @throws Exception if the list cant be read
+     */
+    private static int iterateReflective(ListBase curves) throws Exception {
+        CPointer<FCurve> first = curves.getFirst().cast(FCurve.class);
+        Object current = first.isNull() ? null : first.get();
+        if (current == null) {
+            return 0;
+        }
+        Class<?> clazz = current.getClass();
+        Method getNext = clazz.getMethod("getNext");
+        getNext.invoke(current);
+
+        int count = 0;
+        while (current != null) {
+            count++;
+            CPointer<?> pointer = (CPointer<?>) getNext.invoke(current);
+            current = pointer.isNull() ? null : pointer.cast(clazz).get();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,137 @@
+package test;
+
+import engine.general.Transformation;
+import engine.graph.items.BoundingVolume;
+import engine.graph.items.GameItem;
+import engine.render.FrustumCuller;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.nio.FloatBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * checks the frustum culler without a graphics context: random items with the bounds of a cube are
+ * culled against a camera frustum and an ortho box like the one of the shadow map. every culled
+ * item is checked to have all corners of its box outside of one clip plane, so nothing visible is
+ * culled, and the time of a culling pass is measured
+ *
+ * usage: FrustumCullingDemo [items] [world size]
+ */
+public class FrustumCullingDemo {
+
+    /** runs before measuring to let the jit compile the culling */
+    private static final int WARMUP_RUNS = 20;
+
+    /** measured runs */
+    private static final int RUNS = 50;
+
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        float size = args.length >= 2 ? Float.parseFloat(args[1]) : 1000;
+
+        FloatBuffer cube = FloatBuffer.wrap(new float[]{
+                -1, -1, -1, 1, -1, -1, -1, 1, -1, 1, 1, -1,
+                -1, -1, 1, 1, -1, 1, -1, 1, 1, 1, 1, 1});
+        BoundingVolume bounds = BoundingVolume.of(cube);
+
+        Random random = new Random(42);
+        Transformation transformation = new Transformation();
+        Matrix4f[] modelMatrices = new Matrix4f[count];
+        for (int i = 0; i < count; i++) {
+            GameItem gameItem = new GameItem();
+            gameItem.setPosition((random.nextFloat() - 0.5f) * size, random.nextFloat() * 20, (random.nextFloat() - 0.5f) * size);
+            gameItem.setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            gameItem.setScale(0.5f + random.nextFloat() * 4);
+            modelMatrices[i] = new Matrix4f(transformation.buildModelMatrix(gameItem));
+        }
+
+        Matrix4f camera = new Matrix4f().perspective((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000)
+                .mul(new Matrix4f().lookAt(0, 10, 0, 100, 5, 100, 0, 1, 0));
+        Matrix4f light = new Matrix4f().ortho(-100, 100, -100, 100, -200, 200)
+                .mul(new Matrix4f().lookAt(0, 50, 0, 10, 0, 5, 0, 1, 0));
+
+        FrustumCuller culler = new FrustumCuller();
+        boolean[] visible = new boolean[count];
+        fill(culler, bounds, modelMatrices);
+        check("camera", culler.cull(camera, visible), visible, bounds, modelMatrices, camera);
+        check("light", culler.cull(light, visible), visible, bounds, modelMatrices, light);
+
+        long fill = Long.MAX_VALUE;
+        long cull = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + RUNS; run++) {
+            long start = System.nanoTime();
+            fill(culler, bounds, modelMatrices);
+            long fillTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            culler.cull(camera, visible);
+            culler.cull(light, visible);
+            long cullTime = System.nanoTime() - start;
+
+            if (run >= WARMUP_RUNS) {
+                fill = Math.min(fill, fillTime);
+                cull = Math.min(cull, cullTime);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d items: transforming the bounds %.2f ms, culling against both frustums %.2f ms",
+                count, fill / 1e6, cull / 1e6));
+    }
+
+    /**
+     * @param culler culler to fill
+     * @param bounds model space bounds of all items
+     * @param modelMatrices model matrices of the items
+     */
+    private static void fill(FrustumCuller culler, BoundingVolume bounds, Matrix4f[] modelMatrices) {
+        culler.clear();
+        for (Matrix4f modelMatrix : modelMatrices) {
+            culler.add(bounds, modelMatrix);
+        }
+    }
+
+    /**
+     * checks that every culled item is outside of the frustum and prints the counts
+     *
+     * @param name name of the frustum
+     * @param visibleCount number of visible items returned by the culler
+     * @param visible visibility of the items
+     * @param bounds model space bounds of all items
+     * @param modelMatrices model matrices of the items
+     * @param viewProjection view projection matrix of the frustum
+     */
+    private static void check(String name, int visibleCount, boolean[] visible, BoundingVolume bounds, Matrix4f[] modelMatrices, Matrix4f viewProjection) {
+        Vector3f min = bounds.getMin();
+        Vector3f max = bounds.getMax();
+        Vector4f corner = new Vector4f();
+        Matrix4f modelViewProjection = new Matrix4f();
+        for (int i = 0; i < modelMatrices.length; i++) {
+            if (visible[i]) {
+                continue;
+            }
+            viewProjection.mul(modelMatrices[i], modelViewProjection);
+
+            // one of the clip planes -x, +x, -y, +y, -z, +z has to have all corners outside
+            int outside = 0b111111;
+            for (int c = 0; c < 8; c++) {
+                corner.set((c & 1) == 0 ? min.x : max.x, (c & 2) == 0 ? min.y : max.y, (c & 4) == 0 ? min.z : max.z, 1);
+                modelViewProjection.transform(corner);
+                int planes = 0;
+                planes |= corner.x < -corner.w ? 1 : 0;
+                planes |= corner.x > corner.w ? 2 : 0;
+                planes |= corner.y < -corner.w ? 4 : 0;
+                planes |= corner.y > corner.w ? 8 : 0;
+                planes |= corner.z < -corner.w ? 16 : 0;
+                planes |= corner.z > corner.w ? 32 : 0;
+                outside &= planes;
+            }
+            if (outside == 0) {
+                throw new IllegalStateException(name + ": visible item " + i + " was culled");
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%s: %d visible, %d culled, no visible item culled",
+                name, visibleCount, modelMatrices.length - visibleCount));
+    }
+}
@@ -0,0 +1,284 @@
+package test;
+
+import engine.graph.environment.HeightField;
+import engine.graph.environment.HeightMapMesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * compares the 16 bit height field with the float row arrays the height map mesh kept before,
+ * without a graphics context. prints the memory of both and the memory the whole terrain keeps:
+ * the heights plus the vertex arrays the height map mesh held for region updates before, against
+ * the height field alone it keeps now. then the largest quantization error, and the time of
+ * bilinear sampling at random positions, of random vertex reads and of a scan over all rows.
+ * then the loaders are checked: raw 16 bit heights have to come back unchanged and 8 bit images
+ * have to decode to the heights the height map mesh computed, within half a step
+ *
+ * usage: HeightFieldBenchmark [size]
+ */
+public class HeightFieldBenchmark {
+
+    /** height range, like the terrain of the main game */
+    private static final float MIN_Y = -0.1f;
+    private static final float MAX_Y = 0.1f;
+
+    /** samples per measured round */
+    private static final int SAMPLES = 1_000_000;
+
+    /** rounds before measuring and measured rounds, the fastest one counts */
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 8;
+
+    /** keeps the results alive */
+    private static float sink;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+
+        long before = usedMemory();
+        float[][] heights = createHeights(size, new Random(3));
+        long floatBytes = usedMemory() - before;
+        before = usedMemory();
+        HeightField field = HeightField.fromHeights(heights, MIN_Y, MAX_Y);
+        long fieldBytes = usedMemory() - before;
+        System.out.println(String.format(Locale.ROOT, "%dx%d heights: float rows %.1f MB, height field %.1f MB ( measured %.1f MB and %.1f MB )",
+                size, size, (size * (16 + size * 4L) + 16 + size * 4L) / 1048576.0, field.getMemoryBytes() / 1048576.0,
+                floatBytes / 1048576.0, fieldBytes / 1048576.0));
+        printTerrainMemory(field, floatBytes);
+
+        float maxError = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                maxError = Math.max(maxError, Math.abs(field.getHeight(row, col) - heights[row][col]));
+            }
+        }
+        if (maxError > field.getStep() / 2 * 1.01f) {
+            throw new IllegalStateException("quantization error " + maxError + " is larger than half a step " + field.getStep() / 2);
+        }
+        System.out.println(String.format(Locale.ROOT, "largest quantization error %.3g, half a step %.3g, %.5f %% of the height range",
+                maxError, field.getStep() / 2, maxError / (MAX_Y - MIN_Y) * 100));
+
+        Random random = new Random(4);
+        float[] cols = new float[SAMPLES];
+        float[] rows = new float[SAMPLES];
+        int[] indices = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            cols[i] = random.nextFloat() * (size - 1);
+            rows[i] = random.nextFloat() * (size - 1);
+            indices[i] = random.nextInt(size * size);
+        }
+
+        long floatSample = Long.MAX_VALUE;
+        long fieldSample = Long.MAX_VALUE;
+        long floatRead = Long.MAX_VALUE;
+        long fieldRead = Long.MAX_VALUE;
+        long floatScan = Long.MAX_VALUE;
+        long fieldScan = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < SAMPLES; i++) {
+                sink += sample(heights, cols[i], rows[i]);
+            }
+            long floatSampleRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SAMPLES; i++) {
+                sink += field.sample(cols[i], rows[i]);
+            }
+            long fieldSampleRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SAMPLES; i++) {
+                sink += heights[indices[i] / size][indices[i] % size];
+            }
+            long floatReadRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SAMPLES; i++) {
+                sink += field.getHeight(indices[i] / size, indices[i] % size);
+            }
+            long fieldReadRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            float sum = 0;
+            for (int row = 0; row < size; row++) {
+                float[] rowHeights = heights[row];
+                for (int col = 0; col < size; col++) {
+                    sum += rowHeights[col];
+                }
+            }
+            sink += sum;
+            long floatScanRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sum = 0;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    sum += field.getHeight(row, col);
+                }
+            }
+            sink += sum;
+            long fieldScanRound = System.nanoTime() - start;
+
+            if (round >= WARMUP_ROUNDS) {
+                floatSample = Math.min(floatSample, floatSampleRound);
+                fieldSample = Math.min(fieldSample, fieldSampleRound);
+                floatRead = Math.min(floatRead, floatReadRound);
+                fieldRead = Math.min(fieldRead, fieldReadRound);
+                floatScan = Math.min(floatScan, floatScanRound);
+                fieldScan = Math.min(fieldScan, fieldScanRound);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "bilinear samples: float rows %.1f ns, height field %.1f ns", (double) floatSample / SAMPLES,
+                (double) fieldSample / SAMPLES));
+        System.out.println(String.format(Locale.ROOT, "random vertex reads: float rows %.1f ns, height field %.1f ns", (double) floatRead / SAMPLES,
+                (double) fieldRead / SAMPLES));
+        System.out.println(String.format(Locale.ROOT, "scan of all heights: float rows %.1f ms, height field %.1f ms", floatScan / 1e6, fieldScan / 1e6));
+
+        checkRaw(field);
+        checkImage(new Random(5));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * prints the memory the terrain keeps for its heights and vertices. the vertex arrays the
+     * height map mesh kept for region updates are computed, not allocated, a crater update is run
+     * to measure the arrays it allocates while it runs
+     */
+    private static void printTerrainMemory(HeightField field, long floatBytes) {
+        int columns = field.getColumns();
+        int rows = field.getRows();
+        long vertices = (long) columns * rows;
+
+        // positions, normals, tangents and bi tangents, 3 floats each
+        long keptArrays = vertices * 4 * 3 * Float.BYTES;
+
+        int radius = Math.max(2, columns / 64);
+        int centerCol = columns / 3;
+        int centerRow = rows / 2;
+        HeightMapMesh.Region crater = HeightMapMesh.computeRegion(field, centerCol - radius - 1, centerRow - radius - 1,
+                centerCol + radius + 2, centerRow + radius + 2);
+
+        // vbos of the mesh: positions, normals, tangents, bi tangents, texture coordinates and indices
+        long videoBytes = vertices * (4 * 3 + 2) * Float.BYTES + (long) (columns - 1) * (rows - 1) * 6 * Integer.BYTES;
+
+        System.out.println(String.format(Locale.ROOT, "terrain heap: float rows %.1f MB, float rows with the vertex arrays the mesh kept "
+                        + "for region updates %.1f MB, height field with those arrays %.1f MB, height field alone as kept now %.1f MB",
+                floatBytes / 1048576.0, (floatBytes + keptArrays) / 1048576.0, (field.getMemoryBytes() + keptArrays) / 1048576.0,
+                field.getMemoryBytes() / 1048576.0));
+        System.out.println(String.format(Locale.ROOT, "a crater update of radius %d allocates %.1f KB while it runs, "
+                        + "the vbos take %.1f MB of video memory with every height storage",
+                radius, crater.getMemoryBytes() / 1024.0, videoBytes / 1048576.0));
+    }
+
+    /**
+     * writes the field as raw little endian heights and loads it again
+     */
+    private static void checkRaw(HeightField field) throws Exception {
+        Path file = Files.createTempFile("heights", ".r16");
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(field.getValues().length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asShortBuffer().put(field.getValues());
+            Files.write(file, bytes.array());
+
+            long start = System.nanoTime();
+            HeightField loaded = HeightField.load(file, MIN_Y, MAX_Y);
+            long loadTime = System.nanoTime() - start;
+            if (loaded.getColumns() != field.getColumns() || loaded.getRows() != field.getRows()) {
+                throw new IllegalStateException("raw height map has the wrong size");
+            }
+            for (int i = 0; i < field.getValues().length; i++) {
+                if (loaded.getValues()[i] != field.getValues()[i]) {
+                    throw new IllegalStateException("raw height " + i + " changed");
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "raw 16 bit height map of %.1f MB loaded unchanged in %.1f ms",
+                    bytes.capacity() / 1048576.0, loadTime / 1e6));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * decodes random rgba pixels and compares them with the decoding of the height map mesh
+     */
+    private static void checkImage(Random random) {
+        int size = 257;
+        ByteBuffer image = ByteBuffer.allocateDirect(size * size * 4);
+        for (int i = 0; i < size * size; i++) {
+            byte gray = (byte) random.nextInt(256);
+            image.put(gray).put(gray).put(gray).put((byte) 255);
+        }
+        image.flip();
+
+        HeightField field = HeightField.fromImage(image, size, size, MIN_Y, MAX_Y);
+        float maxError = 0;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                maxError = Math.max(maxError, Math.abs(field.getHeight(row, col) - decode(image, col, row, size)));
+            }
+        }
+        if (maxError > field.getStep() / 2 * 1.01f) {
+            throw new IllegalStateException("8 bit height map decoded with an error of " + maxError);
+        }
+        System.out.println(String.format(Locale.ROOT, "8 bit height map decoded within %.3g of the height map mesh heights ( range %.3f to %.3f )",
+                maxError, field.getMinY(), field.getMaxY()));
+    }
+
+    /**
+     * the former decoding of the height map mesh
+     */
+    private static float decode(ByteBuffer buffer, int x, int z, int width) {
+        byte r = buffer.get(x * 4 + z * 4 * width);
+        byte g = buffer.get(x * 4 + 1 + z * 4 * width);
+        byte b = buffer.get(x * 4 + 2 + z * 4 * width);
+        byte a = buffer.get(x * 4 + 3 + z * 4 * width);
+        int argb = ((0xFF & a) << 24) | ((0xFF & r) << 16) | ((0xFF & g) << 8) | (0xFF & b);
+        return MIN_Y + Math.abs(MAX_Y - MIN_Y) * ((float) argb / (float) (255 * 255 * 255));
+    }
+
+    /**
+     * bilinear sampling of float row arrays, the way the field samples
+     */
+    private static float sample(float[][] heights, float col, float row) {
+        int col0 = Math.min((int) col, heights[0].length - 2);
+        int row0 = Math.min((int) row, heights.length - 2);
+        float fx = col - col0;
+        float fz = row - row0;
+        float[] first = heights[row0];
+        float[] second = heights[row0 + 1];
+        float top = first[col0] + fx * (first[col0 + 1] - first[col0]);
+        float bottom = second[col0] + fx * (second[col0 + 1] - second[col0]);
+        return top + fz * (bottom - top);
+    }
+
+    /**
+     * rolling hills with some noise between MIN_Y and MAX_Y
+     */
+    private static float[][] createHeights(int size, Random random) {
+        float[][] heights = new float[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                float height = 0.5f + 0.35f * (float) (Math.sin(col * 0.004) * Math.cos(row * 0.005)) + 0.1f * random.nextFloat();
+                heights[row][col] = MIN_Y + (MAX_Y - MIN_Y) * height;
+            }
+        }
+        return heights;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,309 @@
+package test;
+
+import engine.graph.environment.HeightField;
+import engine.graph.environment.HeightFieldNormals;
+import engine.graph.environment.HeightMapMesh;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * compares the normal computation of the height map mesh without a graphics context. the former
+ * serial walk over the grid is kept here as it was, the new stage has to give the same normals to
+ * the bit on the calling thread and in parallel row bands. the tangents have to be unit vectors
+ * orthogonal to the normals. then a crater is cut into the grid and the rectangle recomputed by a
+ * region update has to give the same result as recomputing the whole grid. last the height map
+ * mesh computes rectangles from a height field alone, like its region update does without keeping
+ * the vertex arrays, and they have to match the whole grid too
+ *
+ * usage: HeightMapNormalsBenchmark [grid size] [threads]
+ */
+public class HeightMapNormalsBenchmark {
+
+    /** height range of the grid, like the terrain of the main game */
+    private static final float MIN_Y = -0.1f;
+    private static final float MAX_Y = 0.1f;
+
+    /** measured rounds, the fastest one counts */
+    private static final int ROUNDS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2049;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        float[] positions = createPositions(size);
+        int floats = positions.length;
+        float[] expected = new float[floats];
+        float[] normals = new float[floats];
+        float[] tangents = new float[floats];
+        float[] biTangents = new float[floats];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        long serialOld = Long.MAX_VALUE;
+        long serialNew = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        long parallelTangents = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS + 2; round++) {
+            long start = System.nanoTime();
+            calcNormals(positions, size, size, expected);
+            long oldTime = System.nanoTime() - start;
+
+            Arrays.fill(normals, 0);
+            start = System.nanoTime();
+            HeightFieldNormals.compute(positions, size, size, normals, null, null, null, 1);
+            long newTime = System.nanoTime() - start;
+            compare(expected, normals, "serial");
+
+            Arrays.fill(normals, 0);
+            start = System.nanoTime();
+            HeightFieldNormals.compute(positions, size, size, normals, null, null, executor, threads * 4);
+            long parallelTime = System.nanoTime() - start;
+            compare(expected, normals, "parallel");
+
+            Arrays.fill(normals, 0);
+            start = System.nanoTime();
+            HeightFieldNormals.compute(positions, size, size, normals, tangents, biTangents, executor, threads * 4);
+            long tangentTime = System.nanoTime() - start;
+            compare(expected, normals, "parallel with tangents");
+
+            if (round >= 2) {
+                serialOld = Math.min(serialOld, oldTime);
+                serialNew = Math.min(serialNew, newTime);
+                parallel = Math.min(parallel, parallelTime);
+                parallelTangents = Math.min(parallelTangents, tangentTime);
+            }
+        }
+        checkTangents(normals, tangents, biTangents);
+        System.out.println(String.format(Locale.ROOT, "%dx%d grid, normals equal to the bit: former serial %.1f ms, serial %.1f ms, "
+                        + "%d threads %.1f ms, with tangents %.1f ms",
+                size, size, serialOld / 1e6, serialNew / 1e6, threads, parallel / 1e6, parallelTangents / 1e6));
+
+        checkRegion(positions, size, normals, tangents, biTangents);
+        checkHeightFieldRegions(size);
+        executor.shutdown();
+    }
+
+    /**
+     * cuts a crater into the grid, updates the rectangle around it and compares it with the whole
+     * grid computed again
+     */
+    private static void checkRegion(float[] positions, int size, float[] normals, float[] tangents, float[] biTangents) throws Exception {
+        int centerCol = size / 3;
+        int centerRow = size / 2;
+        int radius = Math.max(2, size / 64);
+        for (int row = centerRow - radius; row <= centerRow + radius; row++) {
+            for (int col = centerCol - radius; col <= centerCol + radius; col++) {
+                float distance = (float) Math.hypot(col - centerCol, row - centerRow) / radius;
+                if (distance < 1) {
+                    positions[(row * size + col) * 3 + 1] -= 0.05f * (1 - distance * distance);
+                }
+            }
+        }
+
+        // the rectangle of changed heights grows by one vertex, like the region update does it
+        int firstCol = centerCol - radius - 1;
+        int firstRow = centerRow - radius - 1;
+        int endCol = centerCol + radius + 2;
+        int endRow = centerRow + radius + 2;
+        long start = System.nanoTime();
+        HeightFieldNormals.compute(positions, size, size, normals, tangents, biTangents, firstCol, firstRow, endCol, endRow);
+        long regionTime = System.nanoTime() - start;
+
+        float[] expectedNormals = new float[normals.length];
+        float[] expectedTangents = new float[normals.length];
+        float[] expectedBiTangents = new float[normals.length];
+        start = System.nanoTime();
+        HeightFieldNormals.compute(positions, size, size, expectedNormals, expectedTangents, expectedBiTangents, null, 1);
+        long fullTime = System.nanoTime() - start;
+        compare(expectedNormals, normals, "region normals");
+        compare(expectedTangents, tangents, "region tangents");
+        compare(expectedBiTangents, biTangents, "region bi tangents");
+
+        int vertices = (endCol - firstCol) * (endRow - firstRow);
+        long uploadBytes = (long) vertices * 4 * 3 * Float.BYTES;
+        long fullBytes = (long) size * size * 4 * 3 * Float.BYTES;
+        System.out.println(String.format(Locale.ROOT, "crater of radius %d: region update recomputes %d of %d vertices in %.3f ms "
+                        + "instead of %.1f ms, uploads %.1f KB instead of %.1f MB, same result as the whole grid",
+                radius, vertices, size * size, regionTime / 1e6, fullTime / 1e6, uploadBytes / 1024.0, fullBytes / 1048576.0));
+    }
+
+    /**
+     * computes rectangles in the middle, at the edges, in a corner and over whole rows from a
+     * height field and compares them with the whole grid computed from the same field
+     */
+    private static void checkHeightFieldRegions(int size) {
+        float[] positions = createPositions(size);
+        float[][] heights = new float[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                heights[row][col] = positions[(row * size + col) * 3 + 1];
+            }
+        }
+        HeightField field = HeightField.fromHeights(heights, MIN_Y, MAX_Y);
+
+        float[] expectedPositions = new float[positions.length];
+        float[] expectedNormals = new float[positions.length];
+        float[] expectedTangents = new float[positions.length];
+        float[] expectedBiTangents = new float[positions.length];
+        HeightMapMesh.computePositions(field, 0, 0, size, size, expectedPositions);
+        HeightFieldNormals.compute(expectedPositions, size, size, expectedNormals, expectedTangents, expectedBiTangents, 0, 0, size, size);
+
+        int radius = Math.max(2, size / 64);
+        int[][] rectangles = {
+                {size / 3 - radius, size / 2 - radius, size / 3 + radius + 1, size / 2 + radius + 1},
+                {0, size / 4, radius, size / 4 + radius},
+                {size - radius, size - radius, size, size},
+                {0, size / 5, size, size / 5 + 3},
+                {0, 0, size, size}
+        };
+        long largestRegion = 0;
+        for (int[] rectangle : rectangles) {
+            HeightMapMesh.Region region = HeightMapMesh.computeRegion(field, rectangle[0], rectangle[1], rectangle[2], rectangle[3]);
+            for (int row = rectangle[1]; row < rectangle[3]; row++) {
+                for (int col = rectangle[0]; col < rectangle[2]; col++) {
+                    int expected = (row * size + col) * 3;
+                    int actual = region.getOffset(row, col);
+                    for (int i = 0; i < 3; i++) {
+                        if (Float.floatToIntBits(expectedPositions[expected + i]) != Float.floatToIntBits(region.getPositions()[actual + i])
+                                || Float.floatToIntBits(expectedNormals[expected + i]) != Float.floatToIntBits(region.getNormals()[actual + i])
+                                || Float.floatToIntBits(expectedTangents[expected + i]) != Float.floatToIntBits(region.getTangents()[actual + i])
+                                || Float.floatToIntBits(expectedBiTangents[expected + i]) != Float.floatToIntBits(region.getBiTangents()[actual + i])) {
+                            throw new IllegalStateException("region " + Arrays.toString(rectangle) + " differs at row " + row + ", column " + col);
+                        }
+                    }
+                }
+            }
+            if (rectangle[2] - rectangle[0] < size || rectangle[3] - rectangle[1] < size) {
+                largestRegion = Math.max(largestRegion, region.getMemoryBytes());
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "regions computed from the height field equal the whole grid, "
+                        + "scratch arrays of at most %.1f KB instead of %.1f MB of vertex arrays kept by the mesh",
+                largestRegion / 1024.0, (long) size * size * 4 * 3 * Float.BYTES / 1048576.0));
+    }
+
+    /**
+     * the tangents and bi tangents are unit vectors orthogonal to the normal, the tangent points
+     * along x and the bi tangent along z
+     */
+    private static void checkTangents(float[] normals, float[] tangents, float[] biTangents) throws Exception {
+        Vector3f normal = new Vector3f();
+        Vector3f tangent = new Vector3f();
+        Vector3f biTangent = new Vector3f();
+        for (int i = 0; i < normals.length; i += 3) {
+            normal.set(normals[i], normals[i + 1], normals[i + 2]);
+            tangent.set(tangents[i], tangents[i + 1], tangents[i + 2]);
+            biTangent.set(biTangents[i], biTangents[i + 1], biTangents[i + 2]);
+            if (Math.abs(tangent.length() - 1) > 1e-5f || Math.abs(biTangent.length() - 1) > 1e-5f
+                    || Math.abs(tangent.dot(normal)) > 1e-5f || Math.abs(biTangent.dot(normal)) > 1e-5f
+                    || tangent.x <= 0 || biTangent.z <= 0) {
+                throw new IllegalStateException("tangent frame of vertex " + i / 3 + " is wrong: " + normal + " " + tangent + " " + biTangent);
+            }
+        }
+    }
+
+    private static void compare(float[] expected, float[] actual, String name) {
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(actual[i])) {
+                throw new IllegalStateException(name + ": float " + i + " is " + actual[i] + " instead of " + expected[i]);
+            }
+        }
+    }
+
+    /**
+     * positions laid out like the height map mesh lays them out, with rolling hills and noise
+     */
+    private static float[] createPositions(int size) {
+        float[] positions = new float[size * size * 3];
+        float inc = HeightMapMesh.getXLength() / (size - 1);
+        Random random = new Random(11);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                float height = 0.5f + 0.3f * (float) (Math.sin(col * 0.01) * Math.cos(row * 0.013)) + 0.05f * random.nextFloat();
+                int i = (row * size + col) * 3;
+                positions[i] = HeightMapMesh.START_X + col * inc;
+                positions[i + 1] = MIN_Y + (MAX_Y - MIN_Y) * height;
+                positions[i + 2] = HeightMapMesh.START_Z + row * inc;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * the former normal computation of the height map mesh
+     */
+    private static void calcNormals(float[] posArr, int width, int height, float[] result) {
+        Vector3f v0 = new Vector3f();
+        Vector3f v1 = new Vector3f();
+        Vector3f v2 = new Vector3f();
+        Vector3f v3 = new Vector3f();
+        Vector3f v4 = new Vector3f();
+        Vector3f v12 = new Vector3f();
+        Vector3f v23 = new Vector3f();
+        Vector3f v34 = new Vector3f();
+        Vector3f v41 = new Vector3f();
+        Vector3f normal = new Vector3f();
+        int n = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
+                    int i0 = row * width * 3 + col * 3;
+                    v0.x = posArr[i0];
+                    v0.y = posArr[i0 + 1];
+                    v0.z = posArr[i0 + 2];
+
+                    int i1 = row * width * 3 + (col - 1) * 3;
+                    v1.x = posArr[i1];
+                    v1.y = posArr[i1 + 1];
+                    v1.z = posArr[i1 + 2];
+                    v1 = v1.sub(v0);
+
+                    int i2 = (row + 1) * width * 3 + col * 3;
+                    v2.x = posArr[i2];
+                    v2.y = posArr[i2 + 1];
+                    v2.z = posArr[i2 + 2];
+                    v2 = v2.sub(v0);
+
+                    int i3 = row * width * 3 + (col + 1) * 3;
+                    v3.x = posArr[i3];
+                    v3.y = posArr[i3 + 1];
+                    v3.z = posArr[i3 + 2];
+                    v3 = v3.sub(v0);
+
+                    int i4 = (row - 1) * width * 3 + col * 3;
+                    v4.x = posArr[i4];
+                    v4.y = posArr[i4 + 1];
+                    v4.z = posArr[i4 + 2];
+                    v4 = v4.sub(v0);
+
+                    v1.cross(v2, v12);
+                    v12.normalize();
+
+                    v2.cross(v3, v23);
+                    v23.normalize();
+
+                    v3.cross(v4, v34);
+                    v34.normalize();
+
+                    v4.cross(v1, v41);
+                    v41.normalize();
+
+                    normal = v12.add(v23).add(v34).add(v41);
+                    normal.normalize();
+                } else {
+                    normal.x = 0;
+                    normal.y = 1;
+                    normal.z = 0;
+                }
+                normal.normalize();
+                result[n++] = normal.x;
+                result[n++] = normal.y;
+                result[n++] = normal.z;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package test;
+
+import engine.general.Transformation;
+import engine.graph.items.GameItem;
+import engine.render.InstanceBuffer;
+import org.joml.Matrix4f;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * checks the packing of the instance buffer without a graphics context: the model matrices of
+ * random game items are packed like the renderer does it every frame, compared with Matrix4f.get
+ * and the heap allocated by packing a frame is measured
+ *
+ * usage: InstancePackerDemo [instances] [frames]
+ */
+public class InstancePackerDemo {
+
+    /** frames before measuring to let the jit compile the packing */
+    private static final int WARMUP_FRAMES = 200;
+
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 10000;
+        int frames = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+
+        Random random = new Random(42);
+        GameItem[] gameItems = new GameItem[count];
+        for (int i = 0; i < count; i++) {
+            GameItem gameItem = new GameItem();
+            gameItem.setPosition(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+            gameItem.setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            gameItem.setScale(0.5f + random.nextFloat());
+            gameItems[i] = gameItem;
+        }
+
+        Transformation transformation = new Transformation();
+        InstanceBuffer instanceBuffer = new InstanceBuffer(16);
+        pack(instanceBuffer, transformation, gameItems);
+
+        FloatBuffer data = instanceBuffer.getData();
+        float[] expected = new float[InstanceBuffer.MATRIX_FLOATS];
+        for (int i = 0; i < count; i++) {
+            Matrix4f modelMatrix = new Matrix4f(transformation.buildModelMatrix(gameItems[i]));
+            modelMatrix.get(expected);
+            for (int k = 0; k < expected.length; k++) {
+                if (data.get(i * InstanceBuffer.MATRIX_FLOATS + k) != expected[k]) {
+                    throw new IllegalStateException("wrong matrix at instance " + i);
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d instances packed correctly, capacity grew to %d", count, instanceBuffer.getCapacity()));
+
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            pack(instanceBuffer, transformation, gameItems);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            pack(instanceBuffer, transformation, gameItems);
+        }
+        long time = System.nanoTime() - start;
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+        System.out.println(String.format(Locale.ROOT, "%.3f ms per frame, %d bytes allocated per frame",
+                time / 1e6 / frames, allocated / frames));
+
+        instanceBuffer.cleanup();
+    }
+
+    /**
+     * packs the model matrices of all items like one frame of the renderer
+     *
+     * @param instanceBuffer buffer to pack into
+     * @param transformation transformation building the model matrices
+     * @param gameItems items to pack
+     */
+    private static void pack(InstanceBuffer instanceBuffer, Transformation transformation, GameItem[] gameItems) {
+        instanceBuffer.clear();
+        for (GameItem gameItem : gameItems) {
+            instanceBuffer.add(transformation.buildModelMatrix(gameItem));
+        }
+    }
+}
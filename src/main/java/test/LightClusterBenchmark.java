@@ -0,0 +1,227 @@
+package test;
+
+import engine.graph.light.LightClusterer;
+import engine.graph.light.LightHandler;
+import engine.graph.light.PointLight;
+import engine.graph.light.SpotLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * measures the light clusterer without a graphics context for scenes with a growing number of
+ * point and spot lights: binning on one thread, binning spread over the common fork join pool and
+ * a brute force test of every light against every cluster. the binning is checked against random
+ * points in the frustum: every light reaching a point has to be in the cluster the scene shader
+ * computes for the point
+ *
+ * usage: LightClusterBenchmark [light counts...]
+ */
+public class LightClusterBenchmark {
+
+    /** projection of the renderer */
+    private static final float FOV = (float) Math.toRadians(60);
+    private static final float ASPECT = 16f / 9f;
+    private static final float Z_NEAR = 0.01f;
+    private static final float Z_FAR = 1000;
+
+    /** frames before measuring */
+    private static final int WARMUP_FRAMES = 50;
+
+    /** measured frames */
+    private static final int FRAMES = 50;
+
+    /** random points checked against the clusters */
+    private static final int SAMPLES = 100000;
+
+    /** edge length of the area the lights are placed in */
+    private static final float WORLD_SIZE = 200;
+
+    /** keeps the results alive */
+    private static int sink;
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{16, 128, 512, 2048};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int count : counts) {
+            run(count);
+        }
+    }
+
+    /**
+     * @param count number of lights
+     */
+    private static void run(int count) {
+        Random random = new Random(42);
+        LightHandler lightHandler = new LightHandler();
+        for (int i = 0; i < count; i++) {
+            Vector3f position = new Vector3f(random.nextFloat() * WORLD_SIZE, random.nextFloat() * 10, random.nextFloat() * WORLD_SIZE);
+            Vector3f color = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            PointLight pointLight = new PointLight(color, position, 0.5f + random.nextFloat(),
+                    new PointLight.Attenuation(1, 0.7f, 1.8f));
+            if (i % 4 == 0) {
+                SpotLight spotLight = new SpotLight(pointLight, new Vector3f(random.nextFloat() - 0.5f, -1, random.nextFloat() - 0.5f), 0);
+                spotLight.setCutOffAngle(20 + random.nextFloat() * 30);
+                lightHandler.addSpotLight(spotLight);
+            } else {
+                lightHandler.addPointLight(pointLight);
+            }
+        }
+
+        Matrix4f viewMatrix = new Matrix4f().lookAt(WORLD_SIZE / 2, 15, -10, WORLD_SIZE / 2, 0, WORLD_SIZE / 2, 0, 1, 0);
+        LightClusterer clusterer = new LightClusterer(16, 9, 24, 1 << 20);
+        clusterer.setProjection(FOV, ASPECT, Z_NEAR, Z_FAR);
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long serial = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        long bruteForce = Long.MAX_VALUE;
+        for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+            long start = System.nanoTime();
+            lightHandler.collectLights(viewMatrix, clusterer);
+            clusterer.bin();
+            long serialTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            lightHandler.collectLights(viewMatrix, clusterer);
+            clusterer.bin(pool);
+            long parallelTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += bruteForce(clusterer);
+            long bruteForceTime = System.nanoTime() - start;
+
+            if (frame >= WARMUP_FRAMES) {
+                serial = Math.min(serial, serialTime);
+                parallel = Math.min(parallel, parallelTime);
+                bruteForce = Math.min(bruteForce, bruteForceTime);
+            }
+        }
+
+        check(clusterer, viewMatrix);
+
+        int[] clusters = clusterer.getClusters();
+        int used = 0;
+        int most = 0;
+        for (int c = 0; c < clusterer.getClusterCount(); c++) {
+            if (clusters[c * 2 + 1] > 0) {
+                used++;
+                most = Math.max(most, clusters[c * 2 + 1]);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%5d lights: bin %.3f ms, bin on %d threads %.3f ms, brute force %.3f ms, "
+                        + "%d indices, %.1f lights per used cluster, at most %d",
+                count, serial / 1e6, pool.getParallelism(), parallel / 1e6, bruteForce / 1e6,
+                clusterer.getIndexCount(), used > 0 ? (float) clusterer.getIndexCount() / used : 0, most));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * tests the range sphere of every light against the box of every cluster
+     *
+     * @return number of hits
+     */
+    private static int bruteForce(LightClusterer clusterer) {
+        float[] lights = clusterer.getLights();
+        float[] depths = clusterer.getSliceDepths();
+        float[] columns = clusterer.getColumnBounds();
+        float[] rows = clusterer.getRowBounds();
+        int tilesX = clusterer.getTilesX();
+        int tilesY = clusterer.getTilesY();
+        int hits = 0;
+        for (int s = 0; s < clusterer.getSlices(); s++) {
+            for (int r = 0; r < tilesY; r++) {
+                for (int c = 0; c < tilesX; c++) {
+                    int cb = (s * tilesX + c) * 2;
+                    int rb = (s * tilesY + r) * 2;
+                    for (int l = 0; l < clusterer.getLightCount(); l++) {
+                        int o = l * LightClusterer.LIGHT_FLOATS;
+                        float dx = Math.max(Math.max(columns[cb] - lights[o], lights[o] - columns[cb + 1]), 0);
+                        float dy = Math.max(Math.max(rows[rb] - lights[o + 1], lights[o + 1] - rows[rb + 1]), 0);
+                        float dz = Math.max(Math.max(depths[s] + lights[o + 2], -lights[o + 2] - depths[s + 1]), 0);
+                        if (dx * dx + dy * dy + dz * dz <= lights[o + 3] * lights[o + 3]) {
+                            hits++;
+                        }
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * checks random points in the frustum: every light reaching the point has to be listed by
+     * the cluster the scene shader computes for the point
+     */
+    private static void check(LightClusterer clusterer, Matrix4f viewMatrix) {
+        Matrix4f projectionMatrix = new Matrix4f().perspective(FOV, ASPECT, Z_NEAR, Z_FAR);
+        Matrix4f inverse = new Matrix4f(projectionMatrix).invert();
+        float[] lights = clusterer.getLights();
+        int[] clusters = clusterer.getClusters();
+        int[] indices = clusterer.getIndices();
+        Random random = new Random(7);
+        Vector4f point = new Vector4f();
+        Vector4f clip = new Vector4f();
+        int checked = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            // random point on the screen at a random depth in the area of the lights
+            float depth = 1 + random.nextFloat() * WORLD_SIZE;
+            inverse.transform(point.set(random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, 1, 1));
+            point.div(point.w).mul(depth / -point.z);
+            point.w = 1;
+
+            // cluster of the point as the scene shader computes it
+            projectionMatrix.transform(clip.set(point));
+            int tileX = clamp((int) ((clip.x / clip.w * 0.5f + 0.5f) * clusterer.getTilesX()), clusterer.getTilesX());
+            int tileY = clamp((int) ((clip.y / clip.w * 0.5f + 0.5f) * clusterer.getTilesY()), clusterer.getTilesY());
+            int slice = clamp((int) (Math.log(-point.z) * clusterer.getSliceScale() + clusterer.getSliceBias()), clusterer.getSlices());
+            int cluster = (slice * clusterer.getTilesY() + tileY) * clusterer.getTilesX() + tileX;
+
+            for (int l = 0; l < clusterer.getLightCount(); l++) {
+                if (!reaches(lights, l, point)) {
+                    continue;
+                }
+                checked++;
+                boolean listed = false;
+                for (int k = clusters[cluster * 2]; k < clusters[cluster * 2] + clusters[cluster * 2 + 1]; k++) {
+                    listed |= indices[k] == l;
+                }
+                if (!listed) {
+                    throw new IllegalStateException("light " + l + " reaches " + point + " but is missing in cluster " + cluster);
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d lights reaching %d random points are listed by their clusters", checked, SAMPLES));
+    }
+
+    /**
+     * @return true if the point is in the range and, for spot lights, in the cone of the light
+     */
+    private static boolean reaches(float[] lights, int l, Vector4f point) {
+        int o = l * LightClusterer.LIGHT_FLOATS;
+        float vx = point.x - lights[o];
+        float vy = point.y - lights[o + 1];
+        float vz = point.z - lights[o + 2];
+        float distance = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (distance > lights[o + 3]) {
+            return false;
+        }
+        if (lights[o + 15] != LightClusterer.SPOT_LIGHT) {
+            return true;
+        }
+        float cos = (vx * lights[o + 12] + vy * lights[o + 13] + vz * lights[o + 14]) / distance;
+        return cos > lights[o + 11];
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(value, count - 1));
+    }
+}
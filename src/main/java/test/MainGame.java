@@ -81,8 +81,10 @@ public class MainGame implements IGameLogic {
         float reflectance = 1f;
         Mesh cubeMesh = OBJLoader.loadNoDoubles("/models/test.obj");
         Material cubeMaterial = new Material(new Vector4f(0, 1, 0, 1), reflectance);
-        Material test = new Material(new Texture("textures/wood.png", Texture.FilterMode.NEAREST));
-        test.setNormalMap(new Texture("textures/normalmapWood.png", Texture.FilterMode.NEAREST));
+        // the textures are decoded in the background, the material is untextured until they arrive
+        Material test = new Material();
+        window.getAssetManager().requestTexture("textures/wood.png", Texture.FilterMode.NEAREST, null).onLoaded(test::setTexture);
+        window.getAssetManager().requestTexture("textures/normalmapWood.png", Texture.FilterMode.NEAREST, null).onLoaded(test::setNormalMap);
         cubeMesh.setMaterial(test);
         cubeGameItem = BlenderLoader.loadGameItemsFromBlendFile("test.blend")[0];
         cubeGameItem.setPosition(0, 1, 0);
@@ -183,12 +185,13 @@ public class MainGame implements IGameLogic {
             camera.setPosition(prevPos.x, prevPos.y, prevPos.z);
         }
 
-        float rotY = cubeGameItem.getRotation().y;
+        Vector3f cubeRotation = cubeGameItem.getRotation();
+        float rotY = cubeRotation.y;
         rotY += 0.5f;
         if (rotY >= 360) {
             rotY -= 360;
         }
-        cubeGameItem.getRotation().y = rotY;
+        cubeGameItem.setRotation(cubeRotation.x, rotY, cubeRotation.z);
 
         lightAngle += angleInc;
         if (lightAngle < 0) {
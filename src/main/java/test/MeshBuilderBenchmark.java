@@ -0,0 +1,330 @@
+package test;
+
+import engine.general.Utils;
+import engine.general.collections.FloatArrayBuilder;
+import engine.general.collections.IntArrayBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * compares building vertex data in boxed lists with building it in the primitive array builders
+ * the loops are the ones of HeightMapMesh and TextItem.buildMesh without the open gl calls. every
+ * builder variant has to give the same arrays as the lists to the bit
+ *
+ * usage: MeshBuilderBenchmark [height map size] [characters]
+ */
+public class MeshBuilderBenchmark {
+
+    /** runs before measuring to let the jit compile the loops */
+    private static final int WARMUP_RUNS = 3;
+
+    /** measured runs */
+    private static final int RUNS = 5;
+
+    /** vertices of one letter quad */
+    private static final int VERTICES_PER_QUAD = 4;
+
+    /** used to keep the results alive */
+    private static long sink;
+
+    public static void main(String[] args) {
+        int size = args.length >= 1 ? Integer.parseInt(args[0]) : 1024;
+        int characters = args.length >= 2 ? Integer.parseInt(args[1]) : 10000;
+
+        float[] heights = new float[size * size];
+        Random random = new Random(42);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = random.nextFloat();
+        }
+
+        // letter metrics: x, y, width, height, x offset, y offset, x advance
+        int[][] letters = new int[96][];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = new int[]{random.nextInt(512), random.nextInt(512), 4 + random.nextInt(20), 30, random.nextInt(4), random.nextInt(4), 8 + random.nextInt(20)};
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < characters; i++) {
+            text.append(i % 80 == 79 ? '\n' : (char) (32 + random.nextInt(letters.length)));
+        }
+        String content = text.toString();
+
+        VertexData heightMap = heightMapLists(heights, size, true);
+        compare(heightMap, heightMapBuilders(heights, size, false, true), "height map builders");
+        compare(heightMap, heightMapBuilders(heights, size, true, true), "height map off heap");
+        compare(textLists(content, letters, true), textBuilders(content, letters, true), "text builders");
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            heightMapLists(heights, size, false);
+            heightMapBuilders(heights, size, false, false);
+            heightMapBuilders(heights, size, true, false);
+            textLists(content, letters, false);
+            textBuilders(content, letters, false);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "height map %dx%d", size, size));
+        measure("lists", () -> heightMapLists(heights, size, false));
+        measure("builders", () -> heightMapBuilders(heights, size, false, false));
+        measure("off heap", () -> heightMapBuilders(heights, size, true, false));
+
+        System.out.println(String.format(Locale.ROOT, "text with %d characters", characters));
+        measure("lists", () -> textLists(content, letters, false));
+        measure("builders", () -> textBuilders(content, letters, false));
+
+        System.out.println(sink);
+    }
+
+    /**
+     * compares the arrays of a builder variant with the arrays of the lists
+     *
+     * @param expected arrays built with the lists
+     * @param actual arrays built with the builders
+     * @param name name of the variant
+     * @throws IllegalStateException if an array differs
+     */
+    private static void compare(VertexData expected, VertexData actual, String name) {
+        compare(expected.positions, actual.positions, name + " positions");
+        compare(expected.textCords, actual.textCords, name + " texture coordinates");
+        if (!Arrays.equals(expected.indices, actual.indices)) {
+            throw new IllegalStateException(name + " indices differ: " + actual.indices.length + " instead of " + expected.indices.length
+                    + " values, first difference at " + firstDifference(expected.indices, actual.indices));
+        }
+        System.out.println(String.format(Locale.ROOT, "%s equal to the lists: %d positions, %d texture coordinates, %d indices",
+                name, actual.positions.length, actual.textCords.length, actual.indices.length));
+    }
+
+    private static void compare(float[] expected, float[] actual, String name) {
+        if (expected.length != actual.length) {
+            throw new IllegalStateException(name + ": " + actual.length + " values instead of " + expected.length);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(actual[i])) {
+                throw new IllegalStateException(name + ": value " + i + " is " + actual[i] + " instead of " + expected[i]);
+            }
+        }
+    }
+
+    private static int firstDifference(int[] expected, int[] actual) {
+        int i = 0;
+        while (i < expected.length && i < actual.length && expected[i] == actual[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * measures time and allocated bytes of one variant
+     *
+     * @param name name printed with the result
+     * @param variant variant to measure
+     */
+    private static void measure(String name, Runnable variant) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long bestTime = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            variant.run();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            allocated = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "  %-10s %8.2f ms %10.2f MB allocated", name, bestTime / 1e6, allocated / 1e6));
+    }
+
+    /**
+     * builds the height map vertex data the way HeightMapMesh did with lists
+     *
+     * @param heights heights of the vertices
+     * @param size vertices per side
+     * @param keep true to return the arrays
+     * @return arrays if kept, otherwise null
+     */
+    private static VertexData heightMapLists(float[] heights, int size, boolean keep) {
+        List<Float> positions = new ArrayList<>();
+        List<Float> textCords = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                positions.add(-0.5f + col / (float) (size - 1));
+                positions.add(heights[row * size + col]);
+                positions.add(-0.5f + row / (float) (size - 1));
+
+                textCords.add((float) col / size);
+                textCords.add((float) row / size);
+
+                if (col < size - 1 && row < size - 1) {
+                    int leftTop = row * size + col;
+                    int leftBottom = (row + 1) * size + col;
+                    indices.add(leftTop);
+                    indices.add(leftBottom);
+                    indices.add(leftTop + 1);
+                    indices.add(leftTop + 1);
+                    indices.add(leftBottom);
+                    indices.add(leftBottom + 1);
+                }
+            }
+        }
+
+        float[] posArr = Utils.listToArray(positions);
+        float[] textCordsArr = Utils.listToArray(textCords);
+        int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
+        sink += posArr.length + textCordsArr.length + indicesArr.length;
+        return keep ? new VertexData(posArr, textCordsArr, indicesArr) : null;
+    }
+
+    /**
+     * builds the height map vertex data the way HeightMapMesh does it
+     *
+     * @param heights heights of the vertices
+     * @param size vertices per side
+     * @param offHeap true to build the data off heap, like HeightMapMesh
+     * @param keep true to return the arrays
+     * @return arrays if kept, otherwise null
+     */
+    private static VertexData heightMapBuilders(float[] heights, int size, boolean offHeap, boolean keep) {
+        FloatArrayBuilder positions = new FloatArrayBuilder(size * size * 3, offHeap);
+        FloatArrayBuilder textCords = new FloatArrayBuilder(size * size * 2, offHeap);
+        IntArrayBuilder indices = new IntArrayBuilder((size - 1) * (size - 1) * 6, offHeap);
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                positions.add(-0.5f + col / (float) (size - 1), heights[row * size + col], -0.5f + row / (float) (size - 1));
+                textCords.add((float) col / size, (float) row / size);
+
+                if (col < size - 1 && row < size - 1) {
+                    int leftTop = row * size + col;
+                    int leftBottom = (row + 1) * size + col;
+                    indices.add(leftTop, leftBottom, leftTop + 1);
+                    indices.add(leftTop + 1, leftBottom, leftBottom + 1);
+                }
+            }
+        }
+
+        if (keep) {
+            VertexData data = new VertexData(positions.toArray(), textCords.toArray(), indices.toArray());
+            positions.free();
+            textCords.free();
+            indices.free();
+            return data;
+        }
+        if (offHeap) {
+            // the buffers would be given to the mesh here
+            sink += positions.getBuffer().remaining() + textCords.getBuffer().remaining() + indices.getBuffer().remaining();
+            positions.free();
+            textCords.free();
+            indices.free();
+        } else {
+            sink += positions.toArray().length + textCords.toArray().length + indices.toArray().length;
+        }
+        return null;
+    }
+
+    /**
+     * builds the letter quads the way TextItem.buildMesh did with lists
+     *
+     * @param text text to build
+     * @param letters letter metrics
+     * @param keep true to return the arrays
+     * @return arrays if kept, otherwise null
+     */
+    private static VertexData textLists(String text, int[][] letters, boolean keep) {
+        List<Float> positions = new ArrayList<>();
+        List<Float> textCords = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        int nextIndex = 0;
+        int y = 0;
+        for (String line : text.split("\n", -1)) {
+            int x = 0;
+            for (char c : line.toCharArray()) {
+                int[] letter = letters[c - 32];
+                for (int corner = 0; corner < VERTICES_PER_QUAD; corner++) {
+                    int right = corner >> 1;
+                    int bottom = corner & 1;
+                    positions.add((float) (x + letter[4] + right * letter[2]));
+                    positions.add((float) (y + letter[5] + bottom * letter[3]));
+                    positions.add(0f);
+                    textCords.add((letter[0] + right * letter[2]) / 512.0f);
+                    textCords.add((letter[1] + bottom * letter[3]) / 512.0f);
+                    indices.add(nextIndex * VERTICES_PER_QUAD + corner);
+                }
+                indices.add(nextIndex * VERTICES_PER_QUAD + 2);
+                indices.add(nextIndex * VERTICES_PER_QUAD + 1);
+                nextIndex++;
+                x += letter[6];
+            }
+            y += 40;
+        }
+
+        float[] posArr = Utils.listToArray(positions);
+        float[] texArr = Utils.listToArray(textCords);
+        int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
+        sink += posArr.length + texArr.length + indicesArr.length;
+        return keep ? new VertexData(posArr, texArr, indicesArr) : null;
+    }
+
+    /**
+     * builds the letter quads the way TextItem.buildMesh does it
+     *
+     * @param text text to build
+     * @param letters letter metrics
+     * @param keep true to return the arrays
+     * @return arrays if kept, otherwise null
+     */
+    private static VertexData textBuilders(String text, int[][] letters, boolean keep) {
+        FloatArrayBuilder positions = new FloatArrayBuilder(text.length() * VERTICES_PER_QUAD * 3);
+        FloatArrayBuilder textCords = new FloatArrayBuilder(text.length() * VERTICES_PER_QUAD * 2);
+        IntArrayBuilder indices = new IntArrayBuilder(text.length() * 6);
+
+        int nextIndex = 0;
+        int y = 0;
+        for (String line : text.split("\n", -1)) {
+            int x = 0;
+            for (char c : line.toCharArray()) {
+                int[] letter = letters[c - 32];
+                for (int corner = 0; corner < VERTICES_PER_QUAD; corner++) {
+                    int right = corner >> 1;
+                    int bottom = corner & 1;
+                    positions.add((float) (x + letter[4] + right * letter[2]), (float) (y + letter[5] + bottom * letter[3]), 0f);
+                    textCords.add((letter[0] + right * letter[2]) / 512.0f, (letter[1] + bottom * letter[3]) / 512.0f);
+                    indices.add(nextIndex * VERTICES_PER_QUAD + corner);
+                }
+                indices.add(nextIndex * VERTICES_PER_QUAD + 2, nextIndex * VERTICES_PER_QUAD + 1);
+                nextIndex++;
+                x += letter[6];
+            }
+            y += 40;
+        }
+
+        float[] posArr = positions.toArray();
+        float[] texArr = textCords.toArray();
+        int[] indicesArr = indices.toArray();
+        sink += posArr.length + texArr.length + indicesArr.length;
+        return keep ? new VertexData(posArr, texArr, indicesArr) : null;
+    }
+
+    /**
+     * arrays built by one variant
+     */
+    private static class VertexData {
+
+        private final float[] positions;
+        private final float[] textCords;
+        private final int[] indices;
+
+        private VertexData(float[] positions, float[] textCords, int[] indices) {
+            this.positions = positions;
+            this.textCords = textCords;
+            this.indices = indices;
+        }
+    }
+}
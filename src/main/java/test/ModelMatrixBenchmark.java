@@ -0,0 +1,103 @@
+package test;
+
+import engine.general.Transformation;
+import engine.graph.items.GameItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * measures the cost per item of the model view and model light view matrices of a scene of static
+ * items without a graphics context: once rebuilding the model matrix in both passes like before
+ * the matrices were cached and once with the cached model matrices of the game items
+ *
+ * usage: ModelMatrixBenchmark [items] [frames]
+ */
+public class ModelMatrixBenchmark {
+
+    /** frames before measuring */
+    private static final int WARMUP_FRAMES = 200;
+
+    /** keeps the results alive */
+    private static float sink;
+
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 10000;
+        int frames = args.length >= 2 ? Integer.parseInt(args[1]) : 500;
+
+        Random random = new Random(42);
+        GameItem[] gameItems = new GameItem[count];
+        for (int i = 0; i < count; i++) {
+            GameItem gameItem = new GameItem();
+            gameItem.setPosition(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+            gameItem.setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            gameItem.setScale(0.5f + random.nextFloat());
+            gameItems[i] = gameItem;
+        }
+
+        Transformation transformation = new Transformation();
+        Matrix4f viewMatrix = new Matrix4f().lookAt(0, 10, 0, 50, 0, 50, 0, 1, 0);
+        Matrix4f lightViewMatrix = new Matrix4f().lookAt(0, 50, 0, 10, 0, 5, 0, 1, 0);
+        Matrix4f modelMatrix = new Matrix4f();
+        Matrix4f result = new Matrix4f();
+
+        for (GameItem gameItem : gameItems) {
+            rebuild(gameItem, modelMatrix, viewMatrix, result);
+            if (!result.equals(transformation.buildModelViewMatrix(gameItem, viewMatrix), 1e-4f)) {
+                throw new IllegalStateException("cached model view matrix differs");
+            }
+        }
+        System.out.println("cached and rebuilt matrices match");
+
+        long rebuilt = Long.MAX_VALUE;
+        long cached = Long.MAX_VALUE;
+        for (int frame = 0; frame < WARMUP_FRAMES + frames; frame++) {
+            long start = System.nanoTime();
+            for (GameItem gameItem : gameItems) {
+                sink += rebuild(gameItem, modelMatrix, viewMatrix, result).m30();
+                sink += rebuild(gameItem, modelMatrix, lightViewMatrix, result).m30();
+            }
+            long rebuildTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (GameItem gameItem : gameItems) {
+                sink += transformation.buildModelViewMatrix(gameItem, viewMatrix).m30();
+                sink += transformation.buildModelLightViewMatrix(gameItem, lightViewMatrix).m30();
+            }
+            long cachedTime = System.nanoTime() - start;
+
+            if (frame >= WARMUP_FRAMES) {
+                rebuilt = Math.min(rebuilt, rebuildTime);
+                cached = Math.min(cached, cachedTime);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d static items, scene and shadow pass: rebuilt %.1f ns per item, cached %.1f ns per item",
+                count, (double) rebuilt / count, (double) cached / count));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * builds the model view matrix the way it was built before the model matrix was cached
+     *
+     * @param gameItem game item
+     * @param modelMatrix temporary model matrix
+     * @param viewMatrix view matrix of the pass
+     * @param dest receives the model view matrix
+     * @return dest
+     */
+    private static Matrix4f rebuild(GameItem gameItem, Matrix4f modelMatrix, Matrix4f viewMatrix, Matrix4f dest) {
+        Vector3f rotation = gameItem.getRotation();
+        modelMatrix.identity().translate(gameItem.getPosition()).
+                rotateX((float)Math.toRadians(-rotation.x)).
+                rotateY((float)Math.toRadians(-rotation.y)).
+                rotateZ((float)Math.toRadians(-rotation.z)).
+                scale(gameItem.getScale()).scale(gameItem.getScale3());
+        dest.set(viewMatrix);
+        return dest.mul(modelMatrix);
+    }
+}
@@ -0,0 +1,209 @@
+package test;
+
+import engine.general.OBJLoader;
+import engine.general.ObjStreamParser;
+import engine.graph.items.MeshData;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * compares the throughput and the allocations of the line based obj loader with the
+ * streaming parser and the parallel loader
+ *
+ * usage: ObjLoaderBenchmark [obj file] or ObjLoaderBenchmark -grid [vertices per side]
+ */
+public class ObjLoaderBenchmark {
+
+    /** runs before measuring to let the jit compile the parsers */
+    private static final int WARMUP_RUNS = 3;
+
+    /** measured runs */
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        byte[] data;
+        if (args.length >= 1 && !args[0].equals("-grid")) {
+            data = Files.readAllBytes(Paths.get(args[0]));
+        } else {
+            int size = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+            data = createGrid(size);
+        }
+
+        Path file = Files.createTempFile("benchmark", ".obj");
+        file.toFile().deleteOnExit();
+        Files.write(file, data);
+
+        MeshData legacy = loadLegacy(data);
+        MeshData streaming = loadStreaming(data);
+        check("streaming", legacy, streaming);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        check("parallel", legacy, ObjStreamParser.parseParallel(file, pool, 61));
+
+        int vertices = legacy.getVertexCount();
+        System.out.println(String.format(Locale.ROOT, "%.1f MB, %d vertices", data.length / 1e6, vertices));
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            loadLegacy(data);
+            loadStreaming(data);
+            loadNoDoubles(data);
+            OBJLoader.loadParallelData(file, pool);
+        }
+
+        measure("loadMesh", data, vertices, () -> loadLegacy(data));
+        measure("streaming", data, vertices, () -> loadStreaming(data));
+        measure("noDoubles", data, vertices, () -> loadNoDoubles(data));
+
+        int maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool threadPool = new ForkJoinPool(threads);
+            measure("parallel " + threads, data, vertices, () -> OBJLoader.loadParallelData(file, threadPool));
+            threadPool.shutdown();
+        }
+    }
+
+    /**
+     * measures time and allocated bytes of one of the loaders
+     *
+     * @param name name printed with the result
+     * @param data obj file content
+     * @param vertices number of vertices of the model
+     * @param loader loader to measure
+     * @throws Exception if the data cant be parsed
+     */
+    private static void measure(String name, byte[] data, int vertices, Callable<MeshData> loader) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long bestTime = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            loader.call();
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            allocated = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        }
+
+        double seconds = bestTime / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-12s %8.1f ms %8.1f MB/s %8.1f bytes allocated per vertex",
+                name, seconds * 1e3, data.length / 1e6 / seconds, (double) allocated / vertices));
+    }
+
+    /**
+     * reads the lines like Resources.readAllLines and parses them like OBJLoader.loadMesh
+     *
+     * @param data obj file content
+     * @return vertex data
+     * @throws Exception if the data cant be parsed
+     */
+    private static MeshData loadLegacy(byte[] data) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.ISO_8859_1))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return OBJLoader.loadMeshData(lines);
+    }
+
+    /**
+     * parses the data with the streaming parser
+     *
+     * @param data obj file content
+     * @return vertex data
+     * @throws Exception if the data cant be parsed
+     */
+    private static MeshData loadStreaming(byte[] data) throws Exception {
+        ObjStreamParser parser = new ObjStreamParser();
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(data)));
+        return parser.toMeshData();
+    }
+
+    /**
+     * parses the data with the streaming parser and merges equal face vertices like
+     * OBJLoader.loadNoDoubles
+     *
+     * @param data obj file content
+     * @return vertex data
+     * @throws Exception if the data cant be parsed
+     */
+    private static MeshData loadNoDoubles(byte[] data) throws Exception {
+        ObjStreamParser parser = new ObjStreamParser();
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(data)));
+        return parser.toDeduplicatedMeshData(false);
+    }
+
+    /**
+     * @param name name of the loader printed with the result
+     * @param expected mesh data of the line based loader
+     * @param actual mesh data of the loader to check
+     * @throws IllegalStateException if the arrays differ
+     */
+    private static void check(String name, MeshData expected, MeshData actual) {
+        if (!equal(expected, actual)) {
+            throw new IllegalStateException(name + " mesh data differs from the line based loader");
+        }
+        System.out.println(name + " equal: true");
+    }
+
+    /**
+     * @param a first mesh data
+     * @param b second mesh data
+     * @return true if all arrays are bit wise equal
+     */
+    private static boolean equal(MeshData a, MeshData b) {
+        return Arrays.equals(a.getPositions(), b.getPositions()) && Arrays.equals(a.getTextCords(), b.getTextCords())
+                && Arrays.equals(a.getNormals(), b.getNormals()) && Arrays.equals(a.getIndices(), b.getIndices());
+    }
+
+    /**
+     * creates an obj file of a noisy grid with texture coordinates and normals
+     *
+     * @param size vertices per side
+     * @return obj file content
+     */
+    static byte[] createGrid(int size) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                builder.append(String.format(Locale.ROOT, "v %.6f %.6f %.6f%n", x * 0.01f, random.nextFloat(), z * -0.01f));
+            }
+        }
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                builder.append(String.format(Locale.ROOT, "vt %.6f %.6f%n", (float) x / size, (float) z / size));
+                builder.append(String.format(Locale.ROOT, "vn %.4f %.4f %.4f%n", random.nextFloat() - 0.5f, 1f, random.nextFloat() - 0.5f));
+            }
+        }
+        for (int z = 0; z < size - 1; z++) {
+            for (int x = 0; x < size - 1; x++) {
+                int a = z * size + x + 1;
+                int b = a + size;
+                builder.append("f ").append(a).append('/').append(a).append('/').append(a).append(' ')
+                        .append(b).append('/').append(b).append('/').append(b).append(' ')
+                        .append(a + 1).append('/').append(a + 1).append('/').append(a + 1).append('\n');
+                builder.append("f ").append(a + 1).append("//").append(a + 1).append(' ')
+                        .append(b).append("//").append(b).append(' ')
+                        .append(b + 1).append("//").append(b + 1).append('\n');
+            }
+        }
+        return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,148 @@
+package test;
+
+import engine.render.RenderQueue;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * checks the render queue without a graphics context: random draw items are sorted, the order is
+ * compared with Arrays.sort and the state changes a renderer skipping redundant binds would do are
+ * counted for the unsorted and the sorted order
+ *
+ * usage: RenderQueueDemo [draw items] [materials] [meshes]
+ */
+public class RenderQueueDemo {
+
+    /** runs before measuring to let the jit compile the sort */
+    private static final int WARMUP_RUNS = 5;
+
+    /** measured runs */
+    private static final int RUNS = 10;
+
+    /** state of one fake draw item */
+    private static class FakeItem {
+        private final int textureSet;
+        private final int material;
+        private final int vao;
+        private final float depth;
+
+        private FakeItem(int textureSet, int material, int vao, float depth) {
+            this.textureSet = textureSet;
+            this.material = material;
+            this.vao = vao;
+            this.depth = depth;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        int materials = args.length >= 2 ? Integer.parseInt(args[1]) : 64;
+        int meshes = args.length >= 3 ? Integer.parseInt(args[2]) : 256;
+
+        Random random = new Random(42);
+        FakeItem[] items = new FakeItem[count];
+        for (int i = 0; i < count; i++) {
+            int material = random.nextInt(materials);
+            // every material has its own textures, half of them share the first texture set
+            items[i] = new FakeItem(material % 2 == 0 ? 0 : material, material, random.nextInt(meshes), random.nextFloat());
+        }
+
+        RenderQueue<FakeItem> queue = new RenderQueue<>();
+        fill(queue, items);
+        queue.sort();
+
+        long[] expected = new long[count];
+        for (int i = 0; i < count; i++) {
+            expected[i] = key(items[i]);
+        }
+        Arrays.sort(expected);
+        for (int i = 0; i < count; i++) {
+            if (queue.getKey(i) != expected[i] || key(queue.get(i)) != expected[i]) {
+                throw new IllegalStateException("wrong order at " + i);
+            }
+        }
+        System.out.println("order matches Arrays.sort");
+
+        FakeItem[] sorted = new FakeItem[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = queue.get(i);
+        }
+        System.out.println("unsorted: " + countStateChanges(items));
+        System.out.println("sorted:   " + countStateChanges(sorted));
+
+        long radix = Long.MAX_VALUE;
+        long reference = Long.MAX_VALUE;
+        long[] keys = new long[count];
+        for (int run = 0; run < WARMUP_RUNS + RUNS; run++) {
+            long start = System.nanoTime();
+            fill(queue, items);
+            queue.sort();
+            long time = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                keys[i] = key(items[i]);
+            }
+            Arrays.sort(keys);
+            long referenceTime = System.nanoTime() - start;
+
+            if (run >= WARMUP_RUNS) {
+                radix = Math.min(radix, time);
+                reference = Math.min(reference, referenceTime);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%d items: build and sort %.2f ms, Arrays.sort of the keys only %.2f ms",
+                count, radix / 1e6, reference / 1e6));
+    }
+
+    /**
+     * @param item draw item
+     * @return sort key of the item
+     */
+    private static long key(FakeItem item) {
+        return RenderQueue.key(0, item.textureSet, item.material, item.vao, item.depth);
+    }
+
+    /**
+     * @param queue queue to fill
+     * @param items draw items
+     */
+    private static void fill(RenderQueue<FakeItem> queue, FakeItem[] items) {
+        queue.clear();
+        for (FakeItem item : items) {
+            queue.add(key(item), item);
+        }
+    }
+
+    /**
+     * counts the binds and uploads the renderer would do for the items in this order
+     *
+     * @param items draw items in render order
+     * @return description of the state changes
+     */
+    private static String countStateChanges(FakeItem[] items) {
+        int textureBinds = 0;
+        int materialUploads = 0;
+        int vaoBinds = 0;
+        int textureSet = -1;
+        int material = -1;
+        int vao = -1;
+        for (FakeItem item : items) {
+            if (item.textureSet != textureSet) {
+                textureBinds++;
+                textureSet = item.textureSet;
+            }
+            if (item.material != material) {
+                materialUploads++;
+                material = item.material;
+            }
+            if (item.vao != vao) {
+                vaoBinds++;
+                vao = item.vao;
+            }
+        }
+        return String.format(Locale.ROOT, "%7d texture set binds, %7d material uploads, %7d vao binds", textureBinds, materialUploads, vaoBinds);
+    }
+}
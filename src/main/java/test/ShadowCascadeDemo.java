@@ -0,0 +1,168 @@
+package test;
+
+import engine.graph.items.BoundingVolume;
+import engine.render.FrustumCuller;
+import engine.render.ShadowCascades;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * checks the fitting of the shadow cascades without a graphics context: the split distances, the
+ * slices of the view frustum lying inside of their cascades, the texel snapping while the camera
+ * turns and moves, the near planes covering the casters towards the light and the number of
+ * casters every cascade draws compared to drawing all items into every cascade
+ *
+ * usage: ShadowCascadeDemo [item count]
+ */
+public class ShadowCascadeDemo {
+
+    /** projection of the renderer */
+    private static final float FOV = (float) Math.toRadians(60);
+    private static final float ASPECT = 16f / 9f;
+    private static final float Z_NEAR = 0.01f;
+    private static final float Z_FAR = 1000;
+
+    /** cascades and size of the shadow map of the renderer */
+    private static final int CASCADES = 4;
+    private static final int MAP_SIZE = 1024;
+
+    /** edge length of the area the items are placed in */
+    private static final float WORLD_SIZE = 400;
+
+    /** direction to the sun, from above and the side */
+    private static final Vector3f LIGHT_DIRECTION = new Vector3f(0.4f, 1, 0.3f).normalize();
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ShadowCascades cascades = new ShadowCascades(CASCADES, MAP_SIZE);
+        Matrix4f viewMatrix = new Matrix4f().lookAt(WORLD_SIZE / 2, 10, WORLD_SIZE / 2, WORLD_SIZE / 2 + 1, 8, WORLD_SIZE / 2 + 1, 0, 1, 0);
+        cascades.update(viewMatrix, FOV, ASPECT, Z_NEAR, Z_FAR, LIGHT_DIRECTION);
+
+        checkSplits(cascades);
+        checkSlices(cascades, viewMatrix);
+        checkSnapping(cascades);
+        checkCasters(cascades, viewMatrix, count);
+        System.out.println("shadow cascades fit");
+    }
+
+    /**
+     * the splits have to grow from the near plane to the shadow distance
+     */
+    private static void checkSplits(ShadowCascades cascades) {
+        check("first split", cascades.getSplitDistance(0) == Z_NEAR);
+        check("last split", cascades.getSplitDistance(CASCADES) == cascades.getShadowDistance());
+        StringBuilder splits = new StringBuilder();
+        for (int c = 0; c <= CASCADES; c++) {
+            if (c > 0) {
+                check("split " + c + " grows", cascades.getSplitDistance(c) > cascades.getSplitDistance(c - 1));
+            }
+            splits.append(String.format(Locale.ROOT, " %.2f", cascades.getSplitDistance(c)));
+        }
+        System.out.println("splits:" + splits);
+        for (int c = 0; c < CASCADES; c++) {
+            System.out.println(String.format(Locale.ROOT, "cascade %d: texel %.4f world units", c, cascades.getTexelSize(c)));
+        }
+    }
+
+    /**
+     * the corners of every slice of the view frustum have to be inside of the box of its cascade
+     */
+    private static void checkSlices(ShadowCascades cascades, Matrix4f viewMatrix) {
+        Matrix4f inverseView = new Matrix4f(viewMatrix).invertAffine();
+        float tanY = (float) Math.tan(FOV / 2);
+        float tanX = tanY * ASPECT;
+        Vector4f corner = new Vector4f();
+        for (int c = 0; c < CASCADES; c++) {
+            for (int k = 0; k < 8; k++) {
+                float depth = cascades.getSplitDistance(c + (k >> 2));
+                corner.set(((k & 1) * 2 - 1) * tanX * depth, ((k >> 1 & 1) * 2 - 1) * tanY * depth, -depth, 1);
+                inverseView.transform(corner);
+                cascades.getLightViewProjectionMatrix(c).transform(corner);
+                check("corner " + k + " of slice " + c + " inside of its cascade",
+                        Math.abs(corner.x) <= 1 && Math.abs(corner.y) <= 1 && Math.abs(corner.z) <= 1);
+            }
+        }
+    }
+
+    /**
+     * turning the camera must not change the size of a cascade and moving it may only move the
+     * cascades by whole texels, otherwise the edges of the shadows flicker
+     */
+    private static void checkSnapping(ShadowCascades cascades) {
+        float[] bounds = new float[6];
+        float[] texelSizes = new float[CASCADES];
+        float[] first = new float[CASCADES];
+        Random random = new Random(3);
+        for (int step = 0; step < 200; step++) {
+            // the camera turns and moves by less than a texel of the first cascade
+            Matrix4f viewMatrix = new Matrix4f()
+                    .rotateX(random.nextFloat() - 0.5f)
+                    .rotateY(step * 0.1f)
+                    .translate(-100 - step * 0.001f, -5, -100 - step * 0.0007f);
+            cascades.update(viewMatrix, FOV, ASPECT, Z_NEAR, Z_FAR, LIGHT_DIRECTION);
+            for (int c = 0; c < CASCADES; c++) {
+                cascades.getReceiverBounds(c, bounds);
+                float texelSize = cascades.getTexelSize(c);
+                if (step == 0) {
+                    texelSizes[c] = texelSize;
+                    first[c] = bounds[0];
+                }
+                check("texel size of cascade " + c + " stays the same", texelSize == texelSizes[c]);
+                float texels = (bounds[0] - first[c]) / texelSize;
+                check("cascade " + c + " moves by whole texels", Math.abs(texels - Math.round(texels)) < 1e-2f);
+            }
+        }
+        System.out.println("200 camera moves and turns kept the texel size and moved the cascades by whole texels");
+    }
+
+    /**
+     * culls a field of boxes and a tower far towards the light, which has to cast its shadow
+     * into the first cascade and has to be inside of its near plane
+     */
+    private static void checkCasters(ShadowCascades cascades, Matrix4f viewMatrix, int count) {
+        cascades.update(viewMatrix, FOV, ASPECT, Z_NEAR, Z_FAR, LIGHT_DIRECTION);
+        BoundingVolume unitBox = new BoundingVolume(new Vector3f(-0.5f, 0, -0.5f), new Vector3f(0.5f, 1, 0.5f),
+                new Vector3f(0, 0.5f, 0), (float) Math.sqrt(0.75f));
+        FrustumCuller culler = new FrustumCuller(count + 1);
+        Random random = new Random(42);
+        Matrix4f modelMatrix = new Matrix4f();
+        for (int i = 0; i < count; i++) {
+            culler.add(unitBox, modelMatrix.translation(random.nextFloat() * WORLD_SIZE, 0, random.nextFloat() * WORLD_SIZE)
+                    .scale(1 + random.nextFloat() * 3));
+        }
+
+        // a tall tower standing in the light direction of the camera, far outside of the first slice
+        Vector3f towerBase = new Vector3f(WORLD_SIZE / 2, 0, WORLD_SIZE / 2).add(LIGHT_DIRECTION.x * 80, 0, LIGHT_DIRECTION.z * 80);
+        int tower = culler.add(unitBox, modelMatrix.translation(towerBase).scale(4, 200, 4));
+
+        boolean[] visible = new boolean[culler.size()];
+        Vector4f top = new Vector4f();
+        int drawn = 0;
+        for (int c = 0; c < CASCADES; c++) {
+            long start = System.nanoTime();
+            int casters = cascades.cullCasters(c, culler, visible);
+            long time = System.nanoTime() - start;
+            drawn += casters;
+            if (c == 0) {
+                check("tower casts into the first cascade", visible[tower]);
+                float[] boxes = culler.getBoxes();
+                int b = tower * 6;
+                cascades.getLightViewProjectionMatrix(0).transform(top.set(boxes[b], boxes[b + 4], boxes[b + 2], 1));
+                check("top of the tower is inside of the near plane", top.z >= -1);
+            }
+            System.out.println(String.format(Locale.ROOT, "cascade %d: %d of %d casters, culled in %.3f ms",
+                    c, casters, culler.size(), time / 1e6));
+        }
+        System.out.println(String.format(Locale.ROOT, "%d casters drawn instead of %d without culling", drawn, culler.size() * CASCADES));
+    }
+
+    private static void check(String name, boolean condition) {
+        if (!condition) {
+            throw new IllegalStateException(name);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package test;
+
+import engine.graph.general.BoundingVolumeTree;
+import engine.render.FrustumCuller;
+import org.joml.Matrix4f;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * measures the bounding volume tree of the scene without a graphics context for a static world
+ * and a world in which 10% of the items move every frame. a frame is one frustum query and 100
+ * sphere, box and ray queries each. the results of the first frame are compared with a linear scan
+ * over all items, which is also timed
+ *
+ * usage: SpatialIndexBenchmark [item counts...]
+ */
+public class SpatialIndexBenchmark {
+
+    /** queries of every kind per frame */
+    private static final int QUERIES = 100;
+
+    /** frames before measuring */
+    private static final int WARMUP_FRAMES = 20;
+
+    /** measured frames */
+    private static final int FRAMES = 20;
+
+    /** share of the items moving every frame in the moving workload */
+    private static final float MOVING = 0.1f;
+
+    /** counts the visited items */
+    private static int visited;
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{10000, 100000, 1000000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int count : counts) {
+            run(count);
+        }
+    }
+
+    /**
+     * @param count number of items
+     */
+    private static void run(int count) {
+        // the world grows with the items, so the density stays the same
+        float worldSize = (float) Math.sqrt(count) * 10;
+        Random random = new Random(42);
+        float[] boxes = new float[count * 6];
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * worldSize;
+            float y = random.nextFloat() * 50;
+            float z = random.nextFloat() * worldSize;
+            float size = 0.5f + random.nextFloat() * 2;
+            setBox(boxes, i, x, y, z, size);
+        }
+
+        BoundingVolumeTree<Integer> tree = new BoundingVolumeTree<>(1, count * 2);
+        int[] proxies = new int[count];
+        float[] box = new float[6];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(boxes, i * 6, box, 0, 6);
+            proxies[i] = tree.insert(i, box);
+        }
+        long build = System.nanoTime() - start;
+        tree.validate();
+        System.out.println(String.format(Locale.ROOT, "%d items: built in %.1f ms, height %d", count, build / 1e6, tree.getHeight()));
+
+        Matrix4f camera = new Matrix4f().perspective((float) Math.toRadians(60), 16f / 9f, 0.1f, 300)
+                .mul(new Matrix4f().lookAt(worldSize / 2, 20, worldSize / 2, worldSize / 2 + 100, 10, worldSize / 2 + 100, 0, 1, 0));
+        float[][] queries = createQueries(new Random(7), worldSize);
+
+        check(tree, boxes, camera, queries);
+        long linear = measureLinear(boxes, camera, queries);
+
+        for (boolean moving : new boolean[]{false, true}) {
+            Random moveRandom = new Random(3);
+            long queryTime = 0;
+            long updateTime = 0;
+            int reinserted = 0;
+            for (int frame = 0; frame < WARMUP_FRAMES + FRAMES; frame++) {
+                start = System.nanoTime();
+                int frameReinserted = 0;
+                if (moving) {
+                    int first = moveRandom.nextInt(count);
+                    int moved = (int) (count * MOVING);
+                    for (int k = 0; k < moved; k++) {
+                        int i = (first + k) % count;
+                        int b = i * 6;
+                        float dx = (moveRandom.nextFloat() - 0.5f) * 0.5f;
+                        float dz = (moveRandom.nextFloat() - 0.5f) * 0.5f;
+                        boxes[b] += dx;
+                        boxes[b + 3] += dx;
+                        boxes[b + 2] += dz;
+                        boxes[b + 5] += dz;
+                        System.arraycopy(boxes, b, box, 0, 6);
+                        if (tree.move(proxies[i], box)) {
+                            frameReinserted++;
+                        }
+                    }
+                }
+                long updated = System.nanoTime();
+                runQueries(tree, camera, queries);
+                long end = System.nanoTime();
+
+                if (frame >= WARMUP_FRAMES) {
+                    updateTime += updated - start;
+                    queryTime += end - updated;
+                    reinserted += frameReinserted;
+                }
+            }
+            tree.validate();
+            System.out.println(String.format(Locale.ROOT, "  %-7s update %7.2f ms, queries %7.2f ms per frame, %d reinsertions per frame, linear scan %7.2f ms",
+                    moving ? "moving" : "static", updateTime / 1e6 / FRAMES, queryTime / 1e6 / FRAMES, reinserted / FRAMES, linear / 1e6));
+        }
+        check(tree, boxes, camera, queries);
+    }
+
+    /**
+     * @param boxes boxes of all items
+     * @param i index of the item
+     * @param x x of the center
+     * @param y y of the center
+     * @param z z of the center
+     * @param size edge length
+     */
+    private static void setBox(float[] boxes, int i, float x, float y, float z, float size) {
+        int b = i * 6;
+        boxes[b] = x - size / 2;
+        boxes[b + 1] = y - size / 2;
+        boxes[b + 2] = z - size / 2;
+        boxes[b + 3] = x + size / 2;
+        boxes[b + 4] = y + size / 2;
+        boxes[b + 5] = z + size / 2;
+    }
+
+    /**
+     * @param random random numbers
+     * @param worldSize edge length of the world
+     * @return spheres ( x, y, z, radius ), boxes ( min, max ) and rays ( origin, direction, length )
+     */
+    private static float[][] createQueries(Random random, float worldSize) {
+        float[][] queries = new float[QUERIES * 3][];
+        for (int q = 0; q < QUERIES; q++) {
+            float x = random.nextFloat() * worldSize;
+            float z = random.nextFloat() * worldSize;
+            queries[q] = new float[]{x, 25, z, 20};
+            queries[QUERIES + q] = new float[]{x - 15, 0, z - 15, x + 15, 50, z + 15};
+            float angle = random.nextFloat() * (float) Math.PI * 2;
+            queries[2 * QUERIES + q] = new float[]{x, 10 + random.nextFloat() * 30, z, (float) Math.cos(angle), -0.05f, (float) Math.sin(angle), 200};
+        }
+        return queries;
+    }
+
+    /**
+     * runs the queries of one frame on the tree
+     *
+     * @return number of visited items
+     */
+    private static int runQueries(BoundingVolumeTree<Integer> tree, Matrix4f camera, float[][] queries) {
+        visited = 0;
+        tree.queryFrustum(camera, item -> visited++);
+        for (int q = 0; q < QUERIES; q++) {
+            float[] sphere = queries[q];
+            tree.querySphere(sphere[0], sphere[1], sphere[2], sphere[3], item -> visited++);
+            tree.queryBox(queries[QUERIES + q], item -> visited++);
+            float[] ray = queries[2 * QUERIES + q];
+            tree.queryRay(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], ray[6], item -> visited++);
+        }
+        return visited;
+    }
+
+    /**
+     * compares the results of the tree with a linear scan
+     */
+    private static void check(BoundingVolumeTree<Integer> tree, float[] boxes, Matrix4f camera, float[][] queries) {
+        int expected = linearQueries(boxes, camera, queries);
+        int actual = runQueries(tree, camera, queries);
+        if (expected != actual) {
+            throw new IllegalStateException("tree found " + actual + " items, linear scan " + expected);
+        }
+    }
+
+    /**
+     * @return best time of the linear scan of one frame
+     */
+    private static long measureLinear(float[] boxes, Matrix4f camera, float[][] queries) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            linearQueries(boxes, camera, queries);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * runs the queries of one frame by testing every item
+     *
+     * @return number of found items
+     */
+    private static int linearQueries(float[] boxes, Matrix4f camera, float[][] queries) {
+        int count = boxes.length / 6;
+        int found = 0;
+        float[] planes = new float[FrustumCuller.PLANES * FrustumCuller.PLANE_FLOATS];
+        FrustumCuller.extractPlanes(camera, planes);
+        for (int i = 0; i < count; i++) {
+            if (inFrustum(boxes, i * 6, planes)) {
+                found++;
+            }
+        }
+        for (int q = 0; q < QUERIES; q++) {
+            float[] sphere = queries[q];
+            float[] box = queries[QUERIES + q];
+            float[] ray = queries[2 * QUERIES + q];
+            for (int i = 0; i < count; i++) {
+                int b = i * 6;
+                float dx = Math.max(Math.max(boxes[b] - sphere[0], sphere[0] - boxes[b + 3]), 0);
+                float dy = Math.max(Math.max(boxes[b + 1] - sphere[1], sphere[1] - boxes[b + 4]), 0);
+                float dz = Math.max(Math.max(boxes[b + 2] - sphere[2], sphere[2] - boxes[b + 5]), 0);
+                if (dx * dx + dy * dy + dz * dz <= sphere[3] * sphere[3]) {
+                    found++;
+                }
+                if (!(boxes[b] > box[3] || boxes[b + 1] > box[4] || boxes[b + 2] > box[5]
+                        || boxes[b + 3] < box[0] || boxes[b + 4] < box[1] || boxes[b + 5] < box[2])) {
+                    found++;
+                }
+                if (hitsRay(boxes, b, ray)) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if the box is not completely outside of a plane
+     */
+    private static boolean inFrustum(float[] boxes, int b, float[] planes) {
+        for (int p = 0; p < planes.length; p += FrustumCuller.PLANE_FLOATS) {
+            float x = planes[p] >= 0 ? boxes[b + 3] : boxes[b];
+            float y = planes[p + 1] >= 0 ? boxes[b + 4] : boxes[b + 1];
+            float z = planes[p + 2] >= 0 ? boxes[b + 5] : boxes[b + 2];
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the ray hits the box
+     */
+    private static boolean hitsRay(float[] boxes, int b, float[] ray) {
+        float near = 0;
+        float far = ray[6];
+        for (int axis = 0; axis < 3; axis++) {
+            float inverse = 1.0f / ray[3 + axis];
+            float t1 = (boxes[b + axis] - ray[axis]) * inverse;
+            float t2 = (boxes[b + 3 + axis] - ray[axis]) * inverse;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        return near <= far;
+    }
+}
@@ -0,0 +1,106 @@
+package test;
+
+import engine.graph.light.DirectionalLight;
+import engine.graph.light.LightClusterer;
+import engine.graph.light.LightHandler;
+import engine.graph.light.PointLight;
+import engine.render.Std140Buffer;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+/**
+ * checks the std140 packer without a graphics context: the offsets of the alignment rules are
+ * compared with the offsets of the std140 specification and the light block of the light handler
+ * is packed and read back at the offsets of the LightData block of the scene shader
+ *
+ * usage: Std140PackerDemo
+ */
+public class Std140PackerDemo {
+
+    public static void main(String[] args) {
+        Std140Buffer buffer = new Std140Buffer(4);
+        checkRules(buffer);
+        checkLightBlock(buffer);
+        buffer.cleanup();
+        System.out.println("std140 offsets match");
+    }
+
+    /**
+     * packs members and compares their offsets with the std140 rules
+     */
+    private static void checkRules(Std140Buffer buffer) {
+        buffer.clear();
+        buffer.putFloat(1);
+        // a vec3 is aligned to 16 bytes
+        buffer.putVec3(2, 3, 4);
+        check("vec3 after float", buffer.position(), 28);
+        // a float fills the fourth component of a vec3
+        buffer.putFloat(5);
+        check("float after vec3", buffer.position(), 32);
+        buffer.putInt(6);
+        // a vec2 is aligned to 8 bytes
+        buffer.putVec2(7, 8);
+        check("vec2 after int", buffer.position(), 48);
+        buffer.putInt(9);
+        // matrices are aligned to 16 bytes
+        buffer.putMat4(new Matrix4f().translation(10, 11, 12));
+        check("mat4 after int", buffer.position(), 128);
+        // every element of a float array takes 16 bytes
+        buffer.putFloatArray(new float[]{13, 14}, 3);
+        check("float[3]", buffer.position(), 176);
+        buffer.putFloat(15);
+        // structs start and end on 16 bytes
+        buffer.beginStruct();
+        buffer.putFloat(16);
+        buffer.endStruct();
+        check("struct after float", buffer.position(), 208);
+
+        ByteBuffer data = buffer.getData();
+        check("float", data.getFloat(0), 1);
+        check("vec3", data.getFloat(16), 2);
+        check("vec3.z", data.getFloat(24), 4);
+        check("float after vec3", data.getFloat(28), 5);
+        check("padding", data.getInt(4), 0);
+        check("vec2", data.getFloat(40), 7);
+        check("mat4 column 3", data.getFloat(64 + 48), 10);
+        check("float[1]", data.getFloat(144), 14);
+        check("float[2]", data.getFloat(160), 0);
+        check("struct", data.getFloat(192), 16);
+    }
+
+    /**
+     * packs lights and reads them back at the offsets of the LightData block
+     */
+    private static void checkLightBlock(Std140Buffer buffer) {
+        LightHandler lightHandler = new LightHandler();
+        lightHandler.setAmbientLight(new Vector3f(0.1f, 0.2f, 0.3f));
+        lightHandler.setDirectionalLight(new DirectionalLight(new Vector3f(1, 1, 1), new Vector3f(0, 1, 0), 0.5f));
+        lightHandler.addPointLight(new PointLight(new Vector3f(1, 0, 0), new Vector3f(1, 2, 3), 2,
+                new PointLight.Attenuation(0.5f, 0.25f, 0.125f)));
+
+        Matrix4f viewMatrix = new Matrix4f().translation(10, 0, 0);
+        LightClusterer clusterer = new LightClusterer(16, 9, 24, 1024);
+        clusterer.setProjection((float) Math.toRadians(60), 16f / 9f, 0.01f, 1000);
+        lightHandler.collectLights(viewMatrix, clusterer);
+        buffer.clear();
+        lightHandler.writeLights(viewMatrix, clusterer, buffer);
+        check("light block size", buffer.position(), LightHandler.LIGHT_BLOCK_SIZE);
+
+        ByteBuffer data = buffer.getData();
+        check("ambientLight.z", data.getFloat(8), 0.3f);
+        check("specularPower", data.getFloat(12), 10);
+        check("directionalLight.direction.y", data.getFloat(16 + 16 + 4), 1);
+        check("directionalLight.intensity", data.getFloat(16 + 28), 0.5f);
+        check("clusterGrid.y", data.getInt(48 + 4), 9);
+        check("clusterGrid.w", data.getInt(48 + 12), 1);
+        check("clusterDepth.x", data.getFloat(64), clusterer.getSliceScale());
+    }
+
+    private static void check(String name, float actual, float expected) {
+        if (actual != expected) {
+            throw new IllegalStateException(name + ": expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package test;
+
+import engine.graph.environment.StreamingTerrain;
+import engine.graph.environment.TerrainHeightQuery;
+import engine.graph.environment.TerrainTile;
+import org.joml.Vector3f;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * moves a virtual camera over a streaming terrain without a graphics context. the listener only
+ * records the resident tiles. the first run generates the tiles directly on the calling thread, so
+ * it is deterministic, the second one on a pool of worker threads with a faster camera. every frame
+ * checks that no tile is resident beyond the eviction radius and that the listener saw every tile
+ * loaded once and evicted once. when the camera stops, all tiles inside of the residency radius
+ * have to become resident. the heights of the tiles are compared with the source and the shared
+ * edges of neighbouring tiles have to match
+ *
+ * usage: StreamingTerrainDemo [tile cells] [residency radius]
+ */
+public class StreamingTerrainDemo {
+
+    /** world distance between two heights and height range of the terrain */
+    private static final float CELL_SIZE = 1;
+    private static final float MIN_Y = -20;
+    private static final float MAX_Y = 180;
+
+    /** distance beyond the residency radius after which tiles are evicted */
+    private static final float EVICTION_MARGIN = 48;
+
+    /** frames of one flight */
+    private static final int FRAMES = 600;
+
+    public static void main(String[] args) throws Exception {
+        int tileCells = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        float radius = args.length > 1 ? Float.parseFloat(args[1]) : 320;
+
+        checkHalfFloats();
+        StreamingTerrain.HeightSource source = StreamingTerrainDemo::getSourceHeight;
+
+        System.out.println("direct executor:");
+        fly(source, tileCells, radius, new DirectExecutor(), 3, 2, 200);
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        System.out.println("4 worker threads:");
+        fly(source, tileCells, radius, workers, 12, 8, 8);
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * flies the camera away from the origin and back in a curve and checks the terrain every frame
+     *
+     * @param speed world distance per frame
+     * @param maxLoading maximum number of requests in flight
+     * @param maxUploads maximum number of tiles made resident per update
+     */
+    private static void fly(StreamingTerrain.HeightSource source, int tileCells, float radius, ExecutorService executor,
+                            float speed, int maxLoading, int maxUploads) throws Exception {
+        RecordingListener listener = new RecordingListener();
+        StreamingTerrain terrain = new StreamingTerrain(source, listener, tileCells, CELL_SIZE, MIN_Y, MAX_Y, executor);
+        terrain.setResidencyRadius(radius);
+        terrain.setEvictionMargin(EVICTION_MARGIN);
+        terrain.setMaxLoading(maxLoading);
+        terrain.setMaxUploadsPerUpdate(maxUploads);
+
+        float x = 0;
+        float z = 0;
+        int maxResident = 0;
+        int holes = 0;
+        int requested = 0;
+        int cancelled = 0;
+        int discarded = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // out along a curve and back again, through negative tile coordinates
+            float angle = frame < FRAMES / 2 ? 0.6f + frame * 0.004f : 0.6f + frame * 0.004f + (float) Math.PI;
+            x += speed * (float) Math.cos(angle);
+            z -= speed * (float) Math.sin(angle);
+            terrain.update(x, z);
+
+            check(terrain, listener, x, z);
+            maxResident = Math.max(maxResident, terrain.getResidentCount());
+            requested += terrain.getRequestedCount();
+            cancelled += terrain.getCancelledCount();
+            discarded += terrain.getDiscardedCount();
+            if (terrain.getHeight(x, z) == TerrainHeightQuery.NO_HEIGHT) {
+                holes++;
+            }
+            if (frame % 100 == 0) {
+                System.out.println(String.format(Locale.ROOT, "  frame %3d at %8.1f, %8.1f: %3d resident, %2d loading, %2d loaded, %2d evicted",
+                        frame, x, z, terrain.getResidentCount(), terrain.getLoadingCount(), terrain.getLoadedCount(), terrain.getEvictedCount()));
+            }
+            Thread.sleep(executor instanceof DirectExecutor ? 0 : 1);
+        }
+        double flightTime = (System.nanoTime() - start) / 1e6;
+
+        // once the camera stops all tiles in the residency radius become resident and stay
+        int updates = 0;
+        while (!isComplete(terrain, x, z)) {
+            if (++updates > 5000) {
+                throw new IllegalStateException("the tiles around the camera do not become resident");
+            }
+            terrain.update(x, z);
+            check(terrain, listener, x, z);
+            Thread.sleep(executor instanceof DirectExecutor ? 0 : 1);
+        }
+        terrain.update(x, z);
+        if (terrain.getRequestedCount() != 0 || terrain.getEvictedCount() != 0) {
+            throw new IllegalStateException("the terrain still changes after the camera stopped");
+        }
+
+        checkTiles(terrain, source);
+        long floatBytes = (long) terrain.getResidentCount() * (tileCells + 1) * (tileCells + 1) * 6 * Float.BYTES;
+        System.out.println(String.format(Locale.ROOT, "  %d frames in %.0f ms, camera over a missing tile in %d frames, up to %d resident tiles, "
+                        + "%d requested, %d cancelled, %d discarded, complete %d updates after stopping",
+                FRAMES, flightTime, holes, maxResident, requested, cancelled, discarded, updates));
+        System.out.println(String.format(Locale.ROOT, "  %d resident tiles use %.2f MB for heights and normals instead of %.2f MB as floats",
+                terrain.getResidentCount(), terrain.getResidentBytes() / 1048576.0, floatBytes / 1048576.0));
+
+        terrain.cleanup();
+        if (!listener.tiles.isEmpty()) {
+            throw new IllegalStateException("cleanup did not evict all tiles");
+        }
+    }
+
+    /**
+     * checks the resident tiles after an update
+     */
+    private static void check(StreamingTerrain terrain, RecordingListener listener, float x, float z) {
+        int count = 0;
+        for (TerrainTile tile : terrain.getResidentTiles()) {
+            float distance = terrain.getDistance(tile.getTileX(), tile.getTileZ(), x, z);
+            if (distance > terrain.getResidencyRadius() + terrain.getEvictionMargin()) {
+                throw new IllegalStateException("tile " + tile.getTileX() + ", " + tile.getTileZ() + " is resident at distance " + distance);
+            }
+            if (!listener.tiles.contains(tile)) {
+                throw new IllegalStateException("the listener did not see tile " + tile.getTileX() + ", " + tile.getTileZ());
+            }
+            count++;
+        }
+        if (count != listener.tiles.size()) {
+            throw new IllegalStateException("the listener has " + listener.tiles.size() + " tiles, the terrain " + count);
+        }
+    }
+
+    /**
+     * @return true if every tile inside of the residency radius is resident
+     */
+    private static boolean isComplete(StreamingTerrain terrain, float x, float z) {
+        float tileSize = terrain.getTileSize();
+        float radius = terrain.getResidencyRadius();
+        for (int tileZ = (int) Math.floor((z - radius) / tileSize); tileZ <= (int) Math.floor((z + radius) / tileSize); tileZ++) {
+            for (int tileX = (int) Math.floor((x - radius) / tileSize); tileX <= (int) Math.floor((x + radius) / tileSize); tileX++) {
+                if (terrain.getDistance(tileX, tileZ, x, z) <= radius && terrain.getTile(tileX, tileZ) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * compares the vertices of the resident tiles with the source and the edges shared with the
+     * east and south neighbours
+     */
+    private static void checkTiles(StreamingTerrain terrain, StreamingTerrain.HeightSource source) throws Exception {
+        Vector3f normal = new Vector3f();
+        Vector3f neighbourNormal = new Vector3f();
+        float maxError = 0;
+        float maxNormalError = 0;
+        int edges = 0;
+        for (TerrainTile tile : terrain.getResidentTiles()) {
+            int cells = tile.getCells();
+            for (int row = 0; row <= cells; row++) {
+                for (int col = 0; col <= cells; col++) {
+                    int gx = tile.getTileX() * cells + col;
+                    int gz = tile.getTileZ() * cells + row;
+                    float expected = MIN_Y + source.getHeight(gx, gz) * (MAX_Y - MIN_Y);
+                    maxError = Math.max(maxError, Math.abs(tile.getHeight(col, row) - expected));
+
+                    // the normal of the exact heights, the tile one has quantized heights and half floats
+                    float nx = (source.getHeight(gx - 1, gz) - source.getHeight(gx + 1, gz)) * (MAX_Y - MIN_Y);
+                    float nz = (source.getHeight(gx, gz - 1) - source.getHeight(gx, gz + 1)) * (MAX_Y - MIN_Y);
+                    normal.set(nx, 2 * CELL_SIZE, nz).normalize();
+                    maxNormalError = Math.max(maxNormalError, normal.distance(tile.getNormal(col, row, neighbourNormal)));
+                }
+            }
+
+            TerrainTile east = terrain.getTile(tile.getTileX() + 1, tile.getTileZ());
+            TerrainTile south = terrain.getTile(tile.getTileX(), tile.getTileZ() + 1);
+            for (int k = 0; k <= cells; k++) {
+                if (east != null && (east.getHeight(0, k) != tile.getHeight(cells, k)
+                        || !east.getNormal(0, k, neighbourNormal).equals(tile.getNormal(cells, k, normal)))) {
+                    throw new IllegalStateException("the edge to the east of tile " + tile.getTileX() + ", " + tile.getTileZ() + " does not match");
+                }
+                if (south != null && (south.getHeight(k, 0) != tile.getHeight(k, cells)
+                        || !south.getNormal(k, 0, neighbourNormal).equals(tile.getNormal(k, cells, normal)))) {
+                    throw new IllegalStateException("the edge to the south of tile " + tile.getTileX() + ", " + tile.getTileZ() + " does not match");
+                }
+            }
+            edges += (east != null ? 1 : 0) + (south != null ? 1 : 0);
+
+            // the interpolated height lies between the heights of the corners of its cell
+            Random random = new Random(tile.getTileX() * 31L + tile.getTileZ());
+            for (int i = 0; i < 16; i++) {
+                float px = tile.getOriginX() + random.nextFloat() * cells * tile.getCellSize();
+                float pz = tile.getOriginZ() + random.nextFloat() * cells * tile.getCellSize();
+                float height = terrain.getHeight(px, pz);
+                if (height < tile.getLowest() - 1e-3f || height > tile.getHighest() + 1e-3f) {
+                    throw new IllegalStateException("height " + height + " outside of the tile");
+                }
+            }
+        }
+        float step = (MAX_Y - MIN_Y) / 0xFFFF;
+        if (maxError > step) {
+            throw new IllegalStateException("height error " + maxError + " is larger than the quantization step " + step);
+        }
+        if (maxNormalError > 4e-3f) {
+            throw new IllegalStateException("normal error " + maxNormalError);
+        }
+        System.out.println(String.format(Locale.ROOT, "  heights within %.5f of the source ( step %.5f ), normals within %.5f, %d shared edges match",
+                maxError, step, maxNormalError, edges));
+    }
+
+    /**
+     * checks the half float conversion of the normals
+     */
+    private static void checkHalfFloats() {
+        float[] exact = {0, 1, -1, 0.5f, -2, 65504, 0x1p-14f, 0x1p-24f, -0x1p-20f};
+        for (float value : exact) {
+            if (TerrainTile.fromHalf(TerrainTile.toHalf(value)) != value) {
+                throw new IllegalStateException(value + " does not survive the half float conversion");
+            }
+        }
+        Random random = new Random(7);
+        float maxError = 0;
+        for (int i = 0; i < 100000; i++) {
+            float value = random.nextFloat() * 2 - 1;
+            maxError = Math.max(maxError, Math.abs(TerrainTile.fromHalf(TerrainTile.toHalf(value)) - value));
+        }
+        if (maxError > 0x1p-12f) {
+            throw new IllegalStateException("half float error " + maxError);
+        }
+        System.out.println(String.format(Locale.ROOT, "half floats between -1 and 1 within %.6f", maxError));
+    }
+
+    /**
+     * rolling hills with some noise, heights between 0 and 1, defined everywhere
+     */
+    private static float getSourceHeight(int gx, int gz) {
+        double height = 0.5;
+        double frequency = 0.004;
+        double amplitude = 0.25;
+        for (int octave = 0; octave < 5; octave++) {
+            height += amplitude * Math.sin(gx * frequency + octave * 1.7) * Math.cos(gz * frequency * 1.3 - octave);
+            frequency *= 2.1;
+            amplitude *= 0.45;
+        }
+        return (float) height;
+    }
+
+    /**
+     * records the resident tiles and checks that every tile is loaded and evicted once
+     */
+    private static class RecordingListener implements StreamingTerrain.TileListener {
+
+        private final Set<TerrainTile> tiles = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<Long> keys = new HashSet<>();
+
+        @Override
+        public void tileLoaded(TerrainTile tile) {
+            if (!tiles.add(tile) || !keys.add(((long) tile.getTileX() << 32) | (tile.getTileZ() & 0xFFFFFFFFL))) {
+                throw new IllegalStateException("tile " + tile.getTileX() + ", " + tile.getTileZ() + " loaded twice");
+            }
+        }
+
+        @Override
+        public void tileEvicted(TerrainTile tile) {
+            if (!tiles.remove(tile) || !keys.remove(((long) tile.getTileX() << 32) | (tile.getTileZ() & 0xFFFFFFFFL))) {
+                throw new IllegalStateException("tile " + tile.getTileX() + ", " + tile.getTileZ() + " evicted without being loaded");
+            }
+        }
+    }
+
+    /**
+     * runs every task directly on the calling thread
+     */
+    private static class DirectExecutor extends AbstractExecutorService {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package test;
+
+import engine.graph.environment.HeightField;
+import engine.graph.environment.HeightMapMesh;
+import engine.graph.environment.TerrainHeightQuery;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * compares the constant time height queries of the terrain with the former block scan without a
+ * graphics context. the scan is kept here as it was in the terrain: it searches the block under
+ * the position, allocates the triangle under it and interpolates the height. both have to give the
+ * same heights for random positions, positions on the edges of blocks and cells and positions
+ * outside of the terrain. then single queries of both and the batch query are timed
+ *
+ * usage: TerrainHeightBenchmark [terrain size] [height map size]
+ */
+public class TerrainHeightBenchmark {
+
+    /** scale of one block, like the terrain of the main game */
+    private static final float SCALE = 5;
+
+    /** queries per measured round */
+    private static final int QUERIES = 100000;
+
+    /** rounds before measuring */
+    private static final int WARMUP_ROUNDS = 20;
+
+    /** measured rounds */
+    private static final int ROUNDS = 20;
+
+    /** keeps the results alive */
+    private static float sink;
+
+    public static void main(String[] args) {
+        int terrainSize = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int mapSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        HeightField heights = HeightField.fromHeights(createHeights(mapSize, new Random(1)), 0, 1);
+        TerrainHeightQuery query = new TerrainHeightQuery(heights, terrainSize, SCALE);
+        BlockScan scan = new BlockScan(toArray(heights), terrainSize, SCALE);
+
+        check(query, scan, terrainSize);
+
+        // positions spread over the terrain and a bit beyond its edges
+        Random random = new Random(2);
+        float extent = terrainSize * SCALE * 0.55f;
+        float[] x = new float[QUERIES];
+        float[] z = new float[QUERIES];
+        float[] dest = new float[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            x[i] = (random.nextFloat() * 2 - 1) * extent;
+            z[i] = (random.nextFloat() * 2 - 1) * extent;
+        }
+
+        long scanTime = Long.MAX_VALUE;
+        long queryTime = Long.MAX_VALUE;
+        long batchTime = Long.MAX_VALUE;
+        Vector3f position = new Vector3f();
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += scan.getHeight(position.set(x[i], 0, z[i]));
+            }
+            long scanRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += query.getHeight(x[i], z[i]);
+            }
+            long queryRound = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            query.getHeights(x, z, dest, QUERIES);
+            long batchRound = System.nanoTime() - start;
+            sink += dest[round];
+
+            if (round >= WARMUP_ROUNDS) {
+                scanTime = Math.min(scanTime, scanRound);
+                queryTime = Math.min(queryTime, queryRound);
+                batchTime = Math.min(batchTime, batchRound);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%dx%d blocks of %dx%d heights, %d queries: block scan %.3f ms, "
+                        + "direct %.3f ms, batch %.3f ms, %.1f ns per direct query",
+                terrainSize, terrainSize, mapSize, mapSize, QUERIES, scanTime / 1e6, queryTime / 1e6, batchTime / 1e6,
+                (double) queryTime / QUERIES));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * creates smooth heights between 0 and 1
+     */
+    private static float[][] createHeights(int size, Random random) {
+        float[][] heights = new float[size][size];
+        float phaseX = random.nextFloat() * 10;
+        float phaseZ = random.nextFloat() * 10;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                heights[row][col] = 0.5f + 0.25f * (float) Math.sin(col * 0.07f + phaseX) * (float) Math.cos(row * 0.05f + phaseZ)
+                        + 0.05f * random.nextFloat();
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * the quantized heights of the field as floats, the block scan reads them like the terrain
+     * read its float heights before
+     */
+    private static float[][] toArray(HeightField field) {
+        float[][] heights = new float[field.getRows()][field.getColumns()];
+        for (int row = 0; row < field.getRows(); row++) {
+            for (int col = 0; col < field.getColumns(); col++) {
+                heights[row][col] = field.getHeight(row, col);
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * compares the heights of both methods at random positions, on the edges of the blocks and
+     * the cells and outside of the terrain
+     */
+    private static void check(TerrainHeightQuery query, BlockScan scan, int terrainSize) {
+        Random random = new Random(3);
+        Vector3f position = new Vector3f();
+        float extent = terrainSize * SCALE * 0.6f;
+        int checked = 0;
+        for (int i = 0; i < 200000; i++) {
+            position.set((random.nextFloat() * 2 - 1) * extent, 0, (random.nextFloat() * 2 - 1) * extent);
+            compare(query, scan, position);
+            checked++;
+        }
+
+        // the edges of the blocks and the cells, and just before and behind them
+        float cell = SCALE / (scan.heights[0].length - 1);
+        for (int i = 0; i < 20000; i++) {
+            float x = scan.boxes[random.nextInt(terrainSize)][random.nextInt(terrainSize)].x + random.nextInt(scan.heights[0].length) * cell;
+            float z = scan.boxes[random.nextInt(terrainSize)][random.nextInt(terrainSize)].y + random.nextInt(scan.heights.length) * cell;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    compare(query, scan, position.set(Math.nextAfter(x, x + dx), 0, Math.nextAfter(z, z + dz)));
+                    checked++;
+                }
+            }
+        }
+        System.out.println(checked + " positions give the same height as the block scan");
+    }
+
+    private static void compare(TerrainHeightQuery query, BlockScan scan, Vector3f position) {
+        float expected = scan.getHeight(position);
+        float actual = query.getHeight(position.x, position.z);
+        if (Float.floatToIntBits(expected) != Float.floatToIntBits(actual)) {
+            throw new IllegalStateException("height at " + position.x + ", " + position.z + ": block scan " + expected + ", direct " + actual);
+        }
+    }
+
+    /**
+     * the former height query of the terrain, it scans the blocks for the one under the position
+     */
+    private static class BlockScan {
+
+        private final float[][] heights;
+        private final int terrainSize;
+        private final float scale;
+        private final Box2D[][] boxes;
+        private final int verticesPerCol;
+        private final int verticesPerRow;
+
+        BlockScan(float[][] heights, int terrainSize, float scale) {
+            this.heights = heights;
+            this.terrainSize = terrainSize;
+            this.scale = scale;
+            verticesPerCol = heights[0].length - 1;
+            verticesPerRow = heights.length - 1;
+            boxes = new Box2D[terrainSize][terrainSize];
+            for (int row = 0; row < terrainSize; row++) {
+                for (int col = 0; col < terrainSize; col++) {
+                    float xDisplacement = (col - ((float) terrainSize - 1) / (float) 2) * scale * HeightMapMesh.getXLength();
+                    float zDisplacement = (row - ((float) terrainSize - 1) / (float) 2) * scale * HeightMapMesh.getZLength();
+                    float topLeftX = HeightMapMesh.START_X * scale + xDisplacement;
+                    float topLeftZ = HeightMapMesh.START_Z * scale + zDisplacement;
+                    float width = Math.abs(HeightMapMesh.START_X * 2) * scale;
+                    float height = Math.abs(HeightMapMesh.START_Z * 2) * scale;
+                    boxes[row][col] = new Box2D(topLeftX, topLeftZ, width, height);
+                }
+            }
+        }
+
+        float getHeight(Vector3f position) {
+            float result = Float.MIN_VALUE;
+            Box2D boundingBox = null;
+            boolean found = false;
+            for (int row = 0; row < terrainSize && !found; row++) {
+                for (int col = 0; col < terrainSize && !found; col++) {
+                    boundingBox = boxes[row][col];
+                    found = boundingBox.contains(position.x, position.z);
+                }
+            }
+            if (found) {
+                Vector3f[] triangle = getTriangle(position, boundingBox);
+                result = interpolateHeight(triangle[0], triangle[1], triangle[2], position.x, position.z);
+            }
+            return result;
+        }
+
+        float interpolateHeight(Vector3f pA, Vector3f pB, Vector3f pC, float x, float z) {
+            float a = (pB.y - pA.y) * (pC.z - pA.z) - (pC.y - pA.y) * (pB.z - pA.z);
+            float b = (pB.z - pA.z) * (pC.x - pA.x) - (pC.z - pA.z) * (pB.x - pA.x);
+            float c = (pB.x - pA.x) * (pC.y - pA.y) - (pC.x - pA.x) * (pB.y - pA.y);
+            float d = -(a * pA.x + b * pA.y + c * pA.z);
+            return (-d - a * x - c * z) / b;
+        }
+
+        Vector3f[] getTriangle(Vector3f position, Box2D boundingBox) {
+            float cellWidth = boundingBox.width / (float) verticesPerCol;
+            float cellHeight = boundingBox.height / (float) verticesPerRow;
+            int col = (int) ((position.x - boundingBox.x) / cellWidth);
+            int row = (int) ((position.z - boundingBox.y) / cellHeight);
+
+            Vector3f[] triangle = new Vector3f[3];
+            triangle[1] = new Vector3f(boundingBox.x + col * cellWidth, getWorldHeight(row + 1, col), boundingBox.y + (row + 1) * cellHeight);
+            triangle[2] = new Vector3f(boundingBox.x + (col + 1) * cellWidth, getWorldHeight(row, col + 1), boundingBox.y + row * cellHeight);
+            if (position.z < getDiagonalZCord(triangle[1].x, triangle[1].z, triangle[2].x, triangle[2].z, position.x)) {
+                triangle[0] = new Vector3f(boundingBox.x + col * cellWidth, getWorldHeight(row, col), boundingBox.y + row * cellHeight);
+            } else {
+                triangle[0] = new Vector3f(boundingBox.x + (col + 1) * cellWidth, getWorldHeight(row + 1, col + 1), boundingBox.y + (row + 1) * cellHeight);
+            }
+            return triangle;
+        }
+
+        float getDiagonalZCord(float x1, float z1, float x2, float z2, float x) {
+            return ((z1 - z2) / (x1 - x2)) * (x - x1) + z1;
+        }
+
+        float getWorldHeight(int row, int col) {
+            float y = 0;
+            if (row >= 0 && row < heights.length && col >= 0 && col < heights[row].length) {
+                y = heights[row][col];
+            }
+            return y * scale + 0;
+        }
+    }
+
+    private static class Box2D {
+
+        final float x;
+        final float y;
+        final float width;
+        final float height;
+
+        Box2D(float x, float y, float width, float height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean contains(float x2, float y2) {
+            return x2 >= x && y2 >= y && x2 < x + width && y2 < y + height;
+        }
+    }
+}
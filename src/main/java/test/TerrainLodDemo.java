@@ -0,0 +1,181 @@
+package test;
+
+import engine.graph.environment.HeightField;
+import engine.graph.environment.TerrainQuadtree;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * flies a camera over a terrain quadtree without a graphics context and prints the patches and
+ * triangles selected per frame. for some positions the selection is checked: the selected patches
+ * cover the grid exactly once, the geometric error of every selected patch is within the pixel
+ * error and the skirts cover the gaps on all borders between patches of different levels
+ *
+ * usage: TerrainLodDemo [grid size] [patch cells]
+ */
+public class TerrainLodDemo {
+
+    /** projection of the renderer */
+    private static final float FOV = (float) Math.toRadians(60);
+    private static final int VIEWPORT_WIDTH = 1920;
+    private static final int VIEWPORT_HEIGHT = 1080;
+
+    /** world distance between two heights and height of the highest mountains */
+    private static final float CELL_SIZE = 1;
+    private static final float HEIGHT_SCALE = 120;
+
+    /** frames of the flight */
+    private static final int FRAMES = 200;
+
+    public static void main(String[] args) {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 2049;
+        int patchCells = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+        HeightField heights = createHeights(gridSize, new Random(5));
+        long start = System.nanoTime();
+        TerrainQuadtree quadtree = new TerrainQuadtree(heights, patchCells, 0, 0, CELL_SIZE, HEIGHT_SCALE);
+        long buildTime = System.nanoTime() - start;
+        quadtree.setProjection(FOV, VIEWPORT_HEIGHT);
+        System.out.println(String.format(Locale.ROOT, "%dx%d grid, %d levels, %d patches of %dx%d cells, built in %.1f ms",
+                gridSize, gridSize, quadtree.getLevels(), quadtree.getNodeCount(), patchCells, patchCells, buildTime / 1e6));
+
+        Matrix4f projection = new Matrix4f().perspective(FOV, (float) VIEWPORT_WIDTH / VIEWPORT_HEIGHT, 0.1f, 10000);
+        Matrix4f viewProjection = new Matrix4f();
+        Vector3f camera = new Vector3f();
+        long triangles = 0;
+        long selectTime = 0;
+        int[] owners = new int[quadtree.getMapCellsX() * quadtree.getMapCellsZ()];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // a flight diagonally over the grid, a bit above the ground, looking ahead
+            float t = (float) frame / FRAMES;
+            float x = (0.1f + 0.8f * t) * quadtree.getMapCellsX() * CELL_SIZE;
+            float z = (0.2f + 0.6f * t) * quadtree.getMapCellsZ() * CELL_SIZE;
+            camera.set(x, quadtree.getGridHeight((int) (x / CELL_SIZE), (int) (z / CELL_SIZE)) + 15, z);
+            projection.lookAt(camera.x, camera.y, camera.z, camera.x + 100, camera.y - 20, camera.z + 75, 0, 1, 0, viewProjection);
+
+            start = System.nanoTime();
+            int selected = quadtree.select(camera, viewProjection);
+            selectTime += System.nanoTime() - start;
+            triangles += quadtree.getTriangleCount();
+            if (frame % 40 == 0) {
+                System.out.println(String.format(Locale.ROOT, "frame %3d: %4d patches, %4d culled, %8d triangles, per level %s",
+                        frame, selected, quadtree.getCulledCount(), quadtree.getTriangleCount(),
+                        Arrays.toString(quadtree.getSelectedPerLevel())));
+
+                // the checks need neighbours everywhere, so they select without culling
+                quadtree.select(camera, null);
+                check(quadtree, camera, owners);
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "%.0f triangles per frame instead of %d at full resolution, selection %.1f us per frame",
+                (double) triangles / FRAMES, quadtree.getFullResolutionTriangleCount(), selectTime / 1e3 / FRAMES));
+    }
+
+    /**
+     * creates rolling hills with some noise, heights between 0 and 1
+     */
+    private static HeightField createHeights(int size, Random random) {
+        HeightField heights = new HeightField(size, size, 0, 1);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                float height = 0.5f;
+                float frequency = 0.003f;
+                float amplitude = 0.25f;
+                for (int octave = 0; octave < 5; octave++) {
+                    height += amplitude * (float) (Math.sin(col * frequency + octave) * Math.cos(row * frequency * 1.3f - octave));
+                    frequency *= 2.1f;
+                    amplitude *= 0.45f;
+                }
+                heights.setHeight(row, col, height + 0.002f * random.nextFloat());
+            }
+        }
+        return heights;
+    }
+
+    /**
+     * checks the selection of the last select call
+     */
+    private static void check(TerrainQuadtree quadtree, Vector3f camera, int[] owners) {
+        int mapX = quadtree.getMapCellsX();
+        int mapZ = quadtree.getMapCellsZ();
+        int cells = quadtree.getPatchCells();
+        int[] selected = quadtree.getSelected();
+
+        // every cell of the grid belongs to exactly one selected patch
+        Arrays.fill(owners, -1);
+        for (int i = 0; i < quadtree.getSelectedCount(); i++) {
+            int node = selected[i];
+            int size = cells * quadtree.getNodeStep(node);
+            for (int gz = quadtree.getNodeZ(node); gz < Math.min(quadtree.getNodeZ(node) + size, mapZ); gz++) {
+                for (int gx = quadtree.getNodeX(node); gx < Math.min(quadtree.getNodeX(node) + size, mapX); gx++) {
+                    if (owners[gz * mapX + gx] != -1) {
+                        throw new IllegalStateException("cell " + gx + ", " + gz + " is covered twice");
+                    }
+                    owners[gz * mapX + gx] = node;
+                }
+            }
+        }
+        for (int owner : owners) {
+            if (owner == -1) {
+                throw new IllegalStateException("a cell is not covered");
+            }
+        }
+
+        // the higher surface on a border has to hang its skirt down to the lower one
+        int gaps = 0;
+        int maxLevelDifference = 0;
+        float maxGap = 0;
+        for (int i = 0; i < quadtree.getSelectedCount(); i++) {
+            int node = selected[i];
+            int step = quadtree.getNodeStep(node);
+            int x = quadtree.getNodeX(node);
+            int z = quadtree.getNodeZ(node);
+            int endX = Math.min(x + cells * step, mapX);
+            int endZ = Math.min(z + cells * step, mapZ);
+            float skirt = quadtree.getSkirtDepth(node);
+            for (int k = 0; k <= cells; k++) {
+                int along = k * step;
+                // east and south neighbours, the west and north ones are checked from their side
+                int[][] points = {{endX, Math.min(z + along, endZ), endX, Math.min(z + along, endZ - 1)},
+                        {Math.min(x + along, endX), endZ, Math.min(x + along, endX - 1), endZ}};
+                for (int[] point : points) {
+                    int gx = point[0];
+                    int gz = point[1];
+                    if (point[2] >= mapX || point[3] >= mapZ) {
+                        continue;
+                    }
+                    int neighbour = owners[point[3] * mapX + point[2]];
+                    if (neighbour == node) {
+                        continue;
+                    }
+                    float height = quadtree.getPatchHeight(node, gx, gz);
+                    float neighbourHeight = quadtree.getPatchHeight(neighbour, gx, gz);
+                    float gap = Math.abs(height - neighbourHeight);
+                    float cover = height > neighbourHeight ? skirt : quadtree.getSkirtDepth(neighbour);
+                    maxGap = Math.max(maxGap, gap);
+                    maxLevelDifference = Math.max(maxLevelDifference, Math.abs(quadtree.getNodeLevel(node) - quadtree.getNodeLevel(neighbour)));
+                    if (gap > cover) {
+                        gaps++;
+                    }
+                }
+            }
+        }
+        if (gaps > 0) {
+            throw new IllegalStateException(gaps + " gaps between patches are not covered by skirts");
+        }
+
+        // selected patches are within the pixel error or have full resolution
+        for (int i = 0; i < quadtree.getSelectedCount(); i++) {
+            int node = selected[i];
+            if (quadtree.getNodeLevel(node) > 0 && quadtree.getPixelError(node, camera) > quadtree.getMaxPixelError()) {
+                throw new IllegalStateException("patch " + node + " is too coarse");
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "           %d patches cover the grid once, borders differ by up to %d levels, "
+                + "largest gap %.3f covered by the skirts", quadtree.getSelectedCount(), maxLevelDifference, maxGap));
+    }
+}
@@ -0,0 +1,134 @@
+package test;
+
+import engine.general.Transformation;
+import engine.graph.items.GameItem;
+import engine.graph.items.TransformStore;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * compares building the model view matrices of moving items without a graphics context: through
+ * the game items one by one, with the batch update of the transform store and with the batch
+ * update split across the common fork join pool. every item moves every frame, so every model
+ * matrix has to be built again. game items attached to the store are checked to return the same
+ * matrices as detached ones
+ *
+ * usage: TransformStoreBenchmark [items] [frames]
+ */
+public class TransformStoreBenchmark {
+
+    /** frames before measuring */
+    private static final int WARMUP_FRAMES = 50;
+
+    /** keeps the results alive */
+    private static float sink;
+
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        int frames = args.length >= 2 ? Integer.parseInt(args[1]) : 100;
+
+        Random random = new Random(42);
+        GameItem[] gameItems = new GameItem[count];
+        TransformStore store = new TransformStore(count);
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            GameItem gameItem = new GameItem();
+            gameItem.setPosition(random.nextFloat() * 100, random.nextFloat() * 10, random.nextFloat() * 100);
+            gameItem.setRotation(random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360);
+            gameItem.setScale(0.5f + random.nextFloat());
+            gameItem.setScale3(1, 0.5f + random.nextFloat(), 1);
+            gameItems[i] = gameItem;
+
+            slots[i] = store.allocate();
+            store.setPosition(slots[i], gameItem.getPosition().x, gameItem.getPosition().y, gameItem.getPosition().z);
+            store.setRotation(slots[i], gameItem.getRotation().x, gameItem.getRotation().y, gameItem.getRotation().z);
+            store.setScale(slots[i], gameItem.getScale());
+            store.setScale3(slots[i], gameItem.getScale3().x, gameItem.getScale3().y, gameItem.getScale3().z);
+        }
+
+        Transformation transformation = new Transformation();
+        Matrix4f viewMatrix = new Matrix4f().lookAt(0, 10, 0, 50, 0, 50, 0, 1, 0);
+        check(gameItems, store, slots, transformation, viewMatrix);
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long objects = Long.MAX_VALUE;
+        long batch = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        for (int frame = 0; frame < WARMUP_FRAMES + frames; frame++) {
+            float offset = frame * 0.01f;
+
+            long start = System.nanoTime();
+            for (GameItem gameItem : gameItems) {
+                gameItem.setRotation(gameItem.getRotation().x, gameItem.getRotation().y + offset, gameItem.getRotation().z);
+                sink += transformation.buildModelViewMatrix(gameItem, viewMatrix).m30();
+            }
+            long objectTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            moveAll(store, slots, offset);
+            store.updateMatrices(viewMatrix);
+            long batchTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            moveAll(store, slots, offset);
+            store.updateMatrices(viewMatrix, pool);
+            long parallelTime = System.nanoTime() - start;
+
+            sink += store.getModelViewMatrices()[12];
+            if (frame >= WARMUP_FRAMES) {
+                objects = Math.min(objects, objectTime);
+                batch = Math.min(batch, batchTime);
+                parallel = Math.min(parallel, parallelTime);
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d moving items: game items %.1f ns, store %.1f ns, store on %d threads %.1f ns per item",
+                count, (double) objects / count, (double) batch / count, pool.getParallelism(), (double) parallel / count));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * turns every slot a little, so every model matrix is built again
+     */
+    private static void moveAll(TransformStore store, int[] slots, float offset) {
+        Vector3f rotation = new Vector3f();
+        for (int slot : slots) {
+            store.getRotation(slot, rotation);
+            store.setRotation(slot, rotation.x, rotation.y + offset, rotation.z);
+        }
+    }
+
+    /**
+     * compares the matrices of the store with the matrices of the game items and checks that
+     * attaching a game item to the store keeps its transformation
+     */
+    private static void check(GameItem[] gameItems, TransformStore store, int[] slots, Transformation transformation, Matrix4f viewMatrix) {
+        store.updateMatrices(viewMatrix, ForkJoinPool.commonPool());
+        Matrix4f matrix = new Matrix4f();
+        for (int i = 0; i < gameItems.length; i++) {
+            Matrix4f expected = transformation.buildModelViewMatrix(gameItems[i], viewMatrix);
+            if (!store.getModelViewMatrix(slots[i], matrix).equals(expected, 1e-3f)) {
+                throw new IllegalStateException("model view matrix of slot " + slots[i] + " differs");
+            }
+        }
+
+        GameItem gameItem = gameItems[0];
+        Matrix4f before = new Matrix4f(gameItem.getModelMatrix());
+        gameItem.attachTransformStore(store);
+        if (!gameItem.getModelMatrix().equals(before, 1e-4f)) {
+            throw new IllegalStateException("attached game item has a different model matrix");
+        }
+        gameItem.setPosition(1, 2, 3);
+        gameItem.detachTransformStore();
+        if (gameItem.getPosition().y != 2 || gameItem.getModelMatrix().m31() != 2) {
+            throw new IllegalStateException("detached game item lost its position");
+        }
+        System.out.println("store matrices match the game items");
+    }
+}
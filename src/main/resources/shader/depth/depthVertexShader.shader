@@ -1,16 +1,50 @@
 #version 330
 
+// number of cascades of the shadow map in the frame block, has to match ShadowCascades.MAX_CASCADES
+const int MAX_CASCADES = 4;
+
+// The Fog struct contains the values to calculate the fog in the scene
+struct Fog
+{
+    int activeValue;
+    vec3 color;
+    float density;
+};
+
 // input variables form java code
 layout (location = 0) in vec3 position;
 layout (location = 1) in vec2 texCord;
 layout (location = 2) in vec3 vertexNormals;
+layout (location = 7) in mat4 instanceModelMatrix;
+
+// matrices and fog of the frame, shared by the scene, depth and sky box shader
+// the layout has to match Renderer.writeFrameData
+layout (std140) uniform FrameData
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 lightViewMatrix;
+    mat4 cascadeMatrices[MAX_CASCADES];
+    vec4 cascadeSplits;
+    Fog fog;
+};
 
 // uniform variables
 uniform mat4 modelLightViewMatrix;
+
+// projection of the cascade of the shadow map that is rendered
 uniform mat4 orthoProjectionMatrix;
 
+// the light view matrix of the frame block is used instead of the model light view matrix if the items are drawn instanced
+uniform int isInstanced;
+
 void main()
 {
     // setting the position
-    gl_Position = orthoProjectionMatrix * modelLightViewMatrix * vec4(position, 1.0f);
+    mat4 modelLightView = modelLightViewMatrix;
+    if (isInstanced == 1)
+    {
+        modelLightView = lightViewMatrix * instanceModelMatrix;
+    }
+    gl_Position = orthoProjectionMatrix * modelLightView * vec4(position, 1.0f);
 }
\ No newline at end of file
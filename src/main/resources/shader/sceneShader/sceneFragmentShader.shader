@@ -1,11 +1,10 @@
 #version 330
 
 //CONSTANTS
-// maximum number of point lights
-const int MAX_POINT_LIGHTS = 5;
-
-// maximum number of spot lights
-const int MAX_SPOT_LIGHTS = 5;
+// type of spot lights in the light list
+const float SPOT_LIGHT = 1.0;
+// number of cascades of the shadow map in the frame block, has to match ShadowCascades.MAX_CASCADES
+const int MAX_CASCADES = 4;
 
 // STRUCTS
 // Attenuation describes the decrease in light intensity over distance
@@ -67,7 +66,6 @@ in vec2 outTexCoord;
 in vec3 mvVertexNormal;
 in vec3 mvVertexPos;
 in mat4 outModelViewMatrix;
-in vec4 mLightviewVertexPosition;
 in mat3 TBN;
 
 in vec3 posT;
@@ -84,17 +82,40 @@ vec4 specularC;
 // texture uniforms
 uniform sampler2D texture_sampler;
 uniform sampler2D normalMap;
-uniform sampler2D shadowMap;
+uniform sampler2DArray shadowMap;
 
-// light uniforms
-uniform vec3 ambientLight;
-uniform float specularPower;
-uniform PointLight pointLights[MAX_POINT_LIGHTS];
-uniform DirectionalLight directionalLight;
-uniform SpotLight spotLights[MAX_SPOT_LIGHTS];
+// matrices and fog of the frame, shared by the scene, depth and sky box shader
+// the layout has to match Renderer.writeFrameData
+layout (std140) uniform FrameData
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 lightViewMatrix;
+    mat4 cascadeMatrices[MAX_CASCADES];
+    vec4 cascadeSplits;
+    Fog fog;
+};
 
-// Fog of the scene
-uniform Fog fog;
+// lights of the frame, directions are in view coordinates
+// the layout has to match LightHandler.writeLights
+layout (std140) uniform LightData
+{
+    vec3 ambientLight;
+    float specularPower;
+    DirectionalLight directionalLight;
+    // tiles x, tiles y, slices and number of lights of the light clusters
+    ivec4 clusterGrid;
+    // slice = log(depth) * x + y
+    vec4 clusterDepth;
+};
+
+// point and spot lights in view coordinates, 4 texels per light:
+// position and range, color and intensity, attenuation and cutoff, cone direction and type
+uniform samplerBuffer lights;
+// offset into the light indices and number of lights of every cluster
+uniform usamplerBuffer lightClusters;
+// indices into the light list of all clusters
+uniform usamplerBuffer lightIndices;
 
 // Material of the fragment
 uniform Material material;
@@ -102,6 +123,16 @@ uniform Material material;
 // Position of the camera
 uniform vec3 camera_pos;
 
+// method calculates the index of the light cluster containing a position in view coordinates
+int calcCluster(vec3 position)
+{
+    vec4 clipPos = projectionMatrix * vec4(position, 1.0);
+    vec2 ndc = clipPos.xy / clipPos.w;
+    ivec2 tile = clamp(ivec2((ndc * 0.5 + 0.5) * vec2(clusterGrid.xy)), ivec2(0), clusterGrid.xy - 1);
+    int slice = clamp(int(log(-position.z) * clusterDepth.x + clusterDepth.y), 0, clusterGrid.z - 1);
+    return (slice * clusterGrid.y + tile.y) * clusterGrid.x + tile.x;
+}
+
 // method calculates the normal for the current fragment
 vec3 calcNormal(Material material, vec3 normal, vec2 text_cord, mat4 modelViewMatrix)
 {
@@ -268,10 +299,21 @@ vec4 calcFog(vec3 pos, vec4 color, Fog fog, vec3 ambientLight, DirectionalLight
 }
 
 // method for calculating the shadow
-float calcShadow( vec4 position)
+float calcShadow(vec3 position)
 {
+    // the cascade is chosen by the distance of the fragment, there is no shadow behind the last one
+    float depth = -position.z;
+    int cascade = 0;
+    while (cascade < MAX_CASCADES && depth > cascadeSplits[cascade])
+    {
+        cascade++;
+    }
+    if (cascade == MAX_CASCADES || cascadeSplits[cascade] == 0)
+    {
+        return 1.0;
+    }
 
-    vec3 projCords = position.xyz;
+    vec3 projCords = (cascadeMatrices[cascade] * vec4(position, 1)).xyz;
 
     // transformation from screen coordinates to texture coordinates
     projCords = projCords * 0.5 + 0.5;
@@ -283,7 +325,7 @@ float calcShadow( vec4 position)
     float shadowFactor = 0.0;
 
     // calculates the size of one pixel of the shadow map
-    vec2 inc = 1.0 / textureSize(shadowMap, 0);
+    vec2 inc = 1.0 / textureSize(shadowMap, 0).xy;
 
     // averages the shadow values with its neighbours to get smother edges
     for(int row = -1; row <= 1; ++row)
@@ -291,7 +333,7 @@ float calcShadow( vec4 position)
         for(int col = -1; col <= 1; ++col)
         {
             // averaging of the shadow value
-            float textDepth = texture(shadowMap, projCords.xy + vec2(row,col) * inc).r;
+            float textDepth = texture(shadowMap, vec3(projCords.xy + vec2(row,col) * inc, cascade)).r;
             shadowFactor += projCords.z - bias > textDepth ? 1.0 : 0.0;
         }
     }
@@ -299,7 +341,7 @@ float calcShadow( vec4 position)
     // divided by 9 because it is composed out of 9 seperate shadow values that got added together
     shadowFactor /= 9.0;
 
-    if ( projCords.z - bias < texture(shadowMap, projCords.xy).r )
+    if ( projCords.z - bias < texture(shadowMap, vec3(projCords.xy, cascade)).r )
     {
         // current fragment is not in shade
         shadowFactor = 0;
@@ -319,27 +361,30 @@ void main()
     // calculates the diffuse and specular component of the DirectionalLight
     vec4 diffuseSpecularComp = calcDirectionalLight(directionalLight,mvVertexPos, currNormal);
 
-    // calculates the diffuse and specular component of the PointLights
-    for(int i = 0; i < MAX_POINT_LIGHTS; i++)
+    // calculates the diffuse and specular component of the point and spot lights reaching the cluster of the fragment
+    uvec2 cluster = texelFetch(lightClusters, calcCluster(mvVertexPos)).xy;
+    for(uint i = 0u; i < cluster.y; i++)
     {
-        if( pointLights[i].intensity > 0)
+        int light = int(texelFetch(lightIndices, int(cluster.x + i)).r) * 4;
+        vec4 positionRange = texelFetch(lights, light);
+        vec4 colorIntensity = texelFetch(lights, light + 1);
+        vec4 attenuationCutoff = texelFetch(lights, light + 2);
+        vec4 directionType = texelFetch(lights, light + 3);
+
+        PointLight pointLight = PointLight(colorIntensity.rgb, positionRange.xyz, colorIntensity.a,
+                Attenuation(attenuationCutoff.x, attenuationCutoff.y, attenuationCutoff.z));
+        if(directionType.w == SPOT_LIGHT)
         {
-            diffuseSpecularComp += calcPointLight(pointLights[i], mvVertexPos, currNormal);
+            diffuseSpecularComp += calcSpotLights(SpotLight(directionType.xyz, attenuationCutoff.w, pointLight), mvVertexPos, currNormal);
         }
-    }
-
-
-    // calculates the diffuse and specular component of the SpotLights
-    for(int i = 0; i < MAX_SPOT_LIGHTS; i++)
-    {
-        if( spotLights[i].pointLight.intensity > 0)
+        else
         {
-            diffuseSpecularComp += calcSpotLights(spotLights[i], mvVertexPos, currNormal);
+            diffuseSpecularComp += calcPointLight(pointLight, mvVertexPos, currNormal);
         }
     }
 
     // calculates the shadow
-    float shadow = calcShadow(mLightviewVertexPosition);
+    float shadow = calcShadow(mvVertexPos);
 
     // sets the final fragment color after the lights
     fragColor = clamp(ambientC * vec4(ambientLight, 1) + diffuseSpecularComp, 0 , 1);
@@ -4,6 +4,16 @@
 // constants
 const int MAX_JOINTS = 50;
 const int MAX_WEIGHTS = 3;
+// number of cascades of the shadow map in the frame block, has to match ShadowCascades.MAX_CASCADES
+const int MAX_CASCADES = 4;
+
+// The Fog struct contains the values to calculate the fog in the scene
+struct Fog
+{
+    int activeValue;
+    vec3 color;
+    float density;
+};
 
 // input variables form the java code
 layout (location=0) in vec3 position;
@@ -13,30 +23,49 @@ layout (location=3) in vec3 tangent;
 layout (location=4) in vec3 biTangent;
 layout (location=5) in vec3 weights;
 layout (location=6) in ivec3 jointIndices;
+layout (location=7) in mat4 instanceModelMatrix;
 
 // ouput variables to the fragment shader
 out vec2 outTexCoord;
 out vec3 mvVertexNormal;
 out vec3 mvVertexPos;
-out vec4 mLightviewVertexPosition;
 out mat4 outModelViewMatrix;
 out mat3 TBN;
 
 out vec3 posT;
 
+// matrices and fog of the frame, shared by the scene, depth and sky box shader
+// the layout has to match Renderer.writeFrameData
+layout (std140) uniform FrameData
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 lightViewMatrix;
+    mat4 cascadeMatrices[MAX_CASCADES];
+    vec4 cascadeSplits;
+    Fog fog;
+};
+
 // uniform variables
 uniform mat4 modelViewMatrix;
-uniform mat4 projectionMatrix;
-uniform mat4 modelLightViewMatrix;
-uniform mat4 orthoProjectionMatrix;
 uniform mat4 jointTransforms[MAX_JOINTS];
 uniform int isAnimation;
 
+// the view matrix of the frame block is used instead of the model view matrix if the items are drawn instanced
+uniform int isInstanced;
+
 void main()
 {
 
     posT = position;
 
+    // instanced items take their model matrix from the instance attribute
+    mat4 modelView = modelViewMatrix;
+    if (isInstanced==1)
+    {
+        modelView = viewMatrix * instanceModelMatrix;
+    }
+
     // animation position calculations
     vec4 totalLocalPos = vec4(0.0);
     vec4 totalNormal = vec4(0.0);
@@ -60,7 +89,7 @@ void main()
 
 
     // gets the position of the Item from the modelViewMatrix
-    vec4 mvPos =  modelViewMatrix * totalLocalPos;
+    vec4 mvPos =  modelView * totalLocalPos;
 
     // applies the projection matrix to the items position
     gl_Position = projectionMatrix * mvPos;
@@ -69,21 +98,18 @@ void main()
     outTexCoord = texCoord;
 
     // calculates the normal vector of the vertex relative to the world
-    mvVertexNormal = normalize(modelViewMatrix * totalNormal).xyz;
+    mvVertexNormal = normalize(modelView * totalNormal).xyz;
 
     // the position of the vertex relative to the world
     mvVertexPos = mvPos.xyz;
 
-    // calculating the vector for the shadow calculation
-    mLightviewVertexPosition = orthoProjectionMatrix * modelLightViewMatrix * vec4(position, 1.0);
-
     // passes the model view matrix to the fragment shader
-    outModelViewMatrix = modelViewMatrix;
+    outModelViewMatrix = modelView;
 
     // calculate TBN matrix for normal map orientation
-    vec3 T = normalize(vec3(modelViewMatrix * vec4(tangent, 0.0)));
-    vec3 B = normalize(vec3(modelViewMatrix * vec4(biTangent, 0.0)));
-    vec3 N = normalize(vec3(modelViewMatrix * totalNormal));
+    vec3 T = normalize(vec3(modelView * vec4(tangent, 0.0)));
+    vec3 B = normalize(vec3(modelView * vec4(biTangent, 0.0)));
+    vec3 N = normalize(vec3(modelView * totalNormal));
     TBN = mat3(T,B,N);
 
 }
\ No newline at end of file
@@ -1,5 +1,16 @@
 #version 330
 
+// number of cascades of the shadow map in the frame block, has to match ShadowCascades.MAX_CASCADES
+const int MAX_CASCADES = 4;
+
+// The Fog struct contains the values to calculate the fog in the scene
+struct Fog
+{
+    int activeValue;
+    vec3 color;
+    float density;
+};
+
 // input variables form the java code
 layout (location=0) in vec3 position;
 layout (location=1) in vec2 texCord;
@@ -8,9 +19,20 @@ layout (location=2) in vec3 vertexNormal;
 // output variables to the shader code
 out vec2 outTexCord;
 
+// matrices and fog of the frame, shared by the scene, depth and sky box shader
+// the layout has to match Renderer.writeFrameData
+layout (std140) uniform FrameData
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+    mat4 lightViewMatrix;
+    mat4 cascadeMatrices[MAX_CASCADES];
+    vec4 cascadeSplits;
+    Fog fog;
+};
+
 // unifomr variables
 uniform mat4 modelViewMatrix;
-uniform mat4 projectionMatrix;
 
 void main()
 {